@@ -5,73 +5,74 @@ import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
 import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
 import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
 import sdk.sample.common.CommonSdk;
-import sdk.sample.common.ProjectConfiguration;
+import sdk.sample.common.OperationTracker;
+import sdk.sample.common.Operations;
+import sdk.sample.common.Topology;
+import sdk.sample.common.TopologySelector;
+import sdk.sample.common.Tracer;
 import sdk.sample.common.Utils;
-import sdk.sample.model.ModelCapacityPool;
-import sdk.sample.model.ModelNetAppAccount;
-import sdk.sample.model.ModelVolume;
-
-import java.util.List;
 
 public class Cleanup {
     /**
      * Breaks and removes Data Replication connection and then deletes all resources -> volumes, pools and accounts
-     * @param accounts List of ModelNetAppAccount to process
+     * @param topology Accounts, pools and volumes to process
      * @param anfClient Azure NetApp Files Management Client
      */
-    public static void runCleanup(List<ModelNetAppAccount> accounts, NetAppManagementClient anfClient)
+    public static void runCleanup(Topology topology, NetAppManagementClient anfClient)
+    {
+        runCleanup(topology, anfClient, TopologySelector.Scope.ACCOUNT);
+    }
+
+    /**
+     * Breaks and removes Data Replication connection and then deletes the volumes, and the pools and accounts when they are targeted
+     * @param topology Accounts, pools and volumes to process, e.g. a selection of the topology
+     * @param anfClient Azure NetApp Files Management Client
+     * @param scope VOLUME to only delete volumes, POOL to delete volumes and pools, ACCOUNT to delete everything
+     */
+    public static void runCleanup(Topology topology, NetAppManagementClient anfClient, TopologySelector.Scope scope)
     {
         /*
           Break and remove data replications
          */
         Utils.writeConsoleMessage("Breaking and removing Data Replication(s)...");
-        for (ModelNetAppAccount account : accounts)
+        for (Topology.Volume volume : topology.getDataProtectionVolumes())
         {
-            if (account.getCapacityPools() != null)
+            String[] params = volume.getParameters();
+            VolumeInner destinationVolume = (VolumeInner) CommonSdk.getResource(anfClient, params, VolumeInner.class);
+            if (destinationVolume != null)
             {
-                for (ModelCapacityPool pool : account.getCapacityPools())
+                Tracer.Span breakSpan = Tracer.shared().start(String.join("/", params), "resource").arg("step", "break replication");
+                try
                 {
-                    if (pool.getVolumes() != null)
-                    {
-                        for (ModelVolume volume : pool.getVolumes())
-                        {
-                            if (volume.getSourceVolume() != null)
-                            {
-                                String[] params = {account.getResourceGroup(), account.getName(), pool.getName(), volume.getName()};
-                                VolumeInner destinationVolume = (VolumeInner) CommonSdk.getResource(anfClient, params, VolumeInner.class);
-                                if (destinationVolume != null)
-                                {
-                                    try
-                                    {
-                                        // Break replication on destination volume
-                                        anfClient.getVolumes().beginBreakReplication(account.getResourceGroup(), account.getName(), pool.getName(), volume.getName(), null).getFinalResult();
-                                        // Wait for replication status to be Broken
-                                        CommonSdk.waitForReplicationStatus(anfClient, account.getResourceGroup(), account.getName(), pool.getName(), volume.getName(), "Broken");
-                                        Utils.writeSuccessMessage("Successfully broke Volume Replication: " + destinationVolume.id());
-                                    }
-                                    catch (Exception e)
-                                    {
-                                        Utils.writeErrorMessage("An error occurred while breaking data replication: " + destinationVolume.id());
-                                        Utils.writeConsoleMessage("Error: " + e);
-                                        throw e;
-                                    }
+                    breakReplication(anfClient, params);
+                    Utils.writeSuccessMessage("Successfully broke Volume Replication: " + destinationVolume.id());
+                }
+                catch (Exception e)
+                {
+                    Utils.writeErrorMessage("An error occurred while breaking data replication: " + destinationVolume.id());
+                    Utils.writeConsoleMessage("Error: " + e);
+                    throw e;
+                }
+                finally
+                {
+                    breakSpan.close();
+                }
 
-                                    try
-                                    {
-                                        anfClient.getVolumes().beginDeleteReplication(account.getResourceGroup(), account.getName(), pool.getName(), volume.getName()).getFinalResult();
-                                        CommonSdk.waitForNoReplication(anfClient, account.getResourceGroup(), account.getName(), pool.getName(), volume.getName(), 10, 60);
-                                        Utils.writeSuccessMessage("Successfully deleted Volume Replication: " + destinationVolume.id());
-                                    }
-                                    catch (Exception e)
-                                    {
-                                        Utils.writeErrorMessage("An error occurred while removing data replication: " + destinationVolume.id());
-                                        Utils.writeConsoleMessage("Error: " + e);
-                                        throw e;
-                                    }
-                                }
-                            }
-                        }
-                    }
+                Tracer.Span deleteSpan = Tracer.shared().start(String.join("/", params), "resource").arg("step", "delete replication");
+                try
+                {
+                    deleteReplication(anfClient, params);
+                    Utils.writeSuccessMessage("Successfully deleted Volume Replication: " + destinationVolume.id());
+                }
+                catch (Exception e)
+                {
+                    Utils.writeErrorMessage("An error occurred while removing data replication: " + destinationVolume.id());
+                    Utils.writeConsoleMessage("Error: " + e);
+                    throw e;
+                }
+                finally
+                {
+                    deleteSpan.close();
                 }
             }
         }
@@ -80,88 +81,96 @@ public class Cleanup {
           Clean up volumes
          */
         Utils.writeConsoleMessage("Cleaning up Volume(s)...");
-        for (ModelNetAppAccount account : accounts)
+        for (Topology.Account account : topology.getAccounts())
         {
-            if (account.getCapacityPools() != null)
+            for (Topology.Pool pool : account.getPools())
             {
-                for (ModelCapacityPool pool : account.getCapacityPools())
+                if (!pool.getVolumes().isEmpty())
                 {
-                    if (pool.getVolumes() != null)
+                    for (Topology.Volume volume : pool.getVolumes())
                     {
-                        for (ModelVolume volume : pool.getVolumes())
+                        String[] parameters = volume.getParameters();
+                        VolumeInner volumeInner = (VolumeInner) CommonSdk.getResource(anfClient, parameters, VolumeInner.class);
+                        if (volumeInner != null)
                         {
-                            String[] parameters = {account.getResourceGroup(), account.getName(), pool.getName(), volume.getName()};
-                            VolumeInner volumeInner = (VolumeInner) CommonSdk.getResource(anfClient, parameters, VolumeInner.class);
-                            if (volumeInner != null)
+                            Tracer.Span span = Tracer.shared().start(String.join("/", parameters), "resource").arg("step", "delete volume");
+                            try
                             {
-                                try
-                                {
-                                    anfClient.getVolumes().beginDelete(account.getResourceGroup(), account.getName(), pool.getName(), volume.getName()).getFinalResult();
-                                    CommonSdk.waitForNoANFResource(anfClient, volumeInner.id(), VolumeInner.class);
-                                    Utils.writeSuccessMessage("Successfully deleted Volume: " + volumeInner.id());
-                                }
-                                catch (Exception e)
-                                {
-                                    Utils.writeErrorMessage("An error occurred while deleting Volume: " + volumeInner.id());
-                                    Utils.writeConsoleMessage("Error: " + e);
-                                    throw e;
-                                }
+                                deleteVolume(anfClient, parameters);
+                                Utils.writeSuccessMessage("Successfully deleted Volume: " + volumeInner.id());
+                            }
+                            catch (Exception e)
+                            {
+                                Utils.writeErrorMessage("An error occurred while deleting Volume: " + volumeInner.id());
+                                Utils.writeConsoleMessage("Error: " + e);
+                                throw e;
+                            }
+                            finally
+                            {
+                                span.close();
                             }
                         }
                     }
-                    else
-                    {
-                        Utils.writeConsoleMessage("No Volumes defined for Account: " + account.getName() + ", Capacity Pool: " + pool.getName());
-                    }
+                }
+                else
+                {
+                    Utils.writeConsoleMessage("No Volumes defined for Account: " + account.getName() + ", Capacity Pool: " + pool.getName());
                 }
             }
         }
 
+        if (scope == TopologySelector.Scope.VOLUME)
+            return;
+
          /*
           Clean up capacity pools
          */
         Utils.writeConsoleMessage("Cleaning up Capacity Pool(s)...");
-        for (ModelNetAppAccount account : accounts)
+        for (Topology.Account account : topology.getAccounts())
         {
-            if (account.getCapacityPools() != null)
+            for (Topology.Pool pool : account.getPools())
             {
-                for (ModelCapacityPool pool : account.getCapacityPools())
+                String[] parameters = pool.getParameters();
+                CapacityPoolInner capacityPool = (CapacityPoolInner) CommonSdk.getResource(anfClient, parameters, CapacityPoolInner.class);
+                if (capacityPool != null)
                 {
-                    String[] parameters = {account.getResourceGroup(), account.getName(), pool.getName()};
-                    CapacityPoolInner capacityPool = (CapacityPoolInner) CommonSdk.getResource(anfClient, parameters, CapacityPoolInner.class);
-                    if (capacityPool != null)
+                    Tracer.Span span = Tracer.shared().start(String.join("/", parameters), "resource").arg("step", "delete capacity pool");
+                    try
                     {
-                        try
-                        {
-                            anfClient.getPools().beginDelete(account.getResourceGroup(), account.getName(), pool.getName()).getFinalResult();
-                            CommonSdk.waitForNoANFResource(anfClient, capacityPool.id(), CapacityPoolInner.class);
-                        }
-                        catch (Exception e)
-                        {
-                            Utils.writeErrorMessage("An error occurred while deleting Capacity Pool: " + capacityPool.id());
-                            Utils.writeConsoleMessage("Error: " + e);
-                            throw e;
-                        }
-                        Utils.writeSuccessMessage("Successfully deleted Capacity Pool: " + capacityPool.id());
+                        deleteCapacityPool(anfClient, parameters);
+                    }
+                    catch (Exception e)
+                    {
+                        Utils.writeErrorMessage("An error occurred while deleting Capacity Pool: " + capacityPool.id());
+                        Utils.writeConsoleMessage("Error: " + e);
+                        throw e;
+                    }
+                    finally
+                    {
+                        span.close();
                     }
+                    Utils.writeSuccessMessage("Successfully deleted Capacity Pool: " + capacityPool.id());
                 }
             }
         }
 
+        if (scope == TopologySelector.Scope.POOL)
+            return;
+
         /*
           Clean up accounts
          */
         Utils.writeConsoleMessage("Cleaning up Account(s)...");
-        for (ModelNetAppAccount account : accounts)
+        for (Topology.Account account : topology.getAccounts())
         {
-            String[] parameters = {account.getResourceGroup(), account.getName()};
+            String[] parameters = account.getParameters();
             NetAppAccountInner anfAccount = (NetAppAccountInner) CommonSdk.getResource(anfClient, parameters, NetAppAccountInner.class);
             if (anfAccount != null)
             {
+                Tracer.Span span = Tracer.shared().start(String.join("/", parameters), "resource").arg("step", "delete account");
                 try
-            {
-                    anfClient.getAccounts().beginDelete(account.getResourceGroup(), account.getName()).getFinalResult();
-                    CommonSdk.waitForNoANFResource(anfClient, anfAccount.id(), NetAppAccountInner.class);
+                {
+                    deleteAccount(anfClient, parameters);
                 }
                 catch (Exception e)
                 {
@@ -169,8 +178,77 @@ public class Cleanup {
                     Utils.writeConsoleMessage("Error: " + e);
                     throw e;
                 }
+                finally
+                {
+                    span.close();
+                }
                 Utils.writeSuccessMessage("Successfully deleted Account: " + anfAccount.id());
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Breaks the replication of a data protection volume and waits for it to be Broken
+     * @param anfClient Azure NetApp Files Management Client
+     * @param volume ResourceGroupName, AccountName, PoolName, VolumeName of the destination volume
+     */
+    static void breakReplication(NetAppManagementClient anfClient, String[] volume)
+    {
+        CommonSdk.executeWrite(volume[0], volume[1], Operations.BREAK_REPLICATION, () ->
+                anfClient.getVolumes().beginBreakReplication(volume[0], volume[1], volume[2], volume[3], null),
+                poller -> OperationTracker.waitForCompletion(Operations.BREAK_REPLICATION, volume, poller));
+        CommonSdk.waitForReplicationStatus(anfClient, volume[0], volume[1], volume[2], volume[3], "Broken");
+    }
+
+    /**
+     * Deletes the replication of a data protection volume and waits for it to be gone
+     * @param anfClient Azure NetApp Files Management Client
+     * @param volume ResourceGroupName, AccountName, PoolName, VolumeName of the destination volume
+     */
+    static void deleteReplication(NetAppManagementClient anfClient, String[] volume)
+    {
+        CommonSdk.executeWrite(volume[0], volume[1], Operations.DELETE_REPLICATION, () ->
+                anfClient.getVolumes().beginDeleteReplication(volume[0], volume[1], volume[2], volume[3]),
+                poller -> OperationTracker.waitForCompletion(Operations.DELETE_REPLICATION, volume, poller));
+        CommonSdk.waitForNoReplication(anfClient, volume[0], volume[1], volume[2], volume[3], 10, 60);
+    }
+
+    /**
+     * Deletes a volume and waits for it to be gone
+     * @param anfClient Azure NetApp Files Management Client
+     * @param volume ResourceGroupName, AccountName, PoolName, VolumeName
+     */
+    static void deleteVolume(NetAppManagementClient anfClient, String[] volume)
+    {
+        CommonSdk.executeWrite(volume[0], volume[1], Operations.DELETE_VOLUME, () ->
+                anfClient.getVolumes().beginDelete(volume[0], volume[1], volume[2], volume[3]),
+                poller -> OperationTracker.waitForCompletion(Operations.DELETE_VOLUME, volume, poller));
+        CommonSdk.waitForNoANFResource(anfClient, volume, 10, 60, VolumeInner.class);
+    }
+
+    /**
+     * Deletes an empty capacity pool and waits for it to be gone
+     * @param anfClient Azure NetApp Files Management Client
+     * @param pool ResourceGroupName, AccountName, PoolName
+     */
+    static void deleteCapacityPool(NetAppManagementClient anfClient, String[] pool)
+    {
+        CommonSdk.executeWrite(pool[0], pool[1], Operations.DELETE_CAPACITY_POOL, () ->
+                anfClient.getPools().beginDelete(pool[0], pool[1], pool[2]),
+                poller -> OperationTracker.waitForCompletion(Operations.DELETE_CAPACITY_POOL, pool, poller));
+        CommonSdk.waitForNoANFResource(anfClient, pool, 10, 60, CapacityPoolInner.class);
+    }
+
+    /**
+     * Deletes an empty account and waits for it to be gone
+     * @param anfClient Azure NetApp Files Management Client
+     * @param account ResourceGroupName, AccountName
+     */
+    static void deleteAccount(NetAppManagementClient anfClient, String[] account)
+    {
+        CommonSdk.executeWrite(account[0], account[1], Operations.DELETE_ACCOUNT, () ->
+                anfClient.getAccounts().beginDelete(account[0], account[1]),
+                poller -> OperationTracker.waitForCompletion(Operations.DELETE_ACCOUNT, account, poller));
+        CommonSdk.waitForNoANFResource(anfClient, account, 10, 60, NetAppAccountInner.class);
+    }
+}
@@ -0,0 +1,221 @@
+package sdk.sample;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
+import com.azure.resourcemanager.netapp.fluent.models.ReplicationStatusInner;
+import com.azure.resourcemanager.netapp.fluent.models.SnapshotInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import sdk.sample.common.ArmReplicationOperations;
+import sdk.sample.common.CommandLine;
+import sdk.sample.common.CommonSdk;
+import sdk.sample.common.Inventory;
+import sdk.sample.common.LroTimings;
+import sdk.sample.common.OperationContext;
+import sdk.sample.common.ProjectConfiguration;
+import sdk.sample.common.ReplicationPair;
+import sdk.sample.common.Topology;
+import sdk.sample.common.TopologySelector;
+import sdk.sample.common.Utils;
+
+/*
+  Runs a subcommand on the part of appsettings.json targeted by the selectors. The selection is made on the compiled topology,
+  so ARM is only called for the targeted resources and, for plan and apply, the resources they are created from.
+ */
+public class Commands
+{
+    /**
+     * Runs a subcommand
+     * @param commandLine Command and selectors
+     * @param topology Accounts, pools and volumes of appsettings.json
+     * @param anfClient Azure NetApp Files Management Client
+     * @param config Project configuration, for the parallelism
+     * @param timings Durations of previous long running operations, used to order provisioning
+     */
+    public static void run(CommandLine commandLine, Topology topology, NetAppManagementClient anfClient, ProjectConfiguration config, LroTimings timings)
+    {
+        CommandLine.Command command = commandLine.getCommand();
+        TopologySelector selector = commandLine.getSelector();
+        if (command == CommandLine.Command.INVENTORY)
+        {
+            // Lists what exists in the subscription, whether or not appsettings.json describes it
+            new Inventory(anfClient, selector, config.getMaxParallelism(), config.getMaxParallelism() * 2).export(commandLine.getOutput());
+            return;
+        }
+        if (command == CommandLine.Command.SWEEP)
+        {
+            // Orphans are what exists but is not in appsettings.json, compared with the whole topology
+            new OrphanSweeper(anfClient, topology, selector, config.getMaxParallelism(), config.getSweepMinAgeHours(), config.isSweepUntagged())
+                    .sweep(config.isSweepDryRun(), timings);
+            return;
+        }
+        boolean withDependencies = command == CommandLine.Command.PLAN || command == CommandLine.Command.APPLY;
+        Topology selected = topology.select(selector, withDependencies);
+        if (selected.getAccounts().isEmpty())
+        {
+            Utils.writeWarningMessage("Nothing in appsettings.json matches " + selector);
+            return;
+        }
+        Utils.writeConsoleMessage("Running " + command.name().toLowerCase() + " on " + selector + ": " + describe(selected));
+
+        switch (command)
+        {
+            case PLAN:
+                plan(selected, anfClient);
+                break;
+            case APPLY:
+                Provisioning.provisionANFResources(selected, anfClient, timings, config.getMaxParallelism());
+                break;
+            case AUTHORIZE:
+                for (Topology.Volume volume : selected.getDataProtectionVolumes())
+                    Replication.authorizeReplication(anfClient, volume);
+                break;
+            case BREAK:
+                new DisasterRecovery(new ArmReplicationOperations(anfClient), config.getMaxParallelism())
+                        .run(ReplicationPair.fromTopology(selected), DisasterRecovery.Action.FAILOVER);
+                break;
+            case RESYNC:
+                new DisasterRecovery(new ArmReplicationOperations(anfClient), config.getMaxParallelism())
+                        .run(ReplicationPair.fromTopology(selected), DisasterRecovery.Action.RESYNC);
+                break;
+            case CLEANUP:
+                Cleanup.runCleanup(selected, anfClient, selector.getScope());
+                break;
+            case STATUS:
+                printStatus(selected, anfClient);
+                break;
+            case MONITOR:
+                monitor(selected, anfClient, commandLine.getIntervalSeconds(), commandLine.getDurationMinutes());
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported command " + command);
+        }
+    }
+
+    /**
+     * Prints which resources apply would create, reading only the selected resources
+     * @param topology Selected accounts, pools and volumes, with the volumes they are created from
+     * @param anfClient Azure NetApp Files Management Client
+     */
+    private static void plan(Topology topology, NetAppManagementClient anfClient)
+    {
+        int toCreate = 0;
+        for (Topology.Account account : topology.getAccounts())
+        {
+            boolean accountExists = printPlan(anfClient, account, NetAppAccountInner.class, true);
+            toCreate += accountExists ? 0 : 1;
+            for (Topology.Pool pool : account.getPools())
+            {
+                boolean poolExists = printPlan(anfClient, pool, CapacityPoolInner.class, accountExists);
+                toCreate += poolExists ? 0 : 1;
+                for (Topology.Volume volume : pool.getVolumes())
+                {
+                    boolean volumeExists = printPlan(anfClient, volume, VolumeInner.class, poolExists);
+                    toCreate += volumeExists ? 0 : 1;
+                    for (String snapshotName : volume.getSnapshots())
+                    {
+                        String[] params = {account.getResourceGroup(), account.getName(), pool.getName(), volume.getName(), snapshotName};
+                        boolean snapshotExists = volumeExists && CommonSdk.getResource(anfClient, params, SnapshotInner.class) != null;
+                        Utils.writeConsoleMessage((snapshotExists ? "  = exists  " : "  + create  ") + volume.getId() + "/snapshots/" + snapshotName);
+                        toCreate += snapshotExists ? 0 : 1;
+                    }
+                    if (volume.getSourceVolume() != null && volume.getSource() == null)
+                        Utils.writeConsoleMessage("            replicates " + volume.getSourceVolume().getId() + ", expected to exist already");
+                }
+            }
+        }
+        Utils.writeConsoleMessage("Plan: " + toCreate + " resource(s) to create");
+    }
+
+    // Reads a resource, unless its parent is missing, and prints whether it exists
+    private static <T> boolean printPlan(NetAppManagementClient anfClient, Topology.Resource resource, Class<T> clazz, boolean parentExists)
+    {
+        boolean exists = parentExists && CommonSdk.getResource(anfClient, resource.getParameters(), clazz) != null;
+        Utils.writeConsoleMessage((exists ? "  = exists  " : "  + create  ") + resource.getId());
+        return exists;
+    }
+
+    /**
+     * Prints the provisioning state of the selected resources and the replication status of the data protection volumes
+     * @param topology Selected accounts, pools and volumes
+     * @param anfClient Azure NetApp Files Management Client
+     */
+    private static void printStatus(Topology topology, NetAppManagementClient anfClient)
+    {
+        for (Topology.Account account : topology.getAccounts())
+        {
+            NetAppAccountInner anfAccount = (NetAppAccountInner) CommonSdk.getResource(anfClient, account.getParameters(), NetAppAccountInner.class);
+            Utils.writeConsoleMessage("  " + account.getId() + ": " + (anfAccount == null ? "not found" : anfAccount.provisioningState()));
+            for (Topology.Pool pool : account.getPools())
+            {
+                CapacityPoolInner anfPool = anfAccount == null ? null : (CapacityPoolInner) CommonSdk.getResource(anfClient, pool.getParameters(), CapacityPoolInner.class);
+                Utils.writeConsoleMessage("  " + pool.getId() + ": " + (anfPool == null ? "not found" : anfPool.provisioningState()));
+                for (Topology.Volume volume : pool.getVolumes())
+                {
+                    VolumeInner anfVolume = anfPool == null ? null : (VolumeInner) CommonSdk.getResource(anfClient, volume.getParameters(), VolumeInner.class);
+                    String state = anfVolume == null ? "not found" : anfVolume.provisioningState();
+                    if (anfVolume != null && volume.getSourceVolume() != null)
+                        state += ", " + replicationStatus(anfClient, volume);
+                    Utils.writeConsoleMessage("  " + volume.getId() + ": " + state);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints the replication status of the selected data protection volumes at regular intervals
+     * @param topology Selected accounts, pools and volumes
+     * @param anfClient Azure NetApp Files Management Client
+     * @param intervalSeconds Time between two rounds of reads
+     * @param durationMinutes How long to monitor, 0 to monitor until the sample is stopped
+     */
+    private static void monitor(Topology topology, NetAppManagementClient anfClient, int intervalSeconds, int durationMinutes)
+    {
+        if (topology.getDataProtectionVolumes().isEmpty())
+        {
+            Utils.writeWarningMessage("No data protection volume selected, nothing to monitor");
+            return;
+        }
+
+        long deadline = durationMinutes == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + durationMinutes * 60_000L;
+        while (true)
+        {
+            for (Topology.Volume volume : topology.getDataProtectionVolumes())
+                Utils.writeConsoleMessage("  " + volume + ": " + replicationStatus(anfClient, volume));
+            if (System.currentTimeMillis() + intervalSeconds * 1000L >= deadline)
+                return;
+            // Monitoring until the sample is stopped ends with the shutdown
+            OperationContext.current().sleep(intervalSeconds * 1000L);
+            if (OperationContext.current().isDone())
+                return;
+        }
+    }
+
+    private static String replicationStatus(NetAppManagementClient anfClient, Topology.Volume volume)
+    {
+        try
+        {
+            ReplicationStatusInner status = CommonSdk.getReplicationStatus(anfClient, volume.getResourceGroup(), volume.getPool().getAccount().getName(),
+                    volume.getPool().getName(), volume.getName());
+            return "mirror state " + status.mirrorState() + ", relationship " + status.relationshipStatus()
+                    + (status.errorMessage() != null && !status.errorMessage().isEmpty() ? ", error: " + status.errorMessage() : "");
+        }
+        catch (Exception e)
+        {
+            return "replication status unavailable - " + e.getMessage();
+        }
+    }
+
+    private static String describe(Topology topology)
+    {
+        int pools = 0;
+        int volumes = 0;
+        for (Topology.Account account : topology.getAccounts())
+        {
+            pools += account.getPools().size();
+            for (Topology.Pool pool : account.getPools())
+                volumes += pool.getVolumes().size();
+        }
+        return topology.getAccounts().size() + " account(s), " + pools + " capacity pool(s), " + volumes + " volume(s)";
+    }
+}
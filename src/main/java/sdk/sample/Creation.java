@@ -3,43 +3,43 @@ package sdk.sample;
 import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
 import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
 import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
+import com.azure.resourcemanager.netapp.fluent.models.SnapshotInner;
 import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import com.azure.resourcemanager.netapp.models.EndpointType;
+import com.azure.resourcemanager.netapp.models.ReplicationSchedule;
 import sdk.sample.common.CommonSdk;
+import sdk.sample.common.OperationTimeoutException;
+import sdk.sample.common.Topology;
 import sdk.sample.common.Utils;
-import sdk.sample.model.ModelCapacityPool;
-import sdk.sample.model.ModelNetAppAccount;
-import sdk.sample.model.ModelVolume;
-
-import java.util.List;
 
 public class Creation
 {
     /**
      * Create accounts, pools and volumes
-     * @param accounts List of ModelNetAppAccount to process
+     * @param topology Accounts, pools and volumes to create
      * @param anfClient Azure NetApp Files Management Client
      */
-    public static void createANFResources(List<ModelNetAppAccount> accounts, NetAppManagementClient anfClient)
+    public static void createANFResources(Topology topology, NetAppManagementClient anfClient)
     {
         /*
           Creating ANF Accounts
          */
         Utils.writeConsoleMessage("Creating Azure NetApp Files Account(s)...");
-        accounts.forEach(account -> createAccount(anfClient, account));
+        topology.getAccounts().forEach(account -> createAccount(anfClient, account));
 
         /*
           Creating Capacity Pools
          */
         Utils.writeConsoleMessage("Creating Capacity Pool(s)...");
-        for (ModelNetAppAccount modelAccount : accounts)
+        for (Topology.Account account : topology.getAccounts())
         {
-            if (!modelAccount.getCapacityPools().isEmpty())
+            if (!account.getPools().isEmpty())
             {
-                modelAccount.getCapacityPools().forEach(pool -> createCapacityPool(anfClient, modelAccount, pool));
+                account.getPools().forEach(pool -> createCapacityPool(anfClient, pool));
             }
             else
             {
-                Utils.writeConsoleMessage("No capacity pool defined for account " + modelAccount.getName());
+                Utils.writeConsoleMessage("No capacity pool defined for account " + account.getName());
             }
         }
 
@@ -47,24 +47,21 @@ public class Creation
           Creating Volumes
          */
         Utils.writeConsoleMessage("Creating Volume(s)...");
-        for (ModelNetAppAccount modelAccount : accounts)
+        for (Topology.Account account : topology.getAccounts())
         {
-            if (!modelAccount.getCapacityPools().isEmpty())
+            for (Topology.Pool pool : account.getPools())
             {
-                for (ModelCapacityPool capacityPool : modelAccount.getCapacityPools())
+                if (!pool.getVolumes().isEmpty())
                 {
-                    if (!capacityPool.getVolumes().isEmpty())
-                    {
-                        for (ModelVolume modelVolume : capacityPool.getVolumes())
-                        {
-                            createVolume(anfClient, modelAccount, capacityPool, modelVolume);
-                        }
-                    }
-                    else
+                    for (Topology.Volume volume : pool.getVolumes())
                     {
-                        Utils.writeConsoleMessage("No volumes defined for Account: " + modelAccount.getName() + ", Capacity Pool: " + capacityPool.getName());
+                        createVolume(anfClient, volume);
                     }
                 }
+                else
+                {
+                    Utils.writeConsoleMessage("No volumes defined for Account: " + account.getName() + ", Capacity Pool: " + pool.getName());
+                }
             }
         }
     }
@@ -72,34 +69,35 @@ public class Creation
     /**
      * Creates volume
      * @param anfClient Azure NetApp Files Management Client
-     * @param account ModelNetAppAccount object that describes the ANF Account, populated with data from appsettings.json
-     * @param pool ModelCapacityPool object that describes the Capacity Pool, populated with data from appsettings.json
-     * @param volume ModelVolume object that describes the Volume to be created, populated with data from appsettings.json
+     * @param volume Volume to be created, from the compiled topology
+     * @return True if the volume was created, false if it already existed
      */
-    private static void createVolume(NetAppManagementClient anfClient, ModelNetAppAccount account, ModelCapacityPool pool, ModelVolume volume)
+    static boolean createVolume(NetAppManagementClient anfClient, Topology.Volume volume)
     {
-        String[] params = {account.getResourceGroup(), account.getName(), pool.getName(), volume.getName()};
-        VolumeInner anfVolume = (VolumeInner) CommonSdk.getResource(anfClient, params, VolumeInner.class);
+        Topology.Pool pool = volume.getPool();
+        Topology.Account account = pool.getAccount();
+        VolumeInner anfVolume = (VolumeInner) CommonSdk.getResource(anfClient, volume.getParameters(), VolumeInner.class);
         if (anfVolume == null)
         {
             try
             {
-                VolumeInner sourceVolume = null;
-                if (volume.getSourceVolume() != null)
+                SnapshotInner snapshot = null;
+                if (volume.getSnapshotSource() != null)
                 {
-                    String[] sourceParams = {volume.getSourceVolume().getResourceGroup(), volume.getSourceVolume().getAccountName(), volume.getSourceVolume().getPoolName(), volume.getSourceVolume().getVolumeName()};
-                    sourceVolume = (VolumeInner) CommonSdk.getResource(anfClient, sourceParams, VolumeInner.class);
+                    if (volume.getSourceVolume() != null)
+                        throw new IllegalArgumentException("Volume " + volume.getName() + " cannot have both sourceVolume and snapshotSource");
+                    snapshot = getSourceSnapshot(anfClient, volume);
                 }
 
-                VolumeInner newVolume = CommonSdk.createOrUpdateVolume(anfClient, account, pool, volume, sourceVolume);
+                VolumeInner newVolume = CommonSdk.createOrUpdateVolume(anfClient, volume, snapshot);
                 if (newVolume == null)
                 {
                     // if the createOrUpdateVolume returns null than the volume has been created but is in failed state, logs need to be checked to see the reason
                     // make sure appsettings is properly set up and that vnet and subnet is created
                     throw new RuntimeException("Volume ended up in failed state");
                 }
-                CommonSdk.waitForANFResource(anfClient, newVolume.id(), VolumeInner.class);
-                Utils.writeSuccessMessage("Volume successfully created, resource id: " + newVolume.id());
+                Utils.writeSuccessMessage("Volume successfully created" + (snapshot != null ? " from snapshot " + snapshot.id() : "") + ", resource id: " + newVolume.id());
+                return true;
             }
             catch (Exception e)
             {
@@ -112,30 +110,120 @@ public class Creation
         else
         {
             Utils.writeConsoleMessage("Volume already exists, resource id: " + anfVolume.id());
+            if (volume.getSourceVolume() != null && anfVolume.dataProtection() != null && anfVolume.dataProtection().replication() != null)
+            {
+                ReplicationSchedule schedule = volume.getReplicationSchedule();
+                if (!schedule.equals(anfVolume.dataProtection().replication().replicationSchedule()))
+                {
+                    Utils.writeConsoleMessage("Updating replication schedule of volume " + anfVolume.id() + " from " +
+                            anfVolume.dataProtection().replication().replicationSchedule() + " to " + schedule);
+                    CommonSdk.updateReplicationSchedule(anfClient, account.getResourceGroup(), account.getName(), pool.getName(), volume.getName(), schedule);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Creates a snapshot of a volume
+     * @param anfClient Azure NetApp Files Management Client
+     * @param volume Volume to take the snapshot of, from the compiled topology
+     * @param snapshotName Name of the snapshot to create
+     * @return True if the snapshot was created, false if it already existed
+     */
+    static boolean createSnapshot(NetAppManagementClient anfClient, Topology.Volume volume, String snapshotName)
+    {
+        Topology.Pool pool = volume.getPool();
+        Topology.Account account = pool.getAccount();
+        String[] params = {account.getResourceGroup(), account.getName(), pool.getName(), volume.getName(), snapshotName};
+        SnapshotInner anfSnapshot = (SnapshotInner) CommonSdk.getResource(anfClient, params, SnapshotInner.class);
+        if (anfSnapshot == null)
+        {
+            try
+            {
+                SnapshotInner newSnapshot = CommonSdk.createSnapshot(anfClient, account.getResourceGroup(), account.getName(), pool.getName(), volume.getName(), snapshotName, account.getLocation());
+                if (newSnapshot == null)
+                {
+                    throw new RuntimeException("Snapshot ended up in failed state");
+                }
+                Utils.writeSuccessMessage("Snapshot successfully created, resource id: " + newSnapshot.id());
+                return true;
+            }
+            catch (Exception e)
+            {
+                Utils.writeErrorMessage("An error occurred while creating snapshot " + account.getName() + " " +
+                        pool.getName() + " " + volume.getName() + " " + snapshotName);
+                Utils.writeConsoleMessage("Error: " + e);
+                throw e;
+            }
+        }
+        else
+        {
+            Utils.writeConsoleMessage("Snapshot already exists, resource id: " + anfSnapshot.id());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the snapshot a volume is created from. Snapshots of a data protection volume arrive with replication transfers,
+     * so they are waited for up to two hours, other snapshots are expected to exist already.
+     * @param anfClient Azure NetApp Files Management Client
+     * @param volume Volume created from the snapshot, from the compiled topology
+     * @return The snapshot
+     */
+    private static SnapshotInner getSourceSnapshot(NetAppManagementClient anfClient, Topology.Volume volume)
+    {
+        Topology.VolumeReference source = volume.getSnapshotSource();
+        String snapshotName = volume.getSnapshotSourceName();
+        boolean replicated;
+        if (volume.getSnapshotSourceVolume() != null)
+        {
+            replicated = volume.getSnapshotSourceVolume().getSourceVolume() != null;
+        }
+        else
+        {
+            // The volume is not part of appsettings.json, it is read to know whether it is a data protection volume
+            VolumeInner sourceVolume = (VolumeInner) CommonSdk.getResource(anfClient, source.getParameters(), VolumeInner.class);
+            if (sourceVolume == null)
+                throw new RuntimeException("Volume " + source + " of snapshot " + snapshotName + " not found");
+            replicated = sourceVolume.dataProtection() != null && sourceVolume.dataProtection().replication() != null
+                    && EndpointType.DST.equals(sourceVolume.dataProtection().replication().endpointType());
+        }
+        String[] params = {source.getResourceGroup(), source.getAccountName(), source.getPoolName(), source.getVolumeName(), snapshotName};
+        try
+        {
+            return replicated
+                    ? CommonSdk.waitForSnapshot(anfClient, params, 30, 240)
+                    : CommonSdk.waitForSnapshot(anfClient, params, 10, 6);
+        }
+        catch (OperationTimeoutException e)
+        {
+            throw new OperationTimeoutException("Snapshot " + String.join("/", params) + " not found" + (replicated ? ", it did not reach the destination volume in time" : "") + " - " + e.getMessage());
         }
     }
 
     /**
      * Creates a Capacity Pool
      * @param anfClient Azure NetApp Files Management Client
-     * @param account ModelNetAppAccount object that describes the ANF Account, populated with data from appsettings.json
-     * @param pool ModelCapacityPool object that describes the Capacity Pool to be created, populated with data from appsettings.json
+     * @param pool Capacity Pool to be created, from the compiled topology
+     * @return True if the capacity pool was created, false if it already existed
      */
-    private static void createCapacityPool(NetAppManagementClient anfClient, ModelNetAppAccount account, ModelCapacityPool pool)
+    static boolean createCapacityPool(NetAppManagementClient anfClient, Topology.Pool pool)
     {
-        String[] params = {account.getResourceGroup(), account.getName(), pool.getName()};
-        CapacityPoolInner capacityPool = (CapacityPoolInner) CommonSdk.getResource(anfClient, params, CapacityPoolInner.class);
+        Topology.Account account = pool.getAccount();
+        CapacityPoolInner capacityPool = (CapacityPoolInner) CommonSdk.getResource(anfClient, pool.getParameters(), CapacityPoolInner.class);
         if (capacityPool == null)
         {
             try
             {
-                CapacityPoolInner newCapacityPool = CommonSdk.createOrUpdateCapacityPool(anfClient, account.getResourceGroup(), account.getName(), account.getLocation(), pool);
+                CapacityPoolInner newCapacityPool = CommonSdk.createOrUpdateCapacityPool(anfClient, pool);
                 if (newCapacityPool == null)
                 {
                     // if the createOrUpdateCapacityPool returns null than the pool has been created but is in failed state, logs need to be checked to see the reason
                     throw new RuntimeException("Pool ended up in failed state");
                 }
                 Utils.writeSuccessMessage("Capacity Pool successfully created, resource id: " + newCapacityPool.id());
+                return true;
             }
             catch (Exception e)
             {
@@ -147,6 +235,7 @@ public class Creation
         else
         {
             Utils.writeConsoleMessage("Capacity Pool already exists, resource id: " + capacityPool.id());
+            return false;
         }
     }
 
@@ -154,12 +243,12 @@ public class Creation
     /**
      * Creates an Azure NetApp Files Account
      * @param anfClient Azure NetApp Files Management Client
-     * @param account ModelNetAppAccount object that describes the ANF Account to be created, populated with data from appsettings.json
+     * @param account Account to be created, from the compiled topology
+     * @return True if the account was created, false if it already existed
      */
-    public static void createAccount(NetAppManagementClient anfClient, ModelNetAppAccount account)
+    public static boolean createAccount(NetAppManagementClient anfClient, Topology.Account account)
     {
-        String[] params = {account.getResourceGroup(), account.getName()};
-        NetAppAccountInner anfAccount = (NetAppAccountInner) CommonSdk.getResource(anfClient, params, NetAppAccountInner.class);
+        NetAppAccountInner anfAccount = (NetAppAccountInner) CommonSdk.getResource(anfClient, account.getParameters(), NetAppAccountInner.class);
         if (anfAccount == null)
         {
             try
@@ -171,6 +260,7 @@ public class Creation
                     throw new RuntimeException("Account ended up in failed state");
                 }
                 Utils.writeSuccessMessage("Account successfully created, resource id: " + newAccount.id());
+                return true;
             }
             catch (Exception e)
             {
@@ -182,6 +272,7 @@ public class Creation
         else
         {
             Utils.writeConsoleMessage("Account already exists, resource id: " + anfAccount.id());
+            return false;
         }
     }
 }
@@ -0,0 +1,338 @@
+package sdk.sample;
+
+import com.azure.resourcemanager.netapp.models.MirrorState;
+import com.azure.resourcemanager.netapp.models.RelationshipStatus;
+import sdk.sample.common.CircuitBreakerOpenException;
+import sdk.sample.common.OperationTimeoutException;
+import sdk.sample.common.ReplicationOperations;
+import sdk.sample.common.ReplicationPair;
+import sdk.sample.common.ResourceEvents;
+import sdk.sample.common.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+  Disaster recovery workflows over many replication pairs in parallel.
+  Replication is never deleted: relationships are broken and resynced, so only the blocks changed since the last common snapshot
+  are transferred instead of a full baseline.
+  FAILOVER:       planned failover, waits for the running transfer then breaks the replication, the destination becomes writable.
+  REVERSE_RESYNC: after a failover, resyncs from the source so the destination's changes are copied back to it, the source becomes the destination.
+  FAILBACK:       reverse resync if not done yet, then breaks the reversed relationship (the source becomes writable again)
+                  and resyncs from the destination to restore the original direction.
+  RESYNC:         after a failover, resumes the original direction and discards the destination's changes.
+  REINITIALIZE:   re-initializes the relationship of a destination that cannot be resynced.
+  The RTO of a pair is the time its volumes are not writable: from the break to the Broken state.
+ */
+public class DisasterRecovery
+{
+    public enum Action { FAILOVER, REVERSE_RESYNC, FAILBACK, RESYNC, REINITIALIZE }
+
+    static final long DEFAULT_POLL_INTERVAL_MILLIS = 10_000;
+    static final long DEFAULT_TIMEOUT_MILLIS = 24 * 3_600_000L;
+
+    private final ReplicationOperations operations;
+    private final int parallelism;
+    private final long pollIntervalMillis;
+    private final long timeoutMillis;
+
+    public DisasterRecovery(ReplicationOperations operations, int parallelism)
+    {
+        this(operations, parallelism, DEFAULT_POLL_INTERVAL_MILLIS, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param operations Replication operations, ArmReplicationOperations or a stand-in
+     * @param parallelism Maximum number of pairs processed at the same time
+     * @param pollIntervalMillis Interval between replication status reads
+     * @param timeoutMillis Maximum time to wait for a replication state
+     */
+    public DisasterRecovery(ReplicationOperations operations, int parallelism, long pollIntervalMillis, long timeoutMillis)
+    {
+        this.operations = operations;
+        this.parallelism = parallelism;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Runs an action on all pairs in parallel and prints a report
+     * @param pairs Replication pairs, see ReplicationPair.fromTopology
+     * @param action The workflow to run
+     * @return One result per pair, in the order of the pairs
+     */
+    public List<Result> run(List<ReplicationPair> pairs, Action action)
+    {
+        Utils.writeConsoleMessage("Running " + action + " on " + pairs.size() + " replication pair(s), " + parallelism + " at a time...");
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, pairs.size())));
+        List<Result> results = new ArrayList<>();
+        try
+        {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (ReplicationPair pair : pairs)
+                futures.add(executor.submit(() -> execute(pair, action)));
+            for (Future<Result> future : futures)
+                results.add(future.get());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while running " + action, e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException(e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        printReport(action, results);
+        return results;
+    }
+
+    private Result execute(ReplicationPair pair, Action action)
+    {
+        Result result = new Result(pair, action);
+        long start = System.currentTimeMillis();
+        try
+        {
+            switch (action)
+            {
+                case FAILOVER:
+                    failover(pair, result);
+                    break;
+                case REVERSE_RESYNC:
+                    reverseResync(pair);
+                    break;
+                case FAILBACK:
+                    failback(pair, result);
+                    break;
+                case RESYNC:
+                    resync(pair);
+                    break;
+                case REINITIALIZE:
+                    reInitialize(pair);
+                    break;
+            }
+            result.succeeded = true;
+        }
+        catch (Exception e)
+        {
+            result.error = e.getMessage();
+            Utils.writeErrorMessage(action + " failed for " + pair + ": " + e.getMessage());
+        }
+        result.durationMillis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    private void failover(ReplicationPair pair, Result result)
+    {
+        String[] destination = pair.getDestination();
+        MirrorState state = operations.getMirrorState(destination);
+        if (MirrorState.BROKEN.equals(state))
+        {
+            result.note = "already failed over";
+            return;
+        }
+        if (!MirrorState.MIRRORED.equals(state))
+            throw new IllegalStateException("Cannot fail over " + pair.getName() + ", mirror state is " + state);
+
+        // Planned failover: the transfer in progress carries the latest changes of the source
+        waitForIdle(destination);
+        result.rtoMillis = breakAndWait(destination);
+        Utils.writeSuccessMessage("Failed over " + pair.getName() + " in " + result.rtoMillis + "ms");
+    }
+
+    private void reverseResync(ReplicationPair pair)
+    {
+        String[] source = pair.getSource();
+        if (operations.isDestination(source))
+            throw new IllegalStateException("Replication of " + pair.getName() + " is already reversed");
+        MirrorState state = operations.getMirrorState(pair.getDestination());
+        if (!MirrorState.BROKEN.equals(state))
+            throw new IllegalStateException("Cannot reverse resync " + pair.getName() + ", it is not failed over, mirror state is " + state);
+
+        operations.resyncReplication(source);
+        waitForMirrorState(source, MirrorState.MIRRORED);
+        Utils.writeSuccessMessage("Reverse resynced " + pair.getName() + ", changes made on the destination are replicated to the source");
+    }
+
+    private void failback(ReplicationPair pair, Result result)
+    {
+        String[] source = pair.getSource();
+        String[] destination = pair.getDestination();
+        if (!operations.isDestination(source))
+            reverseResync(pair);
+        else
+            waitForMirrorState(source, MirrorState.MIRRORED);
+
+        // Cutover: the source is not writable until the reversed relationship is broken
+        waitForIdle(source);
+        result.rtoMillis = breakAndWait(source);
+
+        // Restore the original direction, nothing changed on the destination since the reverse resync
+        operations.resyncReplication(destination);
+        waitForMirrorState(destination, MirrorState.MIRRORED);
+        Utils.writeSuccessMessage("Failed back " + pair.getName() + ", cutover took " + result.rtoMillis + "ms");
+    }
+
+    private void resync(ReplicationPair pair)
+    {
+        String[] destination = pair.getDestination();
+        if (!operations.isDestination(destination))
+            throw new IllegalStateException("Replication of " + pair.getName() + " is reversed, use FAILBACK");
+        MirrorState state = operations.getMirrorState(destination);
+        if (MirrorState.MIRRORED.equals(state))
+            return;
+        if (!MirrorState.BROKEN.equals(state))
+            throw new IllegalStateException("Cannot resync " + pair.getName() + ", mirror state is " + state + ", use REINITIALIZE");
+
+        operations.resyncReplication(destination);
+        waitForMirrorState(destination, MirrorState.MIRRORED);
+        Utils.writeSuccessMessage("Resynced " + pair.getName());
+    }
+
+    private void reInitialize(ReplicationPair pair)
+    {
+        String[] destination = pair.getDestination();
+        if (!operations.isDestination(destination))
+            throw new IllegalStateException("Replication of " + pair.getName() + " is reversed, use FAILBACK");
+
+        operations.reInitializeReplication(destination);
+        waitForMirrorState(destination, MirrorState.MIRRORED);
+        Utils.writeSuccessMessage("Re-initialized " + pair.getName());
+    }
+
+    /**
+     * Breaks the replication of a destination volume and waits for it to be writable
+     * @return Time until the volume was writable, in milliseconds
+     */
+    long breakAndWait(String[] volume)
+    {
+        long start = System.currentTimeMillis();
+        operations.breakReplication(volume);
+        waitForMirrorState(volume, MirrorState.BROKEN);
+        return System.currentTimeMillis() - start;
+    }
+
+    void waitForMirrorState(String[] volume, MirrorState expected)
+    {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        String key = ResourceEvents.keyOf(volume);
+        while (true)
+        {
+            long version = ResourceEvents.shared().version(key);
+            try
+            {
+                if (expected.equals(operations.getMirrorState(volume)))
+                    return;
+            }
+            catch (CircuitBreakerOpenException e)
+            {
+                // the region is failing, keep waiting until the breaker lets a probe through
+            }
+            if (System.currentTimeMillis() >= deadline)
+                throw new OperationTimeoutException("Timed out waiting for " + String.join("/", volume) + " to be " + expected);
+            ResourceEvents.shared().sleep(key, version, pollIntervalMillis, false);
+        }
+    }
+
+    private void waitForIdle(String[] volume)
+    {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        String key = ResourceEvents.keyOf(volume);
+        while (true)
+        {
+            long version = ResourceEvents.shared().version(key);
+            try
+            {
+                if (!RelationshipStatus.TRANSFERRING.equals(operations.getRelationshipStatus(volume)))
+                    return;
+            }
+            catch (CircuitBreakerOpenException e)
+            {
+                // the region is failing, keep waiting until the breaker lets a probe through
+            }
+            if (System.currentTimeMillis() >= deadline)
+                throw new OperationTimeoutException("Timed out waiting for the transfer of " + String.join("/", volume) + " to finish");
+            ResourceEvents.shared().sleep(key, version, pollIntervalMillis, false);
+        }
+    }
+
+    private static void printReport(Action action, List<Result> results)
+    {
+        int failed = 0;
+        long maxRto = 0;
+        long totalRto = 0;
+        int rtoCount = 0;
+        Utils.writeConsoleMessage(action + " report:");
+        for (Result result : results)
+        {
+            Utils.writeConsoleMessage(String.format("  %-60s %-9s RTO: %8s, duration: %8.1fs%s", result.pair.getName(),
+                    result.succeeded ? "succeeded" : "failed", result.rtoMillis < 0 ? "-" : String.format("%.1fs", result.rtoMillis / 1000.0),
+                    result.durationMillis / 1000.0, result.error != null ? ", " + result.error : result.note != null ? ", " + result.note : ""));
+            if (!result.succeeded)
+                failed++;
+            if (result.rtoMillis >= 0)
+            {
+                maxRto = Math.max(maxRto, result.rtoMillis);
+                totalRto += result.rtoMillis;
+                rtoCount++;
+            }
+        }
+        if (rtoCount == 0)
+            Utils.writeConsoleMessage(String.format("  %d succeeded, %d failed", results.size() - failed, failed));
+        else
+            Utils.writeConsoleMessage(String.format("  %d succeeded, %d failed, RTO avg: %.1fs, max: %.1fs", results.size() - failed, failed,
+                    totalRto / 1000.0 / rtoCount, maxRto / 1000.0));
+    }
+
+    // Outcome of a workflow on one replication pair
+    public static class Result
+    {
+        private final ReplicationPair pair;
+        private final Action action;
+        private boolean succeeded;
+        private long rtoMillis = -1;
+        private long durationMillis;
+        private String error;
+        private String note;
+
+        private Result(ReplicationPair pair, Action action)
+        {
+            this.pair = pair;
+            this.action = action;
+        }
+
+        public ReplicationPair getPair() {
+            return pair;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public boolean isSucceeded() {
+            return succeeded;
+        }
+
+        // Time the volumes were not writable in milliseconds, -1 if the action has no cutover
+        public long getRtoMillis() {
+            return rtoMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
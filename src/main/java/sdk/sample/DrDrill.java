@@ -0,0 +1,248 @@
+package sdk.sample;
+
+import com.azure.resourcemanager.netapp.models.MirrorState;
+import sdk.sample.common.ReplicationOperations;
+import sdk.sample.common.ReplicationPair;
+import sdk.sample.common.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/*
+  Disaster recovery drill: for every replication pair, concurrently breaks the replication, waits for Broken,
+  optionally verifies the destination is writable, then resyncs it to restore the replication (the drill's writes are discarded).
+  RTO is measured from the break to the Broken state, RPO is the lag of the destination just before the break.
+  At most 'concurrency' pairs are drilled at the same time and two pairs are started at least 'pacingMillis' apart,
+  so that a large drill does not get throttled by ARM.
+ */
+public class DrDrill
+{
+    // Number of slowest pairs listed in the report
+    private static final int SLOWEST_PAIRS = 5;
+
+    private final ReplicationOperations operations;
+    private final DisasterRecovery disasterRecovery;
+    private final int concurrency;
+    private final long pacingMillis;
+    private final boolean verifyWritable;
+
+    public DrDrill(ReplicationOperations operations, int concurrency, long pacingMillis, boolean verifyWritable)
+    {
+        this(operations, concurrency, pacingMillis, verifyWritable, DisasterRecovery.DEFAULT_POLL_INTERVAL_MILLIS, DisasterRecovery.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param operations Replication operations, ArmReplicationOperations or a stand-in
+     * @param concurrency Maximum number of pairs drilled at the same time
+     * @param pacingMillis Minimum time between the start of two pairs
+     * @param verifyWritable True to check that each destination is writable once broken
+     * @param pollIntervalMillis Interval between replication status reads
+     * @param timeoutMillis Maximum time to wait for a replication state
+     */
+    public DrDrill(ReplicationOperations operations, int concurrency, long pacingMillis, boolean verifyWritable, long pollIntervalMillis, long timeoutMillis)
+    {
+        this.operations = operations;
+        this.disasterRecovery = new DisasterRecovery(operations, concurrency, pollIntervalMillis, timeoutMillis);
+        this.concurrency = concurrency;
+        this.pacingMillis = pacingMillis;
+        this.verifyWritable = verifyWritable;
+    }
+
+    /**
+     * Drills all pairs and prints the report
+     * @param pairs Replication pairs, see ReplicationPair.fromTopology
+     * @return One result per pair, in the order of the pairs
+     */
+    public List<PairResult> run(List<ReplicationPair> pairs)
+    {
+        Utils.writeConsoleMessage("Starting DR drill on " + pairs.size() + " replication pair(s), concurrency " + concurrency + ", pacing " + pacingMillis + "ms...");
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, pairs.size())));
+        Semaphore slots = new Semaphore(concurrency);
+        List<Future<PairResult>> futures = new ArrayList<>();
+        List<PairResult> results = new ArrayList<>();
+        try
+        {
+            for (ReplicationPair pair : pairs)
+            {
+                slots.acquire();
+                futures.add(executor.submit(() -> {
+                    try
+                    {
+                        return drill(pair);
+                    }
+                    finally
+                    {
+                        slots.release();
+                    }
+                }));
+                if (pacingMillis > 0)
+                    TimeUnit.MILLISECONDS.sleep(pacingMillis);
+            }
+            for (Future<PairResult> future : futures)
+                results.add(future.get());
+        }
+        catch (Exception e)
+        {
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            throw new RuntimeException("DR drill interrupted", e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        printReport(results, System.currentTimeMillis() - start);
+        return results;
+    }
+
+    private PairResult drill(ReplicationPair pair)
+    {
+        PairResult result = new PairResult(pair);
+        String[] destination = pair.getDestination();
+        long start = System.currentTimeMillis();
+        // Set before the break is issued: a break whose wait failed may still leave the replication broken
+        boolean breakIssued = false;
+        try
+        {
+            MirrorState state = operations.getMirrorState(destination);
+            if (!MirrorState.MIRRORED.equals(state))
+                throw new IllegalStateException("Not drilled, mirror state is " + state);
+
+            result.rpoMillis = operations.getLagMillis(destination);
+            breakIssued = true;
+            result.rtoMillis = disasterRecovery.breakAndWait(destination);
+
+            if (verifyWritable)
+            {
+                long verifyStart = System.currentTimeMillis();
+                if (!operations.isWritable(destination))
+                    throw new IllegalStateException("Destination is not writable after the break");
+                result.verifyMillis = System.currentTimeMillis() - verifyStart;
+            }
+        }
+        catch (Exception e)
+        {
+            result.error = e.getMessage();
+        }
+
+        // Restore even if the break wait or the verification failed, a drill must not leave replication broken
+        if (breakIssued)
+        {
+            try
+            {
+                long restoreStart = System.currentTimeMillis();
+                if (!MirrorState.MIRRORED.equals(operations.getMirrorState(destination)))
+                {
+                    operations.resyncReplication(destination);
+                    disasterRecovery.waitForMirrorState(destination, MirrorState.MIRRORED);
+                }
+                result.restoreMillis = System.currentTimeMillis() - restoreStart;
+            }
+            catch (Exception e)
+            {
+                result.error = (result.error != null ? result.error + ", " : "") + "restore failed: " + e.getMessage();
+            }
+        }
+        result.totalMillis = System.currentTimeMillis() - start;
+
+        if (result.error == null)
+            Utils.writeSuccessMessage("Drilled " + pair.getName() + ": RTO " + result.rtoMillis + "ms, restored in " + result.restoreMillis + "ms");
+        else
+            Utils.writeErrorMessage("Drill failed for " + pair.getName() + ": " + result.error);
+        return result;
+    }
+
+    private static void printReport(List<PairResult> results, long elapsedMillis)
+    {
+        long failed = results.stream().filter(r -> r.error != null).count();
+        Utils.writeConsoleMessage(String.format("DR drill report: %d pair(s), %d succeeded, %d failed, %.1fs elapsed",
+                results.size(), results.size() - failed, failed, elapsedMillis / 1000.0));
+        printPercentiles("RTO", results, r -> r.rtoMillis);
+        printPercentiles("RPO", results, r -> r.rpoMillis);
+        printPercentiles("Writable check", results, r -> r.verifyMillis);
+        printPercentiles("Restore", results, r -> r.restoreMillis);
+        printPercentiles("Total", results, r -> r.totalMillis);
+
+        List<PairResult> slowest = new ArrayList<>(results);
+        slowest.sort(Comparator.comparingLong((PairResult r) -> r.rtoMillis).reversed());
+        Utils.writeConsoleMessage("  Slowest pairs by RTO:");
+        for (PairResult result : slowest.subList(0, Math.min(SLOWEST_PAIRS, slowest.size())))
+        {
+            Utils.writeConsoleMessage(String.format("    %-60s RTO: %8.1fs, restore: %8.1fs%s", result.pair.getName(), result.rtoMillis / 1000.0,
+                    result.restoreMillis / 1000.0, result.error != null ? ", " + result.error : ""));
+        }
+    }
+
+    // Prints p50/p90/p99/max of a timing over the pairs where it was measured
+    private static void printPercentiles(String name, List<PairResult> results, ToLongFunction<PairResult> timing)
+    {
+        long[] values = results.stream().mapToLong(timing).filter(v -> v >= 0).toArray();
+        if (values.length == 0)
+            return;
+
+        Arrays.sort(values);
+        Utils.writeConsoleMessage(String.format("  %-15s p50: %8.1fs, p90: %8.1fs, p99: %8.1fs, max: %8.1fs (%d pair(s))", name,
+                percentile(values, 50) / 1000.0, percentile(values, 90) / 1000.0, percentile(values, 99) / 1000.0,
+                values[values.length - 1] / 1000.0, values.length));
+    }
+
+    private static long percentile(long[] sorted, double percentile)
+    {
+        return sorted[Math.min(sorted.length - 1, Math.max(0, (int) Math.ceil(percentile / 100 * sorted.length) - 1))];
+    }
+
+    // Timings of one drilled pair in milliseconds, -1 when not measured
+    public static class PairResult
+    {
+        private final ReplicationPair pair;
+        private long rtoMillis = -1;
+        private long rpoMillis = -1;
+        private long verifyMillis = -1;
+        private long restoreMillis = -1;
+        private long totalMillis;
+        private String error;
+
+        private PairResult(ReplicationPair pair)
+        {
+            this.pair = pair;
+        }
+
+        public ReplicationPair getPair() {
+            return pair;
+        }
+
+        public long getRtoMillis() {
+            return rtoMillis;
+        }
+
+        public long getRpoMillis() {
+            return rpoMillis;
+        }
+
+        public long getVerifyMillis() {
+            return verifyMillis;
+        }
+
+        public long getRestoreMillis() {
+            return restoreMillis;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
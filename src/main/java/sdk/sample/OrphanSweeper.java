@@ -0,0 +1,493 @@
+package sdk.sample;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
+import com.azure.resourcemanager.netapp.fluent.models.ReplicationStatusInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import com.azure.resourcemanager.netapp.models.EndpointType;
+import com.azure.resourcemanager.netapp.models.MirrorState;
+import com.azure.resourcemanager.netapp.models.ReplicationObject;
+import sdk.sample.common.CircuitBreakerOpenException;
+import sdk.sample.common.CommonSdk;
+import sdk.sample.common.CriticalPathScheduler;
+import sdk.sample.common.LroTimings;
+import sdk.sample.common.OperationContext;
+import sdk.sample.common.Operations;
+import sdk.sample.common.OwnershipTags;
+import sdk.sample.common.ProvisioningTask;
+import sdk.sample.common.RegionDirectory;
+import sdk.sample.common.ResourceUriUtils;
+import sdk.sample.common.Topology;
+import sdk.sample.common.TopologySelector;
+import sdk.sample.common.Utils;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/*
+  Deletes the accounts, capacity pools and volumes of the configured resource groups that appsettings.json no longer describes.
+  The resource groups are listed in parallel, then the pools and volumes of every account, and each live resource is compared
+  with the topology. An orphan is only deleted when it carries the owner tag written by the sample (see OwnershipTags, unless
+  sweepUntagged is on) and its createdAt tag is older than sweepMinAgeHours: resources whose age is unknown are always kept.
+  Volumes referenced by appsettings.json as replication or snapshot sources are kept, as are the sources of volumes that are
+  kept; pools and accounts are only deleted with all their children.
+  Deletions run leaves first on the CriticalPathScheduler: replications are broken and deleted, then volumes, pools and accounts.
+  A failed deletion only stops the resources depending on it, the others go on.
+  By default the sweep is a dry run that prints the verdict of every orphan.
+ */
+public class OrphanSweeper
+{
+    private static final String DELETE = "delete";
+
+    private final NetAppManagementClient anfClient;
+    private final Topology topology;
+    private final TopologySelector selector;
+    private final int parallelism;
+    private final int minAgeHours;
+    private final boolean untagged;
+
+    private final List<Live> accounts = Collections.synchronizedList(new ArrayList<>());
+    private final Set<ProvisioningTask> failed = ConcurrentHashMap.newKeySet();
+    private final LongAdder listingErrors = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client
+     * @param topology Accounts, pools and volumes of appsettings.json, all of them so selected out resources are not orphans
+     * @param selector Patterns the swept resources must match, pools are only deleted without a volume pattern and accounts without a pool pattern
+     * @param parallelism Number of accounts listed and of resources deleted at the same time
+     * @param minAgeHours Minimum age of an orphan, from its createdAt tag
+     * @param untagged Should resources without the owner tag be deleted too, they still need a createdAt tag old enough
+     */
+    public OrphanSweeper(NetAppManagementClient anfClient, Topology topology, TopologySelector selector, int parallelism, int minAgeHours, boolean untagged)
+    {
+        this.anfClient = anfClient;
+        this.topology = topology;
+        this.selector = selector;
+        this.parallelism = Math.max(1, parallelism);
+        this.minAgeHours = minAgeHours;
+        this.untagged = untagged;
+    }
+
+    /**
+     * Lists the configured resource groups, prints the orphans found and deletes the eligible ones
+     * @param dryRun Only print what would be deleted
+     * @param timings Durations of previous long running operations, used to order the deletions
+     */
+    public void sweep(boolean dryRun, LroTimings timings)
+    {
+        long start = System.currentTimeMillis();
+        Map<String, String> resourceGroups = new LinkedHashMap<>();
+        for (Topology.Account account : topology.getAccounts())
+        {
+            if (selector.matches(account.getResourceGroup(), null, null, null))
+                resourceGroups.putIfAbsent(account.getResourceGroup().toLowerCase(), account.getResourceGroup());
+        }
+        Utils.writeConsoleMessage("Sweeping orphans of " + selector + " in " + resourceGroups.size() + " resource group(s)"
+                + (dryRun ? " (dry run)" : "") + "...");
+
+        inParallel(new ArrayList<>(resourceGroups.values()), this::listAccounts);
+        inParallel(new ArrayList<>(accounts), this::listAccount);
+
+        List<Live> orphans = classify();
+        int toDelete = 0;
+        for (Live orphan : orphans)
+        {
+            if (DELETE.equals(orphan.verdict))
+            {
+                toDelete++;
+                Utils.writeConsoleMessage("  - delete  " + orphan.id);
+            }
+            else
+                Utils.writeConsoleMessage("  = keep    " + orphan.id + " (" + orphan.verdict + ")");
+        }
+        Utils.writeConsoleMessage(String.format("Listed in %.1fs: %d orphan(s), %d to delete, %d listing error(s)",
+                (System.currentTimeMillis() - start) / 1000.0, orphans.size(), toDelete, listingErrors.sum()));
+
+        if (toDelete == 0)
+            return;
+        if (dryRun)
+        {
+            Utils.writeConsoleMessage("Dry run, nothing was deleted. Set sweepDryRun to false in appsettings.json to delete the resources above.");
+            return;
+        }
+
+        schedule(orphans, timings).run();
+        String summary = String.format("Sweep done in %.1fs: %d resource(s) deleted, %d failed, %d skipped after a failure",
+                (System.currentTimeMillis() - start) / 1000.0, deleted.sum(), failed.size() - skipped.sum(), skipped.sum());
+        if (failed.isEmpty())
+            Utils.writeSuccessMessage(summary);
+        else
+            Utils.writeWarningMessage(summary);
+    }
+
+    private void listAccounts(String resourceGroup)
+    {
+        for (NetAppAccountInner account : anfClient.getAccounts().listByResourceGroup(resourceGroup))
+        {
+            OperationContext.current().check(Operations.LIST_ACCOUNTS);
+            if (!selector.matches(resourceGroup, account.name(), null, null))
+                continue;
+            // Orphan accounts get the circuit breakers and concurrency limits of their region like the configured ones
+            RegionDirectory.register(resourceGroup, account.name(), account.location());
+            accounts.add(new Live(account.id(), null, account.tags(), selector.getScope() == TopologySelector.Scope.ACCOUNT));
+        }
+    }
+
+    private void listAccount(Live account)
+    {
+        String resourceGroup = ResourceUriUtils.getResourceGroup(account.id);
+        String accountName = ResourceUriUtils.getAnfAccount(account.id);
+        // Until every child is listed the account is not known to be empty
+        account.complete = false;
+        CommonSdk.executeRead(resourceGroup, accountName, Operations.LIST_CAPACITY_POOLS, () -> {
+            for (CapacityPoolInner pool : anfClient.getPools().list(resourceGroup, accountName))
+            {
+                String poolName = ResourceUriUtils.getAnfCapacityPool(pool.id());
+                account.children.add(new Live(pool.id(), account, pool.tags(), selector.matches(resourceGroup, accountName, poolName, null)
+                        && selector.getScope() != TopologySelector.Scope.VOLUME));
+            }
+            return null;
+        });
+
+        boolean complete = true;
+        for (Live pool : account.children)
+        {
+            String poolName = ResourceUriUtils.getAnfCapacityPool(pool.id);
+            try
+            {
+                CommonSdk.executeRead(resourceGroup, accountName, Operations.LIST_VOLUMES, () -> {
+                    for (VolumeInner volume : anfClient.getVolumes().list(resourceGroup, accountName, poolName))
+                    {
+                        Live live = new Live(volume.id(), pool, volume.tags(),
+                                selector.matches(resourceGroup, accountName, poolName, ResourceUriUtils.getAnfVolume(volume.id())));
+                        ReplicationObject replication = volume.dataProtection() != null ? volume.dataProtection().replication() : null;
+                        if (replication != null && EndpointType.DST.equals(replication.endpointType()) && replication.remoteVolumeResourceId() != null)
+                            live.source = replication.remoteVolumeResourceId().toLowerCase();
+                        pool.children.add(live);
+                    }
+                    return null;
+                });
+            }
+            catch (CancellationException e)
+            {
+                throw e;
+            }
+            catch (RuntimeException e)
+            {
+                listingErrors.increment();
+                pool.complete = false;
+                complete = false;
+                Utils.writeWarningMessage("Unable to list the volumes of " + pool.id + " - " + e.getMessage());
+            }
+        }
+        account.complete = complete;
+    }
+
+    /**
+     * Gives a verdict to every live resource that appsettings.json does not describe
+     * @return The orphans, volumes first, with their verdict: delete or the reason they are kept
+     */
+    private List<Live> classify()
+    {
+        Set<String> referenced = new HashSet<>();
+        for (Topology.Volume volume : topology.getVolumes())
+        {
+            if (volume.getSourceVolume() != null)
+                referenced.add(volume.getSourceVolume().getId().toLowerCase());
+            if (volume.getSnapshotSource() != null)
+                referenced.add(volume.getSnapshotSource().getId().toLowerCase());
+        }
+
+        List<Live> pools = new ArrayList<>();
+        List<Live> volumes = new ArrayList<>();
+        for (Live account : accounts)
+        {
+            pools.addAll(account.children);
+            for (Live pool : account.children)
+                volumes.addAll(pool.children);
+        }
+
+        Map<String, List<Live>> destinationsBySource = new HashMap<>();
+        for (Live volume : volumes)
+        {
+            if (volume.source != null)
+                destinationsBySource.computeIfAbsent(volume.source, k -> new ArrayList<>()).add(volume);
+            if (isOrphan(volume))
+                volume.verdict = referenced.contains(volume.id.toLowerCase()) ? "referenced by appsettings.json" : eligibility(volume);
+        }
+
+        // A source cannot be deleted while a kept volume replicates it, keeping it may in turn keep its own source
+        boolean changed = true;
+        while (changed)
+        {
+            changed = false;
+            for (Live volume : volumes)
+            {
+                if (!volume.isDeleted())
+                    continue;
+                for (Live destination : destinationsBySource.getOrDefault(volume.id.toLowerCase(), Collections.emptyList()))
+                {
+                    if (!destination.isDeleted())
+                    {
+                        volume.verdict = "replicates to kept volume " + destination.id;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (Live pool : pools)
+            classifyParent(pool);
+        for (Live account : accounts)
+            classifyParent(account);
+
+        List<Live> orphans = new ArrayList<>();
+        for (List<Live> level : Arrays.<List<Live>>asList(volumes, pools, accounts))
+        {
+            for (Live resource : level)
+            {
+                if (resource.verdict != null)
+                    orphans.add(resource);
+            }
+        }
+        return orphans;
+    }
+
+    private void classifyParent(Live parent)
+    {
+        if (!isOrphan(parent))
+            return;
+        parent.verdict = eligibility(parent);
+        if (!DELETE.equals(parent.verdict))
+            return;
+        if (!parent.complete)
+            parent.verdict = "its children could not be listed";
+        else if (parent.children.stream().anyMatch(child -> !child.isDeleted()))
+            parent.verdict = "contains kept resource(s)";
+    }
+
+    private boolean isOrphan(Live resource)
+    {
+        return resource.selected && topology.findById(resource.id) == null;
+    }
+
+    private String eligibility(Live resource)
+    {
+        if (!OwnershipTags.isOwned(resource.tags) && !untagged)
+            return "not created by the sample";
+        // Without a valid createdAt tag the resource may have been created a minute ago, e.g. by another run
+        Instant createdAt = OwnershipTags.createdAt(resource.tags);
+        if (createdAt == null)
+            return "age unknown";
+        if (createdAt.isAfter(Instant.now().minus(minAgeHours, ChronoUnit.HOURS)))
+            return "created " + createdAt + ", younger than " + minAgeHours + "h";
+        return DELETE;
+    }
+
+    /**
+     * Builds the deletion graph, leaves first: replication, volume, capacity pool, account.
+     * A source volume is deleted after the replication of its deleted destinations.
+     */
+    private CriticalPathScheduler schedule(List<Live> orphans, LroTimings timings)
+    {
+        CriticalPathScheduler scheduler = new CriticalPathScheduler(timings, parallelism);
+        Map<Live, ProvisioningTask> deletions = new HashMap<>();
+        Map<String, List<ProvisioningTask>> replicationDeletionsBySource = new HashMap<>();
+        for (Live orphan : orphans)
+        {
+            if (!orphan.isDeleted())
+                continue;
+            String[] params = parametersOf(orphan.id);
+            String tenant = params[0];
+            if (orphan.parent == null)
+                deletions.put(orphan, step(scheduler, orphan.id, Operations.DELETE_ACCOUNT, tenant, () -> Cleanup.deleteAccount(anfClient, params)));
+            else if (orphan.parent.parent == null)
+                deletions.put(orphan, step(scheduler, orphan.id, Operations.DELETE_CAPACITY_POOL, tenant, () -> Cleanup.deleteCapacityPool(anfClient, params)));
+            else
+            {
+                ProvisioningTask deleteVolume = step(scheduler, orphan.id, Operations.DELETE_VOLUME, tenant, () -> Cleanup.deleteVolume(anfClient, params));
+                if (orphan.source != null)
+                {
+                    ProvisioningTask breakReplication = step(scheduler, orphan.id, Operations.BREAK_REPLICATION, tenant, () -> breakReplication(params));
+                    ProvisioningTask deleteReplication = step(scheduler, orphan.id, Operations.DELETE_REPLICATION, tenant, () -> Cleanup.deleteReplication(anfClient, params))
+                            .dependsOn(breakReplication);
+                    deleteVolume.dependsOn(deleteReplication);
+                    replicationDeletionsBySource.computeIfAbsent(orphan.source, k -> new ArrayList<>()).add(deleteReplication);
+                }
+                deletions.put(orphan, deleteVolume);
+            }
+        }
+
+        for (Map.Entry<Live, ProvisioningTask> deletion : deletions.entrySet())
+        {
+            for (Live child : deletion.getKey().children)
+                deletion.getValue().dependsOn(deletions.get(child));
+            // A source with several orphaned destinations waits for each of their replications to be deleted
+            for (ProvisioningTask replicationDeletion : replicationDeletionsBySource.getOrDefault(deletion.getKey().id.toLowerCase(), Collections.emptyList()))
+                deletion.getValue().dependsOn(replicationDeletion);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Adds a deletion step that is skipped when a step it depends on failed, and only fails its own resource when it fails
+     */
+    private ProvisioningTask step(CriticalPathScheduler scheduler, String id, String operation, String tenant, Runnable action)
+    {
+        ProvisioningTask[] self = new ProvisioningTask[1];
+        self[0] = new ProvisioningTask(operation + " " + id, operation, tenant, () -> {
+            for (ProvisioningTask dependency : self[0].getDependencies())
+            {
+                if (failed.contains(dependency))
+                {
+                    failed.add(self[0]);
+                    skipped.increment();
+                    Utils.writeWarningMessage("Skipping " + self[0] + ", " + dependency + " failed");
+                    return false;
+                }
+            }
+            try
+            {
+                action.run();
+            }
+            catch (CancellationException | CircuitBreakerOpenException e)
+            {
+                // the scheduler stops or postpones the step
+                throw e;
+            }
+            catch (RuntimeException e)
+            {
+                failed.add(self[0]);
+                Utils.writeErrorMessage("Unable to " + self[0] + " - " + e.getMessage());
+                return false;
+            }
+            if (!operation.equals(Operations.BREAK_REPLICATION) && !operation.equals(Operations.DELETE_REPLICATION))
+                deleted.increment();
+            Utils.writeSuccessMessage("Swept: " + self[0]);
+            return true;
+        });
+        return scheduler.add(self[0]);
+    }
+
+    // Replications already broken, e.g. by a failover, are deleted as they are
+    private void breakReplication(String[] params)
+    {
+        ReplicationStatusInner status = CommonSdk.getReplicationStatus(anfClient, params[0], params[1], params[2], params[3]);
+        if (!MirrorState.BROKEN.equals(status.mirrorState()))
+            Cleanup.breakReplication(anfClient, params);
+    }
+
+    private static String[] parametersOf(String id)
+    {
+        List<String> params = new ArrayList<>();
+        params.add(ResourceUriUtils.getResourceGroup(id));
+        params.add(ResourceUriUtils.getAnfAccount(id));
+        if (ResourceUriUtils.getAnfCapacityPool(id) != null)
+            params.add(ResourceUriUtils.getAnfCapacityPool(id));
+        if (ResourceUriUtils.getAnfVolume(id) != null)
+            params.add(ResourceUriUtils.getAnfVolume(id));
+        return params.toArray(new String[0]);
+    }
+
+    /**
+     * Runs a listing for each item on 'parallelism' workers, a failed listing is reported and the others go on
+     */
+    private <T> void inParallel(List<T> items, Consumer<T> listing)
+    {
+        OperationContext context = OperationContext.current();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        try
+        {
+            for (T item : items)
+            {
+                workers.execute(() -> {
+                    try (OperationContext.Scope scope = context.attach())
+                    {
+                        listing.accept(item);
+                    }
+                    catch (CancellationException e)
+                    {
+                        // reported once below
+                    }
+                    catch (RuntimeException e)
+                    {
+                        listingErrors.increment();
+                        Utils.writeWarningMessage("Unable to list " + item + " - " + e.getMessage());
+                    }
+                });
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES))
+                context.check("Sweep");
+            context.check("Sweep");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Sweep interrupted");
+        }
+        finally
+        {
+            workers.shutdownNow();
+        }
+    }
+
+    // An account, capacity pool or volume found in Azure
+    private static final class Live
+    {
+        private final String id;
+        private final Live parent;
+        private final Map<String, String> tags;
+        private final boolean selected;
+        private final List<Live> children = Collections.synchronizedList(new ArrayList<>());
+
+        // Lower case id of the volume a data protection volume replicates
+        private String source;
+
+        // False when some children could not be listed
+        private volatile boolean complete = true;
+
+        // Null when the resource is not a selected orphan, else delete or the reason it is kept
+        private String verdict;
+
+        private Live(String id, Live parent, Map<String, String> tags, boolean selected)
+        {
+            this.id = id;
+            this.parent = parent;
+            this.tags = tags;
+            this.selected = selected;
+        }
+
+        // Described by appsettings.json or kept resources are not deleted
+        private boolean isDeleted()
+        {
+            return DELETE.equals(verdict);
+        }
+
+        @Override
+        public String toString()
+        {
+            return id;
+        }
+    }
+}
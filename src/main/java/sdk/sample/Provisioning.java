@@ -0,0 +1,96 @@
+package sdk.sample;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import sdk.sample.common.CriticalPathScheduler;
+import sdk.sample.common.LroTimings;
+import sdk.sample.common.Operations;
+import sdk.sample.common.ProvisioningTask;
+import sdk.sample.common.Topology;
+import sdk.sample.common.Utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class Provisioning
+{
+    /**
+     * Creates accounts, pools, volumes and snapshots and authorizes replications as a dependency graph, running independent steps in parallel.
+     * Volumes with a snapshotSource are created from that snapshot, all clones of a snapshot are created in parallel once it exists,
+     * and giving priority to the steps on the critical path, usually the source volume -> destination volume -> authorization chains.
+     * @param topology Accounts, pools and volumes to process
+     * @param anfClient Azure NetApp Files Management Client
+     * @param timings Historical operation timings used to estimate each step
+     * @param parallelism Maximum number of steps running at the same time, within the shared FairShare budget
+     */
+    public static void provisionANFResources(Topology topology, NetAppManagementClient anfClient, LroTimings timings, int parallelism)
+    {
+        Utils.writeConsoleMessage("Provisioning Azure NetApp Files resources...");
+        CriticalPathScheduler scheduler = new CriticalPathScheduler(timings, parallelism);
+
+        // Volume creation, authorization and snapshot tasks by volume, used to link volumes with their source volumes and snapshots
+        Map<Topology.Volume, ProvisioningTask> volumeTasks = new HashMap<>();
+        Map<Topology.Volume, ProvisioningTask> authorizeTasks = new HashMap<>();
+        Map<Topology.Volume, Map<String, ProvisioningTask>> snapshotTasks = new HashMap<>();
+
+        for (Topology.Account account : topology.getAccounts())
+        {
+            ProvisioningTask accountTask = scheduler.add(new ProvisioningTask(account.getName(), Operations.CREATE_ACCOUNT, account.getResourceGroup(),
+                    () -> Creation.createAccount(anfClient, account)));
+
+            for (Topology.Pool pool : account.getPools())
+            {
+                ProvisioningTask poolTask = scheduler.add(new ProvisioningTask(account.getName() + "/" + pool.getName(), Operations.CREATE_CAPACITY_POOL, account.getResourceGroup(),
+                        () -> Creation.createCapacityPool(anfClient, pool)))
+                        .dependsOn(accountTask);
+
+                for (Topology.Volume volume : pool.getVolumes())
+                {
+                    String operation = volume.getSourceVolume() != null ? Operations.CREATE_DATA_PROTECTION_VOLUME
+                            : volume.getSnapshotSource() != null ? Operations.CREATE_VOLUME_FROM_SNAPSHOT : Operations.CREATE_VOLUME;
+                    ProvisioningTask volumeTask = scheduler.add(new ProvisioningTask(account.getName() + "/" + pool.getName() + "/" + volume.getName(), operation, account.getResourceGroup(),
+                            () -> Creation.createVolume(anfClient, volume)))
+                            .dependsOn(poolTask);
+                    volumeTasks.put(volume, volumeTask);
+
+                    if (volume.getSourceVolume() != null)
+                    {
+                        authorizeTasks.put(volume, scheduler.add(new ProvisioningTask(volumeTask.getName() + " (authorize)", Operations.AUTHORIZE_REPLICATION, account.getResourceGroup(),
+                                () -> Replication.authorizeReplication(anfClient, volume)))
+                                .dependsOn(volumeTask));
+                    }
+
+                    Map<String, ProvisioningTask> volumeSnapshotTasks = new HashMap<>();
+                    for (String snapshotName : volume.getSnapshots())
+                    {
+                        volumeSnapshotTasks.put(snapshotName.toLowerCase(), scheduler.add(new ProvisioningTask(volumeTask.getName() + "@" + snapshotName, Operations.CREATE_SNAPSHOT, account.getResourceGroup(),
+                                () -> Creation.createSnapshot(anfClient, volume, snapshotName)))
+                                .dependsOn(volumeTask));
+                    }
+                    snapshotTasks.put(volume, volumeSnapshotTasks);
+                }
+            }
+        }
+
+        for (Topology.Volume volume : topology.getVolumes())
+        {
+            // Source volumes must exist before their destination volumes are created. Sources outside of appsettings.json are expected to exist already
+            if (volume.getSource() != null)
+                volumeTasks.get(volume).dependsOn(volumeTasks.get(volume.getSource()));
+
+            // Volumes created from a snapshot wait for the snapshot: taken on the volume itself, or on the source of a replicated volume
+            // in which case the replication must also be established. Snapshots outside of appsettings.json are expected to exist already
+            Topology.Volume snapshotVolume = volume.getSnapshotSourceVolume();
+            if (snapshotVolume != null)
+            {
+                String snapshot = volume.getSnapshotSourceName().toLowerCase();
+                volumeTasks.get(volume)
+                        .dependsOn(volumeTasks.get(snapshotVolume))
+                        .dependsOn(snapshotTasks.get(snapshotVolume).get(snapshot))
+                        .dependsOn(authorizeTasks.get(snapshotVolume))
+                        .dependsOn(snapshotVolume.getSource() != null ? snapshotTasks.get(snapshotVolume.getSource()).get(snapshot) : null);
+            }
+        }
+
+        scheduler.run();
+    }
+}
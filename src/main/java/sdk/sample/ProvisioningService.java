@@ -0,0 +1,311 @@
+package sdk.sample;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import sdk.sample.common.ConfigValidator;
+import sdk.sample.common.JobQueue;
+import sdk.sample.common.Json;
+import sdk.sample.common.LroTimings;
+import sdk.sample.common.ProjectConfiguration;
+import sdk.sample.common.RegionDirectory;
+import sdk.sample.common.Topology;
+import sdk.sample.common.Tracer;
+import sdk.sample.common.Utils;
+import sdk.sample.model.ModelNetAppAccount;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+  Long running provisioning service: a local REST API queues provisioning jobs, each one an account with its capacity pools and
+  volumes as written in appsettings.json, and a fixed pool of workers provisions them. Jobs of the same account run one after
+  the other, so two jobs never create or resize the same resources at the same time.
+  All jobs share one management client, so one HTTP connection pool and token, along with the read caches, circuit breakers,
+  concurrency limits and LRO timings of the process.
+    POST   /jobs       queues the account in the body, answers 202 with the job, or 400 with the validation errors
+    GET    /jobs       lists the jobs
+    GET    /jobs/{id}  returns a job
+    DELETE /jobs/{id}  cancels a job that has not started yet, answers 409 once it has
+  The API has no authentication and listens on the loopback interface only.
+ */
+public class ProvisioningService
+{
+    public static final String PATH = "/jobs";
+
+    private final NetAppManagementClient anfClient;
+    private final JobQueue queue;
+    private final LroTimings timings;
+    private final String subscriptionId;
+    private final int workers;
+    private final int parallelism;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private HttpServer server;
+    private ExecutorService httpExecutor;
+    private ExecutorService workerExecutor;
+    private volatile boolean stopping;
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client shared by all jobs
+     * @param queue Persistent job queue
+     * @param timings Durations of previous long running operations, used to order provisioning
+     * @param subscriptionId Subscription the resources are deployed to
+     * @param workers Number of jobs provisioned at the same time
+     * @param parallelism Number of resources of a job provisioned at the same time, the FairShare budget lets a lone job use all of it
+     */
+    public ProvisioningService(NetAppManagementClient anfClient, JobQueue queue, LroTimings timings, String subscriptionId, int workers, int parallelism)
+    {
+        this.anfClient = anfClient;
+        this.queue = queue;
+        this.timings = timings;
+        this.subscriptionId = subscriptionId;
+        this.workers = workers;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Starts the workers and the REST API
+     * @param port Port to listen on, 0 for any free port
+     * @return The port listened on
+     */
+    public synchronized int start(int port)
+    {
+        try
+        {
+            server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Unable to start the provisioning service on port " + port + " - " + e.getMessage(), e);
+        }
+        server.createContext(PATH, this::handle);
+        httpExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(httpExecutor);
+
+        workerExecutor = Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < workers; i++)
+            workerExecutor.submit(this::work);
+
+        server.start();
+        Utils.writeConsoleMessage("Provisioning service listening on http://localhost:" + server.getAddress().getPort() + PATH + " with " + workers + " worker(s)");
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the REST API and the workers. Jobs being provisioned are interrupted and left running in the journal,
+     * they are provisioned again on the next start
+     */
+    public synchronized void stop()
+    {
+        if (server == null)
+            return;
+        stopping = true;
+        server.stop(0);
+        httpExecutor.shutdownNow();
+        workerExecutor.shutdownNow();
+        queue.close();
+        server = null;
+        stopped.countDown();
+        Utils.writeConsoleMessage("Provisioning service stopped");
+    }
+
+    /**
+     * Blocks until the service is stopped, e.g. by a shutdown hook
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void awaitStop() throws InterruptedException
+    {
+        stopped.await();
+    }
+
+    private void work()
+    {
+        while (!stopping)
+        {
+            JobQueue.Job job;
+            try
+            {
+                job = queue.take();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            try
+            {
+                execute(job);
+            }
+            catch (Throwable e)
+            {
+                // e.g. the journal could not be written, the worker goes on with the next job
+                Utils.writeErrorMessage("Job " + job.getId() + " could not be recorded: " + e);
+            }
+        }
+    }
+
+    private void execute(JobQueue.Job job)
+    {
+        ModelNetAppAccount account = job.getAccount();
+        Utils.writeConsoleMessage("Job " + job.getId() + ": provisioning account " + account.getResourceGroup() + "/" + account.getName() + "...");
+        String error = null;
+        boolean interrupted = false;
+        try (Tracer.Span span = Tracer.shared().start("job " + job.getId(), "job").arg("account", account.getName()))
+        {
+            Topology topology = Topology.compile(subscriptionId, Collections.singletonList(account));
+            RegionDirectory.register(topology);
+            Provisioning.provisionANFResources(topology, anfClient, timings, parallelism);
+        }
+        catch (Throwable e)
+        {
+            // Interrupted by stop or cancelled by the shutdown, the job is still running in the journal and resumes on the next start.
+            // Errors, e.g. a NoSuchMethodError of a dependency conflict, fail the job like exceptions do.
+            interrupted = stopping || e instanceof CancellationException;
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        finally
+        {
+            // Whatever happened, the account is released so that its next jobs can run
+            if (interrupted)
+                queue.release(job);
+            else
+                queue.complete(job, error);
+        }
+
+        if (interrupted)
+            return;
+        if (error == null)
+            Utils.writeSuccessMessage("Job " + job.getId() + " succeeded");
+        else
+            Utils.writeErrorMessage("Job " + job.getId() + " failed: " + error);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            String path = exchange.getRequestURI().getPath();
+            String id = path.length() > PATH.length() + 1 ? path.substring(PATH.length() + 1) : null;
+            String method = exchange.getRequestMethod().toUpperCase();
+            if (id == null && "POST".equals(method))
+                submit(exchange);
+            else if (id == null && "GET".equals(method))
+                list(exchange);
+            else if (id != null && "GET".equals(method))
+                get(exchange, id);
+            else if (id != null && "DELETE".equals(method))
+                cancel(exchange, id);
+            else
+                respond(exchange, 405, error("Method " + method + " not allowed on " + path));
+        }
+        catch (RuntimeException e)
+        {
+            Utils.writeWarningMessage("Unable to handle a provisioning service request - " + e.getMessage());
+            respond(exchange, 500, error(e.getMessage()));
+        }
+    }
+
+    private void submit(HttpExchange exchange) throws IOException
+    {
+        ModelNetAppAccount account;
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))
+        {
+            account = Json.gson().fromJson(reader, ModelNetAppAccount.class);
+        }
+        catch (JsonParseException e)
+        {
+            respond(exchange, 400, error("The body is not an account as in appsettings.json - " + e.getMessage()));
+            return;
+        }
+        if (account == null)
+        {
+            respond(exchange, 400, error("The body must be an account as in appsettings.json"));
+            return;
+        }
+
+        // Same validation as appsettings.json, the job's account being the only one
+        ProjectConfiguration jobConfig = new ProjectConfiguration();
+        jobConfig.setSubscriptionId(subscriptionId);
+        jobConfig.setAccounts(Collections.singletonList(account));
+        List<ConfigValidator.Issue> issues = ConfigValidator.validate(jobConfig);
+        if (ConfigValidator.hasErrors(issues))
+        {
+            JsonObject body = error("The account is not valid");
+            JsonArray errors = new JsonArray();
+            for (ConfigValidator.Issue issue : issues)
+            {
+                if (issue.getSeverity() == ConfigValidator.Severity.ERROR)
+                    errors.add(issue.toString());
+            }
+            body.add("errors", errors);
+            respond(exchange, 400, body);
+            return;
+        }
+
+        JobQueue.Job job = queue.submit(account);
+        Utils.writeConsoleMessage("Job " + job.getId() + " queued for account " + account.getResourceGroup() + "/" + account.getName());
+        exchange.getResponseHeaders().set("Location", PATH + "/" + job.getId());
+        respond(exchange, 202, job.toJson());
+    }
+
+    private void list(HttpExchange exchange) throws IOException
+    {
+        JsonArray jobs = new JsonArray();
+        for (JobQueue.Job job : queue.list())
+            jobs.add(job.toJson());
+        JsonObject body = new JsonObject();
+        body.add("jobs", jobs);
+        respond(exchange, 200, body);
+    }
+
+    private void get(HttpExchange exchange, String id) throws IOException
+    {
+        JobQueue.Job job = queue.get(id);
+        if (job == null)
+            respond(exchange, 404, error("Job " + id + " not found"));
+        else
+            respond(exchange, 200, job.toJson());
+    }
+
+    private void cancel(HttpExchange exchange, String id) throws IOException
+    {
+        JobQueue.Job job = queue.cancel(id);
+        if (job == null)
+            respond(exchange, 404, error("Job " + id + " not found"));
+        else if (job.getState() != JobQueue.State.CANCELLED)
+            respond(exchange, 409, job.toJson());
+        else
+            respond(exchange, 200, job.toJson());
+    }
+
+    private static JsonObject error(String message)
+    {
+        JsonObject body = new JsonObject();
+        body.addProperty("error", message);
+        return body;
+    }
+
+    private static void respond(HttpExchange exchange, int status, JsonObject body) throws IOException
+    {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody())
+        {
+            output.write(bytes);
+        }
+        exchange.close();
+    }
+}
@@ -3,59 +3,54 @@ package sdk.sample;
 import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
 import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
 import sdk.sample.common.CommonSdk;
+import sdk.sample.common.Topology;
 import sdk.sample.common.Utils;
-import sdk.sample.model.ModelCapacityPool;
-import sdk.sample.model.ModelNetAppAccount;
-import sdk.sample.model.ModelVolume;
-
-import java.util.List;
 
 public class Replication {
     /**
      * Authorizes Data Replication connection
-     * @param accounts List of ModelNetAppAccount to process
+     * @param topology Accounts, pools and volumes to process
      * @param anfClient Azure NetApp Files Management Client
      */
-    public static void authorizeReplications(List<ModelNetAppAccount> accounts, NetAppManagementClient anfClient)
+    public static void authorizeReplications(Topology topology, NetAppManagementClient anfClient)
     {
         Utils.writeConsoleMessage("Authorizing Azure NetApp Files Replication(s)...");
-        for (ModelNetAppAccount account : accounts)
+        for (Topology.Volume volume : topology.getDataProtectionVolumes())
+        {
+            if (!authorizeReplication(anfClient, volume))
+                return;
+        }
+    }
+
+    /**
+     * Authorizes the Data Replication connection of a single destination volume and waits for it to be Mirrored
+     * @param anfClient Azure NetApp Files Management Client
+     * @param volume Destination volume, from the compiled topology
+     * @return True if the replication was authorized, false if the destination volume was not found
+     */
+    static boolean authorizeReplication(NetAppManagementClient anfClient, Topology.Volume volume)
+    {
+        Topology.Pool pool = volume.getPool();
+        Topology.Account account = pool.getAccount();
+        VolumeInner destinationVolume = (VolumeInner) CommonSdk.getResource(anfClient, volume.getParameters(), VolumeInner.class);
+        if (destinationVolume == null)
+        {
+            Utils.writeConsoleMessage("Destination volume not found to authorize replication.");
+            return false;
+        }
+        try
+        {
+            CommonSdk.authorizeReplication(anfClient, volume.getSourceVolume().getResourceGroup(), volume.getSourceVolume().getAccountName(), volume.getSourceVolume().getPoolName(), volume.getSourceVolume().getVolumeName(), destinationVolume.id());
+            // Wait for replication status to be mirrored
+            CommonSdk.waitForReplicationStatus(anfClient, account.getResourceGroup(), account.getName(), pool.getName(), volume.getName(), "Mirrored");
+        }
+        catch (Exception e)
         {
-            if (!account.getCapacityPools().isEmpty())
-            {
-                for (ModelCapacityPool pool : account.getCapacityPools())
-                {
-                    if (!pool.getVolumes().isEmpty())
-                    {
-                        for (ModelVolume volume : pool.getVolumes())
-                        {
-                            if (volume.getSourceVolume() != null)
-                            {
-                                String[] destinationParams = {account.getResourceGroup(), account.getName(), pool.getName(), volume.getName()};
-                                VolumeInner destinationVolume = (VolumeInner) CommonSdk.getResource(anfClient, destinationParams, VolumeInner.class);
-                                if (destinationVolume == null)
-                                {
-                                    Utils.writeConsoleMessage("Destination volume not found to authorize replication.");
-                                    return;
-                                }
-                                try
-                                {
-                                    CommonSdk.authorizeReplication(anfClient, volume.getSourceVolume().getResourceGroup(), volume.getSourceVolume().getAccountName(), volume.getSourceVolume().getPoolName(), volume.getSourceVolume().getVolumeName(), destinationVolume.id());
-                                    // Wait for replication status to be mirrored
-                                    CommonSdk.waitForReplicationStatus(anfClient, account.getResourceGroup(), account.getName(), pool.getName(), volume.getName(), "Mirrored");
-                                }
-                                catch (Exception e)
-                                {
-                                    Utils.writeErrorMessage("An error occurred while authorizing data replication: " + destinationVolume.id());
-                                    Utils.writeConsoleMessage("Error: " + e);
-                                    throw e;
-                                }
-                                Utils.writeSuccessMessage("Replication successfully authorized, resource id: " + destinationVolume.id());
-                            }
-                        }
-                    }
-                }
-            }
+            Utils.writeErrorMessage("An error occurred while authorizing data replication: " + destinationVolume.id());
+            Utils.writeConsoleMessage("Error: " + e);
+            throw e;
         }
+        Utils.writeSuccessMessage("Replication successfully authorized, resource id: " + destinationVolume.id());
+        return true;
     }
 }
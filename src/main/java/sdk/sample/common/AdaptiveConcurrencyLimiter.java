@@ -0,0 +1,249 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.azure.core.exception.HttpResponseException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/*
+  Limits the number of in-flight ARM write requests using additive increase / multiplicative decrease. A request ends once ARM
+  accepted the operation, waiting for a long running operation to complete is not limited.
+  The limit grows by roughly one per round of successful calls while it is fully used, it is halved when ARM throttles (429)
+  or fails (5xx) and reduced by 10% when a call takes more than twice the usual time of its operation.
+  A single decrease is applied per round: calls started before the last decrease do not decrease the limit again.
+ */
+public class AdaptiveConcurrencyLimiter
+{
+    private static final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    private static final int DEFAULT_INITIAL_LIMIT = 4;
+    private static final int DEFAULT_MIN_LIMIT = 1;
+    private static final int DEFAULT_MAX_LIMIT = 64;
+
+    // Multiplier applied to the limit on throttling or server errors
+    private static final double ERROR_DECREASE_FACTOR = 0.5;
+
+    // Multiplier applied to the limit on latency spikes
+    private static final double LATENCY_DECREASE_FACTOR = 0.9;
+
+    // A call slower than this multiple of its operation's usual latency is a latency spike
+    private static final double LATENCY_SPIKE_FACTOR = 2.0;
+
+    // Weight of the latest observation in the usual latency of an operation
+    private static final double LATENCY_SMOOTHING = 0.05;
+
+    // Number of observations of an operation before latency spikes are taken into account
+    private static final int MIN_LATENCY_SAMPLES = 5;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private final Map<String, double[]> latencies = new ConcurrentHashMap<>();
+
+    private double limit;
+    private int inFlight;
+
+    // Incremented on every decrease, calls started in an older epoch do not decrease the limit again
+    private long epoch;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit)
+    {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Returns the limiter of a region, creating it with default settings the first time
+     * @param region Azure region, see RegionDirectory
+     * @return The limiter shared by all write operations in that region
+     */
+    public static AdaptiveConcurrencyLimiter forRegion(String region)
+    {
+        return limiters.computeIfAbsent(region, r -> new AdaptiveConcurrencyLimiter(r, DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT));
+    }
+
+    /**
+     * Runs a call once a slot is available and adjusts the limit from its outcome
+     * @param operation Operation name, latency spikes are detected per operation
+     * @param call The call to ARM
+     * @return The result of the call
+     */
+    public <T> T execute(String operation, Supplier<T> call)
+    {
+        Ticket ticket = acquire();
+        long start = System.nanoTime();
+        try
+        {
+            T result = call.get();
+            onSuccess(ticket, operation, System.nanoTime() - start);
+            return result;
+        }
+        catch (RuntimeException e)
+        {
+            onFailure(ticket, isOverloaded(e));
+            throw e;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getLimit()
+    {
+        lock.lock();
+        try
+        {
+            return limit;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight()
+    {
+        lock.lock();
+        try
+        {
+            return inFlight;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a free slot
+     * @return Ticket describing the state of the limiter when the call started
+     */
+    private Ticket acquire()
+    {
+        lock.lock();
+        try
+        {
+            while (inFlight >= (int) limit)
+                available.await();
+
+            inFlight++;
+            return new Ticket(epoch, inFlight >= (int) limit);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a concurrency slot in " + name, e);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void onSuccess(Ticket ticket, String operation, long elapsed)
+    {
+        boolean spike = isLatencySpike(operation, elapsed);
+        lock.lock();
+        try
+        {
+            inFlight--;
+            if (spike)
+                decrease(ticket, LATENCY_DECREASE_FACTOR);
+            else if (ticket.saturated)
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            available.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void onFailure(Ticket ticket, boolean overloaded)
+    {
+        lock.lock();
+        try
+        {
+            inFlight--;
+            if (overloaded)
+                decrease(ticket, ERROR_DECREASE_FACTOR);
+            available.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void decrease(Ticket ticket, double factor)
+    {
+        if (ticket.epoch != epoch)
+            return;
+
+        limit = Math.max(minLimit, limit * factor);
+        epoch++;
+    }
+
+    private boolean isLatencySpike(String operation, long elapsed)
+    {
+        double[] usual = latencies.computeIfAbsent(operation, k -> new double[2]);
+        synchronized (usual)
+        {
+            // usual[0] is the smoothed latency, usual[1] the number of samples
+            boolean spike = usual[1] >= MIN_LATENCY_SAMPLES && elapsed > usual[0] * LATENCY_SPIKE_FACTOR;
+            usual[0] = usual[1] == 0 ? elapsed : (LATENCY_SMOOTHING * elapsed) + ((1 - LATENCY_SMOOTHING) * usual[0]);
+            usual[1]++;
+            return spike;
+        }
+    }
+
+    /**
+     * Checks whether an error means ARM is overloaded, i.e. throttling (429) or server errors (5xx)
+     * @param e Error thrown by the call
+     * @return True if the limit should be decreased
+     */
+    static boolean isOverloaded(Throwable e)
+    {
+        for (Throwable cause = e; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof HttpResponseException && ((HttpResponseException) cause).getResponse() != null)
+            {
+                int status = ((HttpResponseException) cause).getResponse().getStatusCode();
+                return status == 429 || status >= 500;
+            }
+            if (cause.getMessage() != null && (cause.getMessage().contains("Status code 429") || cause.getMessage().matches("(?s).*Status code 5\\d\\d.*")))
+                return true;
+        }
+        return false;
+    }
+
+    private static class Ticket
+    {
+        // Decrease epoch when the call started
+        private final long epoch;
+
+        // True if the call started while the limit was fully used, only those calls grow the limit
+        private final boolean saturated;
+
+        private Ticket(long epoch, boolean saturated)
+        {
+            this.epoch = epoch;
+            this.saturated = saturated;
+        }
+    }
+}
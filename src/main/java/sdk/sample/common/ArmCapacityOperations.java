@@ -0,0 +1,62 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+
+// Capacity operations against Azure, writes go through the region's circuit breaker and concurrency limit
+public class ArmCapacityOperations implements CapacityOperations
+{
+    private final NetAppManagementClient anfClient;
+
+    public ArmCapacityOperations(NetAppManagementClient anfClient)
+    {
+        this.anfClient = anfClient;
+    }
+
+    @Override
+    public long getUsageThreshold(String[] volume)
+    {
+        VolumeInner anfVolume = (VolumeInner) CommonSdk.getResource(anfClient, volume, VolumeInner.class);
+        if (anfVolume == null)
+            throw new RuntimeException("Volume " + String.join("/", volume) + " not found");
+        return anfVolume.usageThreshold();
+    }
+
+    @Override
+    public long getPoolSize(String[] pool)
+    {
+        CapacityPoolInner anfPool = (CapacityPoolInner) CommonSdk.getResource(anfClient, pool, CapacityPoolInner.class);
+        if (anfPool == null)
+            throw new RuntimeException("Capacity pool " + String.join("/", pool) + " not found");
+        return anfPool.size();
+    }
+
+    @Override
+    public long getAllocatedBytes(String[] pool)
+    {
+        return CommonSdk.executeRead(pool[0], pool[1], Operations.GET_RESOURCE, () -> {
+            long total = 0;
+            for (VolumeInner volume : anfClient.getVolumes().list(pool[0], pool[1], pool[2]))
+                total += volume.usageThreshold();
+            return total;
+        });
+    }
+
+    @Override
+    public void resizeVolume(String[] volume, long usageThreshold)
+    {
+        CommonSdk.updateVolumeUsageThreshold(anfClient, volume[0], volume[1], volume[2], volume[3], usageThreshold);
+    }
+
+    @Override
+    public void resizePool(String[] pool, long size)
+    {
+        CommonSdk.updateCapacityPoolSize(anfClient, pool[0], pool[1], pool[2], size);
+    }
+}
@@ -0,0 +1,87 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.ReplicationStatusInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import com.azure.resourcemanager.netapp.models.EndpointType;
+import com.azure.resourcemanager.netapp.models.MirrorState;
+import com.azure.resourcemanager.netapp.models.RelationshipStatus;
+
+// Replication operations against Azure, writes go through the region's circuit breaker and concurrency limit
+public class ArmReplicationOperations implements ReplicationOperations
+{
+    private final NetAppManagementClient anfClient;
+
+    public ArmReplicationOperations(NetAppManagementClient anfClient)
+    {
+        this.anfClient = anfClient;
+    }
+
+    @Override
+    public void breakReplication(String[] volume)
+    {
+        CommonSdk.executeWrite(volume[0], volume[1], Operations.BREAK_REPLICATION, () ->
+                anfClient.getVolumes().beginBreakReplication(volume[0], volume[1], volume[2], volume[3], null),
+                poller -> OperationTracker.waitForCompletion(Operations.BREAK_REPLICATION, volume, poller));
+    }
+
+    @Override
+    public void resyncReplication(String[] volume)
+    {
+        CommonSdk.executeWrite(volume[0], volume[1], Operations.RESYNC_REPLICATION, () ->
+                anfClient.getVolumes().beginResyncReplication(volume[0], volume[1], volume[2], volume[3]),
+                poller -> OperationTracker.waitForCompletion(Operations.RESYNC_REPLICATION, volume, poller));
+    }
+
+    @Override
+    public void reInitializeReplication(String[] volume)
+    {
+        CommonSdk.executeWrite(volume[0], volume[1], Operations.REINITIALIZE_REPLICATION, () ->
+                anfClient.getVolumes().beginReInitializeReplication(volume[0], volume[1], volume[2], volume[3]),
+                poller -> OperationTracker.waitForCompletion(Operations.REINITIALIZE_REPLICATION, volume, poller));
+    }
+
+    @Override
+    public boolean isDestination(String[] volume)
+    {
+        VolumeInner anfVolume = (VolumeInner) CommonSdk.getResource(anfClient, volume, VolumeInner.class);
+        if (anfVolume == null)
+            throw new RuntimeException("Volume " + String.join("/", volume) + " not found");
+        return anfVolume.dataProtection() != null && anfVolume.dataProtection().replication() != null
+                && EndpointType.DST.equals(anfVolume.dataProtection().replication().endpointType());
+    }
+
+    @Override
+    public MirrorState getMirrorState(String[] volume)
+    {
+        return CommonSdk.getReplicationStatus(anfClient, volume[0], volume[1], volume[2], volume[3]).mirrorState();
+    }
+
+    @Override
+    public RelationshipStatus getRelationshipStatus(String[] volume)
+    {
+        return CommonSdk.getReplicationStatus(anfClient, volume[0], volume[1], volume[2], volume[3]).relationshipStatus();
+    }
+
+    // Writability as reported by ARM, actually writing requires mounting the volume which is outside the scope of this sample
+    @Override
+    public boolean isWritable(String[] volume)
+    {
+        if (!isDestination(volume))
+            return true;
+        ReplicationStatusInner status = CommonSdk.getReplicationStatus(anfClient, volume[0], volume[1], volume[2], volume[3]);
+        return MirrorState.BROKEN.equals(status.mirrorState()) && !RelationshipStatus.TRANSFERRING.equals(status.relationshipStatus());
+    }
+
+    // The replication status of this API version does not report the lag time
+    @Override
+    public long getLagMillis(String[] volume)
+    {
+        return -1;
+    }
+}
@@ -0,0 +1,445 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+  Scales volumes to their throughput needs. The throughput limit of a volume is its quota times the throughput per TiB of its
+  service level, so a volume gets more throughput by raising its quota or by moving to a pool of a higher service level.
+  Each evaluation reads the metrics of every volume:
+  - a volume is hot when its throughput stayed above SCALE_UP_UTILIZATION of its limit (or its latency above LATENCY_THRESHOLD_MILLIS
+    while busy) during the last SCALE_UP_WINDOW_MILLIS, cold when it stayed below SCALE_DOWN_UTILIZATION during the last
+    SCALE_DOWN_WINDOW_MILLIS, a whole day so that daily peaks and nightly batches are kept;
+  - for a hot or cold volume, the cheapest service level and quota giving TARGET_UTILIZATION at its peak throughput over the window
+    is chosen among the service levels that have a pool in its account. A scale down must save at least MIN_SAVINGS.
+  The gap between the scale up and scale down thresholds, the long scale down window and a cooldown per volume avoid flapping,
+  and at most MAX_CHANGES_PER_HOUR changes are made across all volumes.
+  Pools are billed by size, so pools are grown before a volume grows, and shrunk to its volumes afterwards.
+  APPLY only changes quotas and pool sizes. A move to a pool of another service level is recommended, not applied: the volume would
+  leave the path of appsettings.json, so the next run would create it again at its old path, the cleanup would miss it and the
+  orphan sweeper would delete it. When a move is the best choice, the best quota in the current service level is applied instead.
+  Data protection volumes follow their source and are not scaled.
+ */
+public class Autoscaler
+{
+    public enum Mode { OFF, RECOMMEND, APPLY }
+
+    private static final long GIB = 1024L * 1024 * 1024;
+    private static final long TIB = 1024 * GIB;
+    private static final long MIN_VOLUME_SIZE = 100 * GIB;
+    private static final long MAX_VOLUME_SIZE = 100 * TIB;
+
+    static final double SCALE_UP_UTILIZATION = 0.8;
+    static final double SCALE_DOWN_UTILIZATION = 0.3;
+    static final double TARGET_UTILIZATION = 0.6;
+    static final double LATENCY_THRESHOLD_MILLIS = 10;
+    static final long SCALE_UP_WINDOW_MILLIS = 15 * 60_000;
+    static final long SCALE_DOWN_WINDOW_MILLIS = 24 * 3_600_000;
+    static final double MIN_SAVINGS = 0.1;
+    static final long COOLDOWN_MILLIS = 3_600_000;
+    static final int MAX_CHANGES_PER_HOUR = 10;
+
+    // Free space kept above the used space of a volume when its quota is lowered
+    private static final double USED_SPACE_HEADROOM = 1.25;
+
+    // Throughput per TiB of quota (auto QoS) and list price per GiB-month in East US, only the price ratios matter
+    private static final List<Tier> TIERS = Arrays.asList(
+            new Tier("Standard", 16, 0.14746),
+            new Tier("Premium", 64, 0.29419),
+            new Tier("Ultra", 128, 0.39274));
+
+    private final CapacityOperations operations;
+    private final VolumeMetricsSource metrics;
+    private final Mode mode;
+    private final List<VolumeState> volumes = new ArrayList<>();
+
+    // Pool used for each service level, per account
+    private final Map<String, Map<Tier, String>> poolsByAccount = new HashMap<>();
+
+    // Times of the recent changes, for the rate limit
+    private final Deque<Long> changes = new ArrayDeque<>();
+
+    /**
+     * @param operations Capacity operations, ArmCapacityOperations or a stand-in
+     * @param metrics Source of the volumes' throughput and latency
+     * @param topology Compiled topology, its volumes are scaled
+     * @param mode RECOMMEND to only print the changes, APPLY to also make them
+     */
+    public Autoscaler(CapacityOperations operations, VolumeMetricsSource metrics, Topology topology, Mode mode)
+    {
+        this.operations = operations;
+        this.metrics = metrics;
+        this.mode = mode;
+        for (Topology.Account account : topology.getAccounts())
+        {
+            Map<Tier, String> pools = poolsByAccount.computeIfAbsent(accountKey(account.getResourceGroup(), account.getName()), k -> new HashMap<>());
+            for (Topology.Pool pool : account.getPools())
+            {
+                Tier tier = pool.getServiceLevel() == null ? null : tier(pool.getServiceLevel().toString());
+                if (tier == null)
+                    continue;
+                // Empty pools are valid, they can receive volumes moved to their tier
+                pools.putIfAbsent(tier, pool.getName());
+                for (Topology.Volume volume : pool.getVolumes())
+                {
+                    if (volume.getSourceVolume() == null)
+                        volumes.add(new VolumeState(volume.getParameters(), tier, volume.getUsageThreshold()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates all volumes every interval until the duration elapsed
+     * @param intervalMillis Time between two evaluations, it should match the sampling period of the metrics
+     * @param durationMillis How long the autoscaler runs
+     */
+    public void run(long intervalMillis, long durationMillis)
+    {
+        if (mode == Mode.OFF || volumes.isEmpty())
+            return;
+
+        Utils.writeConsoleMessage("Autoscaling " + volumes.size() + " volume(s) every " + intervalMillis / 1000 + "s for " + durationMillis / 60_000 + " minute(s), mode " + mode + "...");
+        long end = System.currentTimeMillis() + durationMillis;
+        while (System.currentTimeMillis() < end)
+        {
+            OperationContext.current().check("Autoscaling");
+            evaluate(System.currentTimeMillis());
+            OperationContext.current().sleep(Math.min(intervalMillis, Math.max(0, end - System.currentTimeMillis())));
+        }
+    }
+
+    /**
+     * Reads the metrics of all volumes once and scales the ones that need it
+     * @param now Current time in milliseconds
+     * @return The changes decided, applied in APPLY mode
+     */
+    public List<Decision> evaluate(long now)
+    {
+        List<Decision> decisions = new ArrayList<>();
+        int deferred = 0;
+        for (VolumeState volume : volumes)
+        {
+            VolumeMetricsSource.Sample sample = metrics.read(volume.path);
+            if (sample == null)
+                continue;
+            volume.history.addLast(new Observation(now, sample));
+            // keep the last observation at or before the start of the scale down window, it tells the window is covered
+            while (volume.history.size() > 1)
+            {
+                Observation oldest = volume.history.removeFirst();
+                if (volume.history.peekFirst().time > now - SCALE_DOWN_WINDOW_MILLIS)
+                {
+                    volume.history.addFirst(oldest);
+                    break;
+                }
+            }
+
+            try
+            {
+                Decision decision = decide(volume, now, false);
+                if (decision != null && mode == Mode.APPLY && decision.movesTier())
+                {
+                    recommendMove(volume, decision);
+                    decision = decide(volume, now, true);
+                }
+                if (decision == null)
+                    continue;
+
+                while (!changes.isEmpty() && changes.peekFirst() <= now - 3_600_000)
+                    changes.removeFirst();
+                if (changes.size() >= MAX_CHANGES_PER_HOUR)
+                {
+                    Metrics.increment("autoscaler.ratelimited");
+                    deferred++;
+                    continue;
+                }
+
+                changes.addLast(now);
+                volume.lastChangeMillis = now;
+                // the samples were taken with the previous limit
+                volume.history.clear();
+                decisions.add(decision);
+                Metrics.increment(decision.scaleUp ? "autoscaler.scaleups" : "autoscaler.scaledowns");
+                if (mode == Mode.APPLY)
+                {
+                    apply(volume, decision);
+                    Utils.writeSuccessMessage("Autoscaled " + decision);
+                }
+                else
+                {
+                    Utils.writeConsoleMessage("Autoscaler recommends " + decision);
+                }
+            }
+            catch (Exception e)
+            {
+                Utils.writeErrorMessage("Autoscaling volume " + String.join("/", volume.path) + " failed: " + e.getMessage());
+            }
+        }
+        if (deferred > 0)
+            Utils.writeWarningMessage("Autoscaler rate limit of " + MAX_CHANGES_PER_HOUR + " change(s) per hour reached, " + deferred + " change(s) deferred");
+        return decisions;
+    }
+
+    /**
+     * Decides the change a volume needs, if any
+     * @param volume The volume
+     * @param now Current time in milliseconds
+     * @param currentTierOnly True to only consider a new quota in the service level of the volume
+     * @return The change, or null if the volume is fine
+     */
+    private Decision decide(VolumeState volume, long now, boolean currentTierOnly)
+    {
+        long covered = volume.history.peekFirst().time;
+        if (covered > now - SCALE_UP_WINDOW_MILLIS || now - volume.lastChangeMillis < COOLDOWN_MILLIS)
+            return null;
+        if (volume.quota < 0)
+            volume.quota = operations.getUsageThreshold(volume.path);
+
+        double limit = throughputLimit(volume.tier, volume.quota);
+        List<VolumeMetricsSource.Sample> recent = new ArrayList<>();
+        List<VolumeMetricsSource.Sample> day = new ArrayList<>();
+        for (Observation observation : volume.history)
+        {
+            if (observation.time >= now - SCALE_UP_WINDOW_MILLIS)
+                recent.add(observation.sample);
+            if (observation.time >= now - SCALE_DOWN_WINDOW_MILLIS)
+                day.add(observation.sample);
+        }
+        boolean hot = recent.stream().allMatch(s -> s.getThroughputMiBps() >= SCALE_UP_UTILIZATION * limit
+                || (s.getLatencyMillis() >= LATENCY_THRESHOLD_MILLIS && s.getThroughputMiBps() >= SCALE_DOWN_UTILIZATION * limit));
+        boolean cold = covered <= now - SCALE_DOWN_WINDOW_MILLIS && day.stream().allMatch(s -> s.getThroughputMiBps() <= SCALE_DOWN_UTILIZATION * limit
+                && s.getLatencyMillis() < LATENCY_THRESHOLD_MILLIS);
+        if (!hot && !cold)
+            return null;
+
+        double peak = (hot ? recent : day).stream().mapToDouble(VolumeMetricsSource.Sample::getThroughputMiBps).max().orElse(0);
+        // a volume throttled below its limit shows the latency, not the throughput it needs
+        if (hot)
+            peak = Math.max(peak, SCALE_UP_UTILIZATION * limit);
+        double target = peak / TARGET_UTILIZATION;
+        long minQuota = minQuota(volume, volume.history.peekLast().sample);
+
+        Tier bestTier = null;
+        long bestQuota = 0;
+        for (Map.Entry<Tier, String> pool : poolsByAccount.get(accountKey(volume.path[0], volume.path[1])).entrySet())
+        {
+            Tier tier = pool.getKey();
+            if (currentTierOnly && tier != volume.tier)
+                continue;
+            long quota = Math.min(MAX_VOLUME_SIZE, Math.max(minQuota, roundUpToGib(target / tier.mibpsPerTib * TIB)));
+            boolean feasible = throughputLimit(tier, quota) >= target;
+            boolean bestFeasible = bestTier != null && throughputLimit(bestTier, bestQuota) >= target;
+            if (bestTier == null
+                    || (feasible && (!bestFeasible || cost(tier, quota) < cost(bestTier, bestQuota)))
+                    || (!feasible && !bestFeasible && throughputLimit(tier, quota) > throughputLimit(bestTier, bestQuota)))
+            {
+                bestTier = tier;
+                bestQuota = quota;
+            }
+        }
+
+        if (bestTier == null || (bestTier == volume.tier && bestQuota == volume.quota))
+            return null;
+        if (hot && throughputLimit(bestTier, bestQuota) <= limit)
+            return null;
+        if (cold && cost(bestTier, bestQuota) > cost(volume.tier, volume.quota) * (1 - MIN_SAVINGS))
+            return null;
+        return new Decision(volume.path, hot, volume.tier.name, volume.quota, bestTier.name, bestQuota,
+                peak, cost(volume.tier, volume.quota), cost(bestTier, bestQuota));
+    }
+
+    // Applies a change of quota, moves to another service level are only recommended
+    private void apply(VolumeState volume, Decision decision)
+    {
+        if (decision.movesTier())
+            throw new IllegalStateException("Moving " + String.join("/", volume.path) + " to another service level is not applied, see Autoscaler");
+
+        String[] pool = { volume.path[0], volume.path[1], volume.path[2] };
+        if (decision.toQuota > volume.quota)
+            ensureRoom(pool, decision.toQuota - volume.quota);
+        operations.resizeVolume(volume.path, decision.toQuota);
+        volume.quota = decision.toQuota;
+        shrink(pool);
+    }
+
+    // Prints a move to another service level, once per target, to be made by editing the pool of the volume in appsettings.json
+    private void recommendMove(VolumeState volume, Decision decision)
+    {
+        if (decision.toServiceLevel.equals(volume.recommendedServiceLevel))
+            return;
+        volume.recommendedServiceLevel = decision.toServiceLevel;
+        Metrics.increment("autoscaler.moverecommendations");
+        Utils.writeConsoleMessage("Autoscaler recommends " + decision + ", not applied: move the volume to a " + decision.toServiceLevel
+                + " pool in appsettings.json");
+    }
+
+    // Grows a pool so that it can take extra quota
+    private void ensureRoom(String[] pool, long extraBytes)
+    {
+        long needed = operations.getAllocatedBytes(pool) + extraBytes;
+        if (needed > operations.getPoolSize(pool))
+            operations.resizePool(pool, PoolPlanner.poolSize(needed));
+    }
+
+    // Shrinks a pool to the quotas of its volumes
+    private void shrink(String[] pool)
+    {
+        long size = PoolPlanner.poolSize(operations.getAllocatedBytes(pool));
+        if (size < operations.getPoolSize(pool))
+            operations.resizePool(pool, size);
+    }
+
+    private static long minQuota(VolumeState volume, VolumeMetricsSource.Sample latest)
+    {
+        // without the used space, the quota of appsettings.json is the floor
+        if (latest.getUsedBytes() < 0)
+            return volume.configuredQuota;
+        return Math.max(MIN_VOLUME_SIZE, roundUpToGib(latest.getUsedBytes() * USED_SPACE_HEADROOM));
+    }
+
+    // Throughput limit in MiB/s
+    private static double throughputLimit(Tier tier, long quota)
+    {
+        return tier.mibpsPerTib * quota / TIB;
+    }
+
+    // Monthly cost of the capacity
+    private static double cost(Tier tier, long quota)
+    {
+        return tier.pricePerGibMonth * quota / GIB;
+    }
+
+    private static long roundUpToGib(double bytes)
+    {
+        return (long) Math.ceil(bytes / GIB) * GIB;
+    }
+
+    private static Tier tier(String serviceLevel)
+    {
+        for (Tier tier : TIERS)
+        {
+            if (tier.name.equalsIgnoreCase(serviceLevel))
+                return tier;
+        }
+        return null;
+    }
+
+    private static String accountKey(String resourceGroup, String accountName)
+    {
+        return (resourceGroup + "/" + accountName).toLowerCase();
+    }
+
+    // A change of service level and/or quota of a volume
+    public static class Decision
+    {
+        private final String[] volume;
+        private final boolean scaleUp;
+        private final String fromServiceLevel;
+        private final long fromQuota;
+        private final String toServiceLevel;
+        private final long toQuota;
+        private final double peakMiBps;
+        private final double fromCost;
+        private final double toCost;
+
+        private Decision(String[] volume, boolean scaleUp, String fromServiceLevel, long fromQuota, String toServiceLevel, long toQuota,
+                         double peakMiBps, double fromCost, double toCost)
+        {
+            this.volume = volume;
+            this.scaleUp = scaleUp;
+            this.fromServiceLevel = fromServiceLevel;
+            this.fromQuota = fromQuota;
+            this.toServiceLevel = toServiceLevel;
+            this.toQuota = toQuota;
+            this.peakMiBps = peakMiBps;
+            this.fromCost = fromCost;
+            this.toCost = toCost;
+        }
+
+        public String[] getVolume() {
+            return volume;
+        }
+
+        public boolean isScaleUp() {
+            return scaleUp;
+        }
+
+        public String getToServiceLevel() {
+            return toServiceLevel;
+        }
+
+        public long getToQuota() {
+            return toQuota;
+        }
+
+        // True if the volume changes service level, so capacity pool
+        public boolean movesTier() {
+            return !fromServiceLevel.equals(toServiceLevel);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s: %s %d GiB -> %s %d GiB (peak %.0f MiB/s, %.0f -> %.0f per month)", String.join("/", volume),
+                    fromServiceLevel, fromQuota / GIB, toServiceLevel, toQuota / GIB, peakMiBps, fromCost, toCost);
+        }
+    }
+
+    private static class Tier
+    {
+        private final String name;
+        private final double mibpsPerTib;
+        private final double pricePerGibMonth;
+
+        private Tier(String name, double mibpsPerTib, double pricePerGibMonth)
+        {
+            this.name = name;
+            this.mibpsPerTib = mibpsPerTib;
+            this.pricePerGibMonth = pricePerGibMonth;
+        }
+    }
+
+    private static class Observation
+    {
+        private final long time;
+        private final VolumeMetricsSource.Sample sample;
+
+        private Observation(long time, VolumeMetricsSource.Sample sample)
+        {
+            this.time = time;
+            this.sample = sample;
+        }
+    }
+
+    private static class VolumeState
+    {
+        private final String[] path;
+        private final Tier tier;
+        private final long configuredQuota;
+        // read from Azure at the first decision
+        private long quota = -1;
+        private long lastChangeMillis = Long.MIN_VALUE / 2;
+        // last move to another service level recommended in APPLY mode, printed once
+        private String recommendedServiceLevel;
+        private final Deque<Observation> history = new ArrayDeque<>();
+
+        private VolumeState(String[] path, Tier tier, long configuredQuota)
+        {
+            this.path = path;
+            this.tier = tier;
+            this.configuredQuota = configuredQuota;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+/*
+  Capacity operations used by the Autoscaler, implemented against Azure by ArmCapacityOperations.
+  Volumes are identified by ResourceGroupName, AccountName, PoolName, VolumeName and pools by ResourceGroupName, AccountName, PoolName.
+ */
+public interface CapacityOperations
+{
+    // Quota of the volume in bytes
+    long getUsageThreshold(String[] volume);
+
+    // Size of the capacity pool in bytes
+    long getPoolSize(String[] pool);
+
+    // Sum of the quotas of the pool's volumes in bytes
+    long getAllocatedBytes(String[] pool);
+
+    void resizeVolume(String[] volume, long usageThreshold);
+
+    void resizePool(String[] pool, long size);
+}
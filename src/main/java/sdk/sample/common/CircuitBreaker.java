@@ -0,0 +1,172 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/*
+  Stops calling a degraded region/operation after consecutive failures.
+  CLOSED: calls go through, consecutive failures are counted.
+  OPEN: calls fail fast with CircuitBreakerOpenException until the open period elapsed.
+  HALF_OPEN: a single probe call goes through, its success closes the breaker and its failure opens it again.
+  Only throttling, server errors, connectivity errors and timeouts count as failures,
+  other errors such as 404 or a failed provisioning mean the region answered normally.
+ */
+public class CircuitBreaker
+{
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_MILLIS = 30_000;
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis)
+    {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        Metrics.gauge("circuitbreaker." + name + ".state", () -> getState().ordinal());
+    }
+
+    /**
+     * Returns the breaker of a region and operation, creating it with default settings the first time
+     * @param region Azure region, see RegionDirectory
+     * @param operation Operation name, see Operations
+     * @return The breaker shared by all calls of that operation in that region
+     */
+    public static CircuitBreaker forOperation(String region, String operation)
+    {
+        return breakers.computeIfAbsent(region + "." + operation, name -> new CircuitBreaker(name, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS));
+    }
+
+    /**
+     * Runs a call if the breaker allows it
+     * @param call The call to ARM
+     * @return The result of the call
+     * @throws CircuitBreakerOpenException if the breaker is open, or half-open with a probe already in flight
+     */
+    public <T> T execute(Supplier<T> call)
+    {
+        boolean probe = acquire();
+        try
+        {
+            T result = call.get();
+            onSuccess(probe);
+            return result;
+        }
+        catch (RuntimeException e)
+        {
+            if (isFailure(e))
+                onFailure(probe);
+            else
+                onSuccess(probe);
+            throw e;
+        }
+        catch (Error e)
+        {
+            // Counted as a failure, so that a half-open probe is always released
+            onFailure(probe);
+            throw e;
+        }
+    }
+
+    public synchronized State getState()
+    {
+        return state;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Checks whether a call may go through
+     * @return True if the call is the half-open probe
+     */
+    private synchronized boolean acquire()
+    {
+        if (state == State.OPEN)
+        {
+            long remaining = openedAt + openMillis - System.currentTimeMillis();
+            if (remaining > 0)
+            {
+                Metrics.increment("circuitbreaker." + name + ".rejected");
+                throw new CircuitBreakerOpenException(name, remaining);
+            }
+            transition(State.HALF_OPEN);
+        }
+
+        if (state == State.HALF_OPEN)
+        {
+            if (probeInFlight)
+            {
+                Metrics.increment("circuitbreaker." + name + ".rejected");
+                throw new CircuitBreakerOpenException(name, openMillis);
+            }
+            probeInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void onSuccess(boolean probe)
+    {
+        if (probe)
+            probeInFlight = false;
+        consecutiveFailures = 0;
+        if (state == State.HALF_OPEN)
+            transition(State.CLOSED);
+    }
+
+    private synchronized void onFailure(boolean probe)
+    {
+        if (probe)
+            probeInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold))
+        {
+            openedAt = System.currentTimeMillis();
+            transition(State.OPEN);
+        }
+    }
+
+    private void transition(State next)
+    {
+        Metrics.increment("circuitbreaker." + name + ".transition." + state.name().toLowerCase() + "_to_" + next.name().toLowerCase());
+        if (next == State.OPEN)
+            Utils.writeWarningMessage("Circuit breaker " + name + " opened after " + consecutiveFailures + " consecutive failure(s), failing fast for " + (openMillis / 1000) + "s");
+        else
+            Utils.writeConsoleMessage("Circuit breaker " + name + " is now " + next.name().toLowerCase());
+        state = next;
+    }
+
+    private static boolean isFailure(RuntimeException e)
+    {
+        if (AdaptiveConcurrencyLimiter.isOverloaded(e))
+            return true;
+
+        for (Throwable cause = e; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof IOException || cause instanceof TimeoutException)
+                return true;
+        }
+        return false;
+    }
+}
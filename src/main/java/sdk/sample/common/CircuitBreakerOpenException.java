@@ -0,0 +1,23 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+// Thrown instead of calling ARM while the circuit breaker of a region/operation is open
+public class CircuitBreakerOpenException extends RuntimeException
+{
+    // Time in milliseconds after which the call may be attempted again
+    private final long retryAfterMillis;
+
+    public CircuitBreakerOpenException(String breakerName, long retryAfterMillis)
+    {
+        super("Circuit breaker " + breakerName + " is open, retry in " + (retryAfterMillis / 1000) + "s");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,177 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+/*
+  Arguments of the sample: a subcommand and selectors on the resources of appsettings.json.
+  Without arguments the sample runs the whole flow configured in appsettings.json, as it always did.
+ */
+public final class CommandLine
+{
+    public enum Command { PLAN, APPLY, AUTHORIZE, BREAK, RESYNC, CLEANUP, STATUS, MONITOR, INVENTORY, SWEEP, SERVE, HELP }
+
+    public static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: <command> [--resource-group <pattern>] [--account <pattern>] [--pool <pattern>] [--volume <pattern>]",
+            "Commands:",
+            "  plan       Reads the targeted resources and the ones they are created from, and prints what apply would create",
+            "  apply      Creates the targeted resources and the ones they are created from, and authorizes their replications",
+            "  authorize  Authorizes the replication of the targeted data protection volumes",
+            "  break      Waits for the transfer in progress and breaks the replication of the targeted data protection volumes",
+            "  resync     Resyncs the broken replication of the targeted data protection volumes",
+            "  cleanup    Deletes the targeted volumes, and the targeted pools and accounts when no volume pattern is given",
+            "  status     Prints the provisioning state of the targeted resources and the replication status of the volumes",
+            "  monitor    Prints the replication status of the targeted volumes every --interval seconds (default 30),",
+            "             for --duration minutes (default 0, until stopped)",
+            "  inventory  Exports the accounts, pools and volumes of the subscription matching the selectors, with the replication",
+            "             status of data protection volumes, to --output (default inventory.csv): .csv or .jsonl, .gz to compress",
+            "  sweep      Deletes the accounts, pools and volumes of the configured resource groups that appsettings.json does",
+            "             not describe, leaves first; prints them only unless sweepDryRun is false, see sweepMinAgeHours and sweepUntagged",
+            "  serve      Runs the provisioning service, a REST API on localhost:--port (default 8080) queueing accounts to provision",
+            "Patterns are globs (* and ?) or regular expressions between slashes, e.g. --volume '/vol-0[1-5]/', ignoring case.",
+            "Without a command, the whole flow configured in appsettings.json runs.");
+
+    private static final String DEFAULT_OUTPUT = "inventory.csv";
+
+    private final Command command;
+    private final TopologySelector selector;
+    private final int intervalSeconds;
+    private final int durationMinutes;
+    private final int port;
+    private final String output;
+
+    private CommandLine(Command command, TopologySelector selector, int intervalSeconds, int durationMinutes, int port, String output)
+    {
+        this.command = command;
+        this.selector = selector;
+        this.intervalSeconds = intervalSeconds;
+        this.durationMinutes = durationMinutes;
+        this.port = port;
+        this.output = output;
+    }
+
+    /**
+     * Parses the arguments of the sample
+     * @param args Arguments, e.g. "break --account primary-* --volume vol-01"
+     * @return The parsed command line, its command is null when there are no arguments
+     */
+    public static CommandLine parse(String[] args)
+    {
+        if (args == null || args.length == 0)
+            return new CommandLine(null, TopologySelector.ALL, 30, 0, 8080, DEFAULT_OUTPUT);
+
+        Command command;
+        try
+        {
+            command = Command.valueOf(args[0].replace("-", "").toUpperCase());
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Unknown command '" + args[0] + "'" + System.lineSeparator() + USAGE);
+        }
+
+        String resourceGroup = null;
+        String account = null;
+        String pool = null;
+        String volume = null;
+        int intervalSeconds = 30;
+        int durationMinutes = 0;
+        int port = 8080;
+        String output = DEFAULT_OUTPUT;
+        for (int i = 1; i < args.length; i += 2)
+        {
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value of " + args[i] + System.lineSeparator() + USAGE);
+            String value = args[i + 1];
+            switch (args[i])
+            {
+                case "--resource-group":
+                case "-g":
+                    resourceGroup = value;
+                    break;
+                case "--account":
+                case "-a":
+                    account = value;
+                    break;
+                case "--pool":
+                case "-p":
+                    pool = value;
+                    break;
+                case "--volume":
+                case "-v":
+                    volume = value;
+                    break;
+                case "--interval":
+                    intervalSeconds = parseNumber(args[i], value, 1, Integer.MAX_VALUE, "a positive number of seconds");
+                    break;
+                case "--duration":
+                    durationMinutes = parseNumber(args[i], value, 0, Integer.MAX_VALUE, "a number of minutes, 0 to run until stopped");
+                    break;
+                case "--port":
+                    port = parseNumber(args[i], value, 1, 65535, "a port between 1 and 65535");
+                    break;
+                case "--output":
+                case "-o":
+                    output = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option '" + args[i] + "'" + System.lineSeparator() + USAGE);
+            }
+        }
+        return new CommandLine(command, new TopologySelector(resourceGroup, account, pool, volume), intervalSeconds, durationMinutes, port, output);
+    }
+
+    /**
+     * Parses the number of an option
+     * @param option Option name, used in the error
+     * @param value Value of the option
+     * @param min Smallest accepted value
+     * @param max Largest accepted value
+     * @param expected What the option expects, used in the error
+     * @return The number
+     * @throws IllegalArgumentException If the value is not a number between min and max
+     */
+    private static int parseNumber(String option, String value, int min, int max, String expected)
+    {
+        try
+        {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min && parsed <= max)
+                return parsed;
+        }
+        catch (NumberFormatException e)
+        {
+            // reported below
+        }
+        throw new IllegalArgumentException(option + " expects " + expected + ", got '" + value + "'");
+    }
+
+    // Command to run, null to run the whole flow configured in appsettings.json
+    public Command getCommand() {
+        return command;
+    }
+
+    public TopologySelector getSelector() {
+        return selector;
+    }
+
+    public int getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    public int getDurationMinutes() {
+        return durationMinutes;
+    }
+
+    // Port of the provisioning service
+    public int getPort() {
+        return port;
+    }
+
+    // File the inventory is exported to
+    public String getOutput() {
+        return output;
+    }
+}
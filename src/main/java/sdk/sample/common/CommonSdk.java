@@ -10,12 +10,21 @@ import com.azure.resourcemanager.netapp.fluent.models.*;
 import com.azure.resourcemanager.netapp.models.*;
 import sdk.sample.model.*;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 // Contains public methods for SDK related operations
 public class CommonSdk
 {
+    // Coalesces concurrent reads of the same resource
+    private static final SingleFlight resourceReads = new SingleFlight("singleflight.getResource");
+
+    // Coalesces concurrent replication status reads of the same volume
+    private static final SingleFlight replicationStatusReads = new SingleFlight("singleflight.replicationStatus");
+
     /**
      * Authorizes the replication and waits for the replication status to turn to Mirrored.
      * @param anfClient Azure NetApp Files Management Client
@@ -29,86 +38,281 @@ public class CommonSdk
     {
         AuthorizeRequest authorizeRequest = new AuthorizeRequest();
         authorizeRequest.withRemoteVolumeResourceId(destinationVolumeId);
-        anfClient.getVolumes().beginAuthorizeReplication(resourceGroup, account, pool, volume, authorizeRequest).getFinalResult();
+        executeWrite(resourceGroup, account, Operations.AUTHORIZE_REPLICATION, () ->
+                anfClient.getVolumes().beginAuthorizeReplication(resourceGroup, account, pool, volume, authorizeRequest),
+                poller -> OperationTracker.waitForCompletion(Operations.AUTHORIZE_REPLICATION, new String[]{resourceGroup, account, pool, volume}, poller));
     }
 
     /**
      * Creates or updates a volume. Note that if sourceVolume is defined in appsettings.json a data protection properties are added to the volume.
      * @param anfClient Azure NetApp Files Management Client
-     * @param account ModelNetAppAccount object that describes the ANF Account, populated with data from appsettings.json
-     * @param pool ModelCapacityPool object that describes the Capacity Pool, populated with data from appsettings.json
-     * @param volume ModelVolume object that describes the Volume to be created, populated with data from appsettings.json
-     * @return The newly created Volume
+     * @param volume Volume to be created, from the compiled topology, its source volume is referenced by resource id
+     * @param snapshot Snapshot the volume is created from, or null for an empty volume
+     * @return The newly created Volume, or null if it ended up in failed state
      */
-    public static VolumeInner createOrUpdateVolume(NetAppManagementClient anfClient, ModelNetAppAccount account, ModelCapacityPool pool, ModelVolume volume, VolumeInner sourceVolume)
+    public static VolumeInner createOrUpdateVolume(NetAppManagementClient anfClient, Topology.Volume volume, SnapshotInner snapshot)
     {
-        List<ExportPolicyRule> ruleList = new ArrayList<>();
-        for (ModelExportPolicyRule rule : volume.getExportPolicies())
-        {
-            ruleList.add(new ExportPolicyRule()
-                    .withAllowedClients(rule.getAllowedClients())
-                    .withRuleIndex(rule.getRuleIndex())
-                    .withUnixReadWrite(rule.isUnixReadWrite())
-                    .withUnixReadOnly(rule.isUnixReadOnly())
-                    .withCifs(rule.isCifs())
-                    .withNfsv3(rule.isNfsv3())
-                    .withNfsv41(rule.isNfsv4()));
-        }
-
-        VolumePropertiesExportPolicy exportPolicy = new VolumePropertiesExportPolicy().withRules(ruleList);
-
-        List<String> protocol = new ArrayList<>();
-        protocol.add(volume.getType());
-
+        Topology.Account account = volume.getPool().getAccount();
         VolumeInner volumeInner = new VolumeInner();
         volumeInner.withCreationToken(volume.getCreationToken());
         volumeInner.withSubnetId(volume.getSubnetId());
         volumeInner.withUsageThreshold(volume.getUsageThreshold());
-        volumeInner.withProtocolTypes(protocol);
-        volumeInner.withExportPolicy(exportPolicy);
-        volumeInner.withLocation(account.getLocation().toLowerCase());
-        if (sourceVolume != null) {
+        volumeInner.withProtocolTypes(volume.getProtocolTypes());
+        volumeInner.withExportPolicy(volume.getExportPolicy());
+        volumeInner.withLocation(account.getLocation());
+        volumeInner.withTags(OwnershipTags.forNewResource());
+        if (volume.getSourceVolume() != null) {
             volumeInner.withVolumeType("DataProtection");
             volumeInner.withDataProtection(new VolumePropertiesDataProtection()
                     .withReplication(new ReplicationObject()
                             .withEndpointType(EndpointType.DST)
-                            .withRemoteVolumeResourceId(sourceVolume.id())
-                            .withReplicationSchedule(ReplicationSchedule.HOURLY)));
+                            .withRemoteVolumeResourceId(volume.getSourceVolume().getId())
+                            .withReplicationSchedule(volume.getReplicationSchedule())));
         }
 
-        return anfClient.getVolumes().beginCreateOrUpdate(account.getResourceGroup(), account.getName(), pool.getName(), volume.getName(), volumeInner).getFinalResult();
+        if (snapshot != null)
+            volumeInner.withSnapshotId(snapshot.snapshotId());
+
+        String operation = volume.getSourceVolume() != null ? Operations.CREATE_DATA_PROTECTION_VOLUME
+                : snapshot != null ? Operations.CREATE_VOLUME_FROM_SNAPSHOT : Operations.CREATE_VOLUME;
+        return executeWrite(account.getResourceGroup(), account.getName(), operation, () ->
+                anfClient.getVolumes().beginCreateOrUpdate(account.getResourceGroup(), account.getName(), volume.getPool().getName(), volume.getName(), volumeInner),
+                poller -> OperationTracker.waitForResource(anfClient, operation, volume.getParameters(), poller, VolumeInner.class));
+    }
+
+    /**
+     * Creates a snapshot of a volume
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroup Resource Group name of the volume
+     * @param accountName Account name of the volume
+     * @param poolName Capacity Pool name of the volume
+     * @param volumeName Name of the volume
+     * @param snapshotName Name of the snapshot
+     * @param location Location of the volume
+     * @return The newly created Snapshot, or null if it ended up in failed state
+     */
+    public static SnapshotInner createSnapshot(NetAppManagementClient anfClient, String resourceGroup, String accountName, String poolName, String volumeName, String snapshotName, String location)
+    {
+        SnapshotInner snapshot = new SnapshotInner();
+        snapshot.withLocation(location.toLowerCase());
+
+        return executeWrite(resourceGroup, accountName, Operations.CREATE_SNAPSHOT, () ->
+                anfClient.getSnapshots().beginCreate(resourceGroup, accountName, poolName, volumeName, snapshotName, snapshot),
+                poller -> OperationTracker.waitForResource(anfClient, Operations.CREATE_SNAPSHOT, new String[]{resourceGroup, accountName, poolName, volumeName, snapshotName}, poller, SnapshotInner.class));
+    }
+
+    /**
+     * Waits for a snapshot to exist, e.g. a snapshot of a source volume that reaches its destination volume with the next replication transfer
+     * @param anfClient Azure NetApp Files Management Client
+     * @param parameters ResourceGroupName, AccountName, PoolName, VolumeName, SnapshotName
+     * @param intervalInSec Time in second between two reads of the snapshot
+     * @param retries Number of intervals the wait lasts at most
+     * @return The snapshot
+     * @throws OperationTimeoutException If the snapshot still does not exist in time
+     */
+    public static SnapshotInner waitForSnapshot(NetAppManagementClient anfClient, String[] parameters, int intervalInSec, int retries)
+    {
+        return poll("Waiting for snapshot " + String.join("/", parameters), ResourceEvents.keyOf(parameters), false, intervalInSec, retries, () -> {
+            SnapshotInner snapshot = (SnapshotInner) getResource(anfClient, parameters, SnapshotInner.class);
+            return snapshot != null && "Succeeded".equalsIgnoreCase(snapshot.provisioningState()) ? snapshot : null;
+        });
+    }
+
+    /**
+     * Changes the replication schedule of an existing data protection volume. The volume is updated in place,
+     * replication keeps going from its last transferred snapshot.
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroup Resource Group name of the destination volume
+     * @param accountName Account name of the destination volume
+     * @param poolName Capacity Pool name of the destination volume
+     * @param volumeName Name of the destination volume
+     * @param schedule The new replication schedule
+     * @return The updated volume, or null if it ended up in failed state
+     */
+    public static VolumeInner updateReplicationSchedule(NetAppManagementClient anfClient, String resourceGroup, String accountName, String poolName, String volumeName, ReplicationSchedule schedule)
+    {
+        VolumeInner volume = executeRead(resourceGroup, accountName, Operations.GET_RESOURCE, () ->
+                anfClient.getVolumes().get(resourceGroup, accountName, poolName, volumeName));
+        if (volume.dataProtection() == null || volume.dataProtection().replication() == null)
+            throw new RuntimeException("Volume " + volume.id() + " is not a data protection volume");
+        if (schedule.equals(volume.dataProtection().replication().replicationSchedule()))
+            return volume;
+
+        // VolumePatch does not carry the replication settings, the volume is updated by sending it back with the new schedule
+        volume.dataProtection().replication().withReplicationSchedule(schedule);
+        return executeWrite(resourceGroup, accountName, Operations.UPDATE_REPLICATION_SCHEDULE, () ->
+                anfClient.getVolumes().beginCreateOrUpdate(resourceGroup, accountName, poolName, volumeName, volume),
+                poller -> OperationTracker.waitForResource(anfClient, Operations.UPDATE_REPLICATION_SCHEDULE, new String[]{resourceGroup, accountName, poolName, volumeName}, poller, VolumeInner.class));
+    }
+
+    /**
+     * Changes the quota of an existing volume, its capacity pool must have room for the new quota
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroup Resource Group name of the volume
+     * @param accountName Account name of the volume
+     * @param poolName Capacity Pool name of the volume
+     * @param volumeName Name of the volume
+     * @param usageThreshold The new quota in bytes
+     * @return The updated volume, or null if it ended up in failed state
+     */
+    public static VolumeInner updateVolumeUsageThreshold(NetAppManagementClient anfClient, String resourceGroup, String accountName, String poolName, String volumeName, long usageThreshold)
+    {
+        VolumePatch patch = new VolumePatch().withUsageThreshold(usageThreshold);
+
+        return executeWrite(resourceGroup, accountName, Operations.UPDATE_VOLUME_SIZE, () ->
+                anfClient.getVolumes().beginUpdate(resourceGroup, accountName, poolName, volumeName, patch),
+                poller -> OperationTracker.waitForResource(anfClient, Operations.UPDATE_VOLUME_SIZE, new String[]{resourceGroup, accountName, poolName, volumeName}, poller, VolumeInner.class));
+    }
+
+    /**
+     * Changes the size of an existing capacity pool
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroup Resource Group name of the Capacity Pool
+     * @param accountName Account name of the Capacity Pool
+     * @param poolName Name of the Capacity Pool
+     * @param size The new size in bytes, a multiple of 1 TiB, at least the sum of its volumes' quotas
+     * @return The updated Capacity Pool, or null if it ended up in failed state
+     */
+    public static CapacityPoolInner updateCapacityPoolSize(NetAppManagementClient anfClient, String resourceGroup, String accountName, String poolName, long size)
+    {
+        CapacityPoolPatch patch = new CapacityPoolPatch().withSize(size);
+
+        return executeWrite(resourceGroup, accountName, Operations.UPDATE_CAPACITY_POOL_SIZE, () ->
+                anfClient.getPools().beginUpdate(resourceGroup, accountName, poolName, patch),
+                poller -> OperationTracker.waitForResource(anfClient, Operations.UPDATE_CAPACITY_POOL_SIZE, new String[]{resourceGroup, accountName, poolName}, poller, CapacityPoolInner.class));
+    }
+
+    /**
+     * Moves a volume to another capacity pool of the same account, e.g. to change its service level.
+     * The target pool must have room for the volume's quota.
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroup Resource Group name of the volume
+     * @param accountName Account name of the volume
+     * @param poolName Current Capacity Pool name of the volume
+     * @param volumeName Name of the volume
+     * @param newPoolName Name of the Capacity Pool the volume is moved to
+     */
+    public static void changeVolumePool(NetAppManagementClient anfClient, String resourceGroup, String accountName, String poolName, String volumeName, String newPoolName)
+    {
+        CapacityPoolInner newPool = executeRead(resourceGroup, accountName, Operations.GET_RESOURCE, () ->
+                anfClient.getPools().get(resourceGroup, accountName, newPoolName));
+        PoolChangeRequest request = new PoolChangeRequest().withNewPoolResourceId(newPool.id());
+
+        executeWrite(resourceGroup, accountName, Operations.CHANGE_VOLUME_POOL, () ->
+                anfClient.getVolumes().beginPoolChange(resourceGroup, accountName, poolName, volumeName, request),
+                poller -> OperationTracker.waitForCompletion(Operations.CHANGE_VOLUME_POOL, new String[]{resourceGroup, accountName, poolName, volumeName}, poller));
+    }
+
+    /**
+     * Returns the replication schedule configured for a volume in appsettings.json
+     * @param volume ModelVolume object that describes the Volume, populated with data from appsettings.json
+     * @return The configured schedule, hourly if none is set
+     */
+    public static ReplicationSchedule getReplicationSchedule(ModelVolume volume)
+    {
+        if (volume.getReplicationSchedule() == null)
+            return ReplicationSchedule.HOURLY;
+
+        // values() also returns any schedule parsed from an ARM response
+        List<ReplicationSchedule> schedules = Arrays.asList(ReplicationSchedule._10MINUTELY, ReplicationSchedule.HOURLY, ReplicationSchedule.DAILY);
+        for (ReplicationSchedule schedule : schedules)
+        {
+            if (schedule.toString().equalsIgnoreCase(volume.getReplicationSchedule()))
+                return schedule;
+        }
+        throw new IllegalArgumentException("Unsupported replication schedule " + volume.getReplicationSchedule() + " for volume " + volume.getName()
+                + ", valid values are " + schedules);
     }
 
     /**
      * Creates or updates an Azure NetApp Files Account
      * @param anfClient Azure NetApp Files Management Client
-     * @param account ModelNetAppAccount object that describes the ANF Account to be created, populated with data from appsettings.json
-     * @return The newly created Account
+     * @param account Account to be created, from the compiled topology
+     * @return The newly created Account, or null if it ended up in failed state
      */
-    public static NetAppAccountInner createOrUpdateAccount(NetAppManagementClient anfClient, ModelNetAppAccount account)
+    public static NetAppAccountInner createOrUpdateAccount(NetAppManagementClient anfClient, Topology.Account account)
     {
         NetAppAccountInner netAppAccount = new NetAppAccountInner();
         netAppAccount.withLocation(account.getLocation());
+        netAppAccount.withTags(OwnershipTags.forNewResource());
 
-        return anfClient.getAccounts().beginCreateOrUpdate(account.getResourceGroup(), account.getName(), netAppAccount).getFinalResult();
+        return executeWrite(account.getResourceGroup(), account.getName(), Operations.CREATE_ACCOUNT, () ->
+                anfClient.getAccounts().beginCreateOrUpdate(account.getResourceGroup(), account.getName(), netAppAccount),
+                poller -> OperationTracker.waitForResource(anfClient, Operations.CREATE_ACCOUNT, account.getParameters(), poller, NetAppAccountInner.class));
     }
 
     /**
      * Creates or updates a Capacity Pool
      * @param anfClient Azure NetApp Files Management Client
-     * @param resourceGroup Resource Group name where the Capacity Pool will be created
-     * @param accountName Name of the ANF Account this Capacity Pool will be associated with
-     * @param pool ModelCapacityPool object that describes the Capacity Pool to be created, populated with data from appsettings.json
-     * @return The newly created Capacity Pool
+     * @param pool Capacity Pool to be created, from the compiled topology
+     * @return The newly created Capacity Pool, or null if it ended up in failed state
      */
-    public static CapacityPoolInner createOrUpdateCapacityPool(NetAppManagementClient anfClient, String resourceGroup, String accountName, String location, ModelCapacityPool pool)
+    public static CapacityPoolInner createOrUpdateCapacityPool(NetAppManagementClient anfClient, Topology.Pool pool)
     {
+        Topology.Account account = pool.getAccount();
         CapacityPoolInner capacityPool = new CapacityPoolInner();
-        capacityPool.withServiceLevel(ServiceLevel.fromString(pool.getServiceLevel()));
+        capacityPool.withServiceLevel(pool.getServiceLevel());
         capacityPool.withSize(pool.getSize());
-        capacityPool.withLocation(location);
+        capacityPool.withLocation(account.getLocation());
+        capacityPool.withTags(OwnershipTags.forNewResource());
+
+        return executeWrite(account.getResourceGroup(), account.getName(), Operations.CREATE_CAPACITY_POOL, () ->
+                anfClient.getPools().beginCreateOrUpdate(account.getResourceGroup(), account.getName(), pool.getName(), capacityPool),
+                poller -> OperationTracker.waitForResource(anfClient, Operations.CREATE_CAPACITY_POOL, pool.getParameters(), poller, CapacityPoolInner.class));
+    }
+
+    /**
+     * Runs an ARM write operation (create, delete, authorize, ...) whose completion is waited for separately. Only the request that
+     * starts the operation goes through the circuit breaker of the operation in the account's region and under the adaptive
+     * concurrency limit of that region, so minutes of waiting for completion neither hold a slot of the limit nor count as its latency.
+     * @param resourceGroup Resource Group name of the account the operation targets
+     * @param accountName Name of the account the operation targets
+     * @param operation Operation name, see Operations
+     * @param begin Starts the operation, e.g. a begin* call returning its poller
+     * @param completion Waits for the completion of the started operation
+     * @return The result of the operation
+     */
+    public static <P, T> T executeWrite(String resourceGroup, String accountName, String operation, Supplier<P> begin, Function<P, T> completion)
+    {
+        OperationContext.current().check(operation);
+        String region = RegionDirectory.regionOf(resourceGroup, accountName);
+        try (Tracer.Span span = Tracer.shared().start(operation, "arm").arg("account", resourceGroup + "/" + accountName).arg("region", region))
+        {
+            P started = CircuitBreaker.forOperation(region, operation).execute(() ->
+                    AdaptiveConcurrencyLimiter.forRegion(region).execute(operation, begin));
+            return completion.apply(started);
+        }
+    }
+
+    /**
+     * Runs an ARM write operation that completes with its request through the circuit breaker of the operation in the account's region
+     * and under the adaptive concurrency limit of that region
+     * @param resourceGroup Resource Group name of the account the operation targets
+     * @param accountName Name of the account the operation targets
+     * @param operation Operation name, see Operations
+     * @param call The operation
+     * @return The result of the operation
+     */
+    public static <T> T executeWrite(String resourceGroup, String accountName, String operation, Supplier<T> call)
+    {
+        return executeWrite(resourceGroup, accountName, operation, call, Function.identity());
+    }
 
-        return anfClient.getPools().beginCreateOrUpdate(resourceGroup, accountName, pool.getName(), capacityPool).getFinalResult();
+    /**
+     * Runs an ARM read operation through the circuit breaker of the operation in the account's region
+     * @param resourceGroup Resource Group name of the account the operation targets
+     * @param accountName Name of the account the operation targets
+     * @param operation Operation name, see Operations
+     * @param call The read
+     * @return The result of the read
+     */
+    public static <T> T executeRead(String resourceGroup, String accountName, String operation, Supplier<T> call)
+    {
+        OperationContext.current().check(operation);
+        try (Tracer.Span span = Tracer.shared().start(operation, "arm").arg("account", resourceGroup + "/" + accountName))
+        {
+            return CircuitBreaker.forOperation(RegionDirectory.regionOf(resourceGroup, accountName), operation).execute(call);
+        }
     }
 
     /**
@@ -121,11 +325,40 @@ public class CommonSdk
      *                   Snapshot       -> ResourceGroupName, AccountName, PoolName, VolumeName, SnapshotName
      * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner
      * @return Valid resource T
+     * @throws CircuitBreakerOpenException if the region is failing, rather than reporting the resource as missing
+     * @throws CancellationException if the current OperationContext was cancelled
      */
     public static <T> Object getResource(NetAppManagementClient anfClient, String[] parameters, Class<T> clazz)
     {
+        OperationContext.current().check(Operations.GET_RESOURCE);
         try
         {
+            return readResource(anfClient, parameters, clazz);
+        }
+        catch (CircuitBreakerOpenException | CancellationException | OperationTimeoutException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            if (isNotFound(e))
+                return null;
+            Utils.writeWarningMessage("Error finding resource - " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Reads an ANF resource. Concurrent reads of the same resource share a single request, which is hedged if hedged reads are enabled.
+     * @param anfClient Azure NetApp Files Management Client
+     * @param parameters List of parameters required depending on the resource type, see getResource
+     * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner
+     * @return The resource, errors including not found are thrown
+     */
+    private static Object readResource(NetAppManagementClient anfClient, String[] parameters, Class<?> clazz)
+    {
+        String key = clazz.getSimpleName() + ":" + String.join("/", parameters).toLowerCase();
+        return resourceReads.execute(key, () -> HedgedReads.shared().execute(Operations.GET_RESOURCE, () -> executeRead(parameters[0], parameters[1], Operations.GET_RESOURCE, () -> {
             switch (clazz.getSimpleName())
             {
                 case "NetAppAccountInner":
@@ -150,14 +383,45 @@ public class CommonSdk
                             parameters[2],
                             parameters[3],
                             parameters[4]);
+                default:
+                    throw new IllegalArgumentException("Unsupported resource type " + clazz.getSimpleName());
             }
-        }
-        catch (Exception e)
-        {
-            if (e.getMessage().contains("Status code 404"))
-                return null;
-            Utils.writeWarningMessage("Error finding resource - " + e.getMessage());
-        }
+        })));
+    }
+
+    /**
+     * Returns the replication status of a destination volume. Concurrent reads of the same volume share a single request,
+     * which is hedged if hedged reads are enabled.
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroupName Resource Group Name
+     * @param accountName Azure NetApp Files Account name
+     * @param poolName Azure NetApp Files Capacity Pool name
+     * @param volumeName Azure NetApp Files Volume name
+     * @return The replication status, errors are thrown
+     */
+    public static ReplicationStatusInner getReplicationStatus(NetAppManagementClient anfClient, String resourceGroupName, String accountName, String poolName, String volumeName)
+    {
+        String key = (resourceGroupName + "/" + accountName + "/" + poolName + "/" + volumeName).toLowerCase();
+        return replicationStatusReads.execute(key, () -> HedgedReads.shared().execute(Operations.REPLICATION_STATUS, () ->
+                executeRead(resourceGroupName, accountName, Operations.REPLICATION_STATUS, () ->
+                        anfClient.getVolumes().replicationStatus(resourceGroupName, accountName, poolName, volumeName))));
+    }
+
+    /**
+     * Returns the provisioning state of an ANF resource
+     * @param resource NetAppAccountInner, CapacityPoolInner, VolumeInner or SnapshotInner
+     * @return The provisioning state, or null for other types
+     */
+    public static String getProvisioningState(Object resource)
+    {
+        if (resource instanceof NetAppAccountInner)
+            return ((NetAppAccountInner) resource).provisioningState();
+        if (resource instanceof CapacityPoolInner)
+            return ((CapacityPoolInner) resource).provisioningState();
+        if (resource instanceof VolumeInner)
+            return ((VolumeInner) resource).provisioningState();
+        if (resource instanceof SnapshotInner)
+            return ((SnapshotInner) resource).provisioningState();
         return null;
     }
 
@@ -166,74 +430,61 @@ public class CommonSdk
      * @param anfClient Azure NetApp Files Management Client
      * @param resourceId Resource id of the resource that was deleted
      * @param anfClass Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner
+     * @return The resource once it succeeded
      */
-    public static <T> void waitForANFResource(NetAppManagementClient anfClient, String resourceId, Class<T> anfClass)
+    public static <T> T waitForANFResource(NetAppManagementClient anfClient, String resourceId, Class<T> anfClass)
     {
-        waitForANFResource(anfClient, resourceId, 10, 60, anfClass);
+        return waitForANFResource(anfClient, resourceId, 10, 60, anfClass);
     }
 
     /**
-     * This function checks if a specific ANF resource exists
-     * if the resource is not found or if polling reached its maximum retries, it raise an exception.
+     * Waits for an ANF resource to reach the Succeeded provisioning state
      * @param anfClient Azure NetApp Files Management Client
-     * @param resourceId Resource id of the resource that was deleted
-     * @param intervalInSec Time in second that the function will poll to see if the resource has been deleted
-     * @param retries Number of times polling will be performed
+     * @param resourceId Resource id of the resource
+     * @param intervalInSec Time in second between two reads of the resource
+     * @param retries Number of intervals the wait lasts at most
      * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner
+     * @return The resource once it succeeded
+     * @throws RuntimeException If the resource ended up in Failed state
+     * @throws OperationTimeoutException If the resource did not succeed in time, with the last read error if any
      */
-    public static <T> void waitForANFResource(NetAppManagementClient anfClient, String resourceId, int intervalInSec, int retries, Class<T> clazz)
+    public static <T> T waitForANFResource(NetAppManagementClient anfClient, String resourceId, int intervalInSec, int retries, Class<T> clazz)
     {
-        for (int i = 0; i < retries; i++)
-        {
-            Utils.threadSleep(intervalInSec * 1000);
+        return waitForANFResource(anfClient, getParameters(resourceId, clazz), intervalInSec, retries, clazz);
+    }
 
+    /**
+     * Waits for an ANF resource to reach the Succeeded provisioning state
+     * @param anfClient Azure NetApp Files Management Client
+     * @param parameters Parameters of the resource, see getResource
+     * @param intervalInSec Time in second between two reads of the resource
+     * @param retries Number of intervals the wait lasts at most
+     * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner
+     * @return The resource once it succeeded
+     * @throws RuntimeException If the resource ended up in Failed state
+     * @throws OperationTimeoutException If the resource did not succeed in time, with the last read error if any
+     */
+    public static <T> T waitForANFResource(NetAppManagementClient anfClient, String[] parameters, int intervalInSec, int retries, Class<T> clazz)
+    {
+        String resource = String.join("/", parameters);
+        return poll("Waiting for " + resource + " to succeed", ResourceEvents.keyOf(parameters), true, intervalInSec, retries, () -> {
+            Object found;
             try
             {
-                switch (clazz.getSimpleName())
-                {
-                    case "NetAppAccountInner":
-                        NetAppAccountInner account = anfClient.getAccounts().getByResourceGroup(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId));
-                        if (account != null && account.provisioningState().equalsIgnoreCase("Succeeded"))
-                            return;
-
-                        continue;
-
-                    case "CapacityPoolInner":
-                        CapacityPoolInner pool = anfClient.getPools().get(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId),
-                                ResourceUriUtils.getAnfCapacityPool(resourceId));
-                        if (pool != null && pool.provisioningState().equalsIgnoreCase("Succeeded"))
-                            return;
-
-                        continue;
-
-                    case "VolumeInner":
-                        VolumeInner volume = anfClient.getVolumes().get(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId),
-                                ResourceUriUtils.getAnfCapacityPool(resourceId),
-                                ResourceUriUtils.getAnfVolume(resourceId));
-                        if (volume != null && volume.provisioningState().equalsIgnoreCase("Succeeded"))
-                            return;
-
-                        continue;
-
-                    case "SnapshotInner":
-                        SnapshotInner snapshot = anfClient.getSnapshots().get(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId),
-                                ResourceUriUtils.getAnfCapacityPool(resourceId),
-                                ResourceUriUtils.getAnfVolume(resourceId),
-                                ResourceUriUtils.getAnfSnapshot(resourceId));
-                        if (snapshot != null && snapshot.provisioningState().equalsIgnoreCase("Succeeded"))
-                            return;
-                }
+                found = readResource(anfClient, parameters, clazz);
             }
-            catch (Exception e)
+            catch (RuntimeException e)
             {
-                Utils.writeWarningMessage(e.getMessage());
-                break;
+                // the resource may not be visible yet right after its creation was accepted
+                if (isNotFound(e))
+                    return null;
+                throw e;
             }
-        }
+            String state = getProvisioningState(found);
+            if ("Failed".equalsIgnoreCase(state))
+                throw new WaitFailedException(resource + " ended up in Failed state");
+            return "Succeeded".equalsIgnoreCase(state) ? clazz.cast(found) : null;
+        });
     }
 
     /**
@@ -248,67 +499,42 @@ public class CommonSdk
     }
 
     /**
-     * This function checks if a specific ANF resource that was recently deleted stops existing. It breaks the wait
-     * if the resource is not found anymore or if polling reached its maximum retries.
+     * Waits for a recently deleted ANF resource to stop existing
      * @param anfClient Azure NetApp Files Management Client
      * @param resourceId Resource id of the resource that was deleted
-     * @param intervalInSec Time in second that the function will poll to see if the resource has been deleted
-     * @param retries Number of times polling will be performed
+     * @param intervalInSec Time in second between two reads of the resource
+     * @param retries Number of intervals the wait lasts at most
      * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner
+     * @throws OperationTimeoutException If the resource still exists in time, with the last read error if any
      */
     public static <T> void waitForNoANFResource(NetAppManagementClient anfClient, String resourceId, int intervalInSec, int retries, Class<T> clazz)
     {
-        for (int i = 0; i < retries; i++)
-        {
-            Utils.threadSleep(intervalInSec * 1000);
+        waitForNoANFResource(anfClient, getParameters(resourceId, clazz), intervalInSec, retries, clazz);
+    }
 
+    /**
+     * Waits for a recently deleted ANF resource to stop existing
+     * @param anfClient Azure NetApp Files Management Client
+     * @param parameters Parameters of the resource, see getResource
+     * @param intervalInSec Time in second between two reads of the resource
+     * @param retries Number of intervals the wait lasts at most
+     * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner
+     * @throws OperationTimeoutException If the resource still exists in time, with the last read error if any
+     */
+    public static <T> void waitForNoANFResource(NetAppManagementClient anfClient, String[] parameters, int intervalInSec, int retries, Class<T> clazz)
+    {
+        poll("Waiting for " + String.join("/", parameters) + " to be deleted", ResourceEvents.keyOf(parameters), true, intervalInSec, retries, () -> {
             try
             {
-                switch (clazz.getSimpleName())
-                {
-                    case "NetAppAccountInner":
-                        NetAppAccountInner account = anfClient.getAccounts().getByResourceGroup(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId));
-                        if (account == null)
-                            return;
-
-                        continue;
-
-                    case "CapacityPoolInner":
-                        CapacityPoolInner pool = anfClient.getPools().get(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId),
-                                ResourceUriUtils.getAnfCapacityPool(resourceId));
-                        if (pool == null)
-                            return;
-
-                        continue;
-
-                    case "VolumeInner":
-                        VolumeInner volume = anfClient.getVolumes().get(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId),
-                                ResourceUriUtils.getAnfCapacityPool(resourceId),
-                                ResourceUriUtils.getAnfVolume(resourceId));
-                        if (volume == null)
-                            return;
-
-                        continue;
-
-                    case "SnapshotInner":
-                        SnapshotInner snapshot = anfClient.getSnapshots().get(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId),
-                                ResourceUriUtils.getAnfCapacityPool(resourceId),
-                                ResourceUriUtils.getAnfVolume(resourceId),
-                                ResourceUriUtils.getAnfSnapshot(resourceId));
-                        if (snapshot == null)
-                            return;
-                }
+                return readResource(anfClient, parameters, clazz) == null ? Boolean.TRUE : null;
             }
-            catch (Exception e)
+            catch (RuntimeException e)
             {
-                Utils.writeWarningMessage(e.getMessage());
-                break;
+                if (isNotFound(e))
+                    return Boolean.TRUE;
+                throw e;
             }
-        }
+        });
     }
 
     /**
@@ -326,49 +552,154 @@ public class CommonSdk
     }
 
     /**
-     * This function checks the replication status until given status is reached or polling reached its maximum retries.
+     * Waits for the mirror state of a data protection volume to reach the given status
      * @param anfClient Azure NetApp Files Management Client
      * @param resourceGroupName Resource Group Name
      * @param accountName Azure NetApp Files Account name
      * @param poolName Azure NetApp Files Capacity Pool name
      * @param volumeName Azure NetApp Files Volume name
      * @param status The desired replication status
-     * @param intervalInSec Time in second that the function will poll to see if the resource has been deleted
-     * @param retries The amount of retries
+     * @param intervalInSec Time in second between two reads of the replication status
+     * @param retries Number of intervals the wait lasts at most
+     * @throws OperationTimeoutException If the status was not reached in time, with the last read error if any
      */
     public static void waitForReplicationStatus(NetAppManagementClient anfClient, String resourceGroupName, String accountName, String poolName, String volumeName, String status, int intervalInSec, int retries)
     {
-        for (int i = 0; i < retries; i++)
-        {
+        String[] parameters = { resourceGroupName, accountName, poolName, volumeName };
+        poll("Waiting for the replication of " + String.join("/", parameters) + " to be " + status, ResourceEvents.keyOf(parameters), false, intervalInSec, retries, () -> {
+            ReplicationStatusInner replicationStatus = getReplicationStatus(anfClient, resourceGroupName, accountName, poolName, volumeName);
+            return replicationStatus.mirrorState() != null && replicationStatus.mirrorState().toString().equalsIgnoreCase(status) ? Boolean.TRUE : null;
+        });
+    }
+
+    /**
+     * Waits for the replication of a volume to be deleted
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroupName Resource Group Name
+     * @param accountName Azure NetApp Files Account name
+     * @param poolName Azure NetApp Files Capacity Pool name
+     * @param volumeName Azure NetApp Files Volume name
+     * @param intervalInSec Time in second between two reads of the replication status
+     * @param retries Number of intervals the wait lasts at most
+     * @throws OperationTimeoutException If the replication still exists in time
+     */
+    public static void waitForNoReplication(NetAppManagementClient anfClient, String resourceGroupName, String accountName, String poolName, String volumeName, int intervalInSec, int retries)
+    {
+        String[] parameters = { resourceGroupName, accountName, poolName, volumeName };
+        poll("Waiting for the replication of " + String.join("/", parameters) + " to be deleted", ResourceEvents.keyOf(parameters), false, intervalInSec, retries, () -> {
             try
             {
-                ReplicationStatusInner replicationStatus = anfClient.getVolumes().replicationStatus(resourceGroupName, accountName, poolName, volumeName);
-                if (replicationStatus.mirrorState().toString().equalsIgnoreCase(status))
-                    break;
-                Utils.threadSleep(intervalInSec * 1000);
+                getReplicationStatus(anfClient, resourceGroupName, accountName, poolName, volumeName);
+                return null;
             }
-            catch(Exception ex)
+            catch (CircuitBreakerOpenException e)
             {
-                Utils.writeWarningMessage(ex.getMessage());
-                break;
+                throw e;
             }
-        }
+            catch (RuntimeException e)
+            {
+                // a not found exception means the replication does not exist any more
+                if (e.getMessage() != null && e.getMessage().contains("not found"))
+                    return Boolean.TRUE;
+                throw e;
+            }
+        });
     }
 
-    public static void waitForNoReplication(NetAppManagementClient anfClient, String resourceGroupName, String accountName, String poolName, String volumeName, int intervalInSec, int retries)
+    /**
+     * Polls until a condition is met, sleeping between two polls until the resource changes or the interval elapsed.
+     * Read errors are retried, the last one is reported if the deadline passes.
+     * @param what Description of the wait, used in errors
+     * @param key Key of the resource, see ResourceEvents
+     * @param signaled True if the condition is met by a change that raises a resource event, see ResourceEvents.sleep
+     * @param intervalInSec Time in seconds between two polls without resource events
+     * @param retries Number of intervals the wait lasts at most, it ends earlier with the current OperationContext
+     * @param condition Returns the result once the condition is met, null to keep polling
+     * @return The result of the condition
+     * @throws OperationTimeoutException If the deadline passed
+     * @throws java.util.concurrent.CancellationException If the current OperationContext was cancelled
+     */
+    private static <R> R poll(String what, String key, boolean signaled, int intervalInSec, int retries, Supplier<R> condition)
     {
-        for (int i = 0; i < retries; i++)
+        OperationContext context = OperationContext.current().withTimeout(what, intervalInSec * 1000L * retries);
+        try (OperationContext.Scope scope = context.attach())
         {
-            Utils.threadSleep(intervalInSec * 1000);
-            try
+            RuntimeException lastError = null;
+            while (true)
             {
-                anfClient.getVolumes().replicationStatus(resourceGroupName, accountName, poolName, volumeName);
-            }
-            catch(Exception ex)
-            {
-                if (ex.getMessage().contains("not found"))
-                    return; // a not found exception means the replication does not exist any more
+                try
+                {
+                    context.check(what);
+                }
+                catch (OperationTimeoutException e)
+                {
+                    throw lastError == null ? e : new OperationTimeoutException(e.getMessage() + ", last error: " + lastError.getMessage());
+                }
+
+                long version = ResourceEvents.shared().version(key);
+                try
+                {
+                    R result = condition.get();
+                    if (result != null)
+                        return result;
+                    lastError = null;
+                }
+                catch (CircuitBreakerOpenException e)
+                {
+                    // the region is failing, keep waiting until the breaker lets a probe through
+                }
+                catch (WaitFailedException | CancellationException | OperationTimeoutException e)
+                {
+                    throw e;
+                }
+                catch (RuntimeException e)
+                {
+                    if (lastError == null || !String.valueOf(e.getMessage()).equals(lastError.getMessage()))
+                        Utils.writeWarningMessage(what + " - " + e.getMessage());
+                    lastError = e;
+                }
+                ResourceEvents.shared().sleep(key, version, intervalInSec * 1000L, signaled);
             }
         }
     }
+
+    // Ends a wait that can no longer succeed, e.g. a resource in Failed state
+    private static class WaitFailedException extends RuntimeException
+    {
+        private WaitFailedException(String message)
+        {
+            super(message);
+        }
+    }
+
+    /**
+     * Builds the parameters expected by getResource from a resource id
+     * @param resourceId Resource id of the resource
+     * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner
+     * @return List of parameters, see getResource
+     */
+    private static String[] getParameters(String resourceId, Class<?> clazz)
+    {
+        switch (clazz.getSimpleName())
+        {
+            case "NetAppAccountInner":
+                return new String[] {ResourceUriUtils.getResourceGroup(resourceId), ResourceUriUtils.getAnfAccount(resourceId)};
+            case "CapacityPoolInner":
+                return new String[] {ResourceUriUtils.getResourceGroup(resourceId), ResourceUriUtils.getAnfAccount(resourceId),
+                        ResourceUriUtils.getAnfCapacityPool(resourceId)};
+            case "VolumeInner":
+                return new String[] {ResourceUriUtils.getResourceGroup(resourceId), ResourceUriUtils.getAnfAccount(resourceId),
+                        ResourceUriUtils.getAnfCapacityPool(resourceId), ResourceUriUtils.getAnfVolume(resourceId)};
+            case "SnapshotInner":
+                return new String[] {ResourceUriUtils.getResourceGroup(resourceId), ResourceUriUtils.getAnfAccount(resourceId),
+                        ResourceUriUtils.getAnfCapacityPool(resourceId), ResourceUriUtils.getAnfVolume(resourceId), ResourceUriUtils.getAnfSnapshot(resourceId)};
+            default:
+                throw new IllegalArgumentException("Unsupported resource type " + clazz.getSimpleName());
+        }
+    }
+
+    private static boolean isNotFound(Exception e)
+    {
+        return e.getMessage() != null && e.getMessage().contains("Status code 404");
+    }
 }
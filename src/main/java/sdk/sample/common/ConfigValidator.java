@@ -0,0 +1,478 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.azure.resourcemanager.netapp.models.ReplicationSchedule;
+import com.azure.resourcemanager.netapp.models.ServiceLevel;
+import sdk.sample.model.ModelCapacityPool;
+import sdk.sample.model.ModelExportPolicyRule;
+import sdk.sample.model.ModelNetAppAccount;
+import sdk.sample.model.ModelSourceVolume;
+import sdk.sample.model.ModelVolume;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/*
+  Validates the configuration read from appsettings.json before any ARM call, so that mistakes surface in milliseconds
+  instead of as a failed long running operation. Every problem is reported at once with the JSON path of the faulty value.
+  The tree is indexed in a single pass (duplicates and references are resolved there), then the rules of each
+  account, pool and volume run in parallel against that read-only index.
+ */
+public class ConfigValidator
+{
+    public enum Severity { ERROR, WARNING }
+
+    private static final long GIB = 1024L * 1024 * 1024;
+    private static final long TIB = 1024 * GIB;
+    private static final long MIN_VOLUME_SIZE = 100 * GIB;
+    private static final long MAX_VOLUME_SIZE = 100 * TIB;
+    private static final int MAX_EXPORT_POLICY_RULES = 5;
+
+    private static final Pattern GUID = Pattern.compile("^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
+    private static final Pattern SUBNET_ID = Pattern.compile("^/subscriptions/[0-9a-fA-F-]{36}/resourceGroups/[^/]+/providers/Microsoft\\.Network/virtualNetworks/[^/]+/subnets/[^/]+$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ACCOUNT_NAME = Pattern.compile("^[a-zA-Z0-9][a-zA-Z0-9_-]{0,127}$");
+    private static final Pattern POOL_NAME = Pattern.compile("^[a-zA-Z0-9][a-zA-Z0-9_-]{0,63}$");
+    private static final Pattern VOLUME_NAME = Pattern.compile("^[a-zA-Z][a-zA-Z0-9_-]{0,63}$");
+    private static final Pattern CREATION_TOKEN = Pattern.compile("^[a-zA-Z][a-zA-Z0-9-]{0,79}$");
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("^[a-zA-Z0-9][a-zA-Z0-9_-]{0,254}$");
+
+    // Explicit lists, the values() of the SDK enums also contain any value ever parsed with fromString
+    private static final List<ServiceLevel> SERVICE_LEVELS = Arrays.asList(ServiceLevel.STANDARD, ServiceLevel.PREMIUM, ServiceLevel.ULTRA);
+    private static final List<ReplicationSchedule> REPLICATION_SCHEDULES = Arrays.asList(ReplicationSchedule._10MINUTELY, ReplicationSchedule.HOURLY, ReplicationSchedule.DAILY);
+    private static final List<String> PROTOCOLS = Arrays.asList("NFSv3", "NFSv4.1", "CIFS");
+
+    private static final List<Rule<AccountNode>> ACCOUNT_RULES = Arrays.asList(
+            ConfigValidator::checkAccountProperties);
+
+    private static final List<Rule<PoolNode>> POOL_RULES = Arrays.asList(
+            ConfigValidator::checkPoolProperties,
+            ConfigValidator::checkPoolCapacity);
+
+    private static final List<Rule<VolumeNode>> VOLUME_RULES = Arrays.asList(
+            ConfigValidator::checkVolumeProperties,
+            ConfigValidator::checkExportPolicies,
+            ConfigValidator::checkReplication,
+            ConfigValidator::checkSnapshots);
+
+    /**
+     * Validates the whole configuration
+     * @param config Configuration read from appsettings.json
+     * @return Every problem found, errors and warnings, in configuration order
+     */
+    public static List<Issue> validate(ProjectConfiguration config)
+    {
+        List<Issue> issues = new ArrayList<>();
+        if (config.getSubscriptionId() == null || !GUID.matcher(config.getSubscriptionId()).matches())
+            issues.add(new Issue(Severity.ERROR, "$.general.subscriptionId", "must be a subscription id (GUID), found '" + config.getSubscriptionId() + "'"));
+        if (config.getMaxParallelism() < 1)
+            issues.add(new Issue(Severity.ERROR, "$.general.maxParallelism", "must be at least 1"));
+        for (Map.Entry<String, String> invalid : config.getInvalidSettings().entrySet())
+            issues.add(new Issue(Severity.ERROR, "$.general." + invalid.getKey(), invalid.getValue()));
+        if (config.getAutoscaler() != Autoscaler.Mode.OFF && isEmpty(config.getAutoscalerMetricsFile()))
+            issues.add(new Issue(Severity.ERROR, "$.general.autoscalerMetricsFile", "is required when the autoscaler is on"));
+        if (config.getAutoscaler() != Autoscaler.Mode.OFF && config.getAutoscalerIntervalSeconds() < 1)
+            issues.add(new Issue(Severity.ERROR, "$.general.autoscalerIntervalSeconds", "must be at least 1"));
+        if (config.getEventReceiverPort() < 0 || config.getEventReceiverPort() > 65535)
+            issues.add(new Issue(Severity.ERROR, "$.general.eventReceiverPort", "must be between 0 and 65535"));
+        else if (config.getEventReceiverPort() > 0 && (isEmpty(config.getEventReceiverKey()) || config.getEventReceiverKey().startsWith("<")))
+            issues.add(new Issue(Severity.ERROR, "$.general.eventReceiverKey", "must be set to a random secret when the event receiver is on, it listens on all interfaces"));
+        if (config.getServiceWorkers() < 1)
+            issues.add(new Issue(Severity.ERROR, "$.general.serviceWorkers", "must be at least 1"));
+        if (config.getOperationTimeoutMinutes() < 1)
+            issues.add(new Issue(Severity.ERROR, "$.general.operationTimeoutMinutes", "must be at least 1"));
+        if (config.getShutdownDrainSeconds() < 0)
+            issues.add(new Issue(Severity.ERROR, "$.general.shutdownDrainSeconds", "must not be negative"));
+        if (config.getSweepMinAgeHours() < 0)
+            issues.add(new Issue(Severity.ERROR, "$.general.sweepMinAgeHours", "must not be negative"));
+        if (!config.isSweepDryRun() && config.isSweepUntagged())
+            issues.add(new Issue(Severity.WARNING, "$.general.sweepUntagged", "is on, the sweep deletes old enough resources without the owner tag of the sample"));
+        for (Map.Entry<String, Integer> weight : config.getTenantWeights().entrySet())
+        {
+            if (weight.getValue() < 1)
+                issues.add(new Issue(Severity.ERROR, "$.general.tenantWeights", "weight of " + weight.getKey() + " must be at least 1, found " + weight.getValue()));
+        }
+        if (config.getAccounts() == null)
+        {
+            issues.add(new Issue(Severity.ERROR, "$.accounts", "is missing"));
+            return issues;
+        }
+
+        Index index = new Index(config.getAccounts(), issues);
+        issues.addAll(run(index.accounts, ACCOUNT_RULES, index));
+        issues.addAll(run(index.pools, POOL_RULES, index));
+        issues.addAll(run(index.volumes, VOLUME_RULES, index));
+        return issues;
+    }
+
+    /**
+     * Prints the issues, errors first
+     * @param issues Issues returned by validate
+     */
+    public static void print(List<Issue> issues)
+    {
+        for (Issue issue : issues)
+        {
+            if (issue.severity == Severity.ERROR)
+                Utils.writeErrorMessage(issue.toString());
+        }
+        for (Issue issue : issues)
+        {
+            if (issue.severity == Severity.WARNING)
+                Utils.writeWarningMessage(issue.toString());
+        }
+    }
+
+    /**
+     * @return True if any of the issues is an error
+     */
+    public static boolean hasErrors(List<Issue> issues)
+    {
+        return issues.stream().anyMatch(issue -> issue.severity == Severity.ERROR);
+    }
+
+    private static <T> List<Issue> run(List<T> nodes, List<Rule<T>> rules, Index index)
+    {
+        return nodes.parallelStream()
+                .flatMap(node -> {
+                    List<Issue> found = new ArrayList<>();
+                    for (Rule<T> rule : rules)
+                        rule.check(node, index, found);
+                    return found.stream();
+                })
+                .collect(Collectors.toList());
+    }
+
+    private static void checkAccountProperties(AccountNode node, Index index, List<Issue> issues)
+    {
+        ModelNetAppAccount account = node.account;
+        checkName(account.getName(), ACCOUNT_NAME, node.path + ".name", issues);
+        if (isEmpty(account.getResourceGroup()))
+            issues.add(new Issue(Severity.ERROR, node.path + ".resourceGroup", "is missing"));
+        if (isEmpty(account.getLocation()))
+            issues.add(new Issue(Severity.ERROR, node.path + ".location", "is missing"));
+    }
+
+    private static void checkPoolProperties(PoolNode node, Index index, List<Issue> issues)
+    {
+        ModelCapacityPool pool = node.pool;
+        checkName(pool.getName(), POOL_NAME, node.path + ".name", issues);
+        if (SERVICE_LEVELS.stream().noneMatch(level -> level.toString().equalsIgnoreCase(pool.getServiceLevel())))
+            issues.add(new Issue(Severity.ERROR, node.path + ".serviceLevel", "must be one of " + SERVICE_LEVELS + ", found '" + pool.getServiceLevel() + "'"));
+        if (pool.getSize() < PoolPlanner.MIN_POOL_SIZE || pool.getSize() > PoolPlanner.MAX_POOL_SIZE || pool.getSize() % PoolPlanner.POOL_SIZE_INCREMENT != 0)
+            issues.add(new Issue(Severity.ERROR, node.path + ".size", "must be a multiple of 1 TiB (" + PoolPlanner.POOL_SIZE_INCREMENT + ") between 4 TiB and 500 TiB, found " + pool.getSize()));
+        if (pool.getVolumes() != null && pool.getVolumes().size() > PoolPlanner.MAX_VOLUMES_PER_POOL)
+            issues.add(new Issue(Severity.ERROR, node.path + ".volumes", "has " + pool.getVolumes().size() + " volumes, at most " + PoolPlanner.MAX_VOLUMES_PER_POOL + " are allowed in a pool"));
+    }
+
+    private static void checkPoolCapacity(PoolNode node, Index index, List<Issue> issues)
+    {
+        if (node.pool.getVolumes() == null)
+            return;
+
+        long total = 0;
+        for (ModelVolume volume : node.pool.getVolumes())
+            total += volume.getUsageThreshold();
+        if (total > node.pool.getSize())
+            issues.add(new Issue(Severity.ERROR, node.path + ".size", String.format("volumes need %d bytes (%.1f TiB), more than the pool size %d (%.1f TiB)",
+                    total, (double) total / TIB, node.pool.getSize(), (double) node.pool.getSize() / TIB)));
+    }
+
+    private static void checkVolumeProperties(VolumeNode node, Index index, List<Issue> issues)
+    {
+        ModelVolume volume = node.volume;
+        checkName(volume.getName(), VOLUME_NAME, node.path + ".name", issues);
+        if (volume.getUsageThreshold() < MIN_VOLUME_SIZE || volume.getUsageThreshold() > MAX_VOLUME_SIZE)
+            issues.add(new Issue(Severity.ERROR, node.path + ".usageThreshold", "must be between 100 GiB (" + MIN_VOLUME_SIZE + ") and 100 TiB (" + MAX_VOLUME_SIZE + "), found " + volume.getUsageThreshold()));
+        checkName(volume.getCreationToken(), CREATION_TOKEN, node.path + ".creationToken", issues);
+        if (volume.getSubnetId() == null || !SUBNET_ID.matcher(volume.getSubnetId()).matches())
+            issues.add(new Issue(Severity.ERROR, node.path + ".subnetId", "must be a subnet resource id /subscriptions/<id>/resourceGroups/<rg>/providers/Microsoft.Network/virtualNetworks/<vnet>/subnets/<subnet>, found '" + volume.getSubnetId() + "'"));
+        if (volume.getServiceLevel() != null && SERVICE_LEVELS.stream().noneMatch(level -> level.toString().equalsIgnoreCase(volume.getServiceLevel())))
+            issues.add(new Issue(Severity.ERROR, node.path + ".serviceLevel", "must be one of " + SERVICE_LEVELS + ", found '" + volume.getServiceLevel() + "'"));
+        if (!PROTOCOLS.contains(volume.getType()))
+            issues.add(new Issue(Severity.ERROR, node.path + ".type", "must be one of " + PROTOCOLS + ", found '" + volume.getType() + "'"));
+    }
+
+    private static void checkExportPolicies(VolumeNode node, Index index, List<Issue> issues)
+    {
+        List<ModelExportPolicyRule> rules = node.volume.getExportPolicies();
+        if (rules == null)
+        {
+            // createOrUpdateVolume iterates over the rules
+            issues.add(new Issue(Severity.ERROR, node.path + ".exportPolicies", "is missing, use an empty list for no rule"));
+            return;
+        }
+        if (rules.size() > MAX_EXPORT_POLICY_RULES)
+            issues.add(new Issue(Severity.ERROR, node.path + ".exportPolicies", "has " + rules.size() + " rules, at most " + MAX_EXPORT_POLICY_RULES + " are allowed"));
+
+        Set<Integer> indexes = new HashSet<>();
+        for (int i = 0; i < rules.size(); i++)
+        {
+            ModelExportPolicyRule rule = rules.get(i);
+            String path = node.path + ".exportPolicies[" + i + "]";
+            if (rule.getRuleIndex() < 1 || rule.getRuleIndex() > MAX_EXPORT_POLICY_RULES)
+                issues.add(new Issue(Severity.ERROR, path + ".ruleIndex", "must be between 1 and " + MAX_EXPORT_POLICY_RULES + ", found " + rule.getRuleIndex()));
+            else if (!indexes.add(rule.getRuleIndex()))
+                issues.add(new Issue(Severity.ERROR, path + ".ruleIndex", "duplicate rule index " + rule.getRuleIndex()));
+            if (isEmpty(rule.getAllowedClients()))
+                issues.add(new Issue(Severity.ERROR, path + ".allowedClients", "is missing"));
+            if ("NFSv4.1".equals(node.volume.getType()) && !rule.isNfsv4())
+                issues.add(new Issue(Severity.WARNING, path + ".nfsv4", "is false on an NFSv4.1 volume, the rule grants no access"));
+            if ("NFSv3".equals(node.volume.getType()) && !rule.isNfsv3())
+                issues.add(new Issue(Severity.WARNING, path + ".nfsv3", "is false on an NFSv3 volume, the rule grants no access"));
+        }
+    }
+
+    private static void checkReplication(VolumeNode node, Index index, List<Issue> issues)
+    {
+        ModelVolume volume = node.volume;
+        if (volume.getReplicationSchedule() != null)
+        {
+            if (REPLICATION_SCHEDULES.stream().noneMatch(schedule -> schedule.toString().equalsIgnoreCase(volume.getReplicationSchedule())))
+                issues.add(new Issue(Severity.ERROR, node.path + ".replicationSchedule", "must be one of " + REPLICATION_SCHEDULES + ", found '" + volume.getReplicationSchedule() + "'"));
+            if (volume.getSourceVolume() == null)
+                issues.add(new Issue(Severity.WARNING, node.path + ".replicationSchedule", "is ignored, the volume has no sourceVolume"));
+        }
+        if (volume.getSourceVolume() == null)
+            return;
+
+        String path = node.path + ".sourceVolume";
+        if (volume.getSnapshotSource() != null)
+            issues.add(new Issue(Severity.ERROR, node.path, "cannot have both sourceVolume and snapshotSource"));
+        VolumeNode source = resolve(volume.getSourceVolume(), path, node, index, issues);
+        if (source != null && source.account.getLocation() != null && source.account.getLocation().equalsIgnoreCase(node.account.getLocation()))
+            issues.add(new Issue(Severity.WARNING, path, "is in the same region " + node.account.getLocation() + ", cross region replication needs a different region"));
+        if (source != null && source.volume.getSourceVolume() != null)
+            issues.add(new Issue(Severity.ERROR, path, "points at " + source.path + " which is itself a data protection volume"));
+    }
+
+    private static void checkSnapshots(VolumeNode node, Index index, List<Issue> issues)
+    {
+        ModelVolume volume = node.volume;
+        if (volume.getSnapshots() != null)
+        {
+            if (volume.getSourceVolume() != null && !volume.getSnapshots().isEmpty())
+                issues.add(new Issue(Severity.ERROR, node.path + ".snapshots", "snapshots cannot be taken of a data protection volume, take them on its source volume"));
+            Set<String> names = new HashSet<>();
+            for (int i = 0; i < volume.getSnapshots().size(); i++)
+            {
+                String name = volume.getSnapshots().get(i);
+                checkName(name, SNAPSHOT_NAME, node.path + ".snapshots[" + i + "]", issues);
+                if (name != null && !names.add(name.toLowerCase()))
+                    issues.add(new Issue(Severity.ERROR, node.path + ".snapshots[" + i + "]", "duplicate snapshot name '" + name + "'"));
+            }
+        }
+        if (volume.getSnapshotSource() == null)
+            return;
+
+        String path = node.path + ".snapshotSource";
+        if (isEmpty(volume.getSnapshotSource().getSnapshotName()))
+            issues.add(new Issue(Severity.ERROR, path + ".snapshotName", "is missing"));
+        VolumeNode source = resolve(volume.getSnapshotSource(), path, node, index, issues);
+        if (source == null || isEmpty(volume.getSnapshotSource().getSnapshotName()))
+            return;
+
+        // The snapshot is taken on the volume itself or, for a data protection volume, on its source volume
+        VolumeNode snapshotOwner = source;
+        if (source.volume.getSourceVolume() != null)
+            snapshotOwner = index.volumesByKey.get(key(source.volume.getSourceVolume()));
+        if (snapshotOwner != null && !containsIgnoreCase(snapshotOwner.volume.getSnapshots(), volume.getSnapshotSource().getSnapshotName()))
+            issues.add(new Issue(Severity.WARNING, path + ".snapshotName", "'" + volume.getSnapshotSource().getSnapshotName() + "' is not taken by this configuration (" + snapshotOwner.path + ".snapshots), it must exist already"));
+    }
+
+    /**
+     * Resolves a reference to another volume. Volumes of accounts outside of appsettings.json are expected to exist and are not checked.
+     * @return The referenced volume, or null if it is not part of the configuration
+     */
+    private static VolumeNode resolve(ModelSourceVolume reference, String path, VolumeNode node, Index index, List<Issue> issues)
+    {
+        if (isEmpty(reference.getResourceGroup()) || isEmpty(reference.getAccountName()) || isEmpty(reference.getPoolName()) || isEmpty(reference.getVolumeName()))
+        {
+            issues.add(new Issue(Severity.ERROR, path, "must set resourceGroup, accountName, poolName and volumeName"));
+            return null;
+        }
+
+        VolumeNode source = index.volumesByKey.get(key(reference));
+        if (source == node)
+        {
+            issues.add(new Issue(Severity.ERROR, path, "points at the volume itself"));
+            return null;
+        }
+        if (source == null && index.accountKeys.contains((reference.getResourceGroup() + "/" + reference.getAccountName()).toLowerCase()))
+            issues.add(new Issue(Severity.ERROR, path, "points at " + String.join("/", reference.getResourceGroup(), reference.getAccountName(), reference.getPoolName(), reference.getVolumeName())
+                    + " which is not defined in its account"));
+        return source;
+    }
+
+    private static void checkName(String value, Pattern pattern, String path, List<Issue> issues)
+    {
+        if (isEmpty(value))
+            issues.add(new Issue(Severity.ERROR, path, "is missing"));
+        else if (!pattern.matcher(value).matches())
+            issues.add(new Issue(Severity.ERROR, path, "'" + value + "' does not match " + pattern.pattern()));
+    }
+
+    private static boolean containsIgnoreCase(List<String> values, String value)
+    {
+        return values != null && values.stream().anyMatch(value::equalsIgnoreCase);
+    }
+
+    private static boolean isEmpty(String value)
+    {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static String key(ModelSourceVolume reference)
+    {
+        return String.join("/", reference.getResourceGroup(), reference.getAccountName(), reference.getPoolName(), reference.getVolumeName()).toLowerCase();
+    }
+
+    // A problem found in the configuration
+    public static class Issue
+    {
+        private final Severity severity;
+        private final String path;
+        private final String message;
+
+        public Issue(Severity severity, String path, String message)
+        {
+            this.severity = severity;
+            this.path = path;
+            this.message = message;
+        }
+
+        public Severity getSeverity() {
+            return severity;
+        }
+
+        // JSON path of the faulty value, e.g. $.accounts[0].capacityPools[1].volumes[2].usageThreshold
+        public String getPath() {
+            return path;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString()
+        {
+            return path + ": " + message;
+        }
+    }
+
+    // A validation rule of one kind of node, adding the problems it finds to the list
+    private interface Rule<T>
+    {
+        void check(T node, Index index, List<Issue> issues);
+    }
+
+    /*
+      Flattened configuration with its JSON paths. Built in a single pass that also reports duplicates,
+      which need to see the whole tree, then only read by the rules.
+     */
+    private static class Index
+    {
+        private final List<AccountNode> accounts = new ArrayList<>();
+        private final List<PoolNode> pools = new ArrayList<>();
+        private final List<VolumeNode> volumes = new ArrayList<>();
+        private final Map<String, VolumeNode> volumesByKey = new HashMap<>();
+        private final Set<String> accountKeys = new HashSet<>();
+
+        private Index(List<ModelNetAppAccount> modelAccounts, List<Issue> issues)
+        {
+            Map<String, String> accountPaths = new HashMap<>();
+            Map<String, String> creationTokenPaths = new HashMap<>();
+            for (int a = 0; a < modelAccounts.size(); a++)
+            {
+                ModelNetAppAccount account = modelAccounts.get(a);
+                String accountPath = "$.accounts[" + a + "]";
+                accounts.add(new AccountNode(account, accountPath));
+                String accountKey = (account.getResourceGroup() + "/" + account.getName()).toLowerCase();
+                accountKeys.add(accountKey);
+                duplicate(accountPaths, accountKey, accountPath + ".name", "account " + account.getName(), issues);
+
+                if (account.getCapacityPools() == null)
+                    continue;
+                Map<String, String> poolPaths = new HashMap<>();
+                for (int p = 0; p < account.getCapacityPools().size(); p++)
+                {
+                    ModelCapacityPool pool = account.getCapacityPools().get(p);
+                    String poolPath = accountPath + ".capacityPools[" + p + "]";
+                    pools.add(new PoolNode(pool, poolPath));
+                    duplicate(poolPaths, String.valueOf(pool.getName()).toLowerCase(), poolPath + ".name", "capacity pool " + pool.getName(), issues);
+
+                    if (pool.getVolumes() == null)
+                        continue;
+                    for (int v = 0; v < pool.getVolumes().size(); v++)
+                    {
+                        ModelVolume volume = pool.getVolumes().get(v);
+                        VolumeNode node = new VolumeNode(account, volume, poolPath + ".volumes[" + v + "]");
+                        volumes.add(node);
+                        String volumeKey = (accountKey + "/" + pool.getName() + "/" + volume.getName()).toLowerCase();
+                        if (volumesByKey.putIfAbsent(volumeKey, node) != null)
+                            issues.add(new Issue(Severity.ERROR, node.path + ".name", "duplicate volume " + volume.getName() + ", also defined at " + volumesByKey.get(volumeKey).path));
+                        if (volume.getCreationToken() != null)
+                            duplicate(creationTokenPaths, (account.getLocation() + "/" + volume.getCreationToken()).toLowerCase(), node.path + ".creationToken",
+                                    "creationToken " + volume.getCreationToken() + " in " + account.getLocation(), issues);
+                    }
+                }
+            }
+        }
+
+        private static void duplicate(Map<String, String> paths, String key, String path, String description, List<Issue> issues)
+        {
+            String first = paths.putIfAbsent(key, path);
+            if (first != null)
+                issues.add(new Issue(Severity.ERROR, path, "duplicate " + description + ", also defined at " + first));
+        }
+    }
+
+    private static class AccountNode
+    {
+        private final ModelNetAppAccount account;
+        private final String path;
+
+        private AccountNode(ModelNetAppAccount account, String path)
+        {
+            this.account = account;
+            this.path = path;
+        }
+    }
+
+    private static class PoolNode
+    {
+        private final ModelCapacityPool pool;
+        private final String path;
+
+        private PoolNode(ModelCapacityPool pool, String path)
+        {
+            this.pool = pool;
+            this.path = path;
+        }
+    }
+
+    private static class VolumeNode
+    {
+        private final ModelNetAppAccount account;
+        private final ModelVolume volume;
+        private final String path;
+
+        private VolumeNode(ModelNetAppAccount account, ModelVolume volume, String path)
+        {
+            this.account = account;
+            this.volume = volume;
+            this.path = path;
+        }
+    }
+}
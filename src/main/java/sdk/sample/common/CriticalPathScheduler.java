@@ -0,0 +1,509 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Runs a graph of provisioning tasks on a bounded number of workers.
+  Whenever a worker is free, the ready task with the longest estimated path to the end of the graph (its rank) is started first,
+  so long chains such as source volume -> destination volume -> authorize replication -> Mirrored start as early as possible
+  instead of waiting behind independent short tasks.
+  Ready tasks are queued per tenant (resource group): the next task comes from the tenant running the fewest tasks for its weight,
+  so a resource group with thousands of volumes does not hold every worker while a small one waits. Tasks then take a permit of
+  the process wide FairShare budget, shared the same way with the schedulers of other provisioning jobs.
+  Tasks rejected by an open circuit breaker are postponed instead of failing, so workers keep serving healthy regions.
+ */
+public class CriticalPathScheduler
+{
+    // Ready tasks are ordered by rank, longest remaining path first
+    private static final Comparator<ProvisioningTask> PRIORITY = Comparator.comparingLong(ProvisioningTask::getRank).reversed();
+
+    private final List<ProvisioningTask> tasks = new ArrayList<>();
+
+    private final LroTimings timings;
+
+    private final int parallelism;
+
+    private final Object lock = new Object();
+
+    private final Map<ProvisioningTask, Integer> pendingDependencies = new HashMap<>();
+
+    private final FairShare fairShare;
+
+    private final ReadyQueues ready;
+
+    // When each ready task became ready, to measure how long it waited to start
+    private final Map<ProvisioningTask, Long> readySince = new HashMap<>();
+
+    // Number of times a task may be postponed because the circuit breaker of its region is open
+    private static final int MAX_DEFERRALS = 20;
+
+    private final Map<ProvisioningTask, Integer> deferrals = new HashMap<>();
+
+    private int running;
+
+    // Tasks postponed because their region is failing, they are added back to the ready queue once the breaker may let them through
+    private int deferred;
+
+    // First failure of a task, an Error included, rethrown once the running tasks are done
+    private Throwable failure;
+
+    // Span of the scheduler's caller, parent of the task spans, and the span of each finished task to link its dependents to
+    private Tracer.Span phaseSpan;
+
+    private final Map<ProvisioningTask, Tracer.Span> taskSpans = new HashMap<>();
+
+    // OperationContext of the scheduler's caller, attached to the workers so its deadline and cancellation reach every task
+    private OperationContext context;
+
+    // Order in which tasks finished, used to find the critical path actually followed
+    private final Map<ProvisioningTask, Long> finishOrder = new HashMap<>();
+
+    /**
+     * @param timings Timing history used to estimate task durations and updated with the observed ones
+     * @param parallelism Maximum number of tasks running at the same time
+     */
+    public CriticalPathScheduler(LroTimings timings, int parallelism)
+    {
+        this(timings, parallelism, FairShare.shared());
+    }
+
+    /**
+     * @param timings Timing history used to estimate task durations and updated with the observed ones
+     * @param parallelism Maximum number of tasks running at the same time
+     * @param fairShare Budget of running tasks shared between tenants and with other schedulers
+     */
+    public CriticalPathScheduler(LroTimings timings, int parallelism, FairShare fairShare)
+    {
+        this.timings = timings;
+        this.parallelism = Math.max(1, parallelism);
+        this.fairShare = fairShare;
+        this.ready = new ReadyQueues(fairShare);
+    }
+
+    /**
+     * Adds a task to the graph, its dependencies must be added as well
+     * @param task Task to be added
+     * @return The task that was added
+     */
+    public ProvisioningTask add(ProvisioningTask task)
+    {
+        tasks.add(task);
+        return task;
+    }
+
+    /**
+     * Runs all tasks respecting their dependencies and prints the predicted versus the actual makespan.
+     * If a task fails its dependents are not started, running tasks are allowed to finish and the first error is rethrown.
+     */
+    public void run()
+    {
+        if (tasks.isEmpty())
+            return;
+
+        List<ProvisioningTask> order = topologicalOrder();
+        computeRanks(order);
+
+        long predicted = predictMakespan(order);
+        Utils.writeConsoleMessage("Scheduling " + tasks.size() + " task(s) on " + parallelism + " worker(s), critical path: "
+                + formatDuration(order.stream().mapToLong(ProvisioningTask::getRank).max().orElse(0))
+                + ", predicted makespan: " + formatDuration(predicted));
+
+        for (ProvisioningTask task : tasks)
+        {
+            pendingDependencies.put(task, task.getDependencies().size());
+            if (task.getDependencies().isEmpty())
+                makeReady(task);
+        }
+
+        phaseSpan = Tracer.shared().current();
+        context = OperationContext.current();
+        long start = System.currentTimeMillis();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor();
+        try
+        {
+            synchronized (lock)
+            {
+                while (true)
+                {
+                    while (failure == null && running < parallelism && !ready.isEmpty())
+                    {
+                        ProvisioningTask task = ready.poll();
+                        running++;
+                        workers.execute(() -> execute(task, retries));
+                    }
+
+                    if (running == 0 && deferred == 0 && (failure != null || ready.isEmpty()))
+                        break;
+
+                    lock.wait();
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for provisioning tasks", e);
+        }
+        finally
+        {
+            workers.shutdownNow();
+            retries.shutdownNow();
+            synchronized (lock)
+            {
+                // Ready tasks left behind by a failure never start
+                for (ProvisioningTask task : readySince.keySet())
+                    fairShare.dropped(task.getTenant());
+                readySince.clear();
+            }
+            timings.save();
+        }
+
+        long actual = System.currentTimeMillis() - start;
+        Utils.writeConsoleMessage("Predicted makespan: " + formatDuration(predicted) + ", actual makespan: " + formatDuration(actual));
+        if (Tracer.shared().isEnabled())
+            markCriticalPath();
+
+        if (failure instanceof Error)
+            throw (Error) failure;
+        if (failure != null)
+            throw (RuntimeException) failure;
+    }
+
+    // Queues a task whose dependencies are all done, called with the lock held
+    private void makeReady(ProvisioningTask task)
+    {
+        ready.add(task);
+        readySince.put(task, System.currentTimeMillis());
+        fairShare.queued(task.getTenant());
+    }
+
+    private void execute(ProvisioningTask task, ScheduledExecutorService retries)
+    {
+        long since;
+        synchronized (lock)
+        {
+            since = readySince.remove(task);
+        }
+        try (OperationContext.Scope scope = context.attach();
+             FairShare.Permit permit = fairShare.acquire(task.getTenant(), since))
+        {
+            perform(task, retries);
+        }
+        catch (InterruptedException e)
+        {
+            // Only happens once the scheduler stopped waiting for its workers
+            Thread.currentThread().interrupt();
+            synchronized (lock)
+            {
+                running--;
+                ready.finished(task);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void perform(ProvisioningTask task, ScheduledExecutorService retries)
+    {
+        long start = System.currentTimeMillis();
+        Throwable error = null;
+        boolean performed = false;
+        Tracer.Span span = Tracer.shared().start(task.getName(), "task", phaseSpan)
+                .arg("operation", task.getOperation())
+                .arg("estimateMillis", task.getEstimate())
+                .arg("rankMillis", task.getRank());
+        if (Tracer.shared().isEnabled())
+        {
+            synchronized (lock)
+            {
+                for (ProvisioningTask dependency : task.getDependencies())
+                    span.follows(taskSpans.get(dependency));
+            }
+        }
+        try
+        {
+            // Tasks that did not start before a cancellation or the deadline fail without issuing any call
+            context.check(task.getName());
+            performed = task.getAction().getAsBoolean();
+            span.arg("performed", performed);
+        }
+        catch (Throwable e)
+        {
+            // Errors too, otherwise the task would never be counted as finished and run would wait forever
+            error = e;
+            span.arg("error", e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        finally
+        {
+            span.close();
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        if (performed)
+            timings.record(task.getOperation(), elapsed);
+
+        synchronized (lock)
+        {
+            running--;
+            ready.finished(task);
+            if (error instanceof CircuitBreakerOpenException && deferrals.merge(task, 1, Integer::sum) <= MAX_DEFERRALS)
+            {
+                // Free the worker for tasks in healthy regions and try this one again later
+                long delay = ((CircuitBreakerOpenException) error).getRetryAfterMillis();
+                Utils.writeWarningMessage("Postponing " + task + " for " + (delay / 1000) + "s: " + error.getMessage());
+                deferred++;
+                retries.schedule(() -> {
+                    synchronized (lock)
+                    {
+                        deferred--;
+                        makeReady(task);
+                        lock.notifyAll();
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+            else if (error != null)
+            {
+                if (failure == null)
+                    failure = error;
+            }
+            else
+            {
+                taskSpans.put(task, span);
+                finishOrder.put(task, (long) finishOrder.size());
+                for (ProvisioningTask dependent : task.getDependents())
+                {
+                    int remaining = pendingDependencies.merge(dependent, -1, Integer::sum);
+                    if (remaining == 0)
+                        makeReady(dependent);
+                }
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Walks back from the task that finished last through the dependency that finished last, flags those task spans
+     * and prints the chain: the path that actually determined the makespan
+     */
+    private void markCriticalPath()
+    {
+        ProvisioningTask task = null;
+        for (ProvisioningTask candidate : finishOrder.keySet())
+        {
+            if (task == null || finishOrder.get(candidate) > finishOrder.get(task))
+                task = candidate;
+        }
+
+        List<String> path = new ArrayList<>();
+        while (task != null)
+        {
+            taskSpans.get(task).arg("criticalPath", true);
+            path.add(0, task.getName());
+
+            ProvisioningTask latest = null;
+            for (ProvisioningTask dependency : task.getDependencies())
+            {
+                if (finishOrder.containsKey(dependency) && (latest == null || finishOrder.get(dependency) > finishOrder.get(latest)))
+                    latest = dependency;
+            }
+            task = latest;
+        }
+        if (!path.isEmpty())
+            Utils.writeConsoleMessage("Actual critical path: " + String.join(" -> ", path));
+        Tracer.shared().printUtilization("task");
+    }
+
+    /**
+     * Sorts tasks so every task comes after all of its dependencies
+     * @return Tasks in topological order
+     */
+    private List<ProvisioningTask> topologicalOrder()
+    {
+        Set<ProvisioningTask> added = new HashSet<>(tasks);
+        Map<ProvisioningTask, Integer> inDegree = new HashMap<>();
+        Deque<ProvisioningTask> queue = new ArrayDeque<>();
+        for (ProvisioningTask task : tasks)
+        {
+            for (ProvisioningTask dependency : task.getDependencies())
+            {
+                if (!added.contains(dependency))
+                    throw new IllegalStateException("Task " + task + " depends on " + dependency + " which was not added to the scheduler");
+            }
+            inDegree.put(task, task.getDependencies().size());
+            if (task.getDependencies().isEmpty())
+                queue.add(task);
+        }
+
+        List<ProvisioningTask> order = new ArrayList<>(tasks.size());
+        while (!queue.isEmpty())
+        {
+            ProvisioningTask task = queue.poll();
+            order.add(task);
+            for (ProvisioningTask dependent : task.getDependents())
+            {
+                if (inDegree.merge(dependent, -1, Integer::sum) == 0)
+                    queue.add(dependent);
+            }
+        }
+
+        if (order.size() != tasks.size())
+            throw new IllegalStateException("Provisioning tasks contain a dependency cycle");
+
+        return order;
+    }
+
+    /**
+     * Estimates each task's duration and computes its rank, i.e. its own duration plus the longest rank of its dependents
+     * @param order Tasks in topological order
+     */
+    private void computeRanks(List<ProvisioningTask> order)
+    {
+        for (int i = order.size() - 1; i >= 0; i--)
+        {
+            ProvisioningTask task = order.get(i);
+            task.setEstimate(timings.estimate(task.getOperation()));
+
+            long longestDependent = 0;
+            for (ProvisioningTask dependent : task.getDependents())
+                longestDependent = Math.max(longestDependent, dependent.getRank());
+
+            task.setRank(task.getEstimate() + longestDependent);
+        }
+    }
+
+    /**
+     * Simulates the scheduling policy with the estimated durations
+     * @param order Tasks in topological order
+     * @return Predicted makespan in milliseconds
+     */
+    private long predictMakespan(List<ProvisioningTask> order)
+    {
+        Map<ProvisioningTask, Integer> pending = new HashMap<>();
+        ReadyQueues simulatedReady = new ReadyQueues(fairShare);
+        for (ProvisioningTask task : order)
+        {
+            pending.put(task, task.getDependencies().size());
+            if (task.getDependencies().isEmpty())
+                simulatedReady.add(task);
+        }
+
+        // Running tasks ordered by their simulated finish time
+        PriorityQueue<long[]> finishing = new PriorityQueue<>(Comparator.comparingLong(entry -> entry[0]));
+        List<ProvisioningTask> started = new ArrayList<>();
+        long now = 0;
+        while (!simulatedReady.isEmpty() || !finishing.isEmpty())
+        {
+            while (finishing.size() < parallelism && !simulatedReady.isEmpty())
+            {
+                ProvisioningTask task = simulatedReady.poll();
+                started.add(task);
+                finishing.add(new long[] {now + task.getEstimate(), started.size() - 1});
+            }
+
+            long[] next = finishing.poll();
+            now = next[0];
+            ProvisioningTask finished = started.get((int) next[1]);
+            simulatedReady.finished(finished);
+            for (ProvisioningTask dependent : finished.getDependents())
+            {
+                if (pending.merge(dependent, -1, Integer::sum) == 0)
+                    simulatedReady.add(dependent);
+            }
+        }
+        return now;
+    }
+
+    /*
+      Ready tasks by tenant, each ordered by rank. The next task comes from the tenant running the fewest tasks for its weight,
+      ties going to the task with the longest remaining path
+     */
+    private static class ReadyQueues
+    {
+        private final FairShare fairShare;
+        private final Map<String, PriorityQueue<ProvisioningTask>> queues = new HashMap<>();
+        private final Map<String, Integer> running = new HashMap<>();
+        private int size;
+
+        private ReadyQueues(FairShare fairShare)
+        {
+            this.fairShare = fairShare;
+        }
+
+        private void add(ProvisioningTask task)
+        {
+            queues.computeIfAbsent(tenantOf(task), k -> new PriorityQueue<>(PRIORITY)).add(task);
+            size++;
+        }
+
+        private boolean isEmpty()
+        {
+            return size == 0;
+        }
+
+        // Removes the next task to start and counts it as running
+        private ProvisioningTask poll()
+        {
+            String best = null;
+            ProvisioningTask bestTask = null;
+            long bestRunning = 0;
+            long bestWeight = 1;
+            for (Map.Entry<String, PriorityQueue<ProvisioningTask>> entry : queues.entrySet())
+            {
+                ProvisioningTask head = entry.getValue().peek();
+                if (head == null)
+                    continue;
+                long tenantRunning = running.getOrDefault(entry.getKey(), 0);
+                long weight = fairShare.getWeight(head.getTenant());
+                // running / weight compared without division
+                long difference = tenantRunning * bestWeight - bestRunning * weight;
+                if (best == null || difference < 0 || (difference == 0 && head.getRank() > bestTask.getRank()))
+                {
+                    best = entry.getKey();
+                    bestTask = head;
+                    bestRunning = tenantRunning;
+                    bestWeight = weight;
+                }
+            }
+            if (best == null)
+                return null;
+            queues.get(best).poll();
+            running.merge(best, 1, Integer::sum);
+            size--;
+            return bestTask;
+        }
+
+        private void finished(ProvisioningTask task)
+        {
+            running.merge(tenantOf(task), -1, Integer::sum);
+        }
+
+        private static String tenantOf(ProvisioningTask task)
+        {
+            return task.getTenant() == null ? "" : task.getTenant().toLowerCase();
+        }
+    }
+
+    private static String formatDuration(long millis)
+    {
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(millis);
+        return String.format("%02d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
+    }
+}
@@ -0,0 +1,215 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+  Embedded HTTP endpoint for an Event Grid webhook subscription on the resource group(s), Event Grid schema:
+  - the subscription validation handshake is answered with the validation code;
+  - Microsoft.Resources.ResourceWriteSuccess, ResourceDeleteSuccess and ResourceActionSuccess events wake up the waits on their
+    resource through ResourceEvents, other events are ignored.
+  The subscription endpoint must be https://<public host>/events?key=<key>, with the key set in appsettings.json, and TLS terminated
+  in front of this receiver (e.g. by a tunnel or a reverse proxy).
+ */
+public class EventReceiver
+{
+    public static final String PATH = "/events";
+
+    private static final String VALIDATION_EVENT = "Microsoft.EventGrid.SubscriptionValidationEvent";
+    private static final String[] RESOURCE_EVENTS = {
+            "Microsoft.Resources.ResourceWriteSuccess",
+            "Microsoft.Resources.ResourceDeleteSuccess",
+            "Microsoft.Resources.ResourceActionSuccess" };
+
+    private final ResourceEvents events;
+    private final byte[] key;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param events Where received events are published, usually ResourceEvents.shared()
+     * @param key Value expected in the key query parameter, required since the receiver listens on all interfaces
+     */
+    public EventReceiver(ResourceEvents events, String key)
+    {
+        if (key == null || key.isEmpty())
+            throw new IllegalArgumentException("The event receiver requires a key");
+        this.events = events;
+        this.key = key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts listening and enables the events
+     * @param port Port to listen on, 0 for any free port
+     * @return The port listened on
+     */
+    public synchronized int start(int port)
+    {
+        try
+        {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Unable to start the event receiver on port " + port + " - " + e.getMessage(), e);
+        }
+        server.createContext(PATH, this::handle);
+        executor = Executors.newFixedThreadPool(2);
+        server.setExecutor(executor);
+        server.start();
+        events.setEnabled(true);
+        Utils.writeConsoleMessage("Receiving resource events on port " + server.getAddress().getPort() + ", path " + PATH);
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops listening, waits go back to polling
+     */
+    public synchronized void stop()
+    {
+        if (server == null)
+            return;
+        events.setEnabled(false);
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod()))
+            {
+                respond(exchange, 405, "");
+                return;
+            }
+            String requestKey = getQueryParameter(exchange.getRequestURI().getRawQuery(), "key");
+            // Constant-time comparison, the response time tells nothing about how much of the key matched
+            if (requestKey == null || !MessageDigest.isEqual(key, requestKey.getBytes(StandardCharsets.UTF_8)))
+            {
+                respond(exchange, 401, "");
+                return;
+            }
+
+            JsonElement body;
+            try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))
+            {
+                body = JsonParser.parseReader(reader);
+            }
+            catch (RuntimeException e)
+            {
+                respond(exchange, 400, "");
+                return;
+            }
+
+            JsonArray batch = body.isJsonArray() ? body.getAsJsonArray() : new JsonArray();
+            if (body.isJsonObject())
+                batch.add(body);
+            for (JsonElement element : batch)
+            {
+                if (!element.isJsonObject())
+                    continue;
+                JsonObject event = element.getAsJsonObject();
+                String type = getString(event, "eventType");
+                JsonObject data = event.has("data") && event.get("data").isJsonObject() ? event.getAsJsonObject("data") : new JsonObject();
+                if (VALIDATION_EVENT.equals(type))
+                {
+                    JsonObject response = new JsonObject();
+                    response.addProperty("validationResponse", getString(data, "validationCode"));
+                    respond(exchange, 200, response.toString());
+                    Utils.writeConsoleMessage("Event Grid subscription validated");
+                    return;
+                }
+                if (!isResourceEvent(type))
+                    continue;
+
+                String resourceId = getString(data, "resourceUri") != null ? getString(data, "resourceUri") : getString(event, "subject");
+                String resourceKey = ResourceEvents.keyOf(resourceId);
+                if (resourceKey != null)
+                    events.publish(resourceKey);
+            }
+            respond(exchange, 200, "");
+        }
+        catch (RuntimeException e)
+        {
+            Utils.writeWarningMessage("Unable to handle a resource event - " + e.getMessage());
+            respond(exchange, 500, "");
+        }
+    }
+
+    // Decoded value of a query parameter, null if it is missing or malformed
+    private static String getQueryParameter(String rawQuery, String name)
+    {
+        if (rawQuery == null)
+            return null;
+        for (String parameter : rawQuery.split("&"))
+        {
+            int equals = parameter.indexOf('=');
+            if (equals < 0 || !parameter.substring(0, equals).equals(name))
+                continue;
+            try
+            {
+                return URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+            }
+            catch (UnsupportedEncodingException | IllegalArgumentException e)
+            {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isResourceEvent(String type)
+    {
+        for (String resourceEvent : RESOURCE_EVENTS)
+        {
+            if (resourceEvent.equals(type))
+                return true;
+        }
+        return false;
+    }
+
+    private static String getString(JsonObject object, String name)
+    {
+        JsonElement value = object.get(name);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0)
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0)
+        {
+            try (OutputStream output = exchange.getResponseBody())
+            {
+                output.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+}
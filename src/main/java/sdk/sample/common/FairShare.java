@@ -0,0 +1,234 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+  Process wide budget of provisioning steps running at the same time, shared fairly between tenants (resource groups).
+  A step waits for a permit when the budget is used up. A released permit goes to the waiting tenant that runs the fewest steps
+  for its weight, so a resource group with a few volumes gets its share right away even while another one has thousands queued,
+  and a lone tenant still uses the whole budget.
+  Per tenant, the number of ready steps (queued), running steps, started steps and the time steps waited from ready to started
+  are published as tenant.<resource group>.* metrics.
+ */
+public class FairShare
+{
+    private static volatile FairShare shared = new FairShare(Integer.MAX_VALUE, Collections.emptyMap());
+
+    private final int permits;
+    private final Map<String, Integer> weights;
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+    private int inUse;
+
+    // Arrival order of the waiters, breaks the ties between tenants running as many steps for their weight
+    private long arrivals;
+
+    /**
+     * @param permits Number of steps running at the same time across all tenants
+     * @param weights Weight by resource group, lower case, 1 for resource groups not listed
+     */
+    public FairShare(int permits, Map<String, Integer> weights)
+    {
+        this.permits = Math.max(1, permits);
+        this.weights = new HashMap<>(weights);
+    }
+
+    // Instance used by provisioning, unlimited until configured
+    public static FairShare shared()
+    {
+        return shared;
+    }
+
+    /**
+     * Replaces the shared budget, to be called before provisioning starts
+     * @param permits Number of steps running at the same time across all tenants
+     * @param weights Weight by resource group, lower case, 1 for resource groups not listed
+     */
+    public static void configure(int permits, Map<String, Integer> weights)
+    {
+        shared = new FairShare(permits, weights);
+    }
+
+    public int getPermits() {
+        return permits;
+    }
+
+    /**
+     * Returns the weight of a tenant
+     * @param tenant Resource group
+     * @return Its weight, 1 if none was configured
+     */
+    public int getWeight(String tenant)
+    {
+        return weights.getOrDefault(normalize(tenant), 1);
+    }
+
+    /**
+     * Counts a step of a tenant as ready, it stays queued until acquire grants it a permit
+     * @param tenant Resource group
+     */
+    public void queued(String tenant)
+    {
+        synchronized (this)
+        {
+            tenant(tenant).queued++;
+        }
+    }
+
+    /**
+     * Stops counting a queued step of a tenant, e.g. when provisioning failed before the step started
+     * @param tenant Resource group
+     */
+    public void dropped(String tenant)
+    {
+        synchronized (this)
+        {
+            tenant(tenant).queued--;
+        }
+    }
+
+    /**
+     * Waits for a permit, granted to the waiting tenant running the fewest steps for its weight, then in arrival order
+     * @param tenant Resource group
+     * @param readySince When the step became ready, System.currentTimeMillis(), to measure its wait
+     * @return The permit, to be closed when the step finished
+     * @throws InterruptedException If interrupted while waiting, the step is no longer queued
+     */
+    public Permit acquire(String tenant, long readySince) throws InterruptedException
+    {
+        Tenant state;
+        long waited;
+        synchronized (this)
+        {
+            Waiter waiter = new Waiter(arrivals++);
+            state = tenant(tenant);
+            state.waiters.add(waiter);
+            try
+            {
+                while (inUse >= permits || next() != waiter)
+                    wait();
+            }
+            catch (InterruptedException e)
+            {
+                state.waiters.remove(waiter);
+                state.queued--;
+                notifyAll();
+                throw e;
+            }
+            state.waiters.remove(waiter);
+            state.queued--;
+            state.running++;
+            inUse++;
+            waited = System.currentTimeMillis() - readySince;
+            state.maxWaitMillis = Math.max(state.maxWaitMillis, waited);
+            // Another tenant may be next in line for a free permit
+            notifyAll();
+        }
+        Metrics.increment("tenant." + state.name + ".started");
+        Metrics.add("tenant." + state.name + ".waitMillis", waited);
+        return new Permit(state);
+    }
+
+    // The first waiter of the waiting tenant with the fewest running steps for its weight, the earliest one on a tie
+    private Waiter next()
+    {
+        Tenant best = null;
+        for (Tenant tenant : tenants.values())
+        {
+            if (tenant.waiters.isEmpty())
+                continue;
+            if (best == null)
+            {
+                best = tenant;
+                continue;
+            }
+            // running / weight compared without division
+            long share = (long) tenant.running * best.weight;
+            long bestShare = (long) best.running * tenant.weight;
+            if (share < bestShare || (share == bestShare && tenant.waiters.peekFirst().arrival < best.waiters.peekFirst().arrival))
+                best = tenant;
+        }
+        return best == null ? null : best.waiters.peekFirst();
+    }
+
+    private synchronized void release(Tenant tenant)
+    {
+        tenant.running--;
+        inUse--;
+        notifyAll();
+    }
+
+    private Tenant tenant(String name)
+    {
+        String key = normalize(name);
+        return tenants.computeIfAbsent(key, k -> {
+            Tenant tenant = new Tenant(k, getWeight(k));
+            Metrics.gauge("tenant." + k + ".queued", () -> tenant.queued);
+            Metrics.gauge("tenant." + k + ".running", () -> tenant.running);
+            Metrics.gauge("tenant." + k + ".maxWaitMillis", () -> tenant.maxWaitMillis);
+            return tenant;
+        });
+    }
+
+    private static String normalize(String tenant)
+    {
+        return tenant == null ? "default" : tenant.toLowerCase();
+    }
+
+    // Right to run one step, released on close
+    public class Permit implements AutoCloseable
+    {
+        private final Tenant tenant;
+        private boolean released;
+
+        private Permit(Tenant tenant)
+        {
+            this.tenant = tenant;
+        }
+
+        @Override
+        public void close()
+        {
+            if (released)
+                return;
+            released = true;
+            release(tenant);
+        }
+    }
+
+    private static class Tenant
+    {
+        private final String name;
+        private final int weight;
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private volatile int queued;
+        private volatile int running;
+        private volatile long maxWaitMillis;
+
+        private Tenant(String name, int weight)
+        {
+            this.name = name;
+            this.weight = weight;
+        }
+    }
+
+    // A step waiting for a permit
+    private static class Waiter
+    {
+        private final long arrival;
+
+        private Waiter(long arrival)
+        {
+            this.arrival = arrival;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+  Reads volume metrics from a JSON file kept up to date by an external collector (or edited by hand for testing):
+  {
+    "<resourceGroup>/<account>/<pool>/<volume>": { "throughputMiBps": 120.5, "latencyMillis": 1.8, "usedBytes": 107374182400 }
+  }
+  The file is read again whenever it changes.
+ */
+public class FileMetricsSource implements VolumeMetricsSource
+{
+    private final File file;
+    private long lastModified = -1;
+    private Map<String, Sample> samples = Collections.emptyMap();
+
+    public FileMetricsSource(String path)
+    {
+        this.file = new File(path);
+    }
+
+    @Override
+    public synchronized Sample read(String[] volume)
+    {
+        reloadIfChanged();
+        return samples.get(String.join("/", volume).toLowerCase());
+    }
+
+    private void reloadIfChanged()
+    {
+        if (!file.exists() || file.lastModified() == lastModified)
+            return;
+
+        Type type = new TypeToken<Map<String, Sample>>() {}.getType();
+        try (Reader reader = new FileReader(file))
+        {
+            Map<String, Sample> read = Json.gson().fromJson(reader, type);
+            Map<String, Sample> byKey = new HashMap<>();
+            if (read != null)
+                read.forEach((key, sample) -> byKey.put(key.toLowerCase(), sample));
+            samples = byKey;
+            lastModified = file.lastModified();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // keep the previous samples, the collector may be rewriting the file
+            Utils.writeWarningMessage("Unable to read volume metrics from " + file + " - " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,273 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/*
+  Hedged requests for idempotent reads: when a read takes longer than a high percentile of the latencies observed for its operation,
+  a duplicate is sent, the first successful response wins and the other request is cancelled.
+  Hedges are limited by a budget, a fraction of the primary requests, so a slow endpoint never receives more than that extra load.
+ */
+public class HedgedReads
+{
+    // Instance used by CommonSdk, disabled unless 'hedgedReads' is set to true in appsettings.json
+    private static final HedgedReads shared = new HedgedReads(false, 95, 0.1);
+
+    // Number of latencies kept per operation to compute the hedge delay
+    private static final int WINDOW = 1000;
+
+    // Number of latencies observed before an operation is hedged
+    private static final int MIN_SAMPLES = 20;
+
+    // Number of new latencies after which the hedge delay of an operation is computed again
+    private static final int RECOMPUTE_EVERY = 50;
+
+    // Maximum number of unused hedges that can be accumulated
+    private static final double MAX_BUDGET = 10;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "hedged-read");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled;
+
+    private final double percentile;
+
+    private final double budgetRatio;
+
+    private double budget;
+
+    /**
+     * @param enabled True to hedge reads, false to run them as is
+     * @param percentile Percentile of the observed latencies after which a hedge is sent, e.g. 95
+     * @param budgetRatio Maximum hedges per primary request, e.g. 0.1 for at most 10% extra requests
+     */
+    public HedgedReads(boolean enabled, double percentile, double budgetRatio)
+    {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.budgetRatio = budgetRatio;
+    }
+
+    public static HedgedReads shared()
+    {
+        return shared;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Runs an idempotent read, hedging it if it is slower than usual
+     * @param operation Operation name, latencies are tracked per operation
+     * @param read The read, it must be safe to run twice
+     * @return The first successful result
+     */
+    public <T> T execute(String operation, Supplier<T> read)
+    {
+        if (!enabled)
+            return read.get();
+
+        LatencyWindow window = latencies.computeIfAbsent(operation, k -> new LatencyWindow());
+        addBudget(budgetRatio);
+
+        long delay = window.percentile(percentile);
+        if (delay < 0)
+        {
+            // Nothing to hedge against yet, the read runs on the caller's thread and only feeds the latencies
+            long start = System.nanoTime();
+            T result = read.get();
+            window.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return result;
+        }
+
+        CompletableFuture<T> primary = submit(operation, "primary", window, read);
+
+        try
+        {
+            return primary.get(delay, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            // slower than usual, hedge below
+        }
+        catch (InterruptedException e)
+        {
+            primary.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for " + operation, e);
+        }
+        catch (ExecutionException e)
+        {
+            throw unwrap(e.getCause());
+        }
+
+        if (!takeBudget())
+        {
+            Metrics.increment("hedgedreads." + operation + ".budgetexhausted");
+            return join(primary);
+        }
+
+        Metrics.increment("hedgedreads." + operation + ".hedges");
+        CompletableFuture<T> hedge = submit(operation, "hedge", window, read);
+        CompletableFuture<T> winner = firstSuccessful(primary, hedge, () -> Metrics.increment("hedgedreads." + operation + ".hedgewins"));
+        try
+        {
+            return join(winner);
+        }
+        finally
+        {
+            primary.cancel(true);
+            hedge.cancel(true);
+        }
+    }
+
+    /**
+     * Runs an attempt of the read on the executor, under the operation context and in the trace span of the caller,
+     * so its deadline, cancellation and spans are the ones of the read
+     */
+    private <T> CompletableFuture<T> submit(String operation, String attempt, LatencyWindow window, Supplier<T> read)
+    {
+        OperationContext context = OperationContext.current();
+        Tracer.Span parent = Tracer.shared().current();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            long start = System.nanoTime();
+            try (OperationContext.Scope scope = context.attach();
+                 Tracer.Span span = Tracer.shared().start(operation, "hedge", parent).arg("attempt", attempt))
+            {
+                T result = read.get();
+                window.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                future.complete(result);
+            }
+            catch (Throwable e)
+            {
+                future.completeExceptionally(e);
+            }
+        });
+        // Cancelling the future interrupts the request still in flight
+        future.whenComplete((result, error) -> {
+            if (error instanceof CancellationException)
+                task.cancel(true);
+        });
+        return future;
+    }
+
+    /**
+     * Completes with the first successful result, or with the error of the last attempt if both fail
+     * @param onSecondWins Called when the second attempt provided the result
+     */
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second, Runnable onSecondWins)
+    {
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        first.whenComplete((result, error) -> {
+            if (error == null)
+                winner.complete(result);
+            else if (second.isCompletedExceptionally())
+                winner.completeExceptionally(error);
+        });
+        second.whenComplete((result, error) -> {
+            if (error == null)
+            {
+                if (winner.complete(result))
+                    onSecondWins.run();
+            }
+            else if (first.isCompletedExceptionally())
+                winner.completeExceptionally(error);
+        });
+        return winner;
+    }
+
+    private synchronized void addBudget(double amount)
+    {
+        budget = Math.min(MAX_BUDGET, budget + amount);
+    }
+
+    private synchronized boolean takeBudget()
+    {
+        if (budget < 1)
+            return false;
+        budget--;
+        return true;
+    }
+
+    private static <T> T join(CompletableFuture<T> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable e)
+    {
+        if (e instanceof RuntimeException)
+            return (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+        return new RuntimeException(e);
+    }
+
+    // Latest latencies of an operation, in milliseconds, and the hedge delay computed from them
+    private static class LatencyWindow
+    {
+        private final long[] values = new long[WINDOW];
+        private int count;
+        private int next;
+
+        // Last computed percentile and the number of latencies added since, a sort per read would cost more than the read at high rates
+        private long cached = -1;
+        private int added;
+
+        synchronized void add(long millis)
+        {
+            values[next] = millis;
+            next = (next + 1) % WINDOW;
+            count = Math.min(WINDOW, count + 1);
+            added++;
+        }
+
+        /**
+         * @return The given percentile of the latest latencies, computed again every RECOMPUTE_EVERY latencies,
+         * or -1 if not enough latencies were observed
+         */
+        synchronized long percentile(double percentile)
+        {
+            if (count < MIN_SAMPLES)
+                return -1;
+            if (cached >= 0 && added < RECOMPUTE_EVERY)
+                return cached;
+
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            cached = sorted[Math.min(count - 1, (int) Math.ceil(percentile / 100 * count) - 1)];
+            added = 0;
+            return cached;
+        }
+    }
+}
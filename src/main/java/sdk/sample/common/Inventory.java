@@ -0,0 +1,391 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
+import com.azure.resourcemanager.netapp.fluent.models.ReplicationStatusInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import com.azure.resourcemanager.netapp.models.EndpointType;
+import com.azure.resourcemanager.netapp.models.ReplicationObject;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/*
+  Exports the accounts, capacity pools and volumes of the subscription, with the replication status of data protection volumes,
+  as CSV or JSON lines, gzip compressed when the file name ends with .gz.
+  Accounts are listed page by page and each account is listed by a worker, its pools then the volumes of each pool. Records are
+  written as they arrive, in no particular order: at most 'parallelism' accounts are listed at the same time and a bounded number
+  of replication status reads are in flight, the listing waits for a free slot otherwise, so memory does not grow with the fleet.
+  Errors are reported in the error column of the resource and the export goes on, only a cancellation stops it.
+ */
+public class Inventory
+{
+    public enum Format { CSV, JSONL }
+
+    private static final String[] COLUMNS = { "type", "resourceGroup", "account", "pool", "volume", "location", "provisioningState",
+            "serviceLevel", "sizeBytes", "protocolTypes", "endpointType", "replicationSchedule", "remoteVolumeResourceId",
+            "mirrorState", "relationshipStatus", "healthy", "totalProgress", "error", "id" };
+
+    // Replication status reads queued per reader, enough to keep the readers busy while a listing page is processed
+    private static final int QUEUED_READS_PER_READER = 4;
+
+    private final NetAppManagementClient anfClient;
+    private final TopologySelector selector;
+    private final int parallelism;
+    private final int replicationParallelism;
+
+    private final LongAdder accounts = new LongAdder();
+    private final LongAdder pools = new LongAdder();
+    private final LongAdder volumes = new LongAdder();
+    private final LongAdder replications = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client
+     * @param selector Patterns the exported resources must match, each resource is matched on its own level and the levels above
+     * @param parallelism Number of accounts listed at the same time
+     * @param replicationParallelism Number of replication status reads at the same time
+     */
+    public Inventory(NetAppManagementClient anfClient, TopologySelector selector, int parallelism, int replicationParallelism)
+    {
+        this.anfClient = anfClient;
+        this.selector = selector;
+        this.parallelism = Math.max(1, parallelism);
+        this.replicationParallelism = Math.max(1, replicationParallelism);
+    }
+
+    /**
+     * Returns the format of an inventory file from its name
+     * @param path File name, e.g. inventory.csv, inventory.jsonl.gz
+     * @return JSONL for .jsonl and .json files, CSV otherwise
+     */
+    public static Format formatOf(String path)
+    {
+        String name = path.toLowerCase();
+        if (name.endsWith(".gz"))
+            name = name.substring(0, name.length() - 3);
+        return name.endsWith(".jsonl") || name.endsWith(".json") ? Format.JSONL : Format.CSV;
+    }
+
+    /**
+     * Lists the resources and writes them to a file
+     * @param path Output file, its format is given by its name, see formatOf
+     * @throws CancellationException If the current OperationContext was cancelled, the file is left incomplete
+     */
+    public void export(String path)
+    {
+        long start = System.currentTimeMillis();
+        Format format = formatOf(path);
+        Utils.writeConsoleMessage("Exporting the inventory of " + selector + " to " + path + " (" + format + ")...");
+
+        OperationContext context = OperationContext.current();
+        ExecutorService accountWorkers = Executors.newFixedThreadPool(parallelism);
+        ExecutorService replicationReaders = Executors.newFixedThreadPool(replicationParallelism);
+        Semaphore accountSlots = new Semaphore(parallelism);
+        Semaphore replicationSlots = new Semaphore(replicationParallelism * QUEUED_READS_PER_READER);
+        try (RecordWriter writer = new RecordWriter(path, format))
+        {
+            String literalResourceGroup = selector.getLiteralResourceGroup();
+            Iterable<NetAppAccountInner> listed = literalResourceGroup != null
+                    ? anfClient.getAccounts().listByResourceGroup(literalResourceGroup)
+                    : anfClient.getAccounts().list();
+            // Pages are fetched while iterating, the next one only once the accounts of this one were handed to the workers
+            for (NetAppAccountInner account : listed)
+            {
+                context.check(Operations.LIST_ACCOUNTS);
+                if (!selector.matches(ResourceUriUtils.getResourceGroup(account.id()), account.name(), null, null))
+                    continue;
+                accountSlots.acquire();
+                accountWorkers.execute(() -> {
+                    try (OperationContext.Scope scope = context.attach())
+                    {
+                        exportAccount(account, writer, replicationReaders, replicationSlots);
+                    }
+                    catch (CancellationException e)
+                    {
+                        // reported once by export
+                    }
+                    catch (RuntimeException e)
+                    {
+                        errors.increment();
+                        Utils.writeWarningMessage("Unable to export account " + account.id() + " - " + e.getMessage());
+                    }
+                    finally
+                    {
+                        accountSlots.release();
+                    }
+                });
+            }
+
+            accountWorkers.shutdown();
+            awaitTermination(accountWorkers);
+            // Every read was submitted once the account workers are done
+            replicationReaders.shutdown();
+            awaitTermination(replicationReaders);
+            context.check("Inventory");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Inventory interrupted");
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to write the inventory to " + path, e);
+        }
+        finally
+        {
+            accountWorkers.shutdownNow();
+            replicationReaders.shutdownNow();
+        }
+
+        Utils.writeSuccessMessage(String.format("Inventory written to %s in %.1fs: %d account(s), %d capacity pool(s), %d volume(s), %d replication(s), %d error(s)",
+                path, (System.currentTimeMillis() - start) / 1000.0, accounts.sum(), pools.sum(), volumes.sum(), replications.sum(), errors.sum()));
+    }
+
+    private void exportAccount(NetAppAccountInner account, RecordWriter writer, ExecutorService replicationReaders, Semaphore replicationSlots)
+    {
+        String resourceGroup = ResourceUriUtils.getResourceGroup(account.id());
+        String accountName = account.name();
+        // Listed accounts get the circuit breakers and concurrency limits of their region like the configured ones
+        RegionDirectory.register(resourceGroup, accountName, account.location());
+
+        Map<String, Object> accountRecord = record("account", account.id(), account.location(), account.provisioningState());
+        // Pool records are written once their volumes are listed, so that a failed listing is reported on the pool's only record
+        Map<String, Map<String, Object>> poolRecords = new LinkedHashMap<>();
+        List<CapacityPoolInner> listedPools = new ArrayList<>();
+        try
+        {
+            CommonSdk.executeRead(resourceGroup, accountName, Operations.LIST_CAPACITY_POOLS, () -> {
+                for (CapacityPoolInner pool : anfClient.getPools().list(resourceGroup, accountName))
+                    listedPools.add(pool);
+                return null;
+            });
+        }
+        catch (CancellationException e)
+        {
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            failed(accountRecord, "Unable to list the capacity pools of " + resourceGroup + "/" + accountName, e);
+        }
+        for (CapacityPoolInner pool : listedPools)
+        {
+            String poolName = ResourceUriUtils.getAnfCapacityPool(pool.id());
+            if (!selector.matches(resourceGroup, accountName, poolName, null))
+                continue;
+            Map<String, Object> poolRecord = record("pool", pool.id(), pool.location(), pool.provisioningState());
+            poolRecord.put("serviceLevel", text(pool.serviceLevel()));
+            poolRecord.put("sizeBytes", pool.size());
+            poolRecords.put(poolName, poolRecord);
+        }
+        writer.write(accountRecord);
+        accounts.increment();
+
+        for (Map.Entry<String, Map<String, Object>> entry : poolRecords.entrySet())
+        {
+            String poolName = entry.getKey();
+            try
+            {
+                // Pages are read under the breaker and exported outside of it: waiting for a replication slot must not hold
+                // the half-open probe, and the writer's failures are not the region's
+                Iterator<PagedResponse<VolumeInner>> pages = CommonSdk.executeRead(resourceGroup, accountName, Operations.LIST_VOLUMES,
+                        () -> anfClient.getVolumes().list(resourceGroup, accountName, poolName).iterableByPage().iterator());
+                List<VolumeInner> page;
+                while ((page = CommonSdk.executeRead(resourceGroup, accountName, Operations.LIST_VOLUMES,
+                        () -> pages.hasNext() ? pages.next().getValue() : null)) != null)
+                {
+                    for (VolumeInner volume : page)
+                    {
+                        if (selector.matches(resourceGroup, accountName, poolName, ResourceUriUtils.getAnfVolume(volume.id())))
+                            exportVolume(volume, writer, replicationReaders, replicationSlots);
+                    }
+                }
+            }
+            catch (CancellationException e)
+            {
+                throw e;
+            }
+            catch (RuntimeException e)
+            {
+                failed(entry.getValue(), "Unable to list the volumes of " + resourceGroup + "/" + accountName + "/" + poolName, e);
+            }
+            writer.write(entry.getValue());
+            pools.increment();
+        }
+    }
+
+    private void exportVolume(VolumeInner volume, RecordWriter writer, ExecutorService replicationReaders, Semaphore replicationSlots)
+    {
+        Map<String, Object> volumeRecord = record("volume", volume.id(), volume.location(), volume.provisioningState());
+        volumeRecord.put("serviceLevel", text(volume.serviceLevel()));
+        volumeRecord.put("sizeBytes", volume.usageThreshold());
+        volumeRecord.put("protocolTypes", volume.protocolTypes() != null ? String.join(" ", volume.protocolTypes()) : null);
+        ReplicationObject replication = volume.dataProtection() != null ? volume.dataProtection().replication() : null;
+        if (replication != null)
+        {
+            volumeRecord.put("endpointType", text(replication.endpointType()));
+            volumeRecord.put("replicationSchedule", text(replication.replicationSchedule()));
+            volumeRecord.put("remoteVolumeResourceId", replication.remoteVolumeResourceId());
+        }
+        volumes.increment();
+
+        if (replication == null || !EndpointType.DST.equals(replication.endpointType()))
+        {
+            writer.write(volumeRecord);
+            return;
+        }
+
+        // The listing waits here while enough reads are queued
+        replicationSlots.acquireUninterruptibly();
+        OperationContext context = OperationContext.current();
+        replicationReaders.execute(() -> {
+            try (OperationContext.Scope scope = context.attach())
+            {
+                ReplicationStatusInner status = CommonSdk.getReplicationStatus(anfClient, ResourceUriUtils.getResourceGroup(volume.id()),
+                        ResourceUriUtils.getAnfAccount(volume.id()), ResourceUriUtils.getAnfCapacityPool(volume.id()), ResourceUriUtils.getAnfVolume(volume.id()));
+                volumeRecord.put("mirrorState", text(status.mirrorState()));
+                volumeRecord.put("relationshipStatus", text(status.relationshipStatus()));
+                volumeRecord.put("healthy", status.healthy());
+                volumeRecord.put("totalProgress", status.totalProgress());
+                if (status.errorMessage() != null && !status.errorMessage().isEmpty())
+                    volumeRecord.put("error", status.errorMessage());
+                replications.increment();
+            }
+            catch (CancellationException e)
+            {
+                // the record is written without its status, export reports the cancellation
+            }
+            catch (RuntimeException e)
+            {
+                failed(volumeRecord, "Unable to read the replication status of " + volume.id(), e);
+            }
+            finally
+            {
+                writer.write(volumeRecord);
+                replicationSlots.release();
+            }
+        });
+    }
+
+    private static Map<String, Object> record(String type, String id, String location, String provisioningState)
+    {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("type", type);
+        record.put("resourceGroup", ResourceUriUtils.getResourceGroup(id));
+        record.put("account", ResourceUriUtils.getAnfAccount(id));
+        record.put("pool", ResourceUriUtils.getAnfCapacityPool(id));
+        record.put("volume", ResourceUriUtils.getAnfVolume(id));
+        record.put("location", location);
+        record.put("provisioningState", provisioningState);
+        record.put("id", id);
+        return record;
+    }
+
+    // SDK enums are written by name
+    private static String text(Object value)
+    {
+        return value != null ? value.toString() : null;
+    }
+
+    private void failed(Map<String, Object> record, String message, RuntimeException e)
+    {
+        errors.increment();
+        record.put("error", e.getMessage());
+        Utils.writeWarningMessage(message + " - " + e.getMessage());
+    }
+
+    private static void awaitTermination(ExecutorService executor) throws InterruptedException
+    {
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+            OperationContext.current().check("Inventory");
+    }
+
+    // Writes records one line at a time, shared by the workers
+    private static class RecordWriter implements AutoCloseable
+    {
+        private final Format format;
+        private final Writer out;
+        private boolean closed;
+
+        private RecordWriter(String path, Format format) throws IOException
+        {
+            this.format = format;
+            OutputStream stream = new FileOutputStream(path);
+            if (path.toLowerCase().endsWith(".gz"))
+                stream = new GZIPOutputStream(stream, 64 * 1024);
+            this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024);
+            if (format == Format.CSV)
+                out.write(String.join(",", COLUMNS) + "\n");
+        }
+
+        private synchronized void write(Map<String, Object> record)
+        {
+            // Workers still running after a failure or a cancellation have nowhere to write
+            if (closed)
+                return;
+            try
+            {
+                if (format == Format.JSONL)
+                {
+                    Json.gson().toJson(record, out);
+                    out.write('\n');
+                    return;
+                }
+                for (int i = 0; i < COLUMNS.length; i++)
+                {
+                    if (i > 0)
+                        out.write(',');
+                    Object value = record.get(COLUMNS[i]);
+                    if (value != null)
+                        out.write(escape(value.toString()));
+                }
+                out.write('\n');
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static String escape(String value)
+        {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+                return value;
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+
+        @Override
+        public synchronized void close() throws IOException
+        {
+            closed = true;
+            out.close();
+        }
+    }
+}
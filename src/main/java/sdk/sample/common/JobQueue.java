@@ -0,0 +1,442 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import sdk.sample.model.ModelNetAppAccount;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Provisioning jobs of the provisioning service, persisted in a journal so that they survive a restart.
+  Every submission and state change is appended to the journal as a JSON line and synced to disk before it is acknowledged.
+  On start the journal is replayed: jobs that were queued or running are queued again (provisioning only creates what is
+  missing, so running a job twice is safe), then the journal is rewritten with one submission and one state per job.
+  The journal is rewritten the same way while the queue is open once it grew well past the jobs it holds. Finished jobs are
+  forgotten after RETENTION_MILLIS, or sooner when more than MAX_FINISHED_JOBS finished jobs are kept, oldest first.
+  Jobs of the same account never run at the same time, a job waits in the queue while another job provisions its account.
+ */
+public class JobQueue implements AutoCloseable
+{
+    public enum State { QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED }
+
+    // How long a succeeded, failed or cancelled job can still be read from the API
+    static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    // Finished jobs kept at most, whatever their age
+    static final int MAX_FINISHED_JOBS = 1000;
+
+    // Journal entries appended before it is compacted, at least twice the number of jobs
+    private static final int COMPACT_AFTER_ENTRIES = 1000;
+
+    private final Path journalPath;
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final LinkedList<Job> pending = new LinkedList<>();
+
+    // Accounts with a running job, by resource group and account name in lower case
+    private final Set<String> runningAccounts = new HashSet<>();
+
+    private FileOutputStream journalStream;
+    private Writer journal;
+    private int appendedEntries;
+
+    /**
+     * Opens the queue, replaying the journal if it exists
+     * @param journalPath Journal file, created if missing
+     */
+    public JobQueue(String journalPath)
+    {
+        this.journalPath = Paths.get(journalPath);
+        try
+        {
+            replay();
+            evictFinished();
+            compact();
+            openJournal();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Unable to open the job journal " + journalPath + " - " + e.getMessage(), e);
+        }
+        if (!pending.isEmpty())
+            Utils.writeConsoleMessage("Resuming " + pending.size() + " queued or interrupted job(s) from " + journalPath);
+    }
+
+    /**
+     * Queues a job
+     * @param account Account, capacity pools and volumes to provision, as in appsettings.json
+     * @return The queued job
+     */
+    public synchronized Job submit(ModelNetAppAccount account)
+    {
+        Job job = new Job(UUID.randomUUID().toString(), account, System.currentTimeMillis());
+        JsonObject entry = entry("submitted", job, job.submittedAt);
+        entry.add("account", Json.gson().toJsonTree(account));
+        append(entry);
+        jobs.put(job.id, job);
+        pending.add(job);
+        notifyAll();
+        return job;
+    }
+
+    /**
+     * Waits for the next queued job whose account has no running job and marks it as running
+     * @return The job to run
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public synchronized Job take() throws InterruptedException
+    {
+        while (true)
+        {
+            Iterator<Job> iterator = pending.iterator();
+            while (iterator.hasNext())
+            {
+                Job job = iterator.next();
+                // Cancelled jobs stay in the pending queue, they are dropped here
+                if (job.state != State.QUEUED)
+                {
+                    iterator.remove();
+                    continue;
+                }
+                if (runningAccounts.contains(job.accountKey()))
+                    continue;
+                iterator.remove();
+                runningAccounts.add(job.accountKey());
+                setState(job, State.RUNNING, null);
+                return job;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Records the outcome of a running job, the next job of its account can then run, even if the outcome cannot be written
+     * @param job Job returned by take
+     * @param error Error message, null if the job succeeded
+     */
+    public synchronized void complete(Job job, String error)
+    {
+        release(job);
+        setState(job, error == null ? State.SUCCEEDED : State.FAILED, error);
+    }
+
+    /**
+     * Lets the next job of the account of a running job run, without recording an outcome: the job stays running in the journal
+     * and is queued again on the next start, e.g. when it was interrupted by a shutdown
+     * @param job Job returned by take
+     */
+    public synchronized void release(Job job)
+    {
+        runningAccounts.remove(job.accountKey());
+        notifyAll();
+    }
+
+    /**
+     * Cancels a job that has not started yet
+     * @param id Job id
+     * @return The job, cancelled if it was still queued, or null if there is no such job
+     */
+    public synchronized Job cancel(String id)
+    {
+        Job job = jobs.get(id);
+        if (job != null && job.state == State.QUEUED)
+            setState(job, State.CANCELLED, null);
+        return job;
+    }
+
+    public synchronized Job get(String id)
+    {
+        return jobs.get(id);
+    }
+
+    // All jobs, in submission order
+    public synchronized List<Job> list()
+    {
+        return new ArrayList<>(jobs.values());
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        try
+        {
+            if (journal != null)
+                journal.close();
+        }
+        catch (IOException e)
+        {
+            Utils.writeWarningMessage("Unable to close the job journal - " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    private void setState(Job job, State state, String error)
+    {
+        long now = System.currentTimeMillis();
+        JsonObject entry = entry("state", job, now);
+        entry.addProperty("state", state.name());
+        if (error != null)
+            entry.addProperty("error", error);
+        append(entry);
+        apply(job, state, error, now);
+        if (state != State.QUEUED && state != State.RUNNING)
+            evictFinished();
+        if (appendedEntries >= Math.max(COMPACT_AFTER_ENTRIES, 2 * jobs.size()))
+            compactOpenJournal();
+    }
+
+    // Forgets the finished jobs older than the retention, then the oldest ones above the maximum, in submission order
+    private void evictFinished()
+    {
+        long oldest = System.currentTimeMillis() - RETENTION_MILLIS;
+        int finished = 0;
+        for (Job job : jobs.values())
+        {
+            if (job.isFinished())
+                finished++;
+        }
+        Iterator<Job> iterator = jobs.values().iterator();
+        while (iterator.hasNext())
+        {
+            Job job = iterator.next();
+            if (job.isFinished() && (job.finishedAt < oldest || finished > MAX_FINISHED_JOBS))
+            {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+
+    // Compacts the journal in use, the evicted jobs and the superseded states are dropped from it
+    private void compactOpenJournal()
+    {
+        try
+        {
+            journal.close();
+            journal = null;
+            compact();
+            openJournal();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Unable to compact the job journal " + journalPath + " - " + e.getMessage(), e);
+        }
+    }
+
+    private void openJournal() throws IOException
+    {
+        journalStream = new FileOutputStream(journalPath.toFile(), true);
+        journal = new OutputStreamWriter(journalStream, StandardCharsets.UTF_8);
+        appendedEntries = 0;
+    }
+
+    private static void apply(Job job, State state, String error, long at)
+    {
+        job.state = state;
+        job.error = error;
+        if (state == State.RUNNING)
+        {
+            job.startedAt = at;
+            job.attempts++;
+        }
+        else if (state != State.QUEUED)
+        {
+            job.finishedAt = at;
+        }
+    }
+
+    // Appends an entry and syncs it to disk, a job is only acknowledged once its entry is durable
+    private void append(JsonObject entry)
+    {
+        if (journal == null)
+            throw new IllegalStateException("The job queue is closed");
+        try
+        {
+            journal.write(entry.toString());
+            journal.write('\n');
+            journal.flush();
+            journalStream.getFD().sync();
+            appendedEntries++;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Unable to write the job journal " + journalPath + " - " + e.getMessage(), e);
+        }
+    }
+
+    private static JsonObject entry(String type, Job job, long at)
+    {
+        JsonObject entry = new JsonObject();
+        entry.addProperty("type", type);
+        entry.addProperty("id", job.id);
+        entry.addProperty("at", at);
+        return entry;
+    }
+
+    private void replay() throws IOException
+    {
+        if (!Files.exists(journalPath))
+            return;
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                lineNumber++;
+                if (line.trim().isEmpty())
+                    continue;
+                try
+                {
+                    JsonObject entry = JsonParser.parseString(line).getAsJsonObject();
+                    String id = entry.get("id").getAsString();
+                    long at = entry.get("at").getAsLong();
+                    if ("submitted".equals(entry.get("type").getAsString()))
+                    {
+                        jobs.put(id, new Job(id, Json.gson().fromJson(entry.get("account"), ModelNetAppAccount.class), at));
+                    }
+                    else if (jobs.containsKey(id))
+                    {
+                        apply(jobs.get(id), State.valueOf(entry.get("state").getAsString()),
+                                entry.has("error") ? entry.get("error").getAsString() : null, at);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    // Usually the last line, torn by a crash before it was acknowledged
+                    Utils.writeWarningMessage("Ignoring line " + lineNumber + " of the job journal " + journalPath + " - " + e.getMessage());
+                }
+            }
+        }
+
+        for (Job job : jobs.values())
+        {
+            if (job.state == State.RUNNING)
+                job.state = State.QUEUED;
+            if (job.state == State.QUEUED)
+                pending.add(job);
+        }
+    }
+
+    // Rewrites the journal with the current state of every job, then atomically replaces it
+    private void compact() throws IOException
+    {
+        Path parent = journalPath.toAbsolutePath().getParent();
+        Path compacted = Files.createTempFile(parent, journalPath.getFileName().toString(), ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(compacted.toFile());
+             Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8))
+        {
+            for (Job job : jobs.values())
+            {
+                JsonObject submitted = entry("submitted", job, job.submittedAt);
+                submitted.add("account", Json.gson().toJsonTree(job.account));
+                writer.write(submitted.toString());
+                writer.write('\n');
+                if (job.state != State.QUEUED)
+                {
+                    JsonObject state = entry("state", job, job.finishedAt != 0 ? job.finishedAt : job.startedAt);
+                    state.addProperty("state", job.state.name());
+                    if (job.error != null)
+                        state.addProperty("error", job.error);
+                    writer.write(state.toString());
+                    writer.write('\n');
+                }
+            }
+            writer.flush();
+            stream.getFD().sync();
+        }
+        Files.move(compacted, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // A request to provision one account with its capacity pools and volumes
+    public static class Job
+    {
+        private final String id;
+        private final ModelNetAppAccount account;
+        private final long submittedAt;
+        private volatile State state = State.QUEUED;
+        private volatile String error;
+        private volatile long startedAt;
+        private volatile long finishedAt;
+        private volatile int attempts;
+
+        private Job(String id, ModelNetAppAccount account, long submittedAt)
+        {
+            this.id = id;
+            this.account = account;
+            this.submittedAt = submittedAt;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public ModelNetAppAccount getAccount() {
+            return account;
+        }
+
+        // Resource group and account name in lower case, jobs with the same key do not run at the same time
+        String accountKey() {
+            return (account.getResourceGroup() + "/" + account.getName()).toLowerCase();
+        }
+
+        boolean isFinished() {
+            return state == State.SUCCEEDED || state == State.FAILED || state == State.CANCELLED;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        // Error message of a failed job, or null
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Describes the job for the REST API, without its account definition
+         * @return Id, state, account, times and error of the job
+         */
+        public JsonObject toJson()
+        {
+            JsonObject json = new JsonObject();
+            json.addProperty("id", id);
+            json.addProperty("state", state.name());
+            json.addProperty("resourceGroup", account.getResourceGroup());
+            json.addProperty("account", account.getName());
+            json.addProperty("submitted", Instant.ofEpochMilli(submittedAt).toString());
+            if (startedAt != 0)
+                json.addProperty("started", Instant.ofEpochMilli(startedAt).toString());
+            if (finishedAt != 0)
+                json.addProperty("finished", Instant.ofEpochMilli(finishedAt).toString());
+            json.addProperty("attempts", attempts);
+            if (error != null)
+                json.addProperty("error", error);
+            return json;
+        }
+    }
+}
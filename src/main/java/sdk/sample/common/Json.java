@@ -0,0 +1,36 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import sdk.sample.model.ModelTypeAdapters;
+
+/*
+  Gson instances shared by every configuration, state and journal file of the sample.
+  Gson is thread safe and caches the adapter of each type, a single instance avoids looking adapters up again on every read.
+  The Model* classes are bound by the hand-written adapters of ModelTypeAdapters instead of reflection.
+ */
+public final class Json
+{
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapterFactory(new ModelTypeAdapters())
+            .create();
+
+    private static final Gson pretty = gson.newBuilder()
+            .setPrettyPrinting()
+            .create();
+
+    private Json()
+    {
+    }
+
+    // Compact output, for state and journal files
+    public static Gson gson() { return gson; }
+
+    // Indented output, for files meant to be read and edited, e.g. the planned appsettings.json
+    public static Gson pretty() { return pretty; }
+}
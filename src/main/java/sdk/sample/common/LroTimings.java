@@ -0,0 +1,128 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Keeps historical durations of long running operations, used to estimate how long a provisioning step will take
+public class LroTimings
+{
+    // Weight given to the latest observation when updating the moving average
+    private static final double SMOOTHING_FACTOR = 0.3;
+
+    // Estimates used when an operation has never been observed before, in milliseconds
+    private static final Map<String, Long> DEFAULT_ESTIMATES = new HashMap<>();
+
+    static
+    {
+        DEFAULT_ESTIMATES.put(Operations.CREATE_ACCOUNT, 30_000L);
+        DEFAULT_ESTIMATES.put(Operations.CREATE_CAPACITY_POOL, 60_000L);
+        DEFAULT_ESTIMATES.put(Operations.CREATE_VOLUME, 120_000L);
+        DEFAULT_ESTIMATES.put(Operations.CREATE_DATA_PROTECTION_VOLUME, 180_000L);
+        DEFAULT_ESTIMATES.put(Operations.CREATE_VOLUME_FROM_SNAPSHOT, 180_000L);
+        DEFAULT_ESTIMATES.put(Operations.CREATE_SNAPSHOT, 30_000L);
+        DEFAULT_ESTIMATES.put(Operations.AUTHORIZE_REPLICATION, 600_000L);
+        DEFAULT_ESTIMATES.put(Operations.UPDATE_VOLUME_SIZE, 30_000L);
+        DEFAULT_ESTIMATES.put(Operations.UPDATE_CAPACITY_POOL_SIZE, 30_000L);
+        DEFAULT_ESTIMATES.put(Operations.CHANGE_VOLUME_POOL, 120_000L);
+        DEFAULT_ESTIMATES.put(Operations.BREAK_REPLICATION, 60_000L);
+        DEFAULT_ESTIMATES.put(Operations.DELETE_REPLICATION, 60_000L);
+        DEFAULT_ESTIMATES.put(Operations.DELETE_VOLUME, 120_000L);
+        DEFAULT_ESTIMATES.put(Operations.DELETE_CAPACITY_POOL, 60_000L);
+        DEFAULT_ESTIMATES.put(Operations.DELETE_ACCOUNT, 30_000L);
+    }
+
+    private final String path;
+
+    private final Map<String, Entry> entries;
+
+    private LroTimings(String path, Map<String, Entry> entries)
+    {
+        this.path = path;
+        this.entries = entries;
+    }
+
+    /**
+     * Loads the timing history from a json file, an empty history is returned if the file does not exist
+     * @param path Path of the timing history file
+     * @return Timing history
+     */
+    public static LroTimings load(String path)
+    {
+        Map<String, Entry> entries = null;
+        try (Reader reader = new FileReader(path))
+        {
+            Type type = new TypeToken<TreeMap<String, Entry>>(){}.getType();
+            entries = Json.gson().fromJson(reader, type);
+        }
+        catch (IOException e)
+        {
+            // No history yet, defaults will be used
+        }
+
+        return new LroTimings(path, entries != null ? entries : new TreeMap<>());
+    }
+
+    /**
+     * Returns the estimated duration of an operation
+     * @param operation Operation name, see Operations
+     * @return Estimated duration in milliseconds
+     */
+    public synchronized long estimate(String operation)
+    {
+        Entry entry = entries.get(operation);
+        if (entry != null && entry.samples > 0)
+            return Math.round(entry.averageMillis);
+
+        return DEFAULT_ESTIMATES.getOrDefault(operation, 60_000L);
+    }
+
+    /**
+     * Records an observed duration of an operation
+     * @param operation Operation name, see Operations
+     * @param millis Observed duration in milliseconds
+     */
+    public synchronized void record(String operation, long millis)
+    {
+        Entry entry = entries.computeIfAbsent(operation, k -> new Entry());
+        entry.averageMillis = entry.samples == 0 ? millis : (SMOOTHING_FACTOR * millis) + ((1 - SMOOTHING_FACTOR) * entry.averageMillis);
+        entry.samples++;
+    }
+
+    /**
+     * Persists the timing history so following runs can use it
+     */
+    public synchronized void save()
+    {
+        try (Writer writer = new FileWriter(path))
+        {
+            Json.gson().toJson(entries, writer);
+        }
+        catch (IOException e)
+        {
+            Utils.writeWarningMessage("Unable to save operation timings to " + path + " - " + e.getMessage());
+        }
+    }
+
+    private static class Entry
+    {
+        // Exponential moving average of observed durations, in milliseconds
+        private double averageMillis;
+
+        // Number of observations
+        private long samples;
+    }
+}
@@ -0,0 +1,105 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Process wide counters and gauges, printed at the end of a run and optionally written to a file
+public class Metrics
+{
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private static final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Increments a counter by one
+     * @param name Counter name, e.g. "singleflight.coalesced"
+     */
+    public static void increment(String name)
+    {
+        add(name, 1);
+    }
+
+    /**
+     * Adds a value to a counter
+     * @param name Counter name
+     * @param value Value to add
+     */
+    public static void add(String name, long value)
+    {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Returns the current value of a counter
+     * @param name Counter name
+     * @return Counter value, 0 if it was never incremented
+     */
+    public static long get(String name)
+    {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Registers a gauge, a value read when metrics are reported
+     * @param name Gauge name
+     * @param value Supplier of the current value
+     */
+    public static void gauge(String name, Supplier<Number> value)
+    {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Returns a snapshot of all counters and gauges ordered by name
+     * @return Metric values by name
+     */
+    public static Map<String, Number> snapshot()
+    {
+        Map<String, Number> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.get()));
+        return values;
+    }
+
+    /**
+     * Writes all counters and gauges to a file, one "name value" line per metric
+     * @param path Path of the file to write
+     */
+    public static void writeToFile(String path)
+    {
+        try (Writer writer = new FileWriter(path))
+        {
+            for (Map.Entry<String, Number> entry : snapshot().entrySet())
+                writer.write(entry.getKey() + " " + entry.getValue() + System.lineSeparator());
+        }
+        catch (IOException e)
+        {
+            Utils.writeWarningMessage("Unable to write metrics to " + path + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints all counters and gauges
+     */
+    public static void printSummary()
+    {
+        Map<String, Number> values = snapshot();
+        if (values.isEmpty())
+            return;
+
+        Utils.writeConsoleMessage("Metrics:");
+        values.forEach((name, value) -> Utils.writeConsoleMessage(String.format("  %-50s %s", name, value)));
+    }
+}
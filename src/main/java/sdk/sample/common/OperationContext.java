@@ -0,0 +1,161 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.util.concurrent.CancellationException;
+
+/*
+  Deadline and cancellation of the work running on a thread, checked by every CommonSdk call, wait and long running operation.
+  Contexts form a tree: a child never outlives its parent's deadline and is cancelled with it. The root context has no deadline
+  and is cancelled when the process shuts down, so every wait returns promptly and reports why instead of holding its worker.
+  The current context is kept per thread, like the current span of the Tracer, and attached by the schedulers to their workers.
+ */
+public final class OperationContext
+{
+    // Cancellations wake every sleeping context, they are rare enough to share one monitor
+    private static final Object signal = new Object();
+
+    private static final OperationContext root = new OperationContext(null, "process", Long.MAX_VALUE, 0);
+
+    private static final ThreadLocal<OperationContext> current = ThreadLocal.withInitial(() -> root);
+
+    private final OperationContext parent;
+    private final String name;
+    private final long deadline;
+    private final long timeoutMillis;
+    private volatile String cancellationReason;
+
+    private OperationContext(OperationContext parent, String name, long deadline, long timeoutMillis)
+    {
+        this.parent = parent;
+        this.name = name;
+        this.deadline = deadline;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    // Context of the whole process, cancelled on shutdown
+    public static OperationContext root()
+    {
+        return root;
+    }
+
+    // Context of the calling thread, the root context unless one was attached
+    public static OperationContext current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Creates a child context that expires after a timeout, or with this context if it expires first
+     * @param name What the timeout applies to, used in the error message
+     * @param timeoutMillis Timeout in milliseconds
+     * @return The child context, to be attached to the thread doing the work
+     */
+    public OperationContext withTimeout(String name, long timeoutMillis)
+    {
+        long childDeadline = System.currentTimeMillis() + timeoutMillis;
+        if (childDeadline < 0 || childDeadline >= deadline)
+            return new OperationContext(this, this.name, deadline, this.timeoutMillis);
+        return new OperationContext(this, name, childDeadline, timeoutMillis);
+    }
+
+    /**
+     * Makes this context the current context of the calling thread
+     * @return Scope restoring the previous context when closed
+     */
+    public Scope attach()
+    {
+        OperationContext previous = current.get();
+        current.set(this);
+        return () -> current.set(previous);
+    }
+
+    /**
+     * Cancels this context and its children, waking up their waits
+     * @param reason Why the work is cancelled, e.g. "the process is shutting down"
+     */
+    public void cancel(String reason)
+    {
+        if (cancellationReason == null)
+            cancellationReason = reason;
+        synchronized (signal)
+        {
+            signal.notifyAll();
+        }
+    }
+
+    /**
+     * Returns why this context or one of its parents was cancelled
+     * @return The reason, null if not cancelled
+     */
+    public String getCancellationReason()
+    {
+        for (OperationContext context = this; context != null; context = context.parent)
+        {
+            if (context.cancellationReason != null)
+                return context.cancellationReason;
+        }
+        return null;
+    }
+
+    // Whether the deadline passed or the context was cancelled
+    public boolean isDone()
+    {
+        return getCancellationReason() != null || System.currentTimeMillis() >= deadline;
+    }
+
+    // Time left before the deadline, Long.MAX_VALUE without deadline
+    public long remainingMillis()
+    {
+        return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * Throws if the work must stop
+     * @param what Operation or wait being performed, used in the error message
+     * @throws CancellationException If the context was cancelled or the thread interrupted
+     * @throws OperationTimeoutException If the deadline passed
+     */
+    public void check(String what)
+    {
+        String reason = Thread.currentThread().isInterrupted() ? "interrupted" : getCancellationReason();
+        if (reason != null)
+            throw new CancellationException(what + " cancelled: " + reason);
+        if (System.currentTimeMillis() >= deadline)
+            throw new OperationTimeoutException(what + " timed out" + (name.equals(what) ? "" : ", " + name + " did not complete") + " within " + (timeoutMillis / 1000) + "s");
+    }
+
+    /**
+     * Sleeps for a duration, returning early at the deadline or when the context is cancelled
+     * @param millis Duration of the sleep
+     */
+    public void sleep(long millis)
+    {
+        long now = System.currentTimeMillis();
+        long wakeUp = millis >= deadline - now ? deadline : now + millis;
+        synchronized (signal)
+        {
+            try
+            {
+                long remaining;
+                while (getCancellationReason() == null && (remaining = wakeUp - System.currentTimeMillis()) > 0)
+                    signal.wait(remaining);
+            }
+            catch (InterruptedException e)
+            {
+                // check reports it, the interrupt usually comes from an executor shutting down
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Restores the previous context of the thread when closed
+    public interface Scope extends AutoCloseable
+    {
+        @Override
+        void close();
+    }
+}
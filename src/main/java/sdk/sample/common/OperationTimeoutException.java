@@ -0,0 +1,15 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+// Thrown when a wait or a long running operation did not complete before its deadline
+public class OperationTimeoutException extends RuntimeException
+{
+    public OperationTimeoutException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,293 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.azure.core.management.polling.PollResult;
+import com.azure.core.util.polling.LongRunningOperationStatus;
+import com.azure.core.util.polling.PollResponse;
+import com.azure.core.util.polling.SyncPoller;
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
+import com.azure.resourcemanager.netapp.fluent.models.SnapshotInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+  Drives long running operations to their terminal state and keeps per operation timings.
+  The terminal status and the resource returned by the operation are trusted, a follow-up read is only
+  issued when the returned resource is not yet in a final provisioning state.
+  Operations are polled under the current OperationContext and an operation timeout. Those still running when their wait is
+  cancelled or times out are kept as pending, saved on shutdown and waited for by the next run instead of being abandoned.
+ */
+public class OperationTracker
+{
+    private static final long DEFAULT_POLL_INTERVAL_MILLIS = 10_000;
+
+    private static final Map<String, Timing> timings = new ConcurrentHashMap<>();
+
+    private static final Set<Pending> pending = ConcurrentHashMap.newKeySet();
+
+    private static volatile long operationTimeoutMillis = 120 * 60_000L;
+
+    /**
+     * Sets how long a long running operation is waited for before its wait fails
+     * @param minutes Timeout in minutes
+     */
+    public static void setOperationTimeout(int minutes)
+    {
+        operationTimeoutMillis = minutes * 60_000L;
+    }
+
+    /**
+     * Waits for a long running operation to reach a terminal state
+     * @param operation Operation name used for timings, e.g. "deleteVolume"
+     * @param resource Parameters of the resource the operation targets, see CommonSdk.getResource
+     * @param poller Poller returned by the SDK begin* method
+     * @return The final result of the operation
+     * @throws OperationTimeoutException If the operation did not complete in time, it is kept as pending
+     * @throws java.util.concurrent.CancellationException If the current OperationContext was cancelled, the operation is kept as pending
+     */
+    public static <T> T waitForCompletion(String operation, String[] resource, SyncPoller<PollResult<T>, T> poller)
+    {
+        long start = System.currentTimeMillis();
+        String what = operation + " of " + String.join("/", resource);
+        Pending entry = new Pending(operation, resource, Instant.ofEpochMilli(start).toString());
+        // A new operation on the resource supersedes the ones abandoned earlier, e.g. the deletion of a resource stuck in creation
+        pending.removeIf(other -> Arrays.equals(other.resource, resource));
+        pending.add(entry);
+        boolean abandoned = false;
+        OperationContext context = OperationContext.current().withTimeout(what, operationTimeoutMillis);
+        Tracer.Span span = Tracer.shared().start(operation, "lro");
+        try (OperationContext.Scope scope = context.attach())
+        {
+            PollResponse<PollResult<T>> response = poller.poll();
+            while (!response.getStatus().isComplete())
+            {
+                context.check(what);
+                Duration retryAfter = response.getRetryAfter();
+                context.sleep(retryAfter != null ? retryAfter.toMillis() : DEFAULT_POLL_INTERVAL_MILLIS);
+                context.check(what);
+                response = poller.poll();
+            }
+
+            LongRunningOperationStatus status = response.getStatus();
+            if (status != LongRunningOperationStatus.SUCCESSFULLY_COMPLETED)
+            {
+                String error = response.getValue() != null && response.getValue().getError() != null
+                        ? response.getValue().getError().getMessage()
+                        : status.toString();
+                throw new RuntimeException("Operation " + operation + " did not succeed: " + error);
+            }
+            return poller.getFinalResult();
+        }
+        catch (CancellationException | OperationTimeoutException e)
+        {
+            abandoned = true;
+            throw e;
+        }
+        finally
+        {
+            if (!abandoned)
+                pending.remove(entry);
+            span.close();
+            record(operation, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Waits for a long running operation that creates or updates an ANF resource. The resource returned by the operation
+     * is used as is when its provisioning state is final, otherwise the resource is read until it succeeds.
+     * @param anfClient Azure NetApp Files Management Client
+     * @param operation Operation name used for timings, e.g. "createVolume"
+     * @param resource Parameters of the resource, see CommonSdk.getResource
+     * @param poller Poller returned by the SDK begin* method
+     * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner
+     * @return The resource, or null if it ended up in failed state
+     */
+    public static <T> T waitForResource(NetAppManagementClient anfClient, String operation, String[] resource, SyncPoller<PollResult<T>, T> poller, Class<T> clazz)
+    {
+        long start = System.currentTimeMillis();
+        T result = waitForCompletion(operation, resource, poller);
+
+        String state = CommonSdk.getProvisioningState(result);
+        if ("Failed".equalsIgnoreCase(state))
+            return null;
+
+        // A missing or intermediate state is ambiguous, the resource is read until it is final
+        if (!"Succeeded".equalsIgnoreCase(state))
+        {
+            result = CommonSdk.waitForANFResource(anfClient, resource, 10, 60, clazz);
+            record(operation + " (follow-up read)", System.currentTimeMillis() - start);
+        }
+        return result;
+    }
+
+    // Number of operations abandoned while still running, waited for by the next run
+    public static int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Saves the operations still running, so the next run waits for them, or deletes the file if there is none
+     * @param path Path of the pending operations file
+     */
+    public static void savePending(String path)
+    {
+        try
+        {
+            if (pending.isEmpty())
+            {
+                Files.deleteIfExists(Paths.get(path));
+                return;
+            }
+            try (Writer writer = new FileWriter(path))
+            {
+                Json.gson().toJson(new ArrayList<>(pending), writer);
+            }
+            Utils.writeWarningMessage(pending.size() + " operation(s) still running, saved to " + path + " to be waited for by the next run");
+        }
+        catch (IOException e)
+        {
+            Utils.writeWarningMessage("Unable to save pending operations to " + path + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for the operations a previous run left running, before new operations target the same resources.
+     * Creations and updates are waited for until the resource succeeded, deletions until it no longer exists,
+     * replication operations are only reported. The file is deleted once every operation was waited for.
+     * @param anfClient Azure NetApp Files Management Client
+     * @param path Path of the pending operations file, nothing is done if it does not exist
+     */
+    public static void resumePending(NetAppManagementClient anfClient, String path)
+    {
+        Pending[] entries;
+        try (Reader reader = new FileReader(path))
+        {
+            entries = Json.gson().fromJson(reader, Pending[].class);
+        }
+        catch (IOException e)
+        {
+            return;
+        }
+        if (entries == null)
+            return;
+
+        for (Pending entry : entries)
+        {
+            String resource = String.join("/", entry.resource);
+            Class<?> clazz = resourceClass(entry.resource);
+            Utils.writeConsoleMessage("Waiting for " + entry.operation + " of " + resource + ", started " + entry.started + " by a previous run...");
+            try
+            {
+                if (entry.operation.startsWith("delete") && !entry.operation.equals(Operations.DELETE_REPLICATION))
+                    CommonSdk.waitForNoANFResource(anfClient, entry.resource, 10, 60, clazz);
+                else if (entry.operation.startsWith("create") || entry.operation.startsWith("update") || entry.operation.equals(Operations.CHANGE_VOLUME_POOL))
+                    CommonSdk.waitForANFResource(anfClient, entry.resource, 10, 60, clazz);
+                else
+                    Utils.writeWarningMessage(entry.operation + " of " + resource + " may still be running, check the replication status before changing it");
+            }
+            catch (OperationTimeoutException e)
+            {
+                // keeps the entry for the next run
+                pending.add(entry);
+                Utils.writeWarningMessage(e.getMessage());
+            }
+            catch (CancellationException e)
+            {
+                pending.add(entry);
+                throw e;
+            }
+            catch (RuntimeException e)
+            {
+                Utils.writeWarningMessage(entry.operation + " of " + resource + " did not succeed - " + e.getMessage());
+            }
+        }
+        savePending(path);
+    }
+
+    private static Class<?> resourceClass(String[] resource)
+    {
+        switch (resource.length)
+        {
+            case 2:
+                return NetAppAccountInner.class;
+            case 3:
+                return CapacityPoolInner.class;
+            case 4:
+                return VolumeInner.class;
+            default:
+                return SnapshotInner.class;
+        }
+    }
+
+    /**
+     * Prints the number of operations, average and maximum duration of each operation tracked so far
+     */
+    public static void printSummary()
+    {
+        if (timings.isEmpty())
+            return;
+
+        Utils.writeConsoleMessage("Operation timings:");
+        for (Map.Entry<String, Timing> entry : new TreeMap<>(timings).entrySet())
+        {
+            Timing timing = entry.getValue();
+            long count = timing.count.sum();
+            Utils.writeConsoleMessage(String.format("  %-40s count: %5d, avg: %8.1fs, max: %8.1fs", entry.getKey(), count,
+                    count == 0 ? 0 : timing.totalMillis.sum() / 1000.0 / count, timing.maxMillis.get() / 1000.0));
+        }
+    }
+
+    private static void record(String operation, long millis)
+    {
+        Timing timing = timings.computeIfAbsent(operation, k -> new Timing());
+        timing.count.increment();
+        timing.totalMillis.add(millis);
+        timing.maxMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    private static class Timing
+    {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+        private final AtomicLong maxMillis = new AtomicLong();
+    }
+
+    // A long running operation whose wait ended before the operation did
+    private static class Pending
+    {
+        private final String operation;
+        private final String[] resource;
+        private final String started;
+
+        private Pending(String operation, String[] resource, String started)
+        {
+            this.operation = operation;
+            this.resource = resource;
+            this.started = started;
+        }
+    }
+}
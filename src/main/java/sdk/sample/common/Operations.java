@@ -0,0 +1,38 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+// Names of the ARM operations, used as keys for timing history, concurrency limits and circuit breakers
+public final class Operations
+{
+    public static final String CREATE_ACCOUNT = "createAccount";
+    public static final String CREATE_CAPACITY_POOL = "createCapacityPool";
+    public static final String CREATE_VOLUME = "createVolume";
+    public static final String CREATE_DATA_PROTECTION_VOLUME = "createDataProtectionVolume";
+    public static final String CREATE_VOLUME_FROM_SNAPSHOT = "createVolumeFromSnapshot";
+    public static final String CREATE_SNAPSHOT = "createSnapshot";
+    public static final String AUTHORIZE_REPLICATION = "authorizeReplication";
+    public static final String UPDATE_VOLUME_SIZE = "updateVolumeSize";
+    public static final String UPDATE_CAPACITY_POOL_SIZE = "updateCapacityPoolSize";
+    public static final String CHANGE_VOLUME_POOL = "changeVolumePool";
+    public static final String UPDATE_REPLICATION_SCHEDULE = "updateReplicationSchedule";
+    public static final String BREAK_REPLICATION = "breakReplication";
+    public static final String RESYNC_REPLICATION = "resyncReplication";
+    public static final String REINITIALIZE_REPLICATION = "reInitializeReplication";
+    public static final String DELETE_REPLICATION = "deleteReplication";
+    public static final String DELETE_VOLUME = "deleteVolume";
+    public static final String DELETE_CAPACITY_POOL = "deleteCapacityPool";
+    public static final String DELETE_ACCOUNT = "deleteAccount";
+    public static final String GET_RESOURCE = "getResource";
+    public static final String REPLICATION_STATUS = "replicationStatus";
+    public static final String LIST_ACCOUNTS = "listAccounts";
+    public static final String LIST_CAPACITY_POOLS = "listCapacityPools";
+    public static final String LIST_VOLUMES = "listVolumes";
+
+    private Operations()
+    {
+    }
+}
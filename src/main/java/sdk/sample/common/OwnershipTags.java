@@ -0,0 +1,68 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+  Tags written on the accounts, capacity pools and volumes the sample creates, so the orphan sweeper only deletes what the sample
+  created and knows how old it is. A create or update writes them again, the age is then counted from the last update.
+ */
+public final class OwnershipTags
+{
+    public static final String OWNER = "createdBy";
+
+    public static final String OWNER_VALUE = "anf-crr-sdk-sample";
+
+    public static final String CREATED_AT = "createdAt";
+
+    private OwnershipTags()
+    {
+    }
+
+    /**
+     * Returns the tags of a resource about to be created
+     * @return Owner and creation time tags
+     */
+    public static Map<String, String> forNewResource()
+    {
+        Map<String, String> tags = new HashMap<>();
+        tags.put(OWNER, OWNER_VALUE);
+        tags.put(CREATED_AT, Instant.now().toString());
+        return tags;
+    }
+
+    /**
+     * Returns true if a resource was created by the sample
+     * @param tags Tags of the resource, may be null
+     */
+    public static boolean isOwned(Map<String, String> tags)
+    {
+        return tags != null && OWNER_VALUE.equals(tags.get(OWNER));
+    }
+
+    /**
+     * Returns when a resource was created by the sample
+     * @param tags Tags of the resource, may be null
+     * @return Creation time, or null if the tag is missing or not an ISO-8601 instant
+     */
+    public static Instant createdAt(Map<String, String> tags)
+    {
+        if (tags == null || tags.get(CREATED_AT) == null)
+            return null;
+        try
+        {
+            return Instant.parse(tags.get(CREATED_AT));
+        }
+        catch (DateTimeParseException e)
+        {
+            return null;
+        }
+    }
+}
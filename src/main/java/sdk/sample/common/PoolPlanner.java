@@ -0,0 +1,318 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import sdk.sample.model.ModelCapacityPool;
+import sdk.sample.model.ModelNetAppAccount;
+import sdk.sample.model.ModelSourceVolume;
+import sdk.sample.model.ModelVolume;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/*
+  Replaces the hand-picked capacity pools of each account with the fewest pools that hold its volumes, one set of pools
+  per service level, each sized to the total quota of its volumes rounded up to the pool size increment.
+  Volumes are packed with best fit decreasing (largest volume first, into the pool with the least free space that still fits it),
+  then, as a pool also holds at most 500 volumes, spread evenly over fewer pools when that fits: worst fit decreasing
+  over a fixed number of pools, from the lower bound up. Both are O(n log n), fast for tens of thousands of volumes.
+  The service level of a volume is its own 'serviceLevel', or the one of the pool it is defined in.
+  sourceVolume and snapshotSource references to repacked volumes are updated to their new pool.
+  Meant for new deployments: volumes that already exist are not moved between pools.
+ */
+public class PoolPlanner
+{
+    private static final long TIB = 1024L * 1024 * 1024 * 1024;
+    static final long MIN_POOL_SIZE = 4 * TIB;
+    static final long MAX_POOL_SIZE = 500 * TIB;
+    static final long POOL_SIZE_INCREMENT = TIB;
+    static final int MAX_VOLUMES_PER_POOL = 500;
+
+    // Canonical service level names, used for the planned pools and their names
+    private static final List<String> SERVICE_LEVELS = Arrays.asList("Standard", "Premium", "Ultra");
+
+    /**
+     * Repacks the volumes of all accounts into planned capacity pools, in place
+     * @param accounts List of ModelNetAppAccount to plan, their capacityPools are replaced
+     * @return The outcome of the planning
+     */
+    public static Plan plan(List<ModelNetAppAccount> accounts)
+    {
+        Plan plan = new Plan();
+
+        // Pool of every volume before and after planning, to update the references between volumes
+        Map<String, String> newPoolNames = new HashMap<>();
+        for (ModelNetAppAccount account : accounts)
+        {
+            if (account.getCapacityPools() == null)
+                continue;
+
+            Map<String, List<ModelVolume>> volumesByLevel = new LinkedHashMap<>();
+            Map<ModelVolume, String> oldPoolNames = new HashMap<>();
+            for (ModelCapacityPool pool : account.getCapacityPools())
+            {
+                plan.originalPools++;
+                plan.originalBytes += pool.getSize();
+                if (pool.getVolumes() == null)
+                    continue;
+                for (ModelVolume volume : pool.getVolumes())
+                {
+                    String level = canonicalServiceLevel(volume.getServiceLevel() != null ? volume.getServiceLevel() : pool.getServiceLevel());
+                    volumesByLevel.computeIfAbsent(level, k -> new ArrayList<>()).add(volume);
+                    oldPoolNames.put(volume, pool.getName());
+                }
+            }
+
+            List<ModelCapacityPool> pools = new ArrayList<>();
+            for (Map.Entry<String, List<ModelVolume>> entry : volumesByLevel.entrySet())
+            {
+                List<Bin> bins = pack(entry.getValue());
+                long volumeBytes = 0;
+                for (int i = 0; i < bins.size(); i++)
+                {
+                    ModelCapacityPool pool = new ModelCapacityPool();
+                    pool.setName(entry.getKey().toLowerCase() + "-pool-" + (i + 1));
+                    pool.setServiceLevel(entry.getKey());
+                    pool.setSize(poolSize(bins.get(i).usedBytes));
+                    pool.setVolumes(bins.get(i).volumes);
+                    pools.add(pool);
+                    plan.plannedBytes += pool.getSize();
+                    volumeBytes += bins.get(i).usedBytes;
+                    for (ModelVolume volume : bins.get(i).volumes)
+                        newPoolNames.put(key(account.getResourceGroup(), account.getName(), oldPoolNames.get(volume), volume.getName()), pool.getName());
+                }
+                Utils.writeConsoleMessage(String.format("Planned account %s, %s: %d volume(s), %.1f TiB in %d pool(s)", account.getName(), entry.getKey(),
+                        entry.getValue().size(), (double) volumeBytes / TIB, bins.size()));
+            }
+            plan.plannedPools += pools.size();
+            account.setCapacityPools(pools);
+        }
+
+        // Volumes of accounts outside of appsettings.json are not in the map and keep their pool
+        for (ModelNetAppAccount account : accounts)
+        {
+            for (ModelCapacityPool pool : account.getCapacityPools() == null ? Collections.<ModelCapacityPool>emptyList() : account.getCapacityPools())
+            {
+                for (ModelVolume volume : pool.getVolumes())
+                {
+                    remap(volume.getSourceVolume(), newPoolNames);
+                    remap(volume.getSnapshotSource(), newPoolNames);
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Packs volumes into as few pools as possible
+     * @param volumes Volumes of a single service level
+     * @return The pools, each with its volumes
+     */
+    static List<Bin> pack(List<ModelVolume> volumes)
+    {
+        List<ModelVolume> sorted = new ArrayList<>(volumes);
+        sorted.sort(Comparator.comparingLong(ModelVolume::getUsageThreshold).reversed());
+
+        long totalBytes = 0;
+        for (ModelVolume volume : sorted)
+        {
+            if (volume.getUsageThreshold() > MAX_POOL_SIZE)
+                throw new IllegalArgumentException("Volume " + volume.getName() + " needs " + volume.getUsageThreshold() + " bytes, more than the largest capacity pool");
+            totalBytes += volume.getUsageThreshold();
+        }
+
+        // Best fit fills pools with the large volumes first, the small ones left then hit the volume count limit of the last pools.
+        // Spreading the volumes evenly over fewer pools mixes small and large ones, try it from the lower bound up.
+        List<Bin> bestFit = bestFitDecreasing(sorted);
+        int lowerBound = (int) Math.max((totalBytes + MAX_POOL_SIZE - 1) / MAX_POOL_SIZE, (sorted.size() + MAX_VOLUMES_PER_POOL - 1) / MAX_VOLUMES_PER_POOL);
+        for (int count = lowerBound; count < bestFit.size(); count++)
+        {
+            List<Bin> balanced = worstFitDecreasing(sorted, count);
+            if (balanced != null)
+                return balanced;
+        }
+        return bestFit;
+    }
+
+    // Each volume, largest first, goes to the pool with the least free space that still fits it
+    private static List<Bin> bestFitDecreasing(List<ModelVolume> sorted)
+    {
+        List<Bin> bins = new ArrayList<>();
+        // Pools that can still take a volume, by free space
+        TreeMap<Long, ArrayDeque<Bin>> open = new TreeMap<>();
+        for (ModelVolume volume : sorted)
+        {
+            Bin bin;
+            Map.Entry<Long, ArrayDeque<Bin>> fit = open.ceilingEntry(volume.getUsageThreshold());
+            if (fit == null)
+            {
+                bin = new Bin();
+                bins.add(bin);
+            }
+            else
+            {
+                bin = fit.getValue().poll();
+                if (fit.getValue().isEmpty())
+                    open.remove(fit.getKey());
+            }
+
+            bin.add(volume);
+            long free = MAX_POOL_SIZE - bin.usedBytes;
+            if (free > 0 && bin.volumes.size() < MAX_VOLUMES_PER_POOL)
+                open.computeIfAbsent(free, k -> new ArrayDeque<>()).add(bin);
+        }
+        return bins;
+    }
+
+    // Each volume, largest first, goes to the least used of a fixed number of pools, null if they cannot hold all volumes
+    private static List<Bin> worstFitDecreasing(List<ModelVolume> sorted, int count)
+    {
+        List<Bin> bins = new ArrayList<>();
+        PriorityQueue<Bin> open = new PriorityQueue<>(Comparator.comparingLong((Bin bin) -> bin.usedBytes));
+        for (int i = 0; i < count; i++)
+        {
+            Bin bin = new Bin();
+            bins.add(bin);
+            open.add(bin);
+        }
+
+        for (ModelVolume volume : sorted)
+        {
+            Bin bin = open.poll();
+            if (bin == null || bin.usedBytes + volume.getUsageThreshold() > MAX_POOL_SIZE)
+                return null;
+
+            bin.add(volume);
+            if (bin.volumes.size() < MAX_VOLUMES_PER_POOL)
+                open.add(bin);
+        }
+        return bins;
+    }
+
+    /**
+     * Returns the size of a pool holding volumes of a total quota
+     * @param volumeBytes Sum of the volumes' usageThreshold
+     * @return The smallest valid pool size that holds them
+     */
+    static long poolSize(long volumeBytes)
+    {
+        long size = (volumeBytes + POOL_SIZE_INCREMENT - 1) / POOL_SIZE_INCREMENT * POOL_SIZE_INCREMENT;
+        return Math.max(MIN_POOL_SIZE, size);
+    }
+
+    private static String canonicalServiceLevel(String serviceLevel)
+    {
+        for (String level : SERVICE_LEVELS)
+        {
+            if (level.equalsIgnoreCase(serviceLevel))
+                return level;
+        }
+        // left as is, reported by ConfigValidator
+        return serviceLevel;
+    }
+
+    private static void remap(ModelSourceVolume reference, Map<String, String> newPoolNames)
+    {
+        if (reference == null)
+            return;
+
+        String poolName = newPoolNames.get(key(reference.getResourceGroup(), reference.getAccountName(), reference.getPoolName(), reference.getVolumeName()));
+        if (poolName != null)
+            reference.setPoolName(poolName);
+    }
+
+    private static String key(String resourceGroup, String accountName, String poolName, String volumeName)
+    {
+        return String.join("/", resourceGroup, accountName, poolName, volumeName).toLowerCase();
+    }
+
+    // A planned pool
+    static class Bin
+    {
+        private final List<ModelVolume> volumes = new ArrayList<>();
+        private long usedBytes;
+
+        private void add(ModelVolume volume)
+        {
+            volumes.add(volume);
+            usedBytes += volume.getUsageThreshold();
+        }
+
+        List<ModelVolume> getVolumes() {
+            return volumes;
+        }
+
+        long getUsedBytes() {
+            return usedBytes;
+        }
+    }
+
+    // Outcome of a planning: pools and provisioned capacity before and after
+    public static class Plan
+    {
+        private int originalPools;
+        private int plannedPools;
+        private long originalBytes;
+        private long plannedBytes;
+
+        public int getOriginalPools() {
+            return originalPools;
+        }
+
+        public int getPlannedPools() {
+            return plannedPools;
+        }
+
+        // Pool creations, each a long running operation, saved by the plan
+        public int getAvoidedPools() {
+            return Math.max(0, originalPools - plannedPools);
+        }
+
+        public long getOriginalBytes() {
+            return originalBytes;
+        }
+
+        public long getPlannedBytes() {
+            return plannedBytes;
+        }
+
+        public void print()
+        {
+            Utils.writeConsoleMessage(String.format("Pool plan: %d pool(s) instead of %d, %d pool creation(s) avoided, %.1f TiB provisioned instead of %.1f TiB",
+                    plannedPools, originalPools, getAvoidedPools(), (double) plannedBytes / TIB, (double) originalBytes / TIB));
+        }
+
+        /**
+         * Writes the planned layout, in the format of the 'accounts' section of appsettings.json
+         * @param path File to write
+         * @param accounts The planned accounts
+         */
+        public void save(String path, List<ModelNetAppAccount> accounts)
+        {
+            try (Writer writer = new FileWriter(path))
+            {
+                Json.pretty().toJson(Collections.singletonMap("accounts", accounts), writer);
+                Utils.writeConsoleMessage("Planned pool layout written to " + path);
+            }
+            catch (IOException e)
+            {
+                Utils.writeWarningMessage("Unable to save the pool plan to " + path + " - " + e.getMessage());
+            }
+        }
+    }
+}
@@ -5,11 +5,19 @@
 
 package sdk.sample.common;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import sdk.sample.DisasterRecovery;
 import sdk.sample.model.ModelNetAppAccount;
+import sdk.sample.model.ModelTypeAdapters;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,25 +32,172 @@ public class ProjectConfiguration
     // Should resources be cleaned up afterwards
     private boolean shouldCleanUp;
 
+    // Maximum number of provisioning steps running at the same time
+    private int maxParallelism = DEFAULT_MAX_PARALLELISM;
+
+    private static final int DEFAULT_MAX_PARALLELISM = 4;
+
+    // Optional file the run metrics are written to, null or empty for none
+    private String metricsFile;
+
+    // Should the volumes be repacked into the fewest capacity pools per account and service level before provisioning
+    private boolean poolPlanner;
+
+    // Should slow idempotent reads be hedged with a duplicate request
+    private boolean hedgedReads;
+
+    // Should replication schedules be recommended or applied from observed transfers
+    private ReplicationScheduleAdvisor.Mode replicationScheduleAdvisor = ReplicationScheduleAdvisor.Mode.OFF;
+
+    // How long replication is observed by the advisor
+    private int replicationObservationMinutes = DEFAULT_REPLICATION_OBSERVATION_MINUTES;
+
+    private static final int DEFAULT_REPLICATION_OBSERVATION_MINUTES = 180;
+
+    // Optional disaster recovery workflow run on all replications after provisioning: failover, reverse_resync, failback, resync or reinitialize, null for none
+    private DisasterRecovery.Action disasterRecovery;
+
+    // Should a DR drill (break, check, resync) be run on all replications after provisioning
+    private boolean drDrill;
+
+    // Maximum number of replications drilled at the same time
+    private int drillConcurrency = DEFAULT_MAX_PARALLELISM;
+
+    // Minimum time between the start of two drilled replications, to stay below ARM throttling limits
+    private long drillPacingMillis;
+
+    // Should the drill check that each destination is writable once broken
+    private boolean drillVerifyWritable;
+
+    // Should volumes be scaled to their throughput: off, recommend or apply
+    private Autoscaler.Mode autoscaler = Autoscaler.Mode.OFF;
+
+    // JSON file the volume metrics are read from, see FileMetricsSource
+    private String autoscalerMetricsFile;
+
+    // Time between two evaluations of the autoscaler
+    private int autoscalerIntervalSeconds = DEFAULT_AUTOSCALER_INTERVAL_SECONDS;
+
+    private static final int DEFAULT_AUTOSCALER_INTERVAL_SECONDS = 300;
+
+    // How long the autoscaler runs after provisioning
+    private int autoscalerDurationMinutes = DEFAULT_AUTOSCALER_DURATION_MINUTES;
+
+    private static final int DEFAULT_AUTOSCALER_DURATION_MINUTES = 60;
+
+    // Port of the Event Grid webhook receiving resource events, 0 to poll only
+    private int eventReceiverPort;
+
+    // Value of the key query parameter expected on the event receiver
+    private String eventReceiverKey;
+
+    // Optional Chrome Trace Event file the spans of the run are written to, see Tracer, null or empty for none
+    private String traceFile;
+
+    // Number of jobs the provisioning service runs at the same time, see ProvisioningService
+    private int serviceWorkers = DEFAULT_SERVICE_WORKERS;
+
+    private static final int DEFAULT_SERVICE_WORKERS = 4;
+
+    // Journal of the provisioning service jobs, replayed when the service starts
+    private String serviceJournalFile = DEFAULT_SERVICE_JOURNAL_FILE;
+
+    private static final String DEFAULT_SERVICE_JOURNAL_FILE = "jobs.journal";
+
+    // Share of the provisioning budget by resource group, lower case, 1 for the others, see FairShare
+    private Map<String, Integer> tenantWeights = new HashMap<>();
+
+    // How long a long running operation is waited for before it fails and is kept as pending, see OperationTracker
+    private int operationTimeoutMinutes = DEFAULT_OPERATION_TIMEOUT_MINUTES;
+
+    private static final int DEFAULT_OPERATION_TIMEOUT_MINUTES = 120;
+
+    // How long a shutdown waits for the cancelled work to return before the process exits
+    private int shutdownDrainSeconds = DEFAULT_SHUTDOWN_DRAIN_SECONDS;
+
+    private static final int DEFAULT_SHUTDOWN_DRAIN_SECONDS = 30;
+
+    // Should the orphan sweeper only print what it would delete, see OrphanSweeper
+    private boolean sweepDryRun = true;
+
+    // Minimum age of an orphan, from its createdAt tag, before the sweeper deletes it
+    private int sweepMinAgeHours = DEFAULT_SWEEP_MIN_AGE_HOURS;
+
+    private static final int DEFAULT_SWEEP_MIN_AGE_HOURS = 24;
+
+    // Should the sweeper also delete resources without the owner tag of the sample, their createdAt tag must still be old enough
+    private boolean sweepUntagged;
+
+    // Why a general setting could not be parsed, by setting name, reported by ConfigValidator
+    private final Map<String, String> invalidSettings = new LinkedHashMap<>();
+
     public static ProjectConfiguration readFromJsonFile(String path)
     {
-        Gson gson = new Gson();
         AppSettings appSettings;
 
-        try
+        try (Reader reader = new FileReader(path))
         {
-            appSettings = gson.fromJson(new FileReader(path), AppSettings.class);
+            appSettings = readAppSettings(reader);
         }
         catch (FileNotFoundException e)
         {
             Utils.writeWarningMessage("Could not find appsettings.json. Unable to load project configuration. Exiting.");
             return null;
         }
+        catch (IOException | IllegalStateException | JsonParseException e)
+        {
+            throw new JsonParseException("Unable to read " + path + " - " + e.getMessage(), e);
+        }
 
         ProjectConfiguration config = new ProjectConfiguration();
         config.setAccounts(appSettings.getAccounts());
         config.setSubscriptionId(appSettings.getGeneral().get("subscriptionId"));
         config.setShouldCleanUp(Boolean.parseBoolean(appSettings.getGeneral().get("shouldCleanUp")));
+        if (appSettings.getGeneral().get("maxParallelism") != null)
+            config.setMaxParallelism(config.parseInt("maxParallelism", appSettings.getGeneral().get("maxParallelism"), config.getMaxParallelism()));
+        if (appSettings.getGeneral().get("metricsFile") != null && !appSettings.getGeneral().get("metricsFile").isEmpty())
+            config.setMetricsFile(appSettings.getGeneral().get("metricsFile"));
+        config.setPoolPlanner(Boolean.parseBoolean(appSettings.getGeneral().get("poolPlanner")));
+        config.setHedgedReads(Boolean.parseBoolean(appSettings.getGeneral().get("hedgedReads")));
+        if (appSettings.getGeneral().get("replicationScheduleAdvisor") != null)
+            config.setReplicationScheduleAdvisor(config.parseEnum(ReplicationScheduleAdvisor.Mode.class, "replicationScheduleAdvisor", appSettings.getGeneral().get("replicationScheduleAdvisor"), ReplicationScheduleAdvisor.Mode.OFF));
+        if (appSettings.getGeneral().get("replicationObservationMinutes") != null)
+            config.setReplicationObservationMinutes(config.parseInt("replicationObservationMinutes", appSettings.getGeneral().get("replicationObservationMinutes"), config.getReplicationObservationMinutes()));
+        if (appSettings.getGeneral().get("disasterRecovery") != null && !appSettings.getGeneral().get("disasterRecovery").isEmpty())
+            config.setDisasterRecovery(config.parseEnum(DisasterRecovery.Action.class, "disasterRecovery", appSettings.getGeneral().get("disasterRecovery"), null));
+        config.setDrDrill(Boolean.parseBoolean(appSettings.getGeneral().get("drDrill")));
+        if (appSettings.getGeneral().get("drillConcurrency") != null)
+            config.setDrillConcurrency(config.parseInt("drillConcurrency", appSettings.getGeneral().get("drillConcurrency"), config.getDrillConcurrency()));
+        if (appSettings.getGeneral().get("drillPacingMillis") != null)
+            config.setDrillPacingMillis(config.parseLong("drillPacingMillis", appSettings.getGeneral().get("drillPacingMillis"), config.getDrillPacingMillis()));
+        config.setDrillVerifyWritable(Boolean.parseBoolean(appSettings.getGeneral().get("drillVerifyWritable")));
+        if (appSettings.getGeneral().get("autoscaler") != null)
+            config.setAutoscaler(config.parseEnum(Autoscaler.Mode.class, "autoscaler", appSettings.getGeneral().get("autoscaler"), Autoscaler.Mode.OFF));
+        config.setAutoscalerMetricsFile(appSettings.getGeneral().get("autoscalerMetricsFile"));
+        if (appSettings.getGeneral().get("autoscalerIntervalSeconds") != null)
+            config.setAutoscalerIntervalSeconds(config.parseInt("autoscalerIntervalSeconds", appSettings.getGeneral().get("autoscalerIntervalSeconds"), config.getAutoscalerIntervalSeconds()));
+        if (appSettings.getGeneral().get("autoscalerDurationMinutes") != null)
+            config.setAutoscalerDurationMinutes(config.parseInt("autoscalerDurationMinutes", appSettings.getGeneral().get("autoscalerDurationMinutes"), config.getAutoscalerDurationMinutes()));
+        if (appSettings.getGeneral().get("eventReceiverPort") != null && !appSettings.getGeneral().get("eventReceiverPort").isEmpty())
+            config.setEventReceiverPort(config.parseInt("eventReceiverPort", appSettings.getGeneral().get("eventReceiverPort"), config.getEventReceiverPort()));
+        config.setEventReceiverKey(appSettings.getGeneral().get("eventReceiverKey"));
+        if (appSettings.getGeneral().get("traceFile") != null && !appSettings.getGeneral().get("traceFile").isEmpty())
+            config.setTraceFile(appSettings.getGeneral().get("traceFile"));
+        if (appSettings.getGeneral().get("serviceWorkers") != null)
+            config.setServiceWorkers(config.parseInt("serviceWorkers", appSettings.getGeneral().get("serviceWorkers"), config.getServiceWorkers()));
+        if (appSettings.getGeneral().get("serviceJournalFile") != null && !appSettings.getGeneral().get("serviceJournalFile").isEmpty())
+            config.setServiceJournalFile(appSettings.getGeneral().get("serviceJournalFile"));
+        if (appSettings.getGeneral().get("tenantWeights") != null)
+            config.setTenantWeights(config.parseTenantWeights(appSettings.getGeneral().get("tenantWeights")));
+        if (appSettings.getGeneral().get("operationTimeoutMinutes") != null)
+            config.setOperationTimeoutMinutes(config.parseInt("operationTimeoutMinutes", appSettings.getGeneral().get("operationTimeoutMinutes"), config.getOperationTimeoutMinutes()));
+        if (appSettings.getGeneral().get("shutdownDrainSeconds") != null)
+            config.setShutdownDrainSeconds(config.parseInt("shutdownDrainSeconds", appSettings.getGeneral().get("shutdownDrainSeconds"), config.getShutdownDrainSeconds()));
+        if (appSettings.getGeneral().get("sweepDryRun") != null)
+            config.setSweepDryRun(Boolean.parseBoolean(appSettings.getGeneral().get("sweepDryRun")));
+        if (appSettings.getGeneral().get("sweepMinAgeHours") != null)
+            config.setSweepMinAgeHours(config.parseInt("sweepMinAgeHours", appSettings.getGeneral().get("sweepMinAgeHours"), config.getSweepMinAgeHours()));
+        config.setSweepUntagged(Boolean.parseBoolean(appSettings.getGeneral().get("sweepUntagged")));
 
         return config;
     }
@@ -71,6 +226,351 @@ public class ProjectConfiguration
         this.shouldCleanUp = shouldCleanUp;
     }
 
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    public void setMaxParallelism(int maxParallelism) {
+        this.maxParallelism = maxParallelism;
+    }
+
+    public String getMetricsFile() {
+        return metricsFile;
+    }
+
+    public void setMetricsFile(String metricsFile) {
+        this.metricsFile = metricsFile;
+    }
+
+    public boolean isPoolPlanner() {
+        return poolPlanner;
+    }
+
+    public void setPoolPlanner(boolean poolPlanner) {
+        this.poolPlanner = poolPlanner;
+    }
+
+    public boolean isHedgedReads() {
+        return hedgedReads;
+    }
+
+    public void setHedgedReads(boolean hedgedReads) {
+        this.hedgedReads = hedgedReads;
+    }
+
+    public ReplicationScheduleAdvisor.Mode getReplicationScheduleAdvisor() {
+        return replicationScheduleAdvisor;
+    }
+
+    public void setReplicationScheduleAdvisor(ReplicationScheduleAdvisor.Mode replicationScheduleAdvisor) {
+        this.replicationScheduleAdvisor = replicationScheduleAdvisor;
+    }
+
+    public int getReplicationObservationMinutes() {
+        return replicationObservationMinutes;
+    }
+
+    public void setReplicationObservationMinutes(int replicationObservationMinutes) {
+        this.replicationObservationMinutes = replicationObservationMinutes;
+    }
+
+    public DisasterRecovery.Action getDisasterRecovery() {
+        return disasterRecovery;
+    }
+
+    public void setDisasterRecovery(DisasterRecovery.Action disasterRecovery) {
+        this.disasterRecovery = disasterRecovery;
+    }
+
+    public boolean isDrDrill() {
+        return drDrill;
+    }
+
+    public void setDrDrill(boolean drDrill) {
+        this.drDrill = drDrill;
+    }
+
+    public int getDrillConcurrency() {
+        return drillConcurrency;
+    }
+
+    public void setDrillConcurrency(int drillConcurrency) {
+        this.drillConcurrency = drillConcurrency;
+    }
+
+    public long getDrillPacingMillis() {
+        return drillPacingMillis;
+    }
+
+    public void setDrillPacingMillis(long drillPacingMillis) {
+        this.drillPacingMillis = drillPacingMillis;
+    }
+
+    public boolean isDrillVerifyWritable() {
+        return drillVerifyWritable;
+    }
+
+    public void setDrillVerifyWritable(boolean drillVerifyWritable) {
+        this.drillVerifyWritable = drillVerifyWritable;
+    }
+
+    public Autoscaler.Mode getAutoscaler() {
+        return autoscaler;
+    }
+
+    public void setAutoscaler(Autoscaler.Mode autoscaler) {
+        this.autoscaler = autoscaler;
+    }
+
+    public String getAutoscalerMetricsFile() {
+        return autoscalerMetricsFile;
+    }
+
+    public void setAutoscalerMetricsFile(String autoscalerMetricsFile) {
+        this.autoscalerMetricsFile = autoscalerMetricsFile;
+    }
+
+    public int getAutoscalerIntervalSeconds() {
+        return autoscalerIntervalSeconds;
+    }
+
+    public void setAutoscalerIntervalSeconds(int autoscalerIntervalSeconds) {
+        this.autoscalerIntervalSeconds = autoscalerIntervalSeconds;
+    }
+
+    public int getAutoscalerDurationMinutes() {
+        return autoscalerDurationMinutes;
+    }
+
+    public void setAutoscalerDurationMinutes(int autoscalerDurationMinutes) {
+        this.autoscalerDurationMinutes = autoscalerDurationMinutes;
+    }
+
+    public int getEventReceiverPort() {
+        return eventReceiverPort;
+    }
+
+    public void setEventReceiverPort(int eventReceiverPort) {
+        this.eventReceiverPort = eventReceiverPort;
+    }
+
+    public String getEventReceiverKey() {
+        return eventReceiverKey;
+    }
+
+    public void setEventReceiverKey(String eventReceiverKey) {
+        this.eventReceiverKey = eventReceiverKey;
+    }
+
+    public String getTraceFile() {
+        return traceFile;
+    }
+
+    public void setTraceFile(String traceFile) {
+        this.traceFile = traceFile;
+    }
+
+    public int getServiceWorkers() {
+        return serviceWorkers;
+    }
+
+    public void setServiceWorkers(int serviceWorkers) {
+        this.serviceWorkers = serviceWorkers;
+    }
+
+    public String getServiceJournalFile() {
+        return serviceJournalFile;
+    }
+
+    public void setServiceJournalFile(String serviceJournalFile) {
+        this.serviceJournalFile = serviceJournalFile;
+    }
+
+    public Map<String, Integer> getTenantWeights() {
+        return tenantWeights;
+    }
+
+    public void setTenantWeights(Map<String, Integer> tenantWeights) {
+        this.tenantWeights = tenantWeights;
+    }
+
+    public int getOperationTimeoutMinutes() {
+        return operationTimeoutMinutes;
+    }
+
+    public void setOperationTimeoutMinutes(int operationTimeoutMinutes) {
+        this.operationTimeoutMinutes = operationTimeoutMinutes;
+    }
+
+    public int getShutdownDrainSeconds() {
+        return shutdownDrainSeconds;
+    }
+
+    public void setShutdownDrainSeconds(int shutdownDrainSeconds) {
+        this.shutdownDrainSeconds = shutdownDrainSeconds;
+    }
+
+    public boolean isSweepDryRun() {
+        return sweepDryRun;
+    }
+
+    public void setSweepDryRun(boolean sweepDryRun) {
+        this.sweepDryRun = sweepDryRun;
+    }
+
+    public int getSweepMinAgeHours() {
+        return sweepMinAgeHours;
+    }
+
+    public void setSweepMinAgeHours(int sweepMinAgeHours) {
+        this.sweepMinAgeHours = sweepMinAgeHours;
+    }
+
+    public boolean isSweepUntagged() {
+        return sweepUntagged;
+    }
+
+    public void setSweepUntagged(boolean sweepUntagged) {
+        this.sweepUntagged = sweepUntagged;
+    }
+
+    // General settings that could not be parsed, by name, with the reason, reported by ConfigValidator
+    public Map<String, String> getInvalidSettings() {
+        return invalidSettings;
+    }
+
+    /**
+     * Parses a setting holding the name of an enum constant, case insensitive. An unknown value is kept in the invalid
+     * settings for ConfigValidator to report, with all the others, and the fallback is used meanwhile.
+     * @param type Enum of the setting
+     * @param name Name of the setting in the general section
+     * @param value Value of the setting
+     * @param fallback Value used if the setting is not valid
+     * @return The enum constant, or the fallback
+     */
+    private <E extends Enum<E>> E parseEnum(Class<E> type, String name, String value, E fallback)
+    {
+        try
+        {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        }
+        catch (IllegalArgumentException e)
+        {
+            List<String> values = new ArrayList<>();
+            for (E constant : type.getEnumConstants())
+                values.add(constant.name().toLowerCase());
+            invalidSettings.put(name, "must be one of " + values + ", found '" + value + "'");
+            return fallback;
+        }
+    }
+
+    /**
+     * Parses a whole number setting, a value that is not a number is kept in the invalid settings like in parseEnum
+     * @param name Name of the setting in the general section
+     * @param value Value of the setting
+     * @param fallback Value used if the setting is not valid
+     * @return The number, or the fallback
+     */
+    private int parseInt(String name, String value, int fallback)
+    {
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            invalidSettings.put(name, "must be a whole number, found '" + value + "'");
+            return fallback;
+        }
+    }
+
+    /**
+     * Parses a whole number setting, a value that is not a number is kept in the invalid settings like in parseEnum
+     * @param name Name of the setting in the general section
+     * @param value Value of the setting
+     * @param fallback Value used if the setting is not valid
+     * @return The number, or the fallback
+     */
+    private long parseLong(String name, String value, long fallback)
+    {
+        try
+        {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            invalidSettings.put(name, "must be a whole number, found '" + value + "'");
+            return fallback;
+        }
+    }
+
+    /**
+     * Parses the tenant weights setting
+     * @param value Comma separated resource group=weight pairs, e.g. "shared-rg=1, finance-rg=3"
+     * @return Weight by lower case resource group, empty if the setting is not valid, it is then kept in the invalid settings
+     */
+    private Map<String, Integer> parseTenantWeights(String value)
+    {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String pair : value.split(","))
+        {
+            if (pair.trim().isEmpty())
+                continue;
+            String[] parts = pair.split("=");
+            try
+            {
+                if (parts.length == 2)
+                {
+                    weights.put(parts[0].trim().toLowerCase(), Integer.parseInt(parts[1].trim()));
+                    continue;
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                // reported below
+            }
+            invalidSettings.put("tenantWeights", "expects resourceGroup=weight pairs separated by commas, found '" + pair.trim() + "'");
+            return new HashMap<>();
+        }
+        return weights;
+    }
+
+    /**
+     * Reads appsettings.json with the adapters of ModelTypeAdapters, without reflection
+     * @param reader Reader of the file
+     * @return The accounts and general settings, general settings are read as strings
+     * @throws IOException If the file is not valid json
+     */
+    private static AppSettings readAppSettings(Reader reader) throws IOException
+    {
+        JsonReader in = new JsonReader(reader);
+        // Like Gson.fromJson, e.g. comments are allowed
+        in.setLenient(true);
+        AppSettings appSettings = new AppSettings();
+        in.beginObject();
+        while (in.hasNext())
+        {
+            switch (in.nextName())
+            {
+                case "accounts":
+                    appSettings.setAccounts(ModelTypeAdapters.readList(in, ModelTypeAdapters.NETAPP_ACCOUNT));
+                    break;
+                case "general":
+                    Map<String, String> general = new LinkedHashMap<>();
+                    in.beginObject();
+                    while (in.hasNext())
+                        general.put(in.nextName(), ModelTypeAdapters.readString(in));
+                    in.endObject();
+                    appSettings.setGeneral(general);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return appSettings;
+    }
+
     private static class AppSettings
     {
         private List<ModelNetAppAccount> accounts;
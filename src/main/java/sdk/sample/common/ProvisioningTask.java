@@ -0,0 +1,114 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+// A single node of the provisioning dependency graph
+public class ProvisioningTask
+{
+    // Unique name of this task, e.g. the resource path it provisions
+    private final String name;
+
+    // Operation name, see Operations, used to estimate the duration of this task
+    private final String operation;
+
+    // Resource group the task provisions in, the unit of fair sharing between tenants, null for the default tenant
+    private final String tenant;
+
+    /*
+      Work performed by this task.
+      Returns true if an operation was actually issued against ARM, false if there was nothing to do (e.g. resource already exists)
+     */
+    private final BooleanSupplier action;
+
+    private final Set<ProvisioningTask> dependencies = new LinkedHashSet<>();
+
+    private final List<ProvisioningTask> dependents = new ArrayList<>();
+
+    // Estimated duration in milliseconds
+    private long estimate;
+
+    // Estimated length of the longest path from the start of this task to the end of the graph
+    private long rank;
+
+    public ProvisioningTask(String name, String operation, BooleanSupplier action)
+    {
+        this(name, operation, null, action);
+    }
+
+    public ProvisioningTask(String name, String operation, String tenant, BooleanSupplier action)
+    {
+        this.name = name;
+        this.operation = operation;
+        this.tenant = tenant;
+        this.action = action;
+    }
+
+    /**
+     * Declares that this task can only start after the given task finished
+     * @param task Task this task depends on, ignored if null
+     * @return This task
+     */
+    public ProvisioningTask dependsOn(ProvisioningTask task)
+    {
+        if (task != null && task != this && dependencies.add(task))
+        {
+            task.dependents.add(this);
+        }
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public BooleanSupplier getAction() {
+        return action;
+    }
+
+    public Set<ProvisioningTask> getDependencies() {
+        return dependencies;
+    }
+
+    public List<ProvisioningTask> getDependents() {
+        return dependents;
+    }
+
+    public long getEstimate() {
+        return estimate;
+    }
+
+    void setEstimate(long estimate) {
+        this.estimate = estimate;
+    }
+
+    public long getRank() {
+        return rank;
+    }
+
+    void setRank(long rank) {
+        this.rank = rank;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
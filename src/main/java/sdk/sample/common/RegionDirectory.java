@@ -0,0 +1,59 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Resolves the Azure region of an ANF account, used to keep per region state such as concurrency limits
+public class RegionDirectory
+{
+    // Region used for accounts that are not described in appsettings.json
+    public static final String UNKNOWN_REGION = "unknown";
+
+    private static final Map<String, String> regions = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the location of all accounts defined in appsettings.json
+     * @param topology Compiled accounts to register
+     */
+    public static void register(Topology topology)
+    {
+        for (Topology.Account account : topology.getAccounts())
+        {
+            if (account.getLocation() != null)
+                regions.put(key(account.getResourceGroup(), account.getName()), account.getLocation());
+        }
+    }
+
+    /**
+     * Registers the location of an account that is not described in appsettings.json, e.g. listed from ARM
+     * @param resourceGroup Resource Group name of the account
+     * @param accountName Name of the account
+     * @param location Region of the account
+     */
+    public static void register(String resourceGroup, String accountName, String location)
+    {
+        if (location != null)
+            regions.putIfAbsent(key(resourceGroup, accountName), location);
+    }
+
+    /**
+     * Returns the region of an ANF account
+     * @param resourceGroup Resource Group name of the account
+     * @param accountName Name of the account
+     * @return Region of the account, or UNKNOWN_REGION if the account was not registered
+     */
+    public static String regionOf(String resourceGroup, String accountName)
+    {
+        return regions.getOrDefault(key(resourceGroup, accountName), UNKNOWN_REGION);
+    }
+
+    private static String key(String resourceGroup, String accountName)
+    {
+        return (resourceGroup + "/" + accountName).toLowerCase();
+    }
+}
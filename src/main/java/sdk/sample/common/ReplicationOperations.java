@@ -0,0 +1,59 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.azure.resourcemanager.netapp.models.MirrorState;
+import com.azure.resourcemanager.netapp.models.RelationshipStatus;
+
+/*
+  Replication operations used by the disaster recovery workflows.
+  Volumes are identified by resource group, account, pool and volume name.
+  ArmReplicationOperations calls Azure, the simulation package has a stand-in modeling the replication state transitions.
+ */
+public interface ReplicationOperations
+{
+    /**
+     * Breaks the replication on the destination volume of a relationship, making it writable. Returns once the operation completed.
+     */
+    void breakReplication(String[] volume);
+
+    /**
+     * Resyncs a broken relationship from the volume it is called on, transferring only the blocks changed since the last common snapshot.
+     * Called on the destination volume it resumes the original direction and discards the destination's changes,
+     * called on the source volume it reverses the relationship and the source becomes the destination.
+     */
+    void resyncReplication(String[] volume);
+
+    /**
+     * Re-initializes the relationship of a destination volume whose replication could not be resynced
+     */
+    void reInitializeReplication(String[] volume);
+
+    /**
+     * @return True if the volume currently is the destination of its relationship
+     */
+    boolean isDestination(String[] volume);
+
+    /**
+     * @return Mirror state of the relationship of a destination volume
+     */
+    MirrorState getMirrorState(String[] volume);
+
+    /**
+     * @return Relationship status of a destination volume, Transferring while a transfer is in progress
+     */
+    RelationshipStatus getRelationshipStatus(String[] volume);
+
+    /**
+     * @return True if the volume accepts writes: the source of its relationship, or a destination broken and not transferring
+     */
+    boolean isWritable(String[] volume);
+
+    /**
+     * @return Age of the data on a destination volume in milliseconds, i.e. the data lost if it failed over now, or -1 if unknown
+     */
+    long getLagMillis(String[] volume);
+}
@@ -0,0 +1,57 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A replication relationship defined in appsettings.json: a volume with a sourceVolume and that source volume
+public class ReplicationPair
+{
+    // Resource group, account, pool and volume name of the source volume
+    private final String[] source;
+
+    // Resource group, account, pool and volume name of the destination volume
+    private final String[] destination;
+
+    public ReplicationPair(String[] source, String[] destination)
+    {
+        this.source = source;
+        this.destination = destination;
+    }
+
+    /**
+     * Lists the replication pairs defined in appsettings.json
+     * @param topology Compiled accounts, pools and volumes
+     * @return One pair per volume with a sourceVolume
+     */
+    public static List<ReplicationPair> fromTopology(Topology topology)
+    {
+        List<ReplicationPair> pairs = new ArrayList<>();
+        for (Topology.Volume volume : topology.getDataProtectionVolumes())
+            pairs.add(new ReplicationPair(volume.getSourceVolume().getParameters(), volume.getParameters()));
+        return pairs;
+    }
+
+    public String[] getSource() {
+        return source;
+    }
+
+    public String[] getDestination() {
+        return destination;
+    }
+
+    // Destination volume as resourceGroup/account/pool/volume
+    public String getName() {
+        return String.join("/", destination);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.join("/", source) + " -> " + String.join("/", destination);
+    }
+}
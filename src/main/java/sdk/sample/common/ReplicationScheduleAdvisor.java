@@ -0,0 +1,250 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.ReplicationStatusInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import com.azure.resourcemanager.netapp.models.RelationshipStatus;
+import com.azure.resourcemanager.netapp.models.ReplicationSchedule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+  Recommends the tightest replication schedule a replication link can sustain.
+  The replication status of each data protection volume is polled during an observation period, every transfer seen
+  (relationship status going from Transferring back to Idle) gives a transfer size and duration.
+  The change rate of the source volume (bytes per second of schedule interval) and the link throughput are derived from them,
+  a schedule is sustainable when its predicted transfer takes at most half of its interval, so transfers never overlap.
+ */
+public class ReplicationScheduleAdvisor
+{
+    public enum Mode { OFF, RECOMMEND, APPLY }
+
+    // Schedules from the tightest to the loosest
+    private static final List<ReplicationSchedule> SCHEDULES = Arrays.asList(ReplicationSchedule._10MINUTELY, ReplicationSchedule.HOURLY, ReplicationSchedule.DAILY);
+
+    // Maximum fraction of the interval a transfer may take, the rest absorbs bursts in the change rate
+    private static final double MAX_INTERVAL_USAGE = 0.5;
+
+    // Fixed cost of a transfer (snapshot, negotiation) on top of moving the data
+    private static final long TRANSFER_OVERHEAD_SECONDS = 60;
+
+    private static final int POLL_INTERVAL_SECONDS = 30;
+
+    /**
+     * Observes the replication of all data protection volumes defined in appsettings.json in parallel and recommends,
+     * or applies, a replication schedule for each of them
+     * @param anfClient Azure NetApp Files Management Client
+     * @param topology Compiled accounts, pools and volumes
+     * @param mode RECOMMEND to only print recommendations, APPLY to also update the volumes
+     * @param observationMinutes How long replication is observed, it should cover several transfers of the current schedule
+     * @param parallelism Maximum number of volumes observed at the same time, the others wait for a free worker
+     */
+    public static void run(NetAppManagementClient anfClient, Topology topology, Mode mode, int observationMinutes, int parallelism)
+    {
+        if (mode == Mode.OFF)
+            return;
+
+        List<String[]> volumes = new ArrayList<>();
+        for (ReplicationPair pair : ReplicationPair.fromTopology(topology))
+            volumes.add(pair.getDestination());
+        if (volumes.isEmpty())
+            return;
+
+        Utils.writeConsoleMessage("Observing replication of " + volumes.size() + " data protection volume(s) for " + observationMinutes + " minute(s), "
+                + Math.max(1, parallelism) + " at a time...");
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, volumes.size())));
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String[] volume : volumes)
+                futures.add(executor.submit(() -> advise(anfClient, volume, mode, observationMinutes * 60_000L)));
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while observing replication", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException("Replication schedule advisor failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Recommends the tightest sustainable schedule from observed transfers
+     * @param transfers Transfers observed with the current schedule
+     * @param current Current replication schedule of the volume
+     * @return The recommended schedule, or null if no transfer was observed
+     */
+    public static ReplicationSchedule recommend(List<Transfer> transfers, ReplicationSchedule current)
+    {
+        if (transfers.isEmpty())
+            return null;
+
+        long totalBytes = 0;
+        long totalSeconds = 0;
+        long largestBytes = 0;
+        for (Transfer transfer : transfers)
+        {
+            totalBytes += transfer.getBytes();
+            totalSeconds += Math.max(1, transfer.getSeconds());
+            largestBytes = Math.max(largestBytes, transfer.getBytes());
+        }
+
+        // Bytes per second moved by the link (overhead included), and bytes per second changed on the source (largest transfer to stay conservative)
+        double throughput = (double) totalBytes / totalSeconds;
+        double changeRate = (double) largestBytes / intervalSeconds(current);
+
+        for (ReplicationSchedule schedule : SCHEDULES)
+        {
+            long interval = intervalSeconds(schedule);
+            double predictedSeconds = TRANSFER_OVERHEAD_SECONDS + (throughput > 0 ? changeRate * interval / throughput : 0);
+            if (predictedSeconds <= interval * MAX_INTERVAL_USAGE)
+                return schedule;
+        }
+        return ReplicationSchedule.DAILY;
+    }
+
+    /**
+     * Returns the interval between two transfers of a schedule
+     * @param schedule Replication schedule
+     * @return Interval in seconds
+     */
+    public static long intervalSeconds(ReplicationSchedule schedule)
+    {
+        if (ReplicationSchedule._10MINUTELY.equals(schedule))
+            return 600;
+        if (ReplicationSchedule.HOURLY.equals(schedule))
+            return 3600;
+        if (ReplicationSchedule.DAILY.equals(schedule))
+            return 86400;
+        throw new IllegalArgumentException("Unsupported replication schedule " + schedule);
+    }
+
+    private static void advise(NetAppManagementClient anfClient, String[] volume, Mode mode, long observationMillis)
+    {
+        String name = String.join("/", volume);
+        VolumeInner anfVolume = (VolumeInner) CommonSdk.getResource(anfClient, volume, VolumeInner.class);
+        if (anfVolume == null || anfVolume.dataProtection() == null || anfVolume.dataProtection().replication() == null)
+        {
+            Utils.writeWarningMessage("Volume " + name + " is not a data protection volume, skipping replication schedule advice");
+            return;
+        }
+        ReplicationSchedule current = anfVolume.dataProtection().replication().replicationSchedule();
+
+        List<Transfer> transfers = observe(anfClient, volume, observationMillis);
+        ReplicationSchedule recommended = recommend(transfers, current);
+        if (recommended == null)
+        {
+            Utils.writeConsoleMessage("Volume " + name + ": no transfer observed, keeping " + current);
+            return;
+        }
+
+        Utils.writeConsoleMessage("Volume " + name + ": " + transfers.size() + " transfer(s) observed, current schedule " + current + ", recommended " + recommended);
+        if (mode == Mode.APPLY && !recommended.equals(current))
+        {
+            CommonSdk.updateReplicationSchedule(anfClient, volume[0], volume[1], volume[2], volume[3], recommended);
+            Utils.writeSuccessMessage("Replication schedule of volume " + name + " changed to " + recommended);
+        }
+    }
+
+    /**
+     * Polls the replication status of a destination volume and records the transfers that complete during the observation.
+     * totalProgress counts the bytes moved over the life of the relationship, a transfer moved the difference between its value
+     * when the transfer starts and when it ends.
+     */
+    private static List<Transfer> observe(NetAppManagementClient anfClient, String[] volume, long observationMillis)
+    {
+        List<Transfer> transfers = new ArrayList<>();
+        long end = System.currentTimeMillis() + observationMillis;
+        long transferStart = -1;
+        // Progress seen by the last poll, and when the transfer in progress started
+        long lastProgress = -1;
+        long startProgress = 0;
+        long endProgress = 0;
+        while (System.currentTimeMillis() < end)
+        {
+            OperationContext.current().check("Observing the replication of " + String.join("/", volume));
+            try
+            {
+                ReplicationStatusInner status = CommonSdk.getReplicationStatus(anfClient, volume[0], volume[1], volume[2], volume[3]);
+                long progress = parseBytes(status.totalProgress());
+                if (RelationshipStatus.TRANSFERRING.equals(status.relationshipStatus()))
+                {
+                    if (transferStart < 0)
+                    {
+                        transferStart = System.currentTimeMillis();
+                        // The transfer started after the previous poll, which saw its starting value
+                        startProgress = lastProgress >= 0 ? lastProgress : progress;
+                        endProgress = progress;
+                    }
+                    endProgress = Math.max(endProgress, progress);
+                }
+                else if (transferStart >= 0)
+                {
+                    endProgress = Math.max(endProgress, progress);
+                    transfers.add(new Transfer(Math.max(0, endProgress - startProgress), (System.currentTimeMillis() - transferStart) / 1000));
+                    transferStart = -1;
+                }
+                lastProgress = progress;
+            }
+            catch (Exception e)
+            {
+                // a missed poll only makes the measured transfer slightly longer
+                Utils.writeWarningMessage(e.getMessage());
+            }
+            OperationContext.current().sleep(POLL_INTERVAL_SECONDS * 1000L);
+        }
+        return transfers;
+    }
+
+    private static long parseBytes(String progress)
+    {
+        try
+        {
+            return progress == null ? 0 : Long.parseLong(progress.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    // A completed replication transfer
+    public static class Transfer
+    {
+        private final long bytes;
+        private final long seconds;
+
+        public Transfer(long bytes, long seconds)
+        {
+            this.bytes = bytes;
+            this.seconds = seconds;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getSeconds() {
+            return seconds;
+        }
+    }
+}
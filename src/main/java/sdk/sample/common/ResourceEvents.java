@@ -0,0 +1,187 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  Wakes up the waits of CommonSdk when a resource event arrives (see EventReceiver), instead of letting them sleep a whole poll interval.
+  Resources are keyed by ResourceGroupName/AccountName/PoolName/VolumeName/SnapshotName in lower case, as far as they apply.
+  Each key has a version changed by every event. A wait reads the version before reading the resource and then sleeps until the
+  version changes, so an event arriving between the read and the sleep is not lost.
+  Only the waits for a provisioning state or a deletion are signaled by an event, those poll as a safety net every SAFETY_NET_MULTIPLIER
+  poll intervals in case an event is lost. The others, e.g. a mirror state or a snapshot reaching a destination volume, keep polling
+  every interval and are only woken up early by an event on their resource.
+  A resource is only tracked while it is waited for, events on other resources only advance the sequence.
+ */
+public class ResourceEvents
+{
+    static final int SAFETY_NET_MULTIPLIER = 6;
+
+    private static final ResourceEvents shared = new ResourceEvents();
+
+    // One monitor per resource waited for, so that an event only wakes up the waits of its resource
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+    // Source of the versions, a slot created after its resource was evicted starts past every version handed out before
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile boolean enabled;
+
+    // Instance used by CommonSdk, disabled until an EventReceiver is started
+    public static ResourceEvents shared()
+    {
+        return shared;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the key of a resource from its id
+     * @param resourceId Resource id, e.g. /subscriptions/.../resourceGroups/rg/providers/Microsoft.NetApp/netAppAccounts/account/capacityPools/pool
+     * @return The key, or null if the id is not an ANF resource id
+     */
+    public static String keyOf(String resourceId)
+    {
+        String[] parts = {
+                ResourceUriUtils.getResourceGroup(resourceId),
+                ResourceUriUtils.getAnfAccount(resourceId),
+                ResourceUriUtils.getAnfCapacityPool(resourceId),
+                ResourceUriUtils.getAnfVolume(resourceId),
+                ResourceUriUtils.getAnfSnapshot(resourceId) };
+        if (parts[0] == null || parts[1] == null)
+            return null;
+
+        StringBuilder key = new StringBuilder(parts[0]);
+        for (int i = 1; i < parts.length && parts[i] != null; i++)
+            key.append('/').append(parts[i]);
+        return key.toString().toLowerCase();
+    }
+
+    /**
+     * Returns the key of a resource from its parameters
+     * @param parameters ResourceGroupName, AccountName, PoolName, VolumeName, SnapshotName, as far as they apply
+     */
+    public static String keyOf(String[] parameters)
+    {
+        return String.join("/", parameters).toLowerCase();
+    }
+
+    /**
+     * Returns the current version of a resource, to be read before the resource itself
+     * @param key Key of the resource
+     */
+    public long version(String key)
+    {
+        return slots.computeIfAbsent(key, k -> new Slot(sequence.get())).version;
+    }
+
+    /**
+     * Records an event on a resource and wakes up its waits
+     * @param key Key of the resource
+     */
+    public void publish(String key)
+    {
+        long version = sequence.incrementAndGet();
+        Slot slot = slots.computeIfPresent(key, (k, existing) -> {
+            existing.version = version;
+            return existing;
+        });
+        if (slot != null)
+        {
+            synchronized (slot)
+            {
+                slot.notifyAll();
+            }
+        }
+        Metrics.increment("resourceevents.received");
+    }
+
+    /**
+     * Waits until a resource changed since a version, a timeout, or the end of the current OperationContext.
+     * The resource is no longer tracked once its last waiter returns.
+     * @param key Key of the resource
+     * @param version Version read before the resource
+     * @param timeoutMillis Maximum time to wait
+     * @return True if an event arrived
+     */
+    public boolean awaitChange(String key, long version, long timeoutMillis)
+    {
+        Slot slot = slots.compute(key, (k, existing) -> {
+            Slot waited = existing == null ? new Slot(sequence.get()) : existing;
+            waited.waiters++;
+            return waited;
+        });
+        OperationContext context = OperationContext.current();
+        long deadline = System.currentTimeMillis() + Math.min(timeoutMillis, context.remainingMillis());
+        try
+        {
+            synchronized (slot)
+            {
+                while (slot.version == version)
+                {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0 || context.isDone())
+                        return false;
+                    // Woken up at least every second to notice a cancellation
+                    slot.wait(Math.min(remaining, 1000));
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        finally
+        {
+            slots.computeIfPresent(key, (k, existing) -> existing == slot && --existing.waiters == 0 ? null : existing);
+        }
+        Metrics.increment("resourceevents.wakeups");
+        return true;
+    }
+
+    /**
+     * Sleeps between two polls of a resource: a poll interval when events are disabled, otherwise until an event arrives
+     * or the safety net interval elapsed. Returns early when the deadline of the current OperationContext passes or it is cancelled
+     * @param key Key of the resource
+     * @param version Version read before the last poll
+     * @param intervalMillis Poll interval without events
+     * @param signaled True if the awaited change raises an event, e.g. a provisioning state or a deletion, false for a mirror state
+     * or a snapshot transferred by replication, which are still polled every interval
+     */
+    public void sleep(String key, long version, long intervalMillis, boolean signaled)
+    {
+        try (Tracer.Span span = Tracer.shared().start(key, "wait"))
+        {
+            if (enabled)
+                span.arg("event", awaitChange(key, version, signaled ? intervalMillis * SAFETY_NET_MULTIPLIER : intervalMillis));
+            else
+                OperationContext.current().sleep(intervalMillis);
+        }
+    }
+
+    private static class Slot
+    {
+        private volatile long version;
+
+        // Threads in awaitChange, guarded by the map entry of the slot
+        private int waiters;
+
+        private Slot(long version)
+        {
+            this.version = version;
+        }
+    }
+}
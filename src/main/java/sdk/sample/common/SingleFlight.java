@@ -0,0 +1,113 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/*
+  Coalesces concurrent identical reads: while a call for a key is in flight, other callers asking for the same key
+  wait for that call and share its result (or its error) instead of issuing their own request.
+  Keys are spread over lock stripes so unrelated resources never contend on the same lock.
+ */
+public class SingleFlight
+{
+    private static final int STRIPES = 64;
+
+    private final String name;
+
+    private final Object[] locks = new Object[STRIPES];
+
+    private final Map<String, CompletableFuture<Object>>[] calls;
+
+    @SuppressWarnings("unchecked")
+    public SingleFlight(String name)
+    {
+        this.name = name;
+        this.calls = new Map[STRIPES];
+        for (int i = 0; i < STRIPES; i++)
+        {
+            locks[i] = new Object();
+            calls[i] = new HashMap<>();
+        }
+    }
+
+    /**
+     * Runs a call, or joins the identical call already in flight
+     * @param key Identity of the call, e.g. the resource id being read
+     * @param call The call to ARM
+     * @return The result of the call
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> call)
+    {
+        int stripe = (key.hashCode() & Integer.MAX_VALUE) % STRIPES;
+        CompletableFuture<Object> pending;
+        boolean leader = false;
+        synchronized (locks[stripe])
+        {
+            pending = calls[stripe].get(key);
+            if (pending == null)
+            {
+                pending = new CompletableFuture<>();
+                calls[stripe].put(key, pending);
+                leader = true;
+            }
+        }
+
+        if (!leader)
+        {
+            Metrics.increment(name + ".coalesced");
+            return (T) join(pending);
+        }
+
+        Metrics.increment(name + ".executed");
+        try
+        {
+            T result = call.get();
+            remove(stripe, key);
+            pending.complete(result);
+            return result;
+        }
+        catch (Throwable e)
+        {
+            remove(stripe, key);
+            pending.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void remove(int stripe, String key)
+    {
+        synchronized (locks[stripe])
+        {
+            calls[stripe].remove(key);
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> pending)
+    {
+        try
+        {
+            return pending.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a coalesced call", e);
+        }
+        catch (ExecutionException e)
+        {
+            // Rethrow the leader's error as is, callers handle it like their own call failed
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
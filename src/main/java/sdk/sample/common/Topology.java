@@ -0,0 +1,673 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.azure.resourcemanager.netapp.models.ExportPolicyRule;
+import com.azure.resourcemanager.netapp.models.ReplicationSchedule;
+import com.azure.resourcemanager.netapp.models.ServiceLevel;
+import com.azure.resourcemanager.netapp.models.VolumePropertiesExportPolicy;
+import sdk.sample.model.ModelCapacityPool;
+import sdk.sample.model.ModelExportPolicyRule;
+import sdk.sample.model.ModelNetAppAccount;
+import sdk.sample.model.ModelSnapshotSource;
+import sdk.sample.model.ModelSourceVolume;
+import sdk.sample.model.ModelVolume;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+  Immutable view of the accounts, pools and volumes of appsettings.json, compiled once after validation and shared by all workers
+  without locking. Lists are never null, resource ids and keys are computed once, every resource links to its parent and children,
+  and volumes link to their source volume and replicas when those are part of the topology.
+  Resources are indexed by resource id, data protection volumes by source volume and resources by resource group, so lookups
+  never walk the accounts, pools and volumes nor call ARM.
+  Volumes with the same export policy rules share a single VolumePropertiesExportPolicy, which must therefore not be modified.
+  The Model* classes remain the Gson binding of appsettings.json and what the pool planner rewrites before compiling.
+ */
+public final class Topology
+{
+    private final List<Account> accounts;
+    private final Map<String, Volume> volumesByKey;
+    private final Map<String, Resource> resourcesById;
+    private final Map<String, List<Volume>> destinationsBySource;
+    private final Map<String, List<Resource>> membersByResourceGroup;
+    private final List<Volume> dataProtectionVolumes;
+
+    private Topology(List<Account> accounts, Map<String, Volume> volumesByKey, Map<String, Resource> resourcesById,
+                     Map<String, List<Volume>> destinationsBySource, Map<String, List<Resource>> membersByResourceGroup)
+    {
+        this.accounts = accounts;
+        this.volumesByKey = volumesByKey;
+        this.resourcesById = resourcesById;
+        this.destinationsBySource = destinationsBySource;
+        this.membersByResourceGroup = membersByResourceGroup;
+        List<Volume> destinations = new ArrayList<>();
+        for (Volume volume : volumesByKey.values())
+        {
+            if (volume.sourceVolume != null)
+                destinations.add(volume);
+        }
+        this.dataProtectionVolumes = Collections.unmodifiableList(destinations);
+    }
+
+    /**
+     * Compiles the accounts of appsettings.json, to be called once they are validated (see ConfigValidator)
+     * @param subscriptionId Subscription the resources are deployed to, used for resource ids
+     * @param modelAccounts Accounts read from appsettings.json, possibly rewritten by the pool planner
+     * @return The topology
+     */
+    public static Topology compile(String subscriptionId, List<ModelNetAppAccount> modelAccounts)
+    {
+        Map<String, VolumePropertiesExportPolicy> exportPolicies = new HashMap<>();
+        List<Account> accounts = new ArrayList<>();
+        for (ModelNetAppAccount modelAccount : nonNull(modelAccounts))
+            accounts.add(new Account(subscriptionId, modelAccount, exportPolicies));
+        return link(accounts);
+    }
+
+    /**
+     * Returns the part of the topology targeted by a selector, resources are looked up in the indexes when the resource group is
+     * a plain name. Targeted resources come with their parents and children, and optionally with the volumes they are created
+     * from (source volumes and volumes of snapshots, with their parents) so that they can be provisioned.
+     * Replication links to volumes left out become links to volumes outside of the topology.
+     * @param selector Resource group, account, pool and volume patterns
+     * @param withDependencies True to also keep the volumes the targeted volumes are created from
+     * @return A new topology, sharing the export policies of this one
+     */
+    public Topology select(TopologySelector selector, boolean withDependencies)
+    {
+        Iterable<? extends Resource> candidates;
+        if (selector.getLiteralResourceGroup() != null)
+            candidates = getMembers(selector.getLiteralResourceGroup());
+        else if (selector.getScope() == TopologySelector.Scope.VOLUME)
+            candidates = getVolumes();
+        else
+            candidates = resourcesById.values();
+
+        Set<Resource> kept = new HashSet<>();
+        for (Resource resource : candidates)
+        {
+            if (selector.matches(resource))
+                keep(resource, kept, true, withDependencies);
+        }
+
+        List<Account> selected = new ArrayList<>();
+        for (Account account : accounts)
+        {
+            if (kept.contains(account))
+                selected.add(new Account(account, kept));
+        }
+        return link(selected);
+    }
+
+    // Adds a resource with its parents, its children when it is targeted, and the volumes it is created from when asked for
+    private static void keep(Resource resource, Set<Resource> kept, boolean children, boolean dependencies)
+    {
+        if (!kept.add(resource) && !children)
+            return;
+        if (resource instanceof Account)
+        {
+            if (children)
+                ((Account) resource).pools.forEach(pool -> keep(pool, kept, true, dependencies));
+        }
+        else if (resource instanceof Pool)
+        {
+            Pool pool = (Pool) resource;
+            kept.add(pool.account);
+            if (children)
+                pool.volumes.forEach(volume -> keep(volume, kept, true, dependencies));
+        }
+        else
+        {
+            Volume volume = (Volume) resource;
+            kept.add(volume.pool);
+            kept.add(volume.pool.account);
+            if (dependencies && volume.source != null)
+                keep(volume.source, kept, false, true);
+            if (dependencies && volume.snapshotSourceVolume != null)
+                keep(volume.snapshotSourceVolume, kept, false, true);
+        }
+    }
+
+    // Indexes the accounts and links their volumes, before the topology is published
+    private static Topology link(List<Account> accounts)
+    {
+        Map<String, Volume> volumesByKey = new LinkedHashMap<>();
+        Map<String, Resource> resourcesById = new HashMap<>();
+        Map<String, List<Resource>> membersByResourceGroup = new LinkedHashMap<>();
+        for (Account account : accounts)
+        {
+            index(account, resourcesById, membersByResourceGroup);
+            for (Pool pool : account.pools)
+            {
+                index(pool, resourcesById, membersByResourceGroup);
+                for (Volume volume : pool.volumes)
+                {
+                    if (volumesByKey.put(volume.key, volume) != null)
+                        throw new IllegalArgumentException("Volume " + volume.key + " is defined more than once");
+                    index(volume, resourcesById, membersByResourceGroup);
+                }
+            }
+        }
+
+        // Links between volumes, set before the topology is published and never changed afterwards
+        Map<String, List<Volume>> destinationsBySource = new HashMap<>();
+        for (Volume volume : volumesByKey.values())
+        {
+            if (volume.sourceVolume != null)
+            {
+                volume.source = volumesByKey.get(volume.sourceVolume.key);
+                destinationsBySource.computeIfAbsent(volume.sourceVolume.key, k -> new ArrayList<>()).add(volume);
+            }
+            if (volume.snapshotSource != null)
+                volume.snapshotSourceVolume = volumesByKey.get(volume.snapshotSource.key);
+        }
+        destinationsBySource.replaceAll((key, destinations) -> Collections.unmodifiableList(destinations));
+        for (Volume volume : volumesByKey.values())
+            volume.replicas = destinationsBySource.getOrDefault(volume.key, Collections.emptyList());
+        membersByResourceGroup.replaceAll((key, members) -> Collections.unmodifiableList(members));
+
+        return new Topology(Collections.unmodifiableList(accounts), Collections.unmodifiableMap(volumesByKey), resourcesById,
+                destinationsBySource, membersByResourceGroup);
+    }
+
+    public List<Account> getAccounts() {
+        return accounts;
+    }
+
+    // All volumes, in the order of appsettings.json
+    public Iterable<Volume> getVolumes() {
+        return volumesByKey.values();
+    }
+
+    // Volumes with a sourceVolume, in the order of appsettings.json
+    public List<Volume> getDataProtectionVolumes() {
+        return dataProtectionVolumes;
+    }
+
+    /**
+     * Finds a volume of the topology
+     * @param reference Resource group, account, pool and volume names
+     * @return The volume, or null if it is not part of the topology
+     */
+    public Volume findVolume(VolumeReference reference)
+    {
+        return volumesByKey.get(reference.key);
+    }
+
+    /**
+     * Finds an account, capacity pool or volume of the topology by resource id, e.g. the subject of an Event Grid event
+     * @param resourceId Resource id, compared ignoring case
+     * @return The resource, or null if it is not part of the topology
+     */
+    public Resource findById(String resourceId)
+    {
+        return resourceId == null ? null : resourcesById.get(resourceId.toLowerCase());
+    }
+
+    /**
+     * Returns the data protection volumes replicating a volume, which may be outside of the topology
+     * @param source Source volume
+     * @return The destination volumes, empty if the volume is not replicated
+     */
+    public List<Volume> getDestinations(VolumeReference source)
+    {
+        return destinationsBySource.getOrDefault(source.key, Collections.emptyList());
+    }
+
+    /**
+     * Returns the accounts, capacity pools and volumes of a resource group, parents before their children
+     * @param resourceGroup Resource group name, compared ignoring case
+     * @return The resources, empty if the resource group has none
+     */
+    public List<Resource> getMembers(String resourceGroup)
+    {
+        return membersByResourceGroup.getOrDefault(resourceGroup.toLowerCase(), Collections.emptyList());
+    }
+
+    /**
+     * Returns the key of a resource, its names in lower case separated by slashes, as used by ResourceEvents
+     * @param names Resource group, account, pool, volume names, as far as they apply
+     */
+    static String keyOf(String... names)
+    {
+        return String.join("/", names).toLowerCase();
+    }
+
+    private static void index(Resource resource, Map<String, Resource> resourcesById, Map<String, List<Resource>> membersByResourceGroup)
+    {
+        resourcesById.put(resource.getId().toLowerCase(), resource);
+        membersByResourceGroup.computeIfAbsent(resource.getResourceGroup().toLowerCase(), k -> new ArrayList<>()).add(resource);
+    }
+
+    private static <T> List<T> nonNull(List<T> list)
+    {
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    private static String requireName(String name, String what)
+    {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException(what + " has no name");
+        return name;
+    }
+
+    // An account, capacity pool or volume of the topology
+    public interface Resource
+    {
+        String getName();
+
+        String getResourceGroup();
+
+        String getId();
+
+        // Names from the resource group down to the resource, as expected by CommonSdk.getResource
+        String[] getParameters();
+    }
+
+    // A NetApp account and its capacity pools
+    public static final class Account implements Resource
+    {
+        private final String subscriptionId;
+        private final String name;
+        private final String resourceGroup;
+        private final String location;
+        private final String id;
+        private final List<Pool> pools;
+
+        private Account(String subscriptionId, ModelNetAppAccount model, Map<String, VolumePropertiesExportPolicy> exportPolicies)
+        {
+            this.subscriptionId = subscriptionId;
+            this.name = requireName(model.getName(), "An account");
+            this.resourceGroup = requireName(model.getResourceGroup(), "The resource group of account " + name);
+            this.location = model.getLocation() == null ? null : model.getLocation().toLowerCase();
+            this.id = "/subscriptions/" + subscriptionId + "/resourceGroups/" + resourceGroup + "/providers/Microsoft.NetApp/netAppAccounts/" + name;
+            List<Pool> compiled = new ArrayList<>();
+            for (ModelCapacityPool pool : nonNull(model.getCapacityPools()))
+                compiled.add(new Pool(this, pool, exportPolicies));
+            this.pools = Collections.unmodifiableList(compiled);
+        }
+
+        // Copy keeping the pools and volumes selected, see Topology.select
+        private Account(Account original, Set<Resource> kept)
+        {
+            this.subscriptionId = original.subscriptionId;
+            this.name = original.name;
+            this.resourceGroup = original.resourceGroup;
+            this.location = original.location;
+            this.id = original.id;
+            List<Pool> copied = new ArrayList<>();
+            for (Pool pool : original.pools)
+            {
+                if (kept.contains(pool))
+                    copied.add(new Pool(this, pool, kept));
+            }
+            this.pools = Collections.unmodifiableList(copied);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getResourceGroup() {
+            return resourceGroup;
+        }
+
+        // Location in lower case
+        public String getLocation() {
+            return location;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public List<Pool> getPools() {
+            return pools;
+        }
+
+        // Resource group and account name, as expected by CommonSdk.getResource
+        public String[] getParameters() {
+            return new String[] { resourceGroup, name };
+        }
+
+        @Override
+        public String toString()
+        {
+            return resourceGroup + "/" + name;
+        }
+    }
+
+    // A capacity pool and its volumes
+    public static final class Pool implements Resource
+    {
+        private final Account account;
+        private final String name;
+        private final long size;
+        private final ServiceLevel serviceLevel;
+        private final String id;
+        private final List<Volume> volumes;
+
+        private Pool(Account account, ModelCapacityPool model, Map<String, VolumePropertiesExportPolicy> exportPolicies)
+        {
+            this.account = account;
+            this.name = requireName(model.getName(), "A capacity pool of account " + account);
+            this.size = model.getSize();
+            this.serviceLevel = model.getServiceLevel() == null ? null : ServiceLevel.fromString(model.getServiceLevel());
+            this.id = account.id + "/capacityPools/" + name;
+            List<Volume> compiled = new ArrayList<>();
+            for (ModelVolume volume : nonNull(model.getVolumes()))
+                compiled.add(new Volume(this, volume, exportPolicies));
+            this.volumes = Collections.unmodifiableList(compiled);
+        }
+
+        // Copy keeping the volumes selected, see Topology.select
+        private Pool(Account account, Pool original, Set<Resource> kept)
+        {
+            this.account = account;
+            this.name = original.name;
+            this.size = original.size;
+            this.serviceLevel = original.serviceLevel;
+            this.id = original.id;
+            List<Volume> copied = new ArrayList<>();
+            for (Volume volume : original.volumes)
+            {
+                if (kept.contains(volume))
+                    copied.add(new Volume(this, volume));
+            }
+            this.volumes = Collections.unmodifiableList(copied);
+        }
+
+        public Account getAccount() {
+            return account;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getResourceGroup() {
+            return account.resourceGroup;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public ServiceLevel getServiceLevel() {
+            return serviceLevel;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public List<Volume> getVolumes() {
+            return volumes;
+        }
+
+        // Resource group, account and pool name, as expected by CommonSdk.getResource
+        public String[] getParameters() {
+            return new String[] { account.resourceGroup, account.name, name };
+        }
+
+        @Override
+        public String toString()
+        {
+            return account + "/" + name;
+        }
+    }
+
+    // A volume, with its replication source and replicas when they are part of the topology
+    public static final class Volume implements Resource
+    {
+        private final Pool pool;
+        private final String name;
+        private final String key;
+        private final String id;
+        private final long usageThreshold;
+        private final String creationToken;
+        private final List<String> protocolTypes;
+        private final String subnetId;
+        private final VolumePropertiesExportPolicy exportPolicy;
+        private final VolumeReference sourceVolume;
+        private final ReplicationSchedule replicationSchedule;
+        private final VolumeReference snapshotSource;
+        private final String snapshotSourceName;
+        private final List<String> snapshots;
+
+        // Set by compile before the topology is published
+        private Volume source;
+        private Volume snapshotSourceVolume;
+        private List<Volume> replicas;
+
+        private Volume(Pool pool, ModelVolume model, Map<String, VolumePropertiesExportPolicy> exportPolicies)
+        {
+            this.pool = pool;
+            this.name = requireName(model.getName(), "A volume of capacity pool " + pool);
+            this.key = keyOf(pool.account.resourceGroup, pool.account.name, pool.name, name);
+            this.id = pool.id + "/volumes/" + name;
+            this.usageThreshold = model.getUsageThreshold();
+            this.creationToken = model.getCreationToken();
+            this.protocolTypes = Collections.singletonList(model.getType());
+            this.subnetId = model.getSubnetId();
+            this.exportPolicy = exportPolicies.computeIfAbsent(ruleKey(nonNull(model.getExportPolicies())),
+                    k -> compileExportPolicy(nonNull(model.getExportPolicies())));
+            this.sourceVolume = model.getSourceVolume() == null ? null : new VolumeReference(pool.account.subscriptionId, model.getSourceVolume());
+            this.replicationSchedule = model.getSourceVolume() == null ? null : CommonSdk.getReplicationSchedule(model);
+            ModelSnapshotSource snapshot = model.getSnapshotSource();
+            this.snapshotSource = snapshot == null ? null : new VolumeReference(pool.account.subscriptionId, snapshot);
+            this.snapshotSourceName = snapshot == null ? null : snapshot.getSnapshotName();
+            this.snapshots = Collections.unmodifiableList(new ArrayList<>(nonNull(model.getSnapshots())));
+        }
+
+        // Copy in a selected topology, links are set again by Topology.select
+        private Volume(Pool pool, Volume original)
+        {
+            this.pool = pool;
+            this.name = original.name;
+            this.key = original.key;
+            this.id = original.id;
+            this.usageThreshold = original.usageThreshold;
+            this.creationToken = original.creationToken;
+            this.protocolTypes = original.protocolTypes;
+            this.subnetId = original.subnetId;
+            this.exportPolicy = original.exportPolicy;
+            this.sourceVolume = original.sourceVolume;
+            this.replicationSchedule = original.replicationSchedule;
+            this.snapshotSource = original.snapshotSource;
+            this.snapshotSourceName = original.snapshotSourceName;
+            this.snapshots = original.snapshots;
+        }
+
+        public Pool getPool() {
+            return pool;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getResourceGroup() {
+            return pool.account.resourceGroup;
+        }
+
+        // Resource group, account, pool and volume name in lower case, separated by slashes
+        public String getKey() {
+            return key;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getUsageThreshold() {
+            return usageThreshold;
+        }
+
+        public String getCreationToken() {
+            return creationToken;
+        }
+
+        public List<String> getProtocolTypes() {
+            return protocolTypes;
+        }
+
+        public String getSubnetId() {
+            return subnetId;
+        }
+
+        // Shared with the volumes having the same rules, must not be modified
+        public VolumePropertiesExportPolicy getExportPolicy() {
+            return exportPolicy;
+        }
+
+        // Source of a data protection volume, or null
+        public VolumeReference getSourceVolume() {
+            return sourceVolume;
+        }
+
+        // Replication schedule of a data protection volume, or null
+        public ReplicationSchedule getReplicationSchedule() {
+            return replicationSchedule;
+        }
+
+        // Source volume when it is part of the topology, null when it is not or for volumes that are not data protection volumes
+        public Volume getSource() {
+            return source;
+        }
+
+        // Data protection volumes replicating this volume within the topology
+        public List<Volume> getReplicas() {
+            return replicas;
+        }
+
+        // Volume of the snapshot this volume is created from, or null
+        public VolumeReference getSnapshotSource() {
+            return snapshotSource;
+        }
+
+        public String getSnapshotSourceName() {
+            return snapshotSourceName;
+        }
+
+        // Volume of the snapshot this volume is created from when it is part of the topology, or null
+        public Volume getSnapshotSourceVolume() {
+            return snapshotSourceVolume;
+        }
+
+        // Snapshots to take once the volume is created
+        public List<String> getSnapshots() {
+            return snapshots;
+        }
+
+        // Resource group, account, pool and volume name, as expected by CommonSdk.getResource
+        public String[] getParameters() {
+            return new String[] { pool.account.resourceGroup, pool.account.name, pool.name, name };
+        }
+
+        @Override
+        public String toString()
+        {
+            return pool + "/" + name;
+        }
+    }
+
+    // A volume referenced by name, e.g. a source volume that may be outside of appsettings.json
+    public static final class VolumeReference
+    {
+        private final String resourceGroup;
+        private final String accountName;
+        private final String poolName;
+        private final String volumeName;
+        private final String key;
+        private final String id;
+
+        private VolumeReference(String subscriptionId, ModelSourceVolume model)
+        {
+            this.resourceGroup = model.getResourceGroup();
+            this.accountName = model.getAccountName();
+            this.poolName = model.getPoolName();
+            this.volumeName = model.getVolumeName();
+            this.key = keyOf(resourceGroup, accountName, poolName, volumeName);
+            this.id = "/subscriptions/" + subscriptionId + "/resourceGroups/" + resourceGroup + "/providers/Microsoft.NetApp/netAppAccounts/"
+                    + accountName + "/capacityPools/" + poolName + "/volumes/" + volumeName;
+        }
+
+        public String getResourceGroup() {
+            return resourceGroup;
+        }
+
+        public String getAccountName() {
+            return accountName;
+        }
+
+        public String getPoolName() {
+            return poolName;
+        }
+
+        public String getVolumeName() {
+            return volumeName;
+        }
+
+        // Resource group, account, pool and volume name in lower case, separated by slashes
+        public String getKey() {
+            return key;
+        }
+
+        // Resource id, computed from the names so that the volume needs not be read to reference it
+        public String getId() {
+            return id;
+        }
+
+        // Resource group, account, pool and volume name, as expected by CommonSdk.getResource
+        public String[] getParameters() {
+            return new String[] { resourceGroup, accountName, poolName, volumeName };
+        }
+
+        @Override
+        public String toString()
+        {
+            return resourceGroup + "/" + accountName + "/" + poolName + "/" + volumeName;
+        }
+    }
+
+    private static String ruleKey(List<ModelExportPolicyRule> rules)
+    {
+        StringBuilder key = new StringBuilder();
+        for (ModelExportPolicyRule rule : rules)
+        {
+            key.append(rule.getRuleIndex()).append('|').append(rule.getAllowedClients()).append('|')
+                    .append(rule.isUnixReadWrite()).append(rule.isUnixReadOnly()).append(rule.isCifs())
+                    .append(rule.isNfsv3()).append(rule.isNfsv4()).append(';');
+        }
+        return key.toString();
+    }
+
+    private static VolumePropertiesExportPolicy compileExportPolicy(List<ModelExportPolicyRule> rules)
+    {
+        List<ExportPolicyRule> compiled = new ArrayList<>();
+        for (ModelExportPolicyRule rule : rules)
+        {
+            compiled.add(new ExportPolicyRule()
+                    .withAllowedClients(rule.getAllowedClients())
+                    .withRuleIndex(rule.getRuleIndex())
+                    .withUnixReadWrite(rule.isUnixReadWrite())
+                    .withUnixReadOnly(rule.isUnixReadOnly())
+                    .withCifs(rule.isCifs())
+                    .withNfsv3(rule.isNfsv3())
+                    .withNfsv41(rule.isNfsv4()));
+        }
+        return new VolumePropertiesExportPolicy().withRules(Collections.unmodifiableList(compiled));
+    }
+}
@@ -0,0 +1,167 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/*
+  Selects part of the topology by resource group, account, pool and volume name, see Topology.select.
+  A pattern is a glob (* any characters, ? one character) or a regular expression written between slashes, e.g. /vol-0[1-5]/,
+  matched against the whole name ignoring case. A missing pattern matches everything.
+  The deepest level given is the scope of the selection: with a volume pattern only volumes are targeted, with a pool pattern
+  pools and their volumes, otherwise whole accounts.
+ */
+public final class TopologySelector
+{
+    public enum Scope { ACCOUNT, POOL, VOLUME }
+
+    // Selects the whole topology
+    public static final TopologySelector ALL = new TopologySelector(null, null, null, null);
+
+    private final String resourceGroup;
+    private final String account;
+    private final String pool;
+    private final String volume;
+    private final Pattern resourceGroupPattern;
+    private final Pattern accountPattern;
+    private final Pattern poolPattern;
+    private final Pattern volumePattern;
+
+    /**
+     * Creates a selector, null patterns match everything
+     * @param resourceGroup Pattern of the resource group name
+     * @param account Pattern of the account name
+     * @param pool Pattern of the capacity pool name
+     * @param volume Pattern of the volume name
+     */
+    public TopologySelector(String resourceGroup, String account, String pool, String volume)
+    {
+        this.resourceGroup = resourceGroup;
+        this.account = account;
+        this.pool = pool;
+        this.volume = volume;
+        this.resourceGroupPattern = compile(resourceGroup);
+        this.accountPattern = compile(account);
+        this.poolPattern = compile(pool);
+        this.volumePattern = compile(volume);
+    }
+
+    public Scope getScope() {
+        return volume != null ? Scope.VOLUME : pool != null ? Scope.POOL : Scope.ACCOUNT;
+    }
+
+    /**
+     * Returns the resource group name when the resource group pattern is a plain name, so it can be looked up in the index
+     * @return The resource group name, or null for a glob, a regular expression or no pattern
+     */
+    public String getLiteralResourceGroup()
+    {
+        return isLiteral(resourceGroup) ? resourceGroup : null;
+    }
+
+    /**
+     * Tells whether a resource is targeted: it must be at the scope of the selection and match the patterns down to its level
+     * @param resource Account, capacity pool or volume of the topology
+     * @return True if the resource is targeted
+     */
+    public boolean matches(Topology.Resource resource)
+    {
+        if (resource instanceof Topology.Volume)
+        {
+            Topology.Volume candidate = (Topology.Volume) resource;
+            return getScope() == Scope.VOLUME && matches(volumePattern, candidate.getName()) && matchesPool(candidate.getPool());
+        }
+        if (resource instanceof Topology.Pool)
+            return getScope() == Scope.POOL && matchesPool((Topology.Pool) resource);
+        return getScope() == Scope.ACCOUNT && matchesAccount((Topology.Account) resource);
+    }
+
+    /**
+     * Tells whether the names of a resource listed from ARM, rather than described in the topology, match the patterns of their levels
+     * @param resourceGroup Resource group name
+     * @param account Account name
+     * @param pool Capacity pool name, null for an account
+     * @param volume Volume name, null for an account or a capacity pool
+     * @return True if every given name matches its pattern
+     */
+    public boolean matches(String resourceGroup, String account, String pool, String volume)
+    {
+        return matches(resourceGroupPattern, resourceGroup) && matches(accountPattern, account)
+                && (pool == null || matches(poolPattern, pool)) && (volume == null || matches(volumePattern, volume));
+    }
+
+    private boolean matchesPool(Topology.Pool candidate)
+    {
+        return matches(poolPattern, candidate.getName()) && matchesAccount(candidate.getAccount());
+    }
+
+    private boolean matchesAccount(Topology.Account candidate)
+    {
+        return matches(accountPattern, candidate.getName()) && matches(resourceGroupPattern, candidate.getResourceGroup());
+    }
+
+    private static boolean matches(Pattern pattern, String name)
+    {
+        return pattern == null || pattern.matcher(name).matches();
+    }
+
+    private static boolean isLiteral(String pattern)
+    {
+        return pattern != null && !isRegex(pattern) && pattern.indexOf('*') < 0 && pattern.indexOf('?') < 0;
+    }
+
+    private static boolean isRegex(String pattern)
+    {
+        return pattern.length() > 1 && pattern.startsWith("/") && pattern.endsWith("/");
+    }
+
+    private static Pattern compile(String pattern)
+    {
+        if (pattern == null)
+            return null;
+        if (pattern.isEmpty())
+            throw new IllegalArgumentException("Empty selector pattern");
+        if (isRegex(pattern))
+            return Pattern.compile(pattern.substring(1, pattern.length() - 1), Pattern.CASE_INSENSITIVE);
+
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : pattern.toCharArray())
+        {
+            if (c == '*' || c == '?')
+            {
+                if (literal.length() > 0)
+                    regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+                regex.append(c == '*' ? ".*" : ".");
+            }
+            else
+            {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0)
+            regex.append(Pattern.quote(literal.toString()));
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    @Override
+    public String toString()
+    {
+        List<String> parts = new ArrayList<>();
+        if (resourceGroup != null)
+            parts.add("resource group " + resourceGroup);
+        if (account != null)
+            parts.add("account " + account);
+        if (pool != null)
+            parts.add("pool " + pool);
+        if (volume != null)
+            parts.add("volume " + volume);
+        return parts.isEmpty() ? "everything" : String.join(", ", parts);
+    }
+}
@@ -0,0 +1,310 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  Records spans of the run (phases, provisioning tasks, ARM calls, long running operations and waits) and exports them as a
+  Chrome Trace Event file, to be opened in chrome://tracing or https://ui.perfetto.dev as a timeline per thread.
+  A span started on a thread is the parent of the spans started on the same thread until it is closed. Spans handed over to
+  another thread, e.g. a provisioning task started by the scheduler, name their parent explicitly and are linked to it, and to
+  the tasks they waited for, by flow arrows.
+  Disabled by default, spans are then shared no-op instances.
+ */
+public class Tracer
+{
+    // Spans kept in memory, further spans are counted as dropped
+    static final int MAX_SPANS = 1_000_000;
+
+    private static final Tracer shared = new Tracer();
+
+    private static final Span NOOP = new Span(null, 0, 0, null, null);
+
+    private final long originNanos = System.nanoTime();
+    private final AtomicLong nextId = new AtomicLong();
+    private final Queue<Span> finished = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger finishedCount = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ThreadLocal<Span> current = new ThreadLocal<>();
+    private volatile boolean enabled;
+
+    // Instance used by the sample, enabled when a traceFile is set in appsettings.json
+    public static Tracer shared()
+    {
+        return shared;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts a span, child of the span currently open on this thread
+     * @param name Span name, e.g. the resource path
+     * @param category Span category, e.g. "phase", "task", "arm", "lro" or "wait"
+     * @return The span, to be closed with try-with-resources
+     */
+    public Span start(String name, String category)
+    {
+        return start(name, category, current.get());
+    }
+
+    /**
+     * Starts a span with an explicit parent, e.g. a span started on another thread
+     * @param name Span name
+     * @param category Span category
+     * @param parent Parent span, or null for a root span
+     * @return The span, to be closed with try-with-resources on this thread
+     */
+    public Span start(String name, String category, Span parent)
+    {
+        if (!enabled)
+            return NOOP;
+
+        long parentId = parent == null ? 0 : parent.id;
+        Span span = new Span(this, nextId.incrementAndGet(), parentId, name, category);
+        span.crossThread = parent != null && parent.threadId != span.threadId;
+        span.previous = current.get();
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * Returns the span open on this thread
+     * @return The innermost open span, or null
+     */
+    public Span current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Writes the finished spans as a Chrome Trace Event file
+     * @param path Path of the file to write
+     */
+    public void exportChromeTrace(String path)
+    {
+        List<Span> spans = new ArrayList<>(finished);
+        Map<Long, Span> byId = new LinkedHashMap<>();
+        for (Span span : spans)
+            byId.put(span.id, span);
+
+        JsonArray events = new JsonArray();
+        long flowId = 0;
+        Map<Long, String> threads = new LinkedHashMap<>();
+        for (Span span : spans)
+        {
+            threads.put(span.threadId, span.threadName);
+
+            JsonObject event = new JsonObject();
+            event.addProperty("name", span.name);
+            event.addProperty("cat", span.category);
+            event.addProperty("ph", "X");
+            event.addProperty("ts", span.startMicros);
+            event.addProperty("dur", span.durationMicros);
+            event.addProperty("pid", 1);
+            event.addProperty("tid", span.threadId);
+            JsonObject args = new JsonObject();
+            args.addProperty("id", span.id);
+            if (span.parentId != 0)
+                args.addProperty("parent", span.parentId);
+            for (Map.Entry<String, Object> arg : span.args.entrySet())
+            {
+                if (arg.getValue() instanceof Number)
+                    args.addProperty(arg.getKey(), (Number) arg.getValue());
+                else if (arg.getValue() instanceof Boolean)
+                    args.addProperty(arg.getKey(), (Boolean) arg.getValue());
+                else
+                    args.addProperty(arg.getKey(), String.valueOf(arg.getValue()));
+            }
+            event.add("args", args);
+            events.add(event);
+
+            // Arrows from the parent on another thread and from the spans this one waited for
+            List<Long> sources = new ArrayList<>(span.follows);
+            if (span.crossThread)
+                sources.add(span.parentId);
+            for (long sourceId : sources)
+            {
+                Span source = byId.get(sourceId);
+                if (source == null)
+                    continue;
+                long flowTs = Math.min(source.startMicros + source.durationMicros, span.startMicros);
+                flowId++;
+                events.add(flowEvent("s", source.threadId, Math.max(source.startMicros, flowTs - 1), flowId, null));
+                events.add(flowEvent("f", span.threadId, span.startMicros, flowId, "e"));
+            }
+        }
+        for (Map.Entry<Long, String> thread : threads.entrySet())
+        {
+            JsonObject event = new JsonObject();
+            event.addProperty("name", "thread_name");
+            event.addProperty("ph", "M");
+            event.addProperty("pid", 1);
+            event.addProperty("tid", thread.getKey());
+            JsonObject args = new JsonObject();
+            args.addProperty("name", thread.getValue());
+            event.add("args", args);
+            events.add(event);
+        }
+
+        JsonObject trace = new JsonObject();
+        trace.add("traceEvents", events);
+        trace.addProperty("displayTimeUnit", "ms");
+        try (Writer writer = new FileWriter(path))
+        {
+            Json.gson().toJson(trace, writer);
+            Utils.writeConsoleMessage("Trace of " + spans.size() + " span(s) written to " + path
+                    + (dropped.get() > 0 ? " (" + dropped.get() + " dropped)" : "") + ", open it in chrome://tracing or https://ui.perfetto.dev");
+        }
+        catch (IOException e)
+        {
+            Utils.writeWarningMessage("Unable to write the trace to " + path + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints how busy the threads running spans of a category were, between the first start and the last end of those spans
+     * @param category Span category, e.g. "task" for the provisioning workers
+     */
+    public void printUtilization(String category)
+    {
+        Map<Long, Long> busyByThread = new LinkedHashMap<>();
+        long first = Long.MAX_VALUE;
+        long last = 0;
+        for (Span span : finished)
+        {
+            if (!category.equals(span.category))
+                continue;
+            busyByThread.merge(span.threadId, span.durationMicros, Long::sum);
+            first = Math.min(first, span.startMicros);
+            last = Math.max(last, span.startMicros + span.durationMicros);
+        }
+        if (busyByThread.isEmpty())
+            return;
+
+        long window = Math.max(1, last - first) * busyByThread.size();
+        long busy = busyByThread.values().stream().mapToLong(Long::longValue).sum();
+        Utils.writeConsoleMessage(String.format("'%s' spans: %d thread(s) busy %.0f%% of the time, %.1fs idle in total",
+                category, busyByThread.size(), 100.0 * busy / window, (window - busy) / 1_000_000.0));
+    }
+
+    private static JsonObject flowEvent(String phase, long threadId, long ts, long id, String bindingPoint)
+    {
+        JsonObject event = new JsonObject();
+        event.addProperty("name", "follows");
+        event.addProperty("cat", "flow");
+        event.addProperty("ph", phase);
+        event.addProperty("id", id);
+        event.addProperty("ts", ts);
+        event.addProperty("pid", 1);
+        event.addProperty("tid", threadId);
+        if (bindingPoint != null)
+            event.addProperty("bp", bindingPoint);
+        return event;
+    }
+
+    private long nowMicros()
+    {
+        return (System.nanoTime() - originNanos) / 1000;
+    }
+
+    private void finish(Span span)
+    {
+        // Closing a span also ends the spans opened after it on this thread and left open, e.g. by an exception
+        current.set(span.previous);
+        if (finishedCount.incrementAndGet() > MAX_SPANS)
+        {
+            dropped.incrementAndGet();
+            return;
+        }
+        finished.add(span);
+    }
+
+    // A timed section of the run, closed on the thread that started it
+    public static class Span implements AutoCloseable
+    {
+        private final Tracer tracer;
+        private final long id;
+        private final long parentId;
+        private final String name;
+        private final String category;
+        private final long threadId;
+        private final String threadName;
+        private final long startMicros;
+        private final Map<String, Object> args = new LinkedHashMap<>();
+        private final List<Long> follows = new ArrayList<>();
+        private long durationMicros;
+        private boolean crossThread;
+        private Span previous;
+        private boolean closed;
+
+        private Span(Tracer tracer, long id, long parentId, String name, String category)
+        {
+            this.tracer = tracer;
+            this.id = id;
+            this.parentId = parentId;
+            this.name = name;
+            this.category = category;
+            this.threadId = Thread.currentThread().getId();
+            this.threadName = Thread.currentThread().getName();
+            this.startMicros = tracer == null ? 0 : tracer.nowMicros();
+        }
+
+        /**
+         * Adds an argument shown with the span, e.g. the resource group or the outcome
+         * @param key Argument name
+         * @param value Argument value
+         * @return This span
+         */
+        public Span arg(String key, Object value)
+        {
+            if (tracer != null)
+                args.put(key, value);
+            return this;
+        }
+
+        /**
+         * Records that this span could only start after another one, drawn as an arrow
+         * @param span Span this one waited for, ignored if null
+         * @return This span
+         */
+        public Span follows(Span span)
+        {
+            if (tracer != null && span != null && span.tracer != null)
+                follows.add(span.id);
+            return this;
+        }
+
+        @Override
+        public void close()
+        {
+            if (tracer == null || closed)
+                return;
+            closed = true;
+            durationMicros = Math.max(1, tracer.nowMicros() - startMicros);
+            tracer.finish(this);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.common;
+
+// Source of volume performance metrics used by the Autoscaler, e.g. FileMetricsSource or a monitoring backend
+public interface VolumeMetricsSource
+{
+    /**
+     * Reads the latest metrics of a volume
+     * @param volume ResourceGroupName, AccountName, PoolName, VolumeName
+     * @return The latest sample, or null if none is available
+     */
+    Sample read(String[] volume);
+
+    // Metrics of a volume over the last sampling period
+    class Sample
+    {
+        private double throughputMiBps;
+        private double latencyMillis;
+        private long usedBytes = -1;
+
+        public Sample()
+        {
+        }
+
+        /**
+         * @param throughputMiBps Read and write throughput in MiB/s
+         * @param latencyMillis Average read and write latency in milliseconds
+         * @param usedBytes Logical space used on the volume in bytes, -1 if unknown
+         */
+        public Sample(double throughputMiBps, double latencyMillis, long usedBytes)
+        {
+            this.throughputMiBps = throughputMiBps;
+            this.latencyMillis = latencyMillis;
+            this.usedBytes = usedBytes;
+        }
+
+        public double getThroughputMiBps() {
+            return throughputMiBps;
+        }
+
+        public double getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public long getUsedBytes() {
+            return usedBytes;
+        }
+    }
+}
@@ -5,7 +5,28 @@ import com.azure.core.management.AzureEnvironment;
 import com.azure.core.management.profile.AzureProfile;
 import com.azure.identity.DefaultAzureCredentialBuilder;
 import com.azure.resourcemanager.netapp.NetAppFilesManager;
+import sdk.sample.common.ArmCapacityOperations;
+import sdk.sample.common.ArmReplicationOperations;
+import sdk.sample.common.Autoscaler;
+import sdk.sample.common.CommandLine;
+import sdk.sample.common.ConfigValidator;
+import sdk.sample.common.EventReceiver;
+import sdk.sample.common.FairShare;
+import sdk.sample.common.FileMetricsSource;
+import sdk.sample.common.HedgedReads;
+import sdk.sample.common.JobQueue;
+import sdk.sample.common.LroTimings;
+import sdk.sample.common.Metrics;
+import sdk.sample.common.OperationContext;
+import sdk.sample.common.OperationTracker;
+import sdk.sample.common.PoolPlanner;
 import sdk.sample.common.ProjectConfiguration;
+import sdk.sample.common.RegionDirectory;
+import sdk.sample.common.ReplicationPair;
+import sdk.sample.common.ReplicationScheduleAdvisor;
+import sdk.sample.common.ResourceEvents;
+import sdk.sample.common.Topology;
+import sdk.sample.common.Tracer;
 import sdk.sample.common.Utils;
 import sdk.sample.model.ModelNetAppAccount;
 
@@ -13,26 +34,34 @@ import java.util.List;
 
 public class main
 {
+    // Long running operations still running when the run stops, waited for by the next run
+    private static final String PENDING_OPERATIONS_FILE = "pending-operations.json";
+
     public static void main(String[] args)
     {
         Utils.displayConsoleAppHeader();
 
         try
         {
-            run();
+            run(args);
             Utils.writeConsoleMessage("ANF CRR Java sample application successfully completed");
         }
         catch (Exception e)
         {
             Utils.writeErrorMessage(e.getMessage());
         }
-
-        // Note: this should not be here in a proper environment. I leave it here for a more compact sample that does what it needs to do and exits as soon as it finishes without waiting for other threads
-        System.exit(0);
     }
 
-    private static void run()
+    private static void run(String[] args)
     {
+        // Subcommand and resource selectors, without arguments the whole flow configured in appsettings.json runs
+        CommandLine commandLine = CommandLine.parse(args);
+        if (commandLine.getCommand() == CommandLine.Command.HELP)
+        {
+            Utils.writeConsoleMessage(CommandLine.USAGE);
+            return;
+        }
+
         // Getting project configuration
         ProjectConfiguration config = Utils.getConfiguration("appsettings.json");
         if (config == null)
@@ -42,12 +71,61 @@ public class main
         }
 
         List<ModelNetAppAccount> accounts = config.getAccounts();
-        if (config.getAccounts() != null && config.getAccounts().isEmpty())
+        if (config.getAccounts() != null && config.getAccounts().isEmpty() && commandLine.getCommand() != CommandLine.Command.SERVE
+                && commandLine.getCommand() != CommandLine.Command.INVENTORY)
         {
             Utils.writeConsoleMessage("No ANF accounts defined within appsettings.json file. Exiting.");
             return;
         }
 
+        // Validating the whole configuration locally, before any ARM call, and before the planner works on it
+        List<ConfigValidator.Issue> issues = ConfigValidator.validate(config);
+        ConfigValidator.print(issues);
+        if (ConfigValidator.hasErrors(issues))
+            throw new RuntimeException("appsettings.json is not valid, fix the errors above and run again");
+
+        // Repacking the volumes into the fewest capacity pools, the planned layout is validated again and provisioned instead
+        if (config.isPoolPlanner() && accounts != null)
+        {
+            PoolPlanner.Plan plan = PoolPlanner.plan(accounts);
+            plan.print();
+            plan.save("pool-plan.json", accounts);
+
+            List<ConfigValidator.Issue> planIssues = ConfigValidator.validate(config);
+            if (ConfigValidator.hasErrors(planIssues))
+            {
+                ConfigValidator.print(planIssues);
+                throw new RuntimeException("The planned capacity pools are not valid, see the errors above and pool-plan.json");
+            }
+        }
+
+        // Compiling the accounts once into the immutable topology shared by the provisioning, replication and cleanup workers
+        Topology topology = Topology.compile(config.getSubscriptionId(), accounts);
+
+        // Regions are used to keep separate concurrency limits and circuit breakers per region
+        RegionDirectory.register(topology);
+        HedgedReads.shared().setEnabled(config.isHedgedReads());
+
+        // Provisioning steps share one budget, split fairly between resource groups, and between the jobs of the provisioning service
+        int provisioningBudget = config.getMaxParallelism() * (commandLine.getCommand() == CommandLine.Command.SERVE ? config.getServiceWorkers() : 1);
+        FairShare.configure(provisioningBudget, config.getTenantWeights());
+        OperationTracker.setOperationTimeout(config.getOperationTimeoutMinutes());
+
+        // On SIGTERM or Ctrl+C every wait and long running operation returns promptly, the run then drains:
+        // the summaries are printed and the operations still running are saved instead of being abandoned
+        Thread runner = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            OperationContext.root().cancel("the process is shutting down");
+            try
+            {
+                runner.join(Math.max(1, config.getShutdownDrainSeconds() * 1000L));
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
         // Instantiating a new ANF management client and authenticate
         AzureProfile profile = new AzureProfile(AzureEnvironment.AZURE);
         TokenCredential credential = new DefaultAzureCredentialBuilder()
@@ -57,20 +135,133 @@ public class main
         NetAppFilesManager manager = NetAppFilesManager
                 .authenticate(credential, profile);
 
-        //--------------------------------
-        // Creating ANF Resources listed in the appsettings.json
-        //--------------------------------
-        Creation.createANFResources(accounts, manager.serviceClient());
-
-        //--------------------------------
-        // Authorize Data Replications from appsettings.json
-        //--------------------------------
-        Replication.authorizeReplications(accounts, manager.serviceClient());
-
-        //--------------------------------
-        // Run cleanup if set to true in appsettings.json
-        //--------------------------------
-        if (config.isShouldCleanUp())
-            Cleanup.runCleanup(accounts, manager.serviceClient());
+        // Spans of every phase, provisioning step, ARM call and wait, exported as a timeline at the end of the run
+        Tracer.shared().setEnabled(config.getTraceFile() != null);
+
+        // Resource events complete the waits as soon as they arrive, polling goes on as a safety net
+        EventReceiver eventReceiver = null;
+        if (config.getEventReceiverPort() > 0)
+        {
+            eventReceiver = new EventReceiver(ResourceEvents.shared(), config.getEventReceiverKey());
+            eventReceiver.start(config.getEventReceiverPort());
+        }
+
+        try
+        {
+            // Operations a previous run left running complete before anything targets their resources again
+            OperationTracker.resumePending(manager.serviceClient(), PENDING_OPERATIONS_FILE);
+
+            LroTimings timings = LroTimings.load("lro-timings.json");
+
+            //--------------------------------
+            // Serve provisioning jobs submitted through the REST API until the process is stopped
+            //--------------------------------
+            if (commandLine.getCommand() == CommandLine.Command.SERVE)
+            {
+                ProvisioningService service = new ProvisioningService(manager.serviceClient(), new JobQueue(config.getServiceJournalFile()),
+                        timings, config.getSubscriptionId(), config.getServiceWorkers(), provisioningBudget);
+                Runtime.getRuntime().addShutdownHook(new Thread(service::stop));
+                service.start(commandLine.getPort());
+                try
+                {
+                    service.awaitStop();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+
+            //--------------------------------
+            // Run only the command given on the command line, on the resources its selectors target
+            //--------------------------------
+            if (commandLine.getCommand() != null)
+            {
+                try (Tracer.Span span = Tracer.shared().start(commandLine.getCommand().name().toLowerCase(), "phase"))
+                {
+                    Commands.run(commandLine, topology, manager.serviceClient(), config, timings);
+                }
+                return;
+            }
+
+            //--------------------------------
+            // Creating ANF Resources listed in the appsettings.json and authorizing their Data Replications,
+            // ordered by the critical path estimated from previous runs
+            //--------------------------------
+            try (Tracer.Span span = Tracer.shared().start("provisioning", "phase"))
+            {
+                Provisioning.provisionANFResources(topology, manager.serviceClient(), timings, config.getMaxParallelism());
+            }
+
+            //--------------------------------
+            // Recommend or apply replication schedules from observed transfers if enabled in appsettings.json
+            //--------------------------------
+            try (Tracer.Span span = Tracer.shared().start("replication schedule advisor", "phase"))
+            {
+                ReplicationScheduleAdvisor.run(manager.serviceClient(), topology, config.getReplicationScheduleAdvisor(), config.getReplicationObservationMinutes(),
+                        config.getMaxParallelism());
+            }
+
+            //--------------------------------
+            // Run a disaster recovery workflow (failover, failback, ...) on all replications if set in appsettings.json
+            //--------------------------------
+            if (config.getDisasterRecovery() != null)
+            {
+                DisasterRecovery.Action action = config.getDisasterRecovery();
+                try (Tracer.Span span = Tracer.shared().start("disaster recovery " + action, "phase"))
+                {
+                    new DisasterRecovery(new ArmReplicationOperations(manager.serviceClient()), config.getMaxParallelism())
+                            .run(ReplicationPair.fromTopology(topology), action);
+                }
+            }
+
+            //--------------------------------
+            // Run a DR drill on all replications if set to true in appsettings.json
+            //--------------------------------
+            if (config.isDrDrill())
+            {
+                try (Tracer.Span span = Tracer.shared().start("dr drill", "phase"))
+                {
+                    new DrDrill(new ArmReplicationOperations(manager.serviceClient()), config.getDrillConcurrency(), config.getDrillPacingMillis(), config.isDrillVerifyWritable())
+                            .run(ReplicationPair.fromTopology(topology));
+                }
+            }
+
+            //--------------------------------
+            // Scale volumes to their throughput for a while if enabled in appsettings.json
+            //--------------------------------
+            if (config.getAutoscaler() != Autoscaler.Mode.OFF)
+            {
+                try (Tracer.Span span = Tracer.shared().start("autoscaler", "phase"))
+                {
+                    new Autoscaler(new ArmCapacityOperations(manager.serviceClient()), new FileMetricsSource(config.getAutoscalerMetricsFile()), topology, config.getAutoscaler())
+                            .run(config.getAutoscalerIntervalSeconds() * 1000L, config.getAutoscalerDurationMinutes() * 60_000L);
+                }
+            }
+
+            //--------------------------------
+            // Run cleanup if set to true in appsettings.json
+            //--------------------------------
+            if (config.isShouldCleanUp())
+            {
+                try (Tracer.Span span = Tracer.shared().start("cleanup", "phase"))
+                {
+                    Cleanup.runCleanup(topology, manager.serviceClient());
+                }
+            }
+        }
+        finally
+        {
+            if (eventReceiver != null)
+                eventReceiver.stop();
+            OperationTracker.savePending(PENDING_OPERATIONS_FILE);
+            OperationTracker.printSummary();
+            Metrics.printSummary();
+            if (config.getMetricsFile() != null)
+                Metrics.writeToFile(config.getMetricsFile());
+            if (config.getTraceFile() != null)
+                Tracer.shared().exportChromeTrace(config.getTraceFile());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.model;
+
+// Instantiates a ModelSnapshotSource object, the snapshot a volume is cloned from
+public class ModelSnapshotSource extends ModelSourceVolume
+{
+    // The Snapshot's name, on the volume described by the other properties
+    private String snapshotName;
+
+    public String getSnapshotName() {
+        return snapshotName;
+    }
+
+    public void setSnapshotName(String snapshotName) {
+        this.snapshotName = snapshotName;
+    }
+}
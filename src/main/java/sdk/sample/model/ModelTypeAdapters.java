@@ -0,0 +1,521 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+  Hand-written Gson bindings of the Model* classes, registered on the shared Gson instances (see sdk.sample.common.Json).
+  They read and write the same json as Gson's reflective binding: fields in declaration order, unknown properties skipped,
+  nulls omitted, numbers and booleans accepted as strings, and null left as the default value of primitive fields.
+  No reflection is involved, so large configurations and journals parse without binding classes field by field at runtime.
+  A field added to a Model* class must be added to its adapter as well.
+ */
+public class ModelTypeAdapters implements TypeAdapterFactory
+{
+    public static final TypeAdapter<ModelExportPolicyRule> EXPORT_POLICY_RULE = new TypeAdapter<ModelExportPolicyRule>()
+    {
+        @Override
+        public void write(JsonWriter out, ModelExportPolicyRule rule) throws IOException
+        {
+            if (rule == null)
+            {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("ruleIndex").value(rule.getRuleIndex());
+            out.name("allowedClients").value(rule.getAllowedClients());
+            out.name("cifs").value(rule.isCifs());
+            out.name("nfsv3").value(rule.isNfsv3());
+            out.name("nfsv4").value(rule.isNfsv4());
+            out.name("unixReadOnly").value(rule.isUnixReadOnly());
+            out.name("unixReadWrite").value(rule.isUnixReadWrite());
+            out.endObject();
+        }
+
+        @Override
+        public ModelExportPolicyRule read(JsonReader in) throws IOException
+        {
+            if (skipNull(in))
+                return null;
+            ModelExportPolicyRule rule = new ModelExportPolicyRule();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "ruleIndex":
+                        rule.setRuleIndex(readInt(in, rule.getRuleIndex()));
+                        break;
+                    case "allowedClients":
+                        rule.setAllowedClients(readString(in));
+                        break;
+                    case "cifs":
+                        rule.setCifs(readBoolean(in, rule.isCifs()));
+                        break;
+                    case "nfsv3":
+                        rule.setNfsv3(readBoolean(in, rule.isNfsv3()));
+                        break;
+                    case "nfsv4":
+                        rule.setNfsv4(readBoolean(in, rule.isNfsv4()));
+                        break;
+                    case "unixReadOnly":
+                        rule.setUnixReadOnly(readBoolean(in, rule.isUnixReadOnly()));
+                        break;
+                    case "unixReadWrite":
+                        rule.setUnixReadWrite(readBoolean(in, rule.isUnixReadWrite()));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return rule;
+        }
+    };
+
+    public static final TypeAdapter<ModelSourceVolume> SOURCE_VOLUME = new TypeAdapter<ModelSourceVolume>()
+    {
+        @Override
+        public void write(JsonWriter out, ModelSourceVolume source) throws IOException
+        {
+            if (source == null)
+            {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeSourceVolume(out, source);
+            out.endObject();
+        }
+
+        @Override
+        public ModelSourceVolume read(JsonReader in) throws IOException
+        {
+            if (skipNull(in))
+                return null;
+            ModelSourceVolume source = new ModelSourceVolume();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                if (!readSourceVolume(in, in.nextName(), source))
+                    in.skipValue();
+            }
+            in.endObject();
+            return source;
+        }
+    };
+
+    public static final TypeAdapter<ModelSnapshotSource> SNAPSHOT_SOURCE = new TypeAdapter<ModelSnapshotSource>()
+    {
+        @Override
+        public void write(JsonWriter out, ModelSnapshotSource source) throws IOException
+        {
+            if (source == null)
+            {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            // Gson's reflective binding writes the fields of the subclass first
+            out.name("snapshotName").value(source.getSnapshotName());
+            writeSourceVolume(out, source);
+            out.endObject();
+        }
+
+        @Override
+        public ModelSnapshotSource read(JsonReader in) throws IOException
+        {
+            if (skipNull(in))
+                return null;
+            ModelSnapshotSource source = new ModelSnapshotSource();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                String name = in.nextName();
+                if (name.equals("snapshotName"))
+                    source.setSnapshotName(readString(in));
+                else if (!readSourceVolume(in, name, source))
+                    in.skipValue();
+            }
+            in.endObject();
+            return source;
+        }
+    };
+
+    public static final TypeAdapter<ModelVolume> VOLUME = new TypeAdapter<ModelVolume>()
+    {
+        @Override
+        public void write(JsonWriter out, ModelVolume volume) throws IOException
+        {
+            if (volume == null)
+            {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("usageThreshold").value(volume.getUsageThreshold());
+            out.name("creationToken").value(volume.getCreationToken());
+            out.name("type").value(volume.getType());
+            out.name("name").value(volume.getName());
+            out.name("subnetId").value(volume.getSubnetId());
+            out.name("sourceVolume");
+            SOURCE_VOLUME.write(out, volume.getSourceVolume());
+            out.name("serviceLevel").value(volume.getServiceLevel());
+            out.name("replicationSchedule").value(volume.getReplicationSchedule());
+            out.name("snapshots");
+            writeStrings(out, volume.getSnapshots());
+            out.name("snapshotSource");
+            SNAPSHOT_SOURCE.write(out, volume.getSnapshotSource());
+            out.name("exportPolicies");
+            writeList(out, volume.getExportPolicies(), EXPORT_POLICY_RULE);
+            out.endObject();
+        }
+
+        @Override
+        public ModelVolume read(JsonReader in) throws IOException
+        {
+            if (skipNull(in))
+                return null;
+            ModelVolume volume = new ModelVolume();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "usageThreshold":
+                        volume.setUsageThreshold(readLong(in, volume.getUsageThreshold()));
+                        break;
+                    case "creationToken":
+                        volume.setCreationToken(readString(in));
+                        break;
+                    case "type":
+                        volume.setType(readString(in));
+                        break;
+                    case "name":
+                        volume.setName(readString(in));
+                        break;
+                    case "subnetId":
+                        volume.setSubnetId(readString(in));
+                        break;
+                    case "sourceVolume":
+                        volume.setSourceVolume(SOURCE_VOLUME.read(in));
+                        break;
+                    case "serviceLevel":
+                        volume.setServiceLevel(readString(in));
+                        break;
+                    case "replicationSchedule":
+                        volume.setReplicationSchedule(readString(in));
+                        break;
+                    case "snapshots":
+                        volume.setSnapshots(readStrings(in));
+                        break;
+                    case "snapshotSource":
+                        volume.setSnapshotSource(SNAPSHOT_SOURCE.read(in));
+                        break;
+                    case "exportPolicies":
+                        volume.setExportPolicies(readList(in, EXPORT_POLICY_RULE));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return volume;
+        }
+    };
+
+    public static final TypeAdapter<ModelCapacityPool> CAPACITY_POOL = new TypeAdapter<ModelCapacityPool>()
+    {
+        @Override
+        public void write(JsonWriter out, ModelCapacityPool pool) throws IOException
+        {
+            if (pool == null)
+            {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("volumes");
+            writeList(out, pool.getVolumes(), VOLUME);
+            out.name("name").value(pool.getName());
+            out.name("size").value(pool.getSize());
+            out.name("serviceLevel").value(pool.getServiceLevel());
+            out.endObject();
+        }
+
+        @Override
+        public ModelCapacityPool read(JsonReader in) throws IOException
+        {
+            if (skipNull(in))
+                return null;
+            ModelCapacityPool pool = new ModelCapacityPool();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "volumes":
+                        pool.setVolumes(readList(in, VOLUME));
+                        break;
+                    case "name":
+                        pool.setName(readString(in));
+                        break;
+                    case "size":
+                        pool.setSize(readLong(in, pool.getSize()));
+                        break;
+                    case "serviceLevel":
+                        pool.setServiceLevel(readString(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return pool;
+        }
+    };
+
+    public static final TypeAdapter<ModelNetAppAccount> NETAPP_ACCOUNT = new TypeAdapter<ModelNetAppAccount>()
+    {
+        @Override
+        public void write(JsonWriter out, ModelNetAppAccount account) throws IOException
+        {
+            if (account == null)
+            {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("capacityPools");
+            writeList(out, account.getCapacityPools(), CAPACITY_POOL);
+            out.name("name").value(account.getName());
+            out.name("location").value(account.getLocation());
+            out.name("resourceGroup").value(account.getResourceGroup());
+            out.endObject();
+        }
+
+        @Override
+        public ModelNetAppAccount read(JsonReader in) throws IOException
+        {
+            if (skipNull(in))
+                return null;
+            ModelNetAppAccount account = new ModelNetAppAccount();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "capacityPools":
+                        account.setCapacityPools(readList(in, CAPACITY_POOL));
+                        break;
+                    case "name":
+                        account.setName(readString(in));
+                        break;
+                    case "location":
+                        account.setLocation(readString(in));
+                        break;
+                    case "resourceGroup":
+                        account.setResourceGroup(readString(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return account;
+        }
+    };
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)
+    {
+        Class<? super T> raw = type.getRawType();
+        if (raw == ModelNetAppAccount.class)
+            return (TypeAdapter<T>) NETAPP_ACCOUNT;
+        if (raw == ModelCapacityPool.class)
+            return (TypeAdapter<T>) CAPACITY_POOL;
+        if (raw == ModelVolume.class)
+            return (TypeAdapter<T>) VOLUME;
+        if (raw == ModelSnapshotSource.class)
+            return (TypeAdapter<T>) SNAPSHOT_SOURCE;
+        if (raw == ModelSourceVolume.class)
+            return (TypeAdapter<T>) SOURCE_VOLUME;
+        if (raw == ModelExportPolicyRule.class)
+            return (TypeAdapter<T>) EXPORT_POLICY_RULE;
+        return null;
+    }
+
+    /**
+     * Reads a list of model objects
+     * @param in Reader positioned on the list
+     * @param adapter Adapter of the elements
+     * @return The list, null if the json value is null
+     */
+    public static <E> List<E> readList(JsonReader in, TypeAdapter<E> adapter) throws IOException
+    {
+        if (skipNull(in))
+            return null;
+        List<E> list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext())
+            list.add(adapter.read(in));
+        in.endArray();
+        return list;
+    }
+
+    /**
+     * Writes a list of model objects, null is omitted like any null field
+     * @param out Writer, after the name of the list
+     * @param list The list, may be null
+     * @param adapter Adapter of the elements
+     */
+    public static <E> void writeList(JsonWriter out, List<E> list, TypeAdapter<E> adapter) throws IOException
+    {
+        if (list == null)
+        {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (E element : list)
+            adapter.write(out, element);
+        out.endArray();
+    }
+
+    private static void writeSourceVolume(JsonWriter out, ModelSourceVolume source) throws IOException
+    {
+        out.name("volumeName").value(source.getVolumeName());
+        out.name("poolName").value(source.getPoolName());
+        out.name("accountName").value(source.getAccountName());
+        out.name("resourceGroup").value(source.getResourceGroup());
+    }
+
+    // Reads a property of ModelSourceVolume, false if the name is not one of them
+    private static boolean readSourceVolume(JsonReader in, String name, ModelSourceVolume source) throws IOException
+    {
+        switch (name)
+        {
+            case "volumeName":
+                source.setVolumeName(readString(in));
+                return true;
+            case "poolName":
+                source.setPoolName(readString(in));
+                return true;
+            case "accountName":
+                source.setAccountName(readString(in));
+                return true;
+            case "resourceGroup":
+                source.setResourceGroup(readString(in));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static List<String> readStrings(JsonReader in) throws IOException
+    {
+        if (skipNull(in))
+            return null;
+        List<String> list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext())
+            list.add(readString(in));
+        in.endArray();
+        return list;
+    }
+
+    private static void writeStrings(JsonWriter out, List<String> list) throws IOException
+    {
+        if (list == null)
+        {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (String value : list)
+            out.value(value);
+        out.endArray();
+    }
+
+    /**
+     * Reads a string, numbers and booleans are returned as their text like with Gson's reflective binding
+     * @param in Reader positioned on the value
+     * @return The string, null if the json value is null
+     */
+    public static String readString(JsonReader in) throws IOException
+    {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL)
+        {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN)
+            return Boolean.toString(in.nextBoolean());
+        return in.nextString();
+    }
+
+    // nextLong and nextInt also accept numbers written as strings, a string that is not a number is reported with its JSON path
+    private static long readLong(JsonReader in, long current) throws IOException
+    {
+        if (skipNull(in))
+            return current;
+        String path = in.getPath();
+        try
+        {
+            return in.nextLong();
+        }
+        catch (NumberFormatException e)
+        {
+            throw new JsonSyntaxException(path + " must be a whole number - " + e.getMessage(), e);
+        }
+    }
+
+    private static int readInt(JsonReader in, int current) throws IOException
+    {
+        if (skipNull(in))
+            return current;
+        String path = in.getPath();
+        try
+        {
+            return in.nextInt();
+        }
+        catch (NumberFormatException e)
+        {
+            throw new JsonSyntaxException(path + " must be a whole number - " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean readBoolean(JsonReader in, boolean current) throws IOException
+    {
+        if (skipNull(in))
+            return current;
+        return in.peek() == JsonToken.STRING ? Boolean.parseBoolean(in.nextString()) : in.nextBoolean();
+    }
+
+    // Consumes a null value, returns whether there was one
+    private static boolean skipNull(JsonReader in) throws IOException
+    {
+        if (in.peek() != JsonToken.NULL)
+            return false;
+        in.nextNull();
+        return true;
+    }
+}
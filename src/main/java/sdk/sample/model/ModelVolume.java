@@ -34,6 +34,24 @@ public class ModelVolume
 
     private ModelSourceVolume sourceVolume;
 
+    /*
+      Service level the volume needs: Standard, Premium or Ultra. Only used by the pool planner,
+      defaults to the service level of the capacity pool the volume is defined in.
+     */
+    private String serviceLevel;
+
+    /*
+      Replication schedule of a data protection volume: _10minutely, hourly or daily.
+      Defaults to hourly when not set, ignored for volumes without sourceVolume.
+     */
+    private String replicationSchedule;
+
+    // Names of the snapshots to take of this volume once it is created
+    private List<String> snapshots;
+
+    // Snapshot this volume is created from, the volume starts with the snapshot's data instead of empty
+    private ModelSnapshotSource snapshotSource;
+
     private List<ModelExportPolicyRule> exportPolicies;
 
     public List<ModelExportPolicyRule> getExportPolicies() {
@@ -91,4 +109,36 @@ public class ModelVolume
     public void setSourceVolume(ModelSourceVolume sourceVolume) {
         this.sourceVolume = sourceVolume;
     }
+
+    public String getServiceLevel() {
+        return serviceLevel;
+    }
+
+    public void setServiceLevel(String serviceLevel) {
+        this.serviceLevel = serviceLevel;
+    }
+
+    public String getReplicationSchedule() {
+        return replicationSchedule;
+    }
+
+    public void setReplicationSchedule(String replicationSchedule) {
+        this.replicationSchedule = replicationSchedule;
+    }
+
+    public List<String> getSnapshots() {
+        return snapshots;
+    }
+
+    public void setSnapshots(List<String> snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    public ModelSnapshotSource getSnapshotSource() {
+        return snapshotSource;
+    }
+
+    public void setSnapshotSource(ModelSnapshotSource snapshotSource) {
+        this.snapshotSource = snapshotSource;
+    }
 }
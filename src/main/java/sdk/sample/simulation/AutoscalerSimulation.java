@@ -0,0 +1,213 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import sdk.sample.common.Autoscaler;
+import sdk.sample.common.CapacityOperations;
+import sdk.sample.common.Topology;
+import sdk.sample.common.Utils;
+import sdk.sample.common.VolumeMetricsSource;
+import sdk.sample.model.ModelCapacityPool;
+import sdk.sample.model.ModelNetAppAccount;
+import sdk.sample.model.ModelVolume;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/*
+  Runs the Autoscaler over three simulated days against an in-memory account, in virtual time with one sample every 5 minutes.
+  20 volumes start as 1 TiB Premium volumes (64 MiB/s). Their demand follows a daily cycle, a few have a large nightly batch
+  and a few are nearly idle. Throughput is capped at the volume's limit, latency rises as the volume gets close to it.
+  Compares the capacity cost and the time spent throttled (demand above the limit) with the static layout. In APPLY mode the
+  autoscaler only changes quotas, the moves to Standard or Ultra it would make are printed as recommendations.
+  Run with: mvn exec:java -Dexec.mainClass="sdk.sample.simulation.AutoscalerSimulation"
+ */
+public class AutoscalerSimulation
+{
+    private static final long GIB = 1024L * 1024 * 1024;
+    private static final long TIB = 1024 * GIB;
+    private static final int VOLUMES = 20;
+    private static final long STEP_MILLIS = 5 * 60_000;
+    private static final int STEPS = 3 * 24 * 12;
+    private static final String[] POOLS = { "standard-pool", "premium-pool", "ultra-pool" };
+    private static final String[] SERVICE_LEVELS = { "Standard", "Premium", "Ultra" };
+    private static final double[] MIBPS_PER_TIB = { 16, 64, 128 };
+    private static final double[] PRICE_PER_GIB_MONTH = { 0.14746, 0.29419, 0.39274 };
+
+    public static void main(String[] args)
+    {
+        Random random = new Random(7);
+        Demand[] demands = new Demand[VOLUMES];
+        for (int i = 0; i < VOLUMES; i++)
+        {
+            if (i < 3)
+                demands[i] = new Demand(20, 250, random.nextInt(24));
+            else if (i < 7)
+                demands[i] = new Demand(2, 0, 0);
+            else
+                demands[i] = new Demand(10 + random.nextInt(60), 0, 0);
+        }
+
+        Result fixed = run(demands, null);
+        Result scaled = run(demands, Autoscaler.Mode.APPLY);
+        Utils.writeConsoleMessage(String.format("Static layout: %.0f per month, %.1f volume-hour(s) throttled", fixed.monthlyCost, fixed.throttledHours));
+        Utils.writeConsoleMessage(String.format("Autoscaled:    %.0f per month, %.1f volume-hour(s) throttled, %d change(s)", scaled.monthlyCost, scaled.throttledHours, scaled.changes));
+    }
+
+    private static Result run(Demand[] demands, Autoscaler.Mode mode)
+    {
+        SimulatedCapacity capacity = new SimulatedCapacity();
+        List<ModelCapacityPool> pools = new ArrayList<>();
+        for (int p = 0; p < POOLS.length; p++)
+        {
+            ModelCapacityPool pool = new ModelCapacityPool();
+            pool.setName(POOLS[p]);
+            pool.setServiceLevel(SERVICE_LEVELS[p]);
+            pool.setVolumes(new ArrayList<>());
+            pools.add(pool);
+            capacity.poolSizes.put(POOLS[p], 4 * TIB);
+        }
+        for (int i = 0; i < VOLUMES; i++)
+        {
+            ModelVolume volume = new ModelVolume();
+            volume.setName("volume-" + i);
+            volume.setUsageThreshold(TIB);
+            pools.get(1).getVolumes().add(volume);
+            capacity.quotas.put(volume.getName(), TIB);
+            capacity.volumePools.put(volume.getName(), POOLS[1]);
+        }
+        capacity.poolSizes.put(POOLS[1], VOLUMES * TIB);
+
+        ModelNetAppAccount account = new ModelNetAppAccount();
+        account.setResourceGroup("rg");
+        account.setName("account");
+        account.setCapacityPools(pools);
+
+        Result result = new Result();
+        double costSum = 0;
+        Autoscaler autoscaler = mode == null ? null : new Autoscaler(capacity, capacity, Topology.compile("subscription", Arrays.asList(account)), mode);
+        for (int step = 0; step < STEPS; step++)
+        {
+            double hour = (step * STEP_MILLIS / 3_600_000.0) % 24;
+            for (int i = 0; i < VOLUMES; i++)
+                capacity.demands.put("volume-" + i, demands[i].at(hour));
+            for (String volume : capacity.demands.keySet())
+            {
+                if (capacity.demands.get(volume) > capacity.limit(volume))
+                    result.throttledHours += STEP_MILLIS / 3_600_000.0;
+            }
+            if (autoscaler != null)
+                result.changes += autoscaler.evaluate(step * STEP_MILLIS).size();
+            costSum += capacity.monthlyCost();
+        }
+        result.monthlyCost = costSum / STEPS;
+        return result;
+    }
+
+    // Demand in MiB/s: a daily cycle peaking mid-afternoon, plus an optional two hour batch
+    private static class Demand
+    {
+        private final double peak;
+        private final double batch;
+        private final int batchHour;
+
+        private Demand(double peak, double batch, int batchHour)
+        {
+            this.peak = peak;
+            this.batch = batch;
+            this.batchHour = batchHour;
+        }
+
+        private double at(double hour)
+        {
+            double daily = peak * (0.2 + 0.8 * Math.max(0, Math.sin((hour - 8) / 12 * Math.PI)));
+            double inBatch = hour >= batchHour && hour < batchHour + 2 ? batch : 0;
+            return daily + inBatch;
+        }
+    }
+
+    private static class Result
+    {
+        private double monthlyCost;
+        private double throttledHours;
+        private int changes;
+    }
+
+    // In-memory account: pool sizes, volume quotas and pools, and the demand on each volume
+    private static class SimulatedCapacity implements CapacityOperations, VolumeMetricsSource
+    {
+        private final Map<String, Long> poolSizes = new HashMap<>();
+        private final Map<String, Long> quotas = new HashMap<>();
+        private final Map<String, String> volumePools = new HashMap<>();
+        private final Map<String, Double> demands = new HashMap<>();
+
+        @Override
+        public Sample read(String[] volume)
+        {
+            double demand = demands.get(volume[3]);
+            double utilization = demand / limit(volume[3]);
+            double latency = utilization < 1 ? 1 + 4 * Math.pow(utilization, 4) : 5 + 15 * utilization;
+            return new Sample(Math.min(demand, limit(volume[3])), latency, quotas.get(volume[3]) / 5);
+        }
+
+        @Override
+        public long getUsageThreshold(String[] volume)
+        {
+            return quotas.get(volume[3]);
+        }
+
+        @Override
+        public long getPoolSize(String[] pool)
+        {
+            return poolSizes.get(pool[2]);
+        }
+
+        @Override
+        public long getAllocatedBytes(String[] pool)
+        {
+            long total = 0;
+            for (Map.Entry<String, String> volume : volumePools.entrySet())
+            {
+                if (volume.getValue().equals(pool[2]))
+                    total += quotas.get(volume.getKey());
+            }
+            return total;
+        }
+
+        @Override
+        public void resizeVolume(String[] volume, long usageThreshold)
+        {
+            quotas.put(volume[3], usageThreshold);
+            if (getAllocatedBytes(new String[] { volume[0], volume[1], volume[2] }) > poolSizes.get(volume[2]))
+                throw new IllegalStateException("Pool " + volume[2] + " is too small for volume " + volume[3]);
+        }
+
+        @Override
+        public void resizePool(String[] pool, long size)
+        {
+            if (size < getAllocatedBytes(pool))
+                throw new IllegalStateException("Pool " + pool[2] + " cannot be smaller than its volumes");
+            poolSizes.put(pool[2], size);
+        }
+
+        private double limit(String volume)
+        {
+            return MIBPS_PER_TIB[Arrays.asList(POOLS).indexOf(volumePools.get(volume))] * quotas.get(volume) / TIB;
+        }
+
+        private double monthlyCost()
+        {
+            double cost = 0;
+            for (int p = 0; p < POOLS.length; p++)
+                cost += PRICE_PER_GIB_MONTH[p] * poolSizes.get(POOLS[p]) / GIB;
+            return cost;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import sdk.sample.common.Utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+  Fake ARM endpoint whose latency depends on how many calls are in flight.
+  Up to 'capacity' concurrent calls are served in the base latency, above it calls queue and latency grows linearly,
+  and above 'throttleFactor' times the capacity the endpoint answers 429 right away.
+  Throughput is therefore maximal, with the lowest latency, at exactly 'capacity' calls in flight.
+ */
+public class CapacityCurveEndpoint
+{
+    private final int capacity;
+    private final int baseLatencyMillis;
+    private final double throttleFactor;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    public CapacityCurveEndpoint(int capacity, int baseLatencyMillis, double throttleFactor)
+    {
+        this.capacity = capacity;
+        this.baseLatencyMillis = baseLatencyMillis;
+        this.throttleFactor = throttleFactor;
+    }
+
+    /**
+     * Serves a call, blocking the caller for the simulated latency
+     * @return The number of calls in flight when this call arrived
+     */
+    public int call()
+    {
+        int current = inFlight.incrementAndGet();
+        try
+        {
+            if (current > capacity * throttleFactor)
+            {
+                throttled.increment();
+                throw SimulatedHttpResponse.error(429);
+            }
+
+            double queueing = Math.max(1.0, (double) current / capacity);
+            double jitter = 0.9 + (ThreadLocalRandom.current().nextDouble() * 0.2);
+            Utils.threadSleep((int) Math.round(baseLatencyMillis * queueing * jitter));
+            served.increment();
+            return current;
+        }
+        finally
+        {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getServed() {
+        return served.sum();
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+}
@@ -0,0 +1,168 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import sdk.sample.common.ProjectConfiguration;
+import sdk.sample.common.Utils;
+import sdk.sample.model.ModelNetAppAccount;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+/*
+  Compares the parse time and allocations of appsettings.json read with Gson's reflective binding and a new Gson per read,
+  as before ModelTypeAdapters, against ProjectConfiguration.readFromJsonFile and its hand-written adapters.
+  Generates configurations of 1 MB and 100 MB by default (sizes in MB can be given as arguments), warms both parsers up,
+  then prints the average time, throughput, bytes allocated per parse and allocation rate of the reading thread.
+  The 100 MB configuration needs a heap of about 2 GB, e.g. MAVEN_OPTS=-Xmx2g.
+  Run with: mvn exec:java -Dexec.mainClass="sdk.sample.simulation.ConfigParsingSimulation"
+ */
+public class ConfigParsingSimulation
+{
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException
+    {
+        String[] sizes = args.length > 0 ? args : new String[] { "1", "100" };
+        for (String size : sizes)
+        {
+            long megabytes = Long.parseLong(size);
+            File file = File.createTempFile("appsettings-" + megabytes + "mb", ".json");
+            file.deleteOnExit();
+            int volumes = generate(file, megabytes * 1024 * 1024);
+            Utils.writeConsoleMessage(String.format("%s: %.1f MB, %d volume(s)", file.getName(), file.length() / 1048576.0, volumes));
+
+            // Fewer rounds for large files, a single parse already takes long enough to measure
+            int warmup = megabytes >= 50 ? 1 : 5;
+            int rounds = megabytes >= 50 ? 3 : 20;
+            measure("reflective, new Gson per read", file, warmup, rounds, () -> {
+                try (Reader reader = new FileReader(file))
+                {
+                    return new Gson().fromJson(reader, Settings.class).accounts;
+                }
+            });
+            measure("TypeAdapters, shared Gson", file, warmup, rounds, () -> ProjectConfiguration.readFromJsonFile(file.getPath()).getAccounts());
+            if (!file.delete())
+                Utils.writeWarningMessage("Unable to delete " + file);
+        }
+    }
+
+    private static void measure(String name, File file, int warmup, int rounds, Parser parser) throws IOException
+    {
+        for (int i = 0; i < warmup; i++)
+            parser.parse();
+        System.gc();
+
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        int accounts = 0;
+        for (int i = 0; i < rounds; i++)
+            accounts += parser.parse().size();
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+        double millis = elapsed / 1e6 / rounds;
+        Utils.writeConsoleMessage(String.format("  %-32s %9.1f ms/parse, %7.1f MB/s, %8.1f MB allocated/parse, allocation rate %7.1f MB/s (%d account(s))",
+                name, millis, file.length() / 1048576.0 / (millis / 1000), allocated / 1048576.0 / rounds,
+                allocated / 1048576.0 / (elapsed / 1e9), accounts / rounds));
+    }
+
+    // Writes an appsettings.json of about the given size, accounts of 10 pools of 50 volumes with 2 export policy rules each
+    private static int generate(File file, long bytes) throws IOException
+    {
+        int volumes = 0;
+        try (JsonWriter out = new JsonWriter(new FileWriter(file)))
+        {
+            out.beginObject();
+            out.name("general").beginObject();
+            out.name("subscriptionId").value("00000000-0000-0000-0000-000000000000");
+            out.name("shouldCleanUp").value("false");
+            out.name("maxParallelism").value("8");
+            out.endObject();
+            out.name("accounts").beginArray();
+            for (int a = 0; file.length() < bytes; a++)
+            {
+                String account = String.format("account-%05d", a);
+                out.beginObject();
+                out.name("name").value(account);
+                out.name("resourceGroup").value("rg-" + (a % 20));
+                out.name("location").value(a % 2 == 0 ? "westus2" : "eastus2");
+                out.name("capacityPools").beginArray();
+                for (int p = 0; p < 10; p++)
+                {
+                    out.beginObject();
+                    out.name("name").value("pool-" + p);
+                    out.name("serviceLevel").value("Premium");
+                    out.name("size").value(4398046511104L * 4);
+                    out.name("volumes").beginArray();
+                    for (int v = 0; v < 50; v++, volumes++)
+                    {
+                        String name = account + "-" + p + "-" + v;
+                        out.beginObject();
+                        out.name("name").value(name);
+                        out.name("creationToken").value(name);
+                        out.name("usageThreshold").value(107374182400L);
+                        out.name("type").value("NFSv4.1");
+                        out.name("subnetId").value("/subscriptions/00000000-0000-0000-0000-000000000000/resourceGroups/rg-" + (a % 20)
+                                + "/providers/Microsoft.Network/virtualNetworks/vnet/subnets/anf");
+                        if (v % 5 == 0)
+                        {
+                            out.name("replicationSchedule").value("hourly");
+                            out.name("sourceVolume").beginObject();
+                            out.name("volumeName").value(name + "-src");
+                            out.name("poolName").value("pool-" + p);
+                            out.name("accountName").value(account + "-src");
+                            out.name("resourceGroup").value("rg-src");
+                            out.endObject();
+                        }
+                        out.name("exportPolicies").beginArray();
+                        for (int r = 1; r <= 2; r++)
+                        {
+                            out.beginObject();
+                            out.name("ruleIndex").value(r);
+                            out.name("allowedClients").value("10.0." + r + ".0/24");
+                            out.name("nfsv4").value(true);
+                            out.name("unixReadWrite").value(r == 1);
+                            out.name("unixReadOnly").value(r != 1);
+                            out.endObject();
+                        }
+                        out.endArray();
+                        out.endObject();
+                    }
+                    out.endArray();
+                    out.endObject();
+                }
+                out.endArray();
+                out.endObject();
+                out.flush();
+            }
+            out.endArray();
+            out.endObject();
+        }
+        return volumes;
+    }
+
+    private interface Parser
+    {
+        List<ModelNetAppAccount> parse() throws IOException;
+    }
+
+    // appsettings.json as bound by Gson's reflective binding
+    private static class Settings
+    {
+        private List<ModelNetAppAccount> accounts;
+        private Map<String, String> general;
+    }
+}
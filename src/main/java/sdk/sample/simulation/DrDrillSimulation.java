@@ -0,0 +1,43 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import sdk.sample.DrDrill;
+import sdk.sample.common.ReplicationPair;
+import sdk.sample.common.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+  Runs a DR drill against SimulatedReplication with a region worth of replication pairs and prints the drill report.
+  Time is scaled down: a 10 minute replication schedule is simulated by a 2 second one.
+  Run with: mvn exec:java -Dexec.mainClass="sdk.sample.simulation.DrDrillSimulation"
+ */
+public class DrDrillSimulation
+{
+    private static final int PAIRS = 60;
+    private static final int CONCURRENCY = 12;
+    private static final long PACING_MILLIS = 25;
+    private static final long GIB = 1024L * 1024 * 1024;
+
+    public static void main(String[] args)
+    {
+        SimulatedReplication replication = new SimulatedReplication(100L * 1024 * 1024, 200, 2000);
+        List<ReplicationPair> pairs = new ArrayList<>();
+        for (int i = 0; i < PAIRS; i++)
+        {
+            ReplicationPair pair = new ReplicationPair(
+                    new String[] {"primary-rg", "primary-account", "pool", "volume-" + i},
+                    new String[] {"secondary-rg", "secondary-account", "pool", "volume-" + i});
+            replication.addPair(pair, 512 * GIB);
+            pairs.add(pair);
+        }
+
+        new DrDrill(replication, CONCURRENCY, PACING_MILLIS, true, 50, 60_000).run(pairs);
+        Utils.writeConsoleMessage(String.format("Transferred %d GiB with %d baseline(s)", replication.getTransferredBytes() / GIB, replication.getBaselines()));
+    }
+}
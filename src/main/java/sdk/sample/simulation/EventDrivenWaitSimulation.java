@@ -0,0 +1,130 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import sdk.sample.common.EventReceiver;
+import sdk.sample.common.ResourceEvents;
+import sdk.sample.common.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+  Waits for fake volumes to finish provisioning, with the wait loop of CommonSdk.waitForANFResource, first by polling only and
+  then with a real EventReceiver fed by an EventPublisherStub. Time is scaled down 10 times: the 10s poll interval of CommonSdk is
+  1s here and volumes complete after 0.5 to 8s. Event Grid delivers each event 50 to 250ms after the completion and 5% of the
+  events are dropped, so that the safety net polling is exercised.
+  Compares the delay between the completion of a volume and the end of its wait, and the number of GET calls.
+  Run with: mvn exec:java -Dexec.mainClass="sdk.sample.simulation.EventDrivenWaitSimulation"
+ */
+public class EventDrivenWaitSimulation
+{
+    private static final int VOLUMES = 40;
+    private static final int POLL_INTERVAL_MILLIS = 1000;
+    private static final double DROPPED_EVENTS = 0.05;
+    private static final String KEY = "simulation-secret";
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        Random random = new Random(11);
+        long[] completionDelays = new long[VOLUMES];
+        for (int i = 0; i < VOLUMES; i++)
+            completionDelays[i] = 500 + random.nextInt(7500);
+
+        Result polling = run(completionDelays, false);
+        Result events = run(completionDelays, true);
+
+        Utils.writeConsoleMessage(String.format("Polling only: p50 %4dms, p99 %4dms after completion, %d GET(s)", polling.p50, polling.p99, polling.gets));
+        Utils.writeConsoleMessage(String.format("With events:  p50 %4dms, p99 %4dms after completion, %d GET(s), %d event(s) dropped",
+                events.p50, events.p99, events.gets, events.dropped));
+        Utils.writeConsoleMessage(String.format("Detection p50 reduced by %.0f%%, GET calls reduced by %.0f%%",
+                100.0 * (polling.p50 - events.p50) / polling.p50, 100.0 * (polling.gets - events.gets) / polling.gets));
+    }
+
+    private static Result run(long[] completionDelays, boolean withEvents) throws InterruptedException
+    {
+        ResourceEvents resourceEvents = new ResourceEvents();
+        EventReceiver receiver = new EventReceiver(resourceEvents, KEY);
+        EventPublisherStub publisher = null;
+        if (withEvents)
+        {
+            int port = receiver.start(0);
+            publisher = new EventPublisherStub("http://localhost:" + port + EventReceiver.PATH + "?key=" + KEY);
+            if (!publisher.validate("code-42").contains("code-42"))
+                throw new IllegalStateException("The event receiver did not answer the validation handshake");
+        }
+
+        Result result = new Result();
+        long start = System.currentTimeMillis();
+        long[] lateness = new long[completionDelays.length];
+        AtomicInteger gets = new AtomicInteger();
+        AtomicInteger dropped = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < completionDelays.length; i++)
+        {
+            int index = i;
+            long completedAt = start + completionDelays[i];
+            String resourceId = "/subscriptions/00000000-0000-0000-0000-000000000000/resourceGroups/rg/providers/Microsoft.NetApp"
+                    + "/netAppAccounts/account/capacityPools/pool/volumes/volume-" + i;
+
+            // ARM side: the volume completes, Event Grid delivers the event a little later, or never
+            if (publisher != null)
+            {
+                EventPublisherStub eventPublisher = publisher;
+                Random random = new Random(i);
+                Thread completion = new Thread(() -> {
+                    Utils.threadSleep((int) (completedAt - System.currentTimeMillis() + 50 + random.nextInt(200)));
+                    if (random.nextDouble() < DROPPED_EVENTS)
+                        dropped.incrementAndGet();
+                    else
+                        eventPublisher.writeSucceeded(resourceId);
+                });
+                completion.start();
+                threads.add(completion);
+            }
+
+            // Client side: the wait loop of CommonSdk.waitForANFResource
+            Thread waiter = new Thread(() -> {
+                String key = ResourceEvents.keyOf(resourceId);
+                long version = 0;
+                for (int retry = 0; retry < 60; retry++)
+                {
+                    if (retry > 0)
+                        resourceEvents.sleep(key, version, POLL_INTERVAL_MILLIS, true);
+                    version = resourceEvents.version(key);
+
+                    gets.incrementAndGet();
+                    if (System.currentTimeMillis() >= completedAt)
+                        break;
+                }
+                lateness[index] = System.currentTimeMillis() - completedAt;
+            });
+            waiter.start();
+            threads.add(waiter);
+        }
+        for (Thread thread : threads)
+            thread.join();
+        receiver.stop();
+
+        Arrays.sort(lateness);
+        result.p50 = lateness[lateness.length / 2];
+        result.p99 = lateness[(int) Math.ceil(lateness.length * 0.99) - 1];
+        result.gets = gets.get();
+        result.dropped = dropped.get();
+        return result;
+    }
+
+    private static class Result
+    {
+        private long p50;
+        private long p99;
+        private int gets;
+        private int dropped;
+    }
+}
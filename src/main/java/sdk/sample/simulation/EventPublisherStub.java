@@ -0,0 +1,121 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/*
+  Local stand-in for Event Grid: posts events in the Event Grid schema to an EventReceiver, the way a webhook subscription on
+  the resource group would.
+ */
+public class EventPublisherStub
+{
+    private final String endpoint;
+
+    /**
+     * @param endpoint URL of the receiver, e.g. http://localhost:8080/events?key=secret
+     */
+    public EventPublisherStub(String endpoint)
+    {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Sends the subscription validation handshake
+     * @param validationCode Code the receiver must echo
+     * @return The response body
+     */
+    public String validate(String validationCode)
+    {
+        JsonObject data = new JsonObject();
+        data.addProperty("validationCode", validationCode);
+        return post(event("Microsoft.EventGrid.SubscriptionValidationEvent", "", data));
+    }
+
+    /**
+     * Sends a ResourceWriteSuccess event, as ARM does when a PUT or PATCH completed
+     * @param resourceId Id of the resource written
+     */
+    public void writeSucceeded(String resourceId)
+    {
+        post(resourceEvent("Microsoft.Resources.ResourceWriteSuccess", resourceId));
+    }
+
+    /**
+     * Sends a ResourceDeleteSuccess event, as ARM does when a DELETE completed
+     * @param resourceId Id of the resource deleted
+     */
+    public void deleteSucceeded(String resourceId)
+    {
+        post(resourceEvent("Microsoft.Resources.ResourceDeleteSuccess", resourceId));
+    }
+
+    private static JsonObject resourceEvent(String eventType, String resourceId)
+    {
+        JsonObject data = new JsonObject();
+        data.addProperty("resourceUri", resourceId);
+        data.addProperty("status", "Succeeded");
+        return event(eventType, resourceId, data);
+    }
+
+    private static JsonObject event(String eventType, String subject, JsonObject data)
+    {
+        JsonObject event = new JsonObject();
+        event.addProperty("id", UUID.randomUUID().toString());
+        event.addProperty("eventType", eventType);
+        event.addProperty("subject", subject);
+        event.addProperty("eventTime", Instant.now().toString());
+        event.addProperty("dataVersion", "2");
+        event.add("data", data);
+        return event;
+    }
+
+    private String post(JsonObject event)
+    {
+        JsonArray batch = new JsonArray();
+        batch.add(event);
+        byte[] body = batch.toString().getBytes(StandardCharsets.UTF_8);
+        try
+        {
+            HttpURLConnection connection = (HttpURLConnection) new URL(endpoint).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("aeg-event-type", "Notification");
+            connection.setDoOutput(true);
+            try (OutputStream output = connection.getOutputStream())
+            {
+                output.write(body);
+            }
+            int status = connection.getResponseCode();
+            if (status != 200)
+                throw new IllegalStateException("Event receiver answered " + status);
+
+            StringBuilder response = new StringBuilder();
+            try (InputStream input = connection.getInputStream())
+            {
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = input.read(buffer)) > 0)
+                    response.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+            }
+            return response.toString();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Unable to post an event to " + endpoint + " - " + e.getMessage(), e);
+        }
+    }
+}
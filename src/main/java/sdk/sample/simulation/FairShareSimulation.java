@@ -0,0 +1,88 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import sdk.sample.common.CriticalPathScheduler;
+import sdk.sample.common.FairShare;
+import sdk.sample.common.LroTimings;
+import sdk.sample.common.Metrics;
+import sdk.sample.common.Operations;
+import sdk.sample.common.ProvisioningTask;
+import sdk.sample.common.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+  Provisions four resource groups through one CriticalPathScheduler on 16 workers, with durations scaled down 1000 times:
+  bulk-rg with 2,000 volumes in 4 pools, and team-a-rg, team-b-rg and team-c-rg with 10 volumes each.
+  Runs once with every task in a single queue, as before tenants existed, then with one queue per resource group,
+  and prints when each resource group was done and the tenant.* metrics, those of the single queue run under tenant.default.
+  Run with: mvn exec:java -Dexec.mainClass="sdk.sample.simulation.FairShareSimulation"
+ */
+public class FairShareSimulation
+{
+    private static final int WORKERS = 16;
+    private static final String[] TENANTS = { "bulk-rg", "team-a-rg", "team-b-rg", "team-c-rg" };
+
+    public static void main(String[] args) throws IOException
+    {
+        Map<String, Long> single = run(false);
+        Map<String, Long> fair = run(true);
+
+        Utils.writeConsoleMessage(String.format("%-12s %18s %18s", "", "single queue", "fair share"));
+        for (String tenant : TENANTS)
+            Utils.writeConsoleMessage(String.format("%-12s %15d ms %15d ms", tenant, single.get(tenant), fair.get(tenant)));
+
+        Utils.writeConsoleMessage("Fair share metrics:");
+        Metrics.snapshot().forEach((name, value) -> {
+            if (name.startsWith("tenant."))
+                Utils.writeConsoleMessage(String.format("  %-40s %s", name, value));
+        });
+    }
+
+    // Provisions the four resource groups and returns when the last task of each one finished, from the start of the run
+    private static Map<String, Long> run(boolean perTenant) throws IOException
+    {
+        File timingsFile = File.createTempFile("lro-timings", ".json");
+        timingsFile.deleteOnExit();
+        FairShare fairShare = new FairShare(WORKERS, Collections.emptyMap());
+        CriticalPathScheduler scheduler = new CriticalPathScheduler(LroTimings.load(timingsFile.getPath()), WORKERS, fairShare);
+        Map<String, Long> done = new ConcurrentHashMap<>();
+        long start = System.currentTimeMillis();
+
+        for (String resourceGroup : TENANTS)
+        {
+            String tenant = perTenant ? resourceGroup : null;
+            boolean bulk = resourceGroup.startsWith("bulk");
+            ProvisioningTask account = scheduler.add(task(resourceGroup + "/account", Operations.CREATE_ACCOUNT, tenant, 30, resourceGroup, done, start));
+            for (int p = 0; p < (bulk ? 4 : 1); p++)
+            {
+                String poolName = resourceGroup + "/account/pool-" + p;
+                ProvisioningTask pool = scheduler.add(task(poolName, Operations.CREATE_CAPACITY_POOL, tenant, 60, resourceGroup, done, start)).dependsOn(account);
+                for (int v = 0; v < (bulk ? 500 : 10); v++)
+                    scheduler.add(task(poolName + "/volume-" + v, Operations.CREATE_VOLUME, tenant, 20, resourceGroup, done, start)).dependsOn(pool);
+            }
+        }
+
+        scheduler.run();
+        return new TreeMap<>(done);
+    }
+
+    private static ProvisioningTask task(String name, String operation, String tenant, int millis, String resourceGroup, Map<String, Long> done, long start)
+    {
+        return new ProvisioningTask(name, operation, tenant, () -> {
+            Utils.threadSleep(millis);
+            done.merge(resourceGroup, System.currentTimeMillis() - start, Math::max);
+            // Nothing was issued against ARM, the durations are not recorded
+            return false;
+        });
+    }
+}
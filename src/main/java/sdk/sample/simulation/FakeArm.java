@@ -0,0 +1,301 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.util.FluxUtil;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  In-memory Azure Resource Manager for Microsoft.NetApp accounts, capacity pools, volumes and snapshots, plugged into the
+  management client as its HTTP client (NetAppFilesManager.configure().withHttpClient), so that the sample runs without Azure.
+  Creations complete synchronously (201 with provisioningState Succeeded), deletions remove the resource and its children,
+  replication actions succeed at once: a replication reports Mirrored once authorized (and by default), Broken once broken and
+  is not found once deleted. Reads and writes answer after a fixed latency.
+ */
+public class FakeArm implements HttpClient
+{
+    private static final String[] TYPES = { "netAppAccounts", "capacityPools", "volumes", "snapshots" };
+
+    // Mirror state of a deleted replication
+    private static final String DELETED = "Deleted";
+
+    private final Map<String, JsonObject> resources = new ConcurrentHashMap<>();
+    // Mirror state by destination volume, volumes without an entry report Mirrored
+    private final Map<String, String> replications = new ConcurrentHashMap<>();
+    private final long readLatencyMillis;
+    private final long writeLatencyMillis;
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    public FakeArm(long readLatencyMillis, long writeLatencyMillis)
+    {
+        this.readLatencyMillis = readLatencyMillis;
+        this.writeLatencyMillis = writeLatencyMillis;
+    }
+
+    public long getReads() {
+        return reads.get();
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    // Number of resources currently existing
+    public int size() {
+        return resources.size();
+    }
+
+    @Override
+    public Mono<HttpResponse> send(HttpRequest request)
+    {
+        boolean read = request.getHttpMethod() == HttpMethod.GET;
+        (read ? reads : writes).incrementAndGet();
+        Flux<ByteBuffer> body = request.getBody();
+        Mono<byte[]> bytes = body == null ? Mono.just(new byte[0]) : FluxUtil.collectBytesInByteBufferStream(body).defaultIfEmpty(new byte[0]);
+        return bytes
+                .map(content -> handle(request, new String(content, StandardCharsets.UTF_8)))
+                .delayElement(Duration.ofMillis(read ? readLatencyMillis : writeLatencyMillis));
+    }
+
+    private HttpResponse handle(HttpRequest request, String body)
+    {
+        // /subscriptions/{id}/resourceGroups/{rg}/providers/Microsoft.NetApp/netAppAccounts/{account}[/{type}/{name}]...[/{action}]
+        String path = request.getUrl().getPath();
+        String key = path.toLowerCase();
+        String[] segments = path.split("/");
+        String last = segments[segments.length - 1];
+        boolean list = isType(last);
+        boolean action = !list && segments.length % 2 == 0;
+        String resourceKey = list || action ? key.substring(0, key.lastIndexOf('/')) : key;
+
+        switch (request.getHttpMethod())
+        {
+            case GET:
+                if (list)
+                    return list(request, key);
+                JsonObject existing = resources.get(resourceKey);
+                if (existing == null)
+                    return notFound(request, resourceKey);
+                if (!action)
+                    return new Response(request, 200, existing.toString());
+                String mirrorState = replications.getOrDefault(resourceKey, "Mirrored");
+                if (DELETED.equals(mirrorState))
+                    return notFound(request, key);
+                JsonObject status = new JsonObject();
+                status.addProperty("healthy", true);
+                status.addProperty("relationshipStatus", "Idle");
+                status.addProperty("mirrorState", mirrorState);
+                return new Response(request, 200, status.toString());
+            case PUT:
+                String parentKey = key.substring(0, key.lastIndexOf('/', key.lastIndexOf('/') - 1));
+                if (isResource(parentKey) && !resources.containsKey(parentKey))
+                    return error(request, 404, "ParentResourceNotFound", "Parent resource " + parentKey + " not found");
+                JsonObject resource = create(segments, body);
+                resources.put(key, resource);
+                replications.remove(key);
+                return new Response(request, 201, resource.toString());
+            case DELETE:
+                if (resources.remove(key) == null)
+                    return new Response(request, 204, "");
+                resources.keySet().removeIf(other -> other.startsWith(key + "/"));
+                replications.keySet().removeIf(other -> other.equals(key) || other.startsWith(key + "/"));
+                return new Response(request, 200, "");
+            case POST:
+                if (!resources.containsKey(resourceKey))
+                    return notFound(request, resourceKey);
+                replicate(resourceKey, last.toLowerCase(), body);
+                return new Response(request, 200, "");
+            default:
+                return error(request, 405, "MethodNotAllowed", request.getHttpMethod() + " is not supported");
+        }
+    }
+
+    // Applies a replication action to the mirror state of the destination volume, authorize is posted on the source
+    private void replicate(String volumeKey, String action, String body)
+    {
+        switch (action)
+        {
+            case "authorizereplication":
+                JsonElement parsed = body.isEmpty() ? null : JsonParser.parseString(body);
+                if (parsed != null && parsed.isJsonObject() && parsed.getAsJsonObject().has("remoteVolumeResourceId"))
+                    replications.put(parsed.getAsJsonObject().get("remoteVolumeResourceId").getAsString().toLowerCase(), "Mirrored");
+                break;
+            case "breakreplication":
+                replications.put(volumeKey, "Broken");
+                break;
+            case "resyncreplication":
+            case "reinitializereplication":
+                replications.put(volumeKey, "Mirrored");
+                break;
+            case "deletereplication":
+                replications.put(volumeKey, DELETED);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // The resource as ARM returns it: the request body with its id, name, type and a Succeeded provisioning state
+    private static JsonObject create(String[] segments, String body)
+    {
+        JsonElement parsed = body.isEmpty() ? null : JsonParser.parseString(body);
+        JsonObject resource = parsed != null && parsed.isJsonObject() ? parsed.getAsJsonObject() : new JsonObject();
+        String type = segments[segments.length - 2];
+
+        // Child resources are named after their parents, e.g. account/pool/volume
+        StringBuilder name = new StringBuilder();
+        StringBuilder fullType = new StringBuilder("Microsoft.NetApp");
+        for (int i = 7; i < segments.length; i += 2)
+        {
+            name.append(name.length() == 0 ? "" : "/").append(segments[i + 1]);
+            fullType.append('/').append(segments[i]);
+        }
+        resource.addProperty("id", String.join("/", segments));
+        resource.addProperty("name", name.toString());
+        resource.addProperty("type", fullType.toString());
+        if (!resource.has("properties") || !resource.get("properties").isJsonObject())
+            resource.add("properties", new JsonObject());
+        JsonObject properties = resource.getAsJsonObject("properties");
+        properties.addProperty("provisioningState", "Succeeded");
+        if ("volumes".equals(type))
+            properties.addProperty("fileSystemId", UUID.randomUUID().toString());
+        if ("capacityPools".equals(type))
+            properties.addProperty("poolId", UUID.randomUUID().toString());
+        if ("snapshots".equals(type))
+        {
+            properties.addProperty("snapshotId", UUID.randomUUID().toString());
+            properties.addProperty("created", OffsetDateTime.now().toString());
+        }
+        return resource;
+    }
+
+    private static boolean isType(String segment)
+    {
+        for (String type : TYPES)
+        {
+            if (type.equalsIgnoreCase(segment))
+                return true;
+        }
+        return false;
+    }
+
+    // Whether a path is a NetApp resource, as opposed to a resource group or the provider itself
+    private static boolean isResource(String key)
+    {
+        String[] segments = key.split("/");
+        return segments.length >= 2 && isType(segments[segments.length - 2]);
+    }
+
+    // Direct children of a resource of the type ending the path, e.g. the volumes of a capacity pool
+    private HttpResponse list(HttpRequest request, String key)
+    {
+        JsonArray value = new JsonArray();
+        String prefix = key + "/";
+        for (Map.Entry<String, JsonObject> entry : resources.entrySet())
+        {
+            if (entry.getKey().startsWith(prefix) && entry.getKey().indexOf('/', prefix.length()) < 0)
+                value.add(entry.getValue());
+        }
+        JsonObject body = new JsonObject();
+        body.add("value", value);
+        return new Response(request, 200, body.toString());
+    }
+
+    private static HttpResponse notFound(HttpRequest request, String key)
+    {
+        return error(request, 404, "ResourceNotFound", "The Resource '" + key + "' was not found.");
+    }
+
+    static Response error(HttpRequest request, int status, String code, String message)
+    {
+        JsonObject error = new JsonObject();
+        error.addProperty("code", code);
+        error.addProperty("message", message);
+        JsonObject body = new JsonObject();
+        body.add("error", error);
+        return new Response(request, status, body.toString());
+    }
+
+    // A json response, also used by FaultInjectingArm to answer in its place
+    static class Response extends HttpResponse
+    {
+        private final int status;
+        private final byte[] body;
+        private final HttpHeaders headers = new HttpHeaders();
+
+        Response(HttpRequest request, int status, String body)
+        {
+            super(request);
+            this.status = status;
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+            headers.set("Content-Type", "application/json");
+            headers.set("Content-Length", String.valueOf(this.body.length));
+            headers.set("x-ms-request-id", UUID.randomUUID().toString());
+        }
+
+        Response withHeader(String name, String value)
+        {
+            headers.set(name, value);
+            return this;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return status;
+        }
+
+        @Override
+        public String getHeaderValue(String name) {
+            return headers.getValue(name);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public Flux<ByteBuffer> getBody() {
+            return body.length == 0 ? Flux.empty() : Flux.just(ByteBuffer.wrap(body));
+        }
+
+        @Override
+        public Mono<byte[]> getBodyAsByteArray() {
+            return body.length == 0 ? Mono.empty() : Mono.just(body);
+        }
+
+        @Override
+        public Mono<String> getBodyAsString() {
+            return getBodyAsString(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Mono<String> getBodyAsString(Charset charset) {
+            return body.length == 0 ? Mono.empty() : Mono.just(new String(body, charset));
+        }
+    }
+}
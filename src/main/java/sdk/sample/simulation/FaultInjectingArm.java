@@ -0,0 +1,236 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  Injects the failures of a real Azure Resource Manager in front of FakeArm, at random rates:
+  - 429 Too Many Requests with a Retry-After header, and 500/503 errors, answered instead of the request, nothing is changed
+  - slow creations: the resource is returned as Creating, and read as such, for a while before it becomes Succeeded
+  - stuck resources: the same, for longer than the sample waits for a long running operation
+  - replications stuck in Uninitialized: a Mirrored replication is reported as Uninitialized and Transferring for a while
+  The management client's retry policy retries the errors, the sample's waits deal with the others.
+ */
+public class FaultInjectingArm implements HttpClient
+{
+    private final HttpClient arm;
+    private final double throttleRate;
+    private final double serverErrorRate;
+
+    private double slowRate;
+    private long slowMillis;
+    private double stuckRate;
+    private long stuckMillis;
+    private double stuckReplicationRate;
+    private long stuckReplicationMillis;
+
+    // Until when a resource is reported as Creating, by resource key
+    private final Map<String, Long> busyUntil = new ConcurrentHashMap<>();
+
+    // Until when a replication is reported as Uninitialized by destination volume key, 0 once it was decided it is not stuck
+    private final Map<String, Long> uninitializedUntil = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong serverErrors = new AtomicLong();
+    private final AtomicLong slowed = new AtomicLong();
+    private final AtomicLong stuck = new AtomicLong();
+    private final AtomicLong stuckReplications = new AtomicLong();
+
+    /**
+     * @param arm HTTP client answering the requests that do not fail, e.g. FakeArm
+     * @param throttleRate Share of the requests answered 429, from 0 to 1
+     * @param serverErrorRate Share of the requests answered 500 or 503, from 0 to 1
+     */
+    public FaultInjectingArm(HttpClient arm, double throttleRate, double serverErrorRate)
+    {
+        this.arm = arm;
+        this.throttleRate = throttleRate;
+        this.serverErrorRate = serverErrorRate;
+    }
+
+    /**
+     * Makes some creations complete after a delay
+     * @param rate Share of the creations, from 0 to 1
+     * @param millis How long they are reported as Creating
+     * @return This instance
+     */
+    public FaultInjectingArm withSlowCreations(double rate, long millis)
+    {
+        this.slowRate = rate;
+        this.slowMillis = millis;
+        return this;
+    }
+
+    /**
+     * Leaves some resources in Creating, longer than the operation timeout of the waits
+     * @param rate Share of the creations, from 0 to 1
+     * @param millis How long they are reported as Creating
+     * @return This instance
+     */
+    public FaultInjectingArm withStuckResources(double rate, long millis)
+    {
+        this.stuckRate = rate;
+        this.stuckMillis = millis;
+        return this;
+    }
+
+    /**
+     * Leaves some replications in Uninitialized once they are authorized
+     * @param rate Share of the replications, from 0 to 1
+     * @param millis How long they are reported as Uninitialized
+     * @return This instance
+     */
+    public FaultInjectingArm withStuckReplications(double rate, long millis)
+    {
+        this.stuckReplicationRate = rate;
+        this.stuckReplicationMillis = millis;
+        return this;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    // Requests answered 429 or 5xx, each of them is retried or fails an operation
+    public long getFaults() {
+        return throttled.get() + serverErrors.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public long getServerErrors() {
+        return serverErrors.get();
+    }
+
+    public long getSlowed() {
+        return slowed.get();
+    }
+
+    public long getStuck() {
+        return stuck.get();
+    }
+
+    public long getStuckReplications() {
+        return stuckReplications.get();
+    }
+
+    @Override
+    public Mono<HttpResponse> send(HttpRequest request)
+    {
+        requests.incrementAndGet();
+        double draw = ThreadLocalRandom.current().nextDouble();
+        if (draw < throttleRate)
+        {
+            throttled.incrementAndGet();
+            return Mono.just(FakeArm.error(request, 429, "TooManyRequests", "Too many requests, retry later").withHeader("Retry-After", "1"));
+        }
+        if (draw < throttleRate + serverErrorRate)
+        {
+            serverErrors.incrementAndGet();
+            boolean unavailable = ThreadLocalRandom.current().nextBoolean();
+            return Mono.just(FakeArm.error(request, unavailable ? 503 : 500, unavailable ? "ServiceUnavailable" : "InternalServerError", "Injected server error"));
+        }
+        return arm.send(request).flatMap(response -> shape(request, response));
+    }
+
+    // Applies the delays and stuck states to a response of FakeArm
+    private Mono<HttpResponse> shape(HttpRequest request, HttpResponse response)
+    {
+        String key = request.getUrl().getPath().toLowerCase();
+        long now = System.currentTimeMillis();
+        if (request.getHttpMethod() == HttpMethod.DELETE)
+        {
+            busyUntil.keySet().removeIf(other -> other.equals(key) || other.startsWith(key + "/"));
+            uninitializedUntil.keySet().removeIf(other -> other.equals(key) || other.startsWith(key + "/"));
+            return Mono.just(response);
+        }
+        if (response.getStatusCode() >= 300)
+            return Mono.just(response);
+
+        if (request.getHttpMethod() == HttpMethod.PUT)
+        {
+            uninitializedUntil.remove(key);
+            double draw = ThreadLocalRandom.current().nextDouble();
+            if (draw < stuckRate)
+            {
+                stuck.incrementAndGet();
+                busyUntil.put(key, now + stuckMillis);
+            }
+            else if (draw < stuckRate + slowRate)
+            {
+                slowed.incrementAndGet();
+                busyUntil.put(key, now + slowMillis);
+            }
+            else
+                return Mono.just(response);
+            return rewrite(request, response, "provisioningState", "Creating");
+        }
+
+        if (request.getHttpMethod() == HttpMethod.GET && key.endsWith("/replicationstatus"))
+        {
+            String volumeKey = key.substring(0, key.lastIndexOf('/'));
+            return response.getBodyAsString().defaultIfEmpty("").flatMap(body -> {
+                JsonObject status = JsonParser.parseString(body).getAsJsonObject();
+                if (!"Mirrored".equals(status.get("mirrorState").getAsString()))
+                    return Mono.just(response);
+                long until = uninitializedUntil.computeIfAbsent(volumeKey, k -> {
+                    if (ThreadLocalRandom.current().nextDouble() >= stuckReplicationRate)
+                        return 0L;
+                    stuckReplications.incrementAndGet();
+                    return now + stuckReplicationMillis;
+                });
+                if (now >= until)
+                    return Mono.just(response);
+                status.addProperty("mirrorState", "Uninitialized");
+                status.addProperty("relationshipStatus", "Transferring");
+                return Mono.just(new FakeArm.Response(request, response.getStatusCode(), status.toString()));
+            });
+        }
+
+        if (request.getHttpMethod() == HttpMethod.GET)
+        {
+            Long until = busyUntil.get(key);
+            if (until == null)
+                return Mono.just(response);
+            if (now >= until)
+            {
+                busyUntil.remove(key);
+                return Mono.just(response);
+            }
+            return rewrite(request, response, "provisioningState", "Creating");
+        }
+        return Mono.just(response);
+    }
+
+    // The response with a property of the resource replaced, and a short Retry-After for the long running operation poller
+    private static Mono<HttpResponse> rewrite(HttpRequest request, HttpResponse response, String property, String value)
+    {
+        return response.getBodyAsString().defaultIfEmpty("").map(body -> {
+            JsonElement parsed = body.isEmpty() ? null : JsonParser.parseString(body);
+            if (parsed == null || !parsed.isJsonObject() || !parsed.getAsJsonObject().has("properties"))
+                return response;
+            JsonObject resource = parsed.getAsJsonObject();
+            resource.getAsJsonObject("properties").addProperty(property, value);
+            return new FakeArm.Response(request, response.getStatusCode(), resource.toString()).withHeader("Retry-After", "1");
+        });
+    }
+}
@@ -0,0 +1,120 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import sdk.sample.common.HedgedReads;
+import sdk.sample.common.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/*
+  Runs the same reads against fake endpoints with and without HedgedReads and compares p50/p99 latency and the extra load.
+  Each endpoint injects a latency distribution resembling ARM reads: a bimodal one where a few calls hit a slow backend
+  and a heavy tailed (Pareto) one.
+  Run with: mvn exec:java -Dexec.mainClass="sdk.sample.simulation.HedgingSimulation"
+ */
+public class HedgingSimulation
+{
+    private static final int CALLERS = 16;
+    private static final int READS_PER_CALLER = 150;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        Utils.writeConsoleMessage("Hedged reads simulation, " + (CALLERS * READS_PER_CALLER) + " reads per run");
+
+        // 95% of the calls take 10-20ms, 5% hit a slow backend and take 150-300ms
+        runScenario("bimodal", random -> random.nextDouble() < 0.05 ? 150 + random.nextInt(150) : 10 + random.nextInt(10));
+
+        // Pareto with a 10ms minimum and shape 1.5, median ~16ms and a long tail
+        runScenario("heavy tail", random -> (long) Math.min(2000, 10 / Math.pow(1 - random.nextDouble(), 1 / 1.5)));
+    }
+
+    private static void runScenario(String name, ToLongFunction<Random> latency) throws InterruptedException
+    {
+        // Both runs draw their latencies from the same seed
+        Result plain = run(new LatencyEndpoint(latency, new Random(5)), new HedgedReads(false, 95, 0.1));
+        Result hedged = run(new LatencyEndpoint(latency, new Random(5)), new HedgedReads(true, 95, 0.1));
+
+        Utils.writeConsoleMessage(String.format("%-10s without hedging: p50 %4dms, p99 %4dms, %d calls", name, plain.p50, plain.p99, plain.calls));
+        Utils.writeConsoleMessage(String.format("%-10s with hedging:    p50 %4dms, p99 %4dms, %d calls", name, hedged.p50, hedged.p99, hedged.calls));
+        Utils.writeConsoleMessage(String.format("%-10s p99 reduced by %.0f%% for %.1f%% extra calls", name,
+                100.0 * (plain.p99 - hedged.p99) / plain.p99, 100.0 * (hedged.calls - plain.calls) / plain.calls));
+    }
+
+    private static Result run(LatencyEndpoint endpoint, HedgedReads hedgedReads) throws InterruptedException
+    {
+        long[] latencies = new long[CALLERS * READS_PER_CALLER];
+        AtomicInteger next = new AtomicInteger();
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++)
+        {
+            Thread caller = new Thread(() -> {
+                for (int j = 0; j < READS_PER_CALLER; j++)
+                {
+                    long start = System.nanoTime();
+                    hedgedReads.execute("read", endpoint::call);
+                    latencies[next.getAndIncrement()] = (System.nanoTime() - start) / 1_000_000;
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        for (Thread caller : callers)
+            caller.join();
+
+        Arrays.sort(latencies);
+        return new Result(latencies[latencies.length / 2], latencies[(int) Math.ceil(latencies.length * 0.99) - 1], endpoint.calls.get());
+    }
+
+    // Endpoint answering after a latency drawn from a distribution, an interrupted (cancelled) call returns immediately
+    private static class LatencyEndpoint
+    {
+        private final ToLongFunction<Random> latency;
+        private final Random random;
+        private final AtomicLong calls = new AtomicLong();
+
+        private LatencyEndpoint(ToLongFunction<Random> latency, Random random)
+        {
+            this.latency = latency;
+            this.random = random;
+        }
+
+        private String call()
+        {
+            calls.incrementAndGet();
+            try
+            {
+                Thread.sleep(latency.applyAsLong(random));
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Cancelled", e);
+            }
+            return "ok";
+        }
+    }
+
+    private static class Result
+    {
+        private final long p50;
+        private final long p99;
+        private final long calls;
+
+        private Result(long p50, long p99, long calls)
+        {
+            this.p50 = p50;
+            this.p99 = p99;
+            this.calls = calls;
+        }
+    }
+}
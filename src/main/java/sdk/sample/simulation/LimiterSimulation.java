@@ -0,0 +1,82 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import sdk.sample.common.AdaptiveConcurrencyLimiter;
+import sdk.sample.common.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+  Drives the AdaptiveConcurrencyLimiter against fake endpoints with different capacities and shows where the limit settles.
+  Each scenario runs many more callers than the endpoint can serve, the limit should converge near the endpoint capacity.
+  Run with: mvn exec:java -Dexec.mainClass="sdk.sample.simulation.LimiterSimulation"
+ */
+public class LimiterSimulation
+{
+    private static final int CALLERS_PER_CAPACITY = 4;
+    private static final int DURATION_MILLIS = 10_000;
+    private static final int SAMPLE_MILLIS = 250;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        Utils.writeConsoleMessage("AIMD concurrency limiter simulation");
+        for (int capacity : new int[] {4, 16, 48})
+        {
+            runScenario(new CapacityCurveEndpoint(capacity, 20, 1.5));
+        }
+    }
+
+    private static void runScenario(CapacityCurveEndpoint endpoint) throws InterruptedException
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("simulation", 1, 1, 256);
+        List<Thread> callers = new ArrayList<>();
+        long end = System.currentTimeMillis() + DURATION_MILLIS;
+        for (int i = 0; i < endpoint.getCapacity() * CALLERS_PER_CAPACITY; i++)
+        {
+            Thread caller = new Thread(() -> {
+                while (System.currentTimeMillis() < end)
+                {
+                    try
+                    {
+                        limiter.execute("call", endpoint::call);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // throttled, the limiter already reacted
+                    }
+                }
+            });
+            caller.setDaemon(true);
+            caller.start();
+            callers.add(caller);
+        }
+
+        // Average limit over the second half of the run, once the limiter had time to converge
+        double limitSum = 0;
+        int samples = 0;
+        StringBuilder trace = new StringBuilder();
+        for (long elapsed = 0; elapsed < DURATION_MILLIS; elapsed += SAMPLE_MILLIS)
+        {
+            Thread.sleep(SAMPLE_MILLIS);
+            double limit = limiter.getLimit();
+            if (elapsed % 1000 == 0)
+                trace.append(String.format(" %.0f", limit));
+            if (elapsed >= DURATION_MILLIS / 2)
+            {
+                limitSum += limit;
+                samples++;
+            }
+        }
+        for (Thread caller : callers)
+            caller.join();
+
+        double served = endpoint.getServed() / (DURATION_MILLIS / 1000.0);
+        Utils.writeConsoleMessage(String.format("Capacity %3d: limit per second%s, converged limit %.1f (%.0f%% of optimum), %.0f calls/s, %d throttled",
+                endpoint.getCapacity(), trace, limitSum / samples, 100 * limitSum / samples / endpoint.getCapacity(), served, endpoint.getThrottled()));
+    }
+}
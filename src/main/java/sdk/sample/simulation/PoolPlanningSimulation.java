@@ -0,0 +1,112 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import sdk.sample.common.ConfigValidator;
+import sdk.sample.common.PoolPlanner;
+import sdk.sample.common.ProjectConfiguration;
+import sdk.sample.common.Utils;
+import sdk.sample.model.ModelCapacityPool;
+import sdk.sample.model.ModelExportPolicyRule;
+import sdk.sample.model.ModelNetAppAccount;
+import sdk.sample.model.ModelSourceVolume;
+import sdk.sample.model.ModelVolume;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/*
+  Plans the pools of a generated configuration of 20,000 volumes laid out by hand: a primary account with 10,000 volumes of
+  random sizes and service levels in pools of 20 volumes sized with 50% headroom, replicated to a secondary account.
+  Prints the pools and capacity saved, the planning time, and validates the planned layout.
+  Run with: mvn exec:java -Dexec.mainClass="sdk.sample.simulation.PoolPlanningSimulation"
+ */
+public class PoolPlanningSimulation
+{
+    private static final long GIB = 1024L * 1024 * 1024;
+    private static final long TIB = 1024 * GIB;
+    private static final int VOLUMES = 10_000;
+    private static final int VOLUMES_PER_POOL = 20;
+    private static final String[] SERVICE_LEVELS = { "Standard", "Premium", "Ultra" };
+    private static final String SUBSCRIPTION_ID = "00000000-0000-0000-0000-000000000000";
+
+    public static void main(String[] args)
+    {
+        Random random = new Random(42);
+        List<ModelNetAppAccount> accounts = new ArrayList<>();
+        ModelNetAppAccount primary = createAccount("anf-primary-rg", "anf-primary", "eastus", null, random);
+        accounts.add(primary);
+        accounts.add(createAccount("anf-secondary-rg", "anf-secondary", "westus", primary, random));
+
+        long start = System.nanoTime();
+        PoolPlanner.Plan plan = PoolPlanner.plan(accounts);
+        long elapsed = System.nanoTime() - start;
+        plan.print();
+        Utils.writeConsoleMessage(String.format("Planned %d volumes in %.1fms", 2 * VOLUMES, elapsed / 1e6));
+
+        ProjectConfiguration config = new ProjectConfiguration();
+        config.setSubscriptionId(SUBSCRIPTION_ID);
+        config.setAccounts(accounts);
+        List<ConfigValidator.Issue> issues = ConfigValidator.validate(config);
+        ConfigValidator.print(issues);
+        Utils.writeConsoleMessage("Planned layout validation: " + (ConfigValidator.hasErrors(issues) ? "failed" : "passed"));
+    }
+
+    // Hand-picked layout: volumes in pools of VOLUMES_PER_POOL, each pool 50% larger than its volumes
+    private static ModelNetAppAccount createAccount(String resourceGroup, String name, String location, ModelNetAppAccount source, Random random)
+    {
+        ModelNetAppAccount account = new ModelNetAppAccount();
+        account.setResourceGroup(resourceGroup);
+        account.setName(name);
+        account.setLocation(location);
+        List<ModelCapacityPool> pools = new ArrayList<>();
+        for (int p = 0; p < VOLUMES / VOLUMES_PER_POOL; p++)
+        {
+            ModelCapacityPool sourcePool = source == null ? null : source.getCapacityPools().get(p);
+            ModelCapacityPool pool = new ModelCapacityPool();
+            pool.setName("pool-" + p);
+            pool.setServiceLevel(sourcePool == null ? SERVICE_LEVELS[random.nextInt(SERVICE_LEVELS.length)] : sourcePool.getServiceLevel());
+            List<ModelVolume> volumes = new ArrayList<>();
+            long total = 0;
+            for (int v = 0; v < VOLUMES_PER_POOL; v++)
+            {
+                ModelVolume volume = new ModelVolume();
+                volume.setName("volume-" + p + "-" + v);
+                volume.setCreationToken(name + "-volume-" + p + "-" + v);
+                // mostly small volumes and a few large ones
+                volume.setUsageThreshold(sourcePool == null ? (100 + (long) (Math.pow(random.nextDouble(), 4) * 8 * 1024)) * GIB
+                        : sourcePool.getVolumes().get(v).getUsageThreshold());
+                volume.setType("NFSv4.1");
+                volume.setSubnetId("/subscriptions/" + SUBSCRIPTION_ID + "/resourceGroups/" + resourceGroup
+                        + "/providers/Microsoft.Network/virtualNetworks/vnet/subnets/anf");
+                ModelExportPolicyRule rule = new ModelExportPolicyRule();
+                rule.setRuleIndex(1);
+                rule.setAllowedClients("10.0.0.0/24");
+                rule.setNfsv4(true);
+                rule.setUnixReadWrite(true);
+                volume.setExportPolicies(Collections.singletonList(rule));
+                if (sourcePool != null)
+                {
+                    ModelSourceVolume sourceVolume = new ModelSourceVolume();
+                    sourceVolume.setResourceGroup(source.getResourceGroup());
+                    sourceVolume.setAccountName(source.getName());
+                    sourceVolume.setPoolName(sourcePool.getName());
+                    sourceVolume.setVolumeName(volume.getName());
+                    volume.setSourceVolume(sourceVolume);
+                }
+                total += volume.getUsageThreshold();
+                volumes.add(volume);
+            }
+            pool.setVolumes(volumes);
+            pool.setSize(Math.max(4, (total * 3 / 2 + TIB - 1) / TIB) * TIB);
+            pools.add(pool);
+        }
+        account.setCapacityPools(pools);
+        return account;
+    }
+}
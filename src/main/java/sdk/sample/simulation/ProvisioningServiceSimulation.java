@@ -0,0 +1,202 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.management.AzureEnvironment;
+import com.azure.core.management.profile.AzureProfile;
+import com.azure.resourcemanager.netapp.NetAppFilesManager;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import reactor.core.publisher.Mono;
+import sdk.sample.ProvisioningService;
+import sdk.sample.common.JobQueue;
+import sdk.sample.common.LroTimings;
+import sdk.sample.common.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+  Runs the provisioning service against FakeArm, an in-memory ARM answering after 50 ms for reads and 200 ms for writes.
+  8 clients submit 100 accounts with 2 capacity pools of 2 volumes each through the REST API, then poll until every job is done.
+  Prints the throughput, the queueing and provisioning times of the jobs, and the number of ARM calls.
+  Run with: mvn exec:java -Dexec.mainClass="sdk.sample.simulation.ProvisioningServiceSimulation"
+ */
+public class ProvisioningServiceSimulation
+{
+    private static final String SUBSCRIPTION_ID = "00000000-0000-0000-0000-000000000000";
+    private static final int JOBS = 100;
+    private static final int CLIENTS = 8;
+    private static final int WORKERS = 4;
+    private static final int PARALLELISM = 4;
+
+    public static void main(String[] args) throws Exception
+    {
+        FakeArm arm = new FakeArm(50, 200);
+        TokenCredential credential = request -> Mono.just(new AccessToken("fake", OffsetDateTime.now().plusHours(1)));
+        NetAppFilesManager manager = NetAppFilesManager.configure()
+                .withHttpClient(arm)
+                .authenticate(credential, new AzureProfile(null, SUBSCRIPTION_ID, AzureEnvironment.AZURE));
+
+        Path journal = Files.createTempFile("jobs", ".journal");
+        Path timingsFile = Files.createTempFile("lro-timings", ".json");
+        ProvisioningService service = new ProvisioningService(manager.serviceClient(), new JobQueue(journal.toString()),
+                LroTimings.load(timingsFile.toString()), SUBSCRIPTION_ID, WORKERS, PARALLELISM);
+        String base = "http://localhost:" + service.start(0) + ProvisioningService.PATH;
+
+        long start = System.currentTimeMillis();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<JsonElement>> submissions = new ArrayList<>();
+        for (int i = 0; i < JOBS; i++)
+        {
+            String body = account(i).toString();
+            submissions.add(clients.submit(() -> call("POST", base, body)));
+        }
+        for (Future<JsonElement> submission : submissions)
+            submission.get();
+        clients.shutdown();
+        long submitted = System.currentTimeMillis();
+
+        JsonArray jobs;
+        while (true)
+        {
+            jobs = call("GET", base, null).getAsJsonObject().getAsJsonArray("jobs");
+            long done = 0;
+            for (JsonElement job : jobs)
+            {
+                String state = job.getAsJsonObject().get("state").getAsString();
+                if (!JobQueue.State.QUEUED.name().equals(state) && !JobQueue.State.RUNNING.name().equals(state))
+                    done++;
+            }
+            if (done == jobs.size())
+                break;
+            Utils.threadSleep(500);
+        }
+        long finished = System.currentTimeMillis();
+        service.stop();
+
+        List<Long> queueing = new ArrayList<>();
+        List<Long> provisioning = new ArrayList<>();
+        int failed = 0;
+        for (JsonElement element : jobs)
+        {
+            JsonObject job = element.getAsJsonObject();
+            if (!JobQueue.State.SUCCEEDED.name().equals(job.get("state").getAsString()))
+            {
+                failed++;
+                continue;
+            }
+            long submittedAt = Instant.parse(job.get("submitted").getAsString()).toEpochMilli();
+            long startedAt = Instant.parse(job.get("started").getAsString()).toEpochMilli();
+            long finishedAt = Instant.parse(job.get("finished").getAsString()).toEpochMilli();
+            queueing.add(startedAt - submittedAt);
+            provisioning.add(finishedAt - startedAt);
+        }
+
+        Utils.writeConsoleMessage(String.format("%d job(s) submitted in %d ms, all done after %d ms: %.1f job(s)/s, %d failed",
+                JOBS, submitted - start, finished - start, JOBS * 1000.0 / (finished - start), failed));
+        Utils.writeConsoleMessage("Queueing time:     " + percentiles(queueing));
+        Utils.writeConsoleMessage("Provisioning time: " + percentiles(provisioning));
+        Utils.writeConsoleMessage(String.format("ARM calls: %d read(s), %d write(s), %d resource(s) created", arm.getReads(), arm.getWrites(), arm.size()));
+
+        Files.deleteIfExists(journal);
+        Files.deleteIfExists(timingsFile);
+    }
+
+    // An account as in appsettings.json, with 2 capacity pools of 2 volumes each
+    private static JsonObject account(int index)
+    {
+        JsonArray pools = new JsonArray();
+        for (int p = 0; p < 2; p++)
+        {
+            JsonArray volumes = new JsonArray();
+            for (int v = 0; v < 2; v++)
+            {
+                String name = String.format("vol-%03d-%d-%d", index, p, v);
+                JsonObject rule = new JsonObject();
+                rule.addProperty("ruleIndex", 1);
+                rule.addProperty("allowedClients", "0.0.0.0/0");
+                rule.addProperty("nfsv4", true);
+                rule.addProperty("unixReadWrite", true);
+                JsonArray rules = new JsonArray();
+                rules.add(rule);
+
+                JsonObject volume = new JsonObject();
+                volume.addProperty("name", name);
+                volume.addProperty("creationToken", name);
+                volume.addProperty("usageThreshold", 107374182400L);
+                volume.addProperty("type", "NFSv4.1");
+                volume.addProperty("subnetId", "/subscriptions/" + SUBSCRIPTION_ID + "/resourceGroups/simulation-rg/providers/Microsoft.Network/virtualNetworks/vnet/subnets/anf");
+                volume.add("exportPolicies", rules);
+                volumes.add(volume);
+            }
+            JsonObject pool = new JsonObject();
+            pool.addProperty("name", "pool-" + p);
+            pool.addProperty("serviceLevel", "Standard");
+            pool.addProperty("size", 4398046511104L);
+            pool.add("volumes", volumes);
+            pools.add(pool);
+        }
+        JsonObject account = new JsonObject();
+        account.addProperty("name", String.format("account-%03d", index));
+        account.addProperty("resourceGroup", "simulation-rg");
+        account.addProperty("location", "westus2");
+        account.add("capacityPools", pools);
+        return account;
+    }
+
+    private static JsonElement call(String method, String url, String body) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null)
+        {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream output = connection.getOutputStream())
+            {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        try (InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+             Scanner scanner = new Scanner(input, StandardCharsets.UTF_8.name()).useDelimiter("\\A"))
+        {
+            String response = scanner.hasNext() ? scanner.next() : "";
+            if (status >= 400)
+                throw new IllegalStateException(method + " " + url + " answered " + status + ": " + response);
+            return JsonParser.parseString(response);
+        }
+    }
+
+    private static String percentiles(List<Long> values)
+    {
+        if (values.isEmpty())
+            return "n/a";
+        Collections.sort(values);
+        return String.format("p50 %d ms, p90 %d ms, max %d ms", values.get(values.size() / 2),
+                values.get((int) (values.size() * 0.9)), values.get(values.size() - 1));
+    }
+}
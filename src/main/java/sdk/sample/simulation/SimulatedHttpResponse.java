@@ -0,0 +1,72 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+// Body-less HTTP response used by the simulations to raise errors the same way the SDK does
+public class SimulatedHttpResponse extends HttpResponse
+{
+    private final int statusCode;
+
+    public SimulatedHttpResponse(int statusCode)
+    {
+        super(null);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Creates the exception the SDK would throw for a given status code
+     * @param statusCode HTTP status code, e.g. 429
+     * @return Exception carrying a response with that status code
+     */
+    public static HttpResponseException error(int statusCode)
+    {
+        return new HttpResponseException("Status code " + statusCode + ", simulated error", new SimulatedHttpResponse(statusCode));
+    }
+
+    @Override
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    @Override
+    public String getHeaderValue(String name) {
+        return null;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return new HttpHeaders();
+    }
+
+    @Override
+    public Flux<ByteBuffer> getBody() {
+        return Flux.empty();
+    }
+
+    @Override
+    public Mono<byte[]> getBodyAsByteArray() {
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<String> getBodyAsString() {
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<String> getBodyAsString(Charset charset) {
+        return Mono.empty();
+    }
+}
@@ -0,0 +1,269 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import com.azure.resourcemanager.netapp.models.MirrorState;
+import com.azure.resourcemanager.netapp.models.RelationshipStatus;
+import sdk.sample.common.ReplicationOperations;
+import sdk.sample.common.ReplicationPair;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+  Stand-in for ANF cross region replication that models the state transitions of each relationship.
+  Operations that are not valid in the current state fail with IllegalStateException, like ARM rejects them.
+  Writes are tracked per volume since the last common snapshot so a resync transfers only the changed blocks,
+  transfers take bytes / throughput and a re-initialization transfers the whole volume.
+  Scheduled transfers are only modeled through the lag of a mirrored destination, which grows until the next scheduled transfer:
+  the destination is assumed up to date when its replication is broken.
+ */
+public class SimulatedReplication implements ReplicationOperations
+{
+    private final long bytesPerMilli;
+    private final long operationMillis;
+    private final long scheduleMillis;
+
+    private final Map<String, Relationship> relationships = new HashMap<>();
+
+    private long transferredBytes;
+    private int baselines;
+
+    /**
+     * @param bytesPerMilli Throughput of the replication link
+     * @param operationMillis Average duration of a break/resync/re-initialize operation, before its transfer starts
+     */
+    public SimulatedReplication(long bytesPerMilli, long operationMillis)
+    {
+        this(bytesPerMilli, operationMillis, 0);
+    }
+
+    /**
+     * @param bytesPerMilli Throughput of the replication link
+     * @param operationMillis Average duration of a break/resync/re-initialize operation, before its transfer starts
+     * @param scheduleMillis Interval between scheduled transfers, 0 for destinations that are always up to date
+     */
+    public SimulatedReplication(long bytesPerMilli, long operationMillis, long scheduleMillis)
+    {
+        this.bytesPerMilli = bytesPerMilli;
+        this.operationMillis = operationMillis;
+        this.scheduleMillis = scheduleMillis;
+    }
+
+    /**
+     * Adds a mirrored relationship
+     * @param pair Source and destination volumes
+     * @param volumeBytes Size of the volume, transferred by a re-initialization
+     */
+    public synchronized void addPair(ReplicationPair pair, long volumeBytes)
+    {
+        Relationship relationship = new Relationship(key(pair.getSource()), key(pair.getDestination()), volumeBytes);
+        relationships.put(relationship.source, relationship);
+        relationships.put(relationship.destination, relationship);
+    }
+
+    /**
+     * Writes to a volume, which must be writable: the source of its relationship, or a destination whose replication is broken and not resyncing
+     * @param volume The volume
+     * @param bytes Number of bytes changed
+     */
+    public synchronized void write(String[] volume, long bytes)
+    {
+        Relationship relationship = get(volume);
+        String name = key(volume);
+        if (!isWritable(relationship, name))
+            throw new IllegalStateException("Volume " + name + " is read-only, mirror state " + relationship.mirrorState);
+        relationship.changedBytes.merge(name, bytes, Long::sum);
+    }
+
+    // Bytes transferred by resyncs and re-initializations so far
+    public synchronized long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    // Number of full baseline transfers so far
+    public synchronized int getBaselines() {
+        return baselines;
+    }
+
+    @Override
+    public void breakReplication(String[] volume)
+    {
+        pause();
+        synchronized (this)
+        {
+            Relationship relationship = get(volume);
+            relationship.update();
+            requireDestination(relationship, volume);
+            if (!MirrorState.MIRRORED.equals(relationship.mirrorState) || relationship.transferring)
+                throw new IllegalStateException("Cannot break " + key(volume) + ", mirror state " + relationship.mirrorState + (relationship.transferring ? ", transferring" : ""));
+
+            relationship.mirrorState = MirrorState.BROKEN;
+            // the destination is up to date, the common snapshot is taken at the break
+            relationship.changedBytes.clear();
+        }
+    }
+
+    @Override
+    public void resyncReplication(String[] volume)
+    {
+        pause();
+        synchronized (this)
+        {
+            Relationship relationship = get(volume);
+            relationship.update();
+            String name = key(volume);
+            if (!MirrorState.BROKEN.equals(relationship.mirrorState) || relationship.transferring)
+                throw new IllegalStateException("Cannot resync " + name + ", mirror state " + relationship.mirrorState + (relationship.transferring ? ", transferring" : ""));
+
+            if (name.equals(relationship.source))
+            {
+                // reverse resync: the old destination becomes the source
+                relationship.source = relationship.destination;
+                relationship.destination = name;
+            }
+            // changes of the new source are transferred, changes of the new destination are reverted to the common snapshot
+            startTransfer(relationship, relationship.changedBytes.getOrDefault(relationship.source, 0L));
+            relationship.changedBytes.clear();
+        }
+    }
+
+    @Override
+    public void reInitializeReplication(String[] volume)
+    {
+        pause();
+        synchronized (this)
+        {
+            Relationship relationship = get(volume);
+            relationship.update();
+            requireDestination(relationship, volume);
+            if (MirrorState.MIRRORED.equals(relationship.mirrorState) || relationship.transferring)
+                throw new IllegalStateException("Cannot re-initialize " + key(volume) + ", mirror state " + relationship.mirrorState + (relationship.transferring ? ", transferring" : ""));
+
+            relationship.mirrorState = MirrorState.UNINITIALIZED;
+            startTransfer(relationship, relationship.volumeBytes);
+            relationship.changedBytes.clear();
+            baselines++;
+        }
+    }
+
+    @Override
+    public synchronized boolean isDestination(String[] volume)
+    {
+        return key(volume).equals(get(volume).destination);
+    }
+
+    @Override
+    public synchronized MirrorState getMirrorState(String[] volume)
+    {
+        Relationship relationship = get(volume);
+        relationship.update();
+        return relationship.mirrorState;
+    }
+
+    @Override
+    public synchronized RelationshipStatus getRelationshipStatus(String[] volume)
+    {
+        Relationship relationship = get(volume);
+        relationship.update();
+        return relationship.transferring ? RelationshipStatus.TRANSFERRING : RelationshipStatus.IDLE;
+    }
+
+    @Override
+    public synchronized boolean isWritable(String[] volume)
+    {
+        return isWritable(get(volume), key(volume));
+    }
+
+    @Override
+    public synchronized long getLagMillis(String[] volume)
+    {
+        Relationship relationship = get(volume);
+        relationship.update();
+        if (!MirrorState.MIRRORED.equals(relationship.mirrorState))
+            return -1;
+        return scheduleMillis > 0 ? (System.currentTimeMillis() - relationship.mirroredSince) % scheduleMillis : 0;
+    }
+
+    private void startTransfer(Relationship relationship, long bytes)
+    {
+        transferredBytes += bytes;
+        relationship.transferring = true;
+        relationship.transferEndsAt = System.currentTimeMillis() + bytes / bytesPerMilli;
+    }
+
+    private boolean isWritable(Relationship relationship, String name)
+    {
+        relationship.update();
+        return name.equals(relationship.source) || (MirrorState.BROKEN.equals(relationship.mirrorState) && !relationship.transferring);
+    }
+
+    private void requireDestination(Relationship relationship, String[] volume)
+    {
+        if (!key(volume).equals(relationship.destination))
+            throw new IllegalStateException("Volume " + key(volume) + " is not the destination of its replication");
+    }
+
+    private Relationship get(String[] volume)
+    {
+        Relationship relationship = relationships.get(key(volume));
+        if (relationship == null)
+            throw new IllegalArgumentException("Volume " + key(volume) + " has no replication");
+        return relationship;
+    }
+
+    // Duration of the long running operation itself, with +-50% jitter
+    private void pause()
+    {
+        try
+        {
+            Thread.sleep((long) (operationMillis * (0.5 + ThreadLocalRandom.current().nextDouble())));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String key(String[] volume)
+    {
+        return String.join("/", volume).toLowerCase();
+    }
+
+    private static class Relationship
+    {
+        private String source;
+        private String destination;
+        private final long volumeBytes;
+        private MirrorState mirrorState = MirrorState.MIRRORED;
+        private boolean transferring;
+        private long transferEndsAt;
+        private long mirroredSince = System.currentTimeMillis();
+
+        // Bytes written per volume since the last common snapshot
+        private final Map<String, Long> changedBytes = new HashMap<>();
+
+        private Relationship(String source, String destination, long volumeBytes)
+        {
+            this.source = source;
+            this.destination = destination;
+            this.volumeBytes = volumeBytes;
+        }
+
+        // Completes the transfer in progress once its time elapsed
+        private void update()
+        {
+            if (transferring && System.currentTimeMillis() >= transferEndsAt)
+            {
+                transferring = false;
+                mirrorState = MirrorState.MIRRORED;
+                mirroredSince = transferEndsAt;
+            }
+        }
+    }
+}
@@ -0,0 +1,337 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.management.AzureEnvironment;
+import com.azure.core.management.profile.AzureProfile;
+import com.azure.resourcemanager.netapp.NetAppFilesManager;
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import reactor.core.publisher.Mono;
+import sdk.sample.Cleanup;
+import sdk.sample.Creation;
+import sdk.sample.Provisioning;
+import sdk.sample.Replication;
+import sdk.sample.common.Json;
+import sdk.sample.common.LroTimings;
+import sdk.sample.common.Metrics;
+import sdk.sample.common.OperationTracker;
+import sdk.sample.common.RegionDirectory;
+import sdk.sample.common.Topology;
+import sdk.sample.common.Utils;
+import sdk.sample.model.ModelNetAppAccount;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Soak test of the orchestration layer: creates, replicates and cleans up a small layout over and over for a given time against
+  FakeArm, behind a FaultInjectingArm answering 5% of the requests 429 and 2% 500 or 503, leaving 20% of the creations in Creating
+  for 15s and 1% for 3 minutes, and 2% of the replications in Uninitialized for 15 minutes, longer than the waits allow.
+  Each iteration creates a source account of 3 volumes and a destination account replicating 2 of them, alternately with
+  Creation and Replication one step after the other and with Provisioning on the CriticalPathScheduler, then runs Cleanup.
+  Layouts whose cleanup failed are cleaned up again by the next iteration. Operations are timed out after 1 minute.
+  Every sample interval the throughput, the retry overhead (injected faults per successful request), the live threads, the heap
+  used after a GC, the pending operations and the resources left in FakeArm are printed and appended to soak-simulation.csv.
+  At the end, growing threads or heap, operations still pending or resources left once everything was cleaned up, or a throughput
+  drop between the first and the second half of the run, fail the run.
+  Arguments: duration in minutes (default 60), sample interval in seconds (default 60).
+  Run with: mvn exec:java -Dexec.mainClass="sdk.sample.simulation.SoakSimulation" -Dexec.args="240 60"
+ */
+public class SoakSimulation
+{
+    private static final String SUBSCRIPTION_ID = "00000000-0000-0000-0000-000000000000";
+    private static final String RESOURCE_GROUP = "soak-rg";
+    private static final String CSV_FILE = "soak-simulation.csv";
+    private static final int PARALLELISM = 4;
+
+    // Differences between the first and the last sample tolerated before the run fails
+    private static final int THREAD_GROWTH_TOLERANCE = 10;
+    private static final double HEAP_GROWTH_TOLERANCE_MB = 64;
+    private static final double THROUGHPUT_DROP_TOLERANCE = 0.3;
+
+    private final FaultInjectingArm arm;
+    private final FakeArm fakeArm;
+    private final NetAppManagementClient anfClient;
+    private final LroTimings timings;
+    private final List<Sample> samples = new ArrayList<>();
+    private final long start = System.currentTimeMillis();
+    private volatile int iterations;
+
+    private SoakSimulation(FakeArm fakeArm, FaultInjectingArm arm, NetAppManagementClient anfClient, LroTimings timings)
+    {
+        this.fakeArm = fakeArm;
+        this.arm = arm;
+        this.anfClient = anfClient;
+        this.timings = timings;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        long minutes = args.length > 0 ? Long.parseLong(args[0]) : 60;
+        long sampleSeconds = args.length > 1 ? Long.parseLong(args[1]) : 60;
+
+        FakeArm fakeArm = new FakeArm(10, 30);
+        FaultInjectingArm arm = new FaultInjectingArm(fakeArm, 0.05, 0.02)
+                .withSlowCreations(0.2, 15_000)
+                .withStuckResources(0.01, 180_000)
+                .withStuckReplications(0.02, 900_000);
+        TokenCredential credential = request -> Mono.just(new AccessToken("fake", OffsetDateTime.now().plusHours(1)));
+        NetAppFilesManager manager = NetAppFilesManager.configure()
+                .withHttpClient(arm)
+                .authenticate(credential, new AzureProfile(null, SUBSCRIPTION_ID, AzureEnvironment.AZURE));
+        OperationTracker.setOperationTimeout(1);
+
+        File timingsFile = File.createTempFile("lro-timings", ".json");
+        timingsFile.deleteOnExit();
+        SoakSimulation soak = new SoakSimulation(fakeArm, arm, manager.serviceClient(), LroTimings.load(timingsFile.getPath()));
+        try (Writer csv = new FileWriter(CSV_FILE))
+        {
+            csv.write("elapsedSeconds,iterations,iterationsPerMinute,armRequests,injectedFaults,retryOverheadPercent,threads,heapUsedMb,pendingOperations,fakeArmResources\n");
+        }
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(soak::sample, sampleSeconds, sampleSeconds, TimeUnit.SECONDS);
+        try
+        {
+            soak.run(minutes * 60_000L);
+        }
+        finally
+        {
+            sampler.shutdownNow();
+        }
+        soak.sample();
+        soak.report();
+    }
+
+    private void run(long durationMillis)
+    {
+        List<Topology> leftovers = new ArrayList<>();
+        while (System.currentTimeMillis() - start < durationMillis)
+        {
+            // Layouts a previous cleanup left behind, e.g. behind a stuck resource, are cleaned up again
+            for (Iterator<Topology> leftover = leftovers.iterator(); leftover.hasNext(); )
+            {
+                Topology topology = leftover.next();
+                if (phase("cleanup retry", () -> Cleanup.runCleanup(topology, anfClient)))
+                    leftover.remove();
+            }
+
+            int iteration = iterations;
+            Topology topology = Topology.compile(SUBSCRIPTION_ID, layout(iteration));
+            RegionDirectory.register(topology);
+            if (iteration % 2 == 0)
+            {
+                phase("creation", () -> Creation.createANFResources(topology, anfClient));
+                phase("replication", () -> Replication.authorizeReplications(topology, anfClient));
+            }
+            else
+                phase("provisioning", () -> Provisioning.provisionANFResources(topology, anfClient, timings, PARALLELISM));
+            if (!phase("cleanup", () -> Cleanup.runCleanup(topology, anfClient)))
+                leftovers.add(topology);
+            iterations++;
+        }
+        for (Topology topology : leftovers)
+            phase("cleanup retry", () -> Cleanup.runCleanup(topology, anfClient));
+    }
+
+    // Runs a phase of an iteration, failures are counted by phase and by exception and the soak goes on
+    private static boolean phase(String name, Runnable phase)
+    {
+        try
+        {
+            phase.run();
+            Metrics.increment("soak." + name + ".succeeded");
+            return true;
+        }
+        catch (RuntimeException e)
+        {
+            Metrics.increment("soak." + name + ".failed");
+            Metrics.increment("soak.failures." + e.getClass().getSimpleName());
+            Utils.writeWarningMessage("Soak " + name + " failed - " + e.getMessage());
+            return false;
+        }
+    }
+
+    // A source account of 3 volumes and a destination account in another region replicating 2 of them
+    private static List<ModelNetAppAccount> layout(int iteration)
+    {
+        String source = String.format("soak-%05d-src", iteration);
+        String destination = String.format("soak-%05d-dst", iteration);
+        JsonArray sourceVolumes = new JsonArray();
+        JsonArray destinationVolumes = new JsonArray();
+        for (int v = 0; v < 3; v++)
+        {
+            String name = source + "-vol-" + v;
+            sourceVolumes.add(volume(name));
+            if (v < 2)
+            {
+                JsonObject sourceVolume = new JsonObject();
+                sourceVolume.addProperty("volumeName", name);
+                sourceVolume.addProperty("poolName", "pool");
+                sourceVolume.addProperty("accountName", source);
+                sourceVolume.addProperty("resourceGroup", RESOURCE_GROUP);
+                JsonObject replica = volume(destination + "-vol-" + v);
+                replica.addProperty("replicationSchedule", "hourly");
+                replica.add("sourceVolume", sourceVolume);
+                destinationVolumes.add(replica);
+            }
+        }
+        JsonArray accounts = new JsonArray();
+        accounts.add(account(source, "westus2", sourceVolumes));
+        accounts.add(account(destination, "eastus2", destinationVolumes));
+        return Arrays.asList(Json.gson().fromJson(accounts, ModelNetAppAccount[].class));
+    }
+
+    private static JsonObject account(String name, String location, JsonArray volumes)
+    {
+        JsonObject pool = new JsonObject();
+        pool.addProperty("name", "pool");
+        pool.addProperty("serviceLevel", "Standard");
+        pool.addProperty("size", 4398046511104L);
+        pool.add("volumes", volumes);
+        JsonArray pools = new JsonArray();
+        pools.add(pool);
+
+        JsonObject account = new JsonObject();
+        account.addProperty("name", name);
+        account.addProperty("resourceGroup", RESOURCE_GROUP);
+        account.addProperty("location", location);
+        account.add("capacityPools", pools);
+        return account;
+    }
+
+    private static JsonObject volume(String name)
+    {
+        JsonObject rule = new JsonObject();
+        rule.addProperty("ruleIndex", 1);
+        rule.addProperty("allowedClients", "0.0.0.0/0");
+        rule.addProperty("nfsv4", true);
+        rule.addProperty("unixReadWrite", true);
+        JsonArray rules = new JsonArray();
+        rules.add(rule);
+
+        JsonObject volume = new JsonObject();
+        volume.addProperty("name", name);
+        volume.addProperty("creationToken", name);
+        volume.addProperty("usageThreshold", 107374182400L);
+        volume.addProperty("type", "NFSv4.1");
+        volume.addProperty("subnetId", "/subscriptions/" + SUBSCRIPTION_ID + "/resourceGroups/" + RESOURCE_GROUP
+                + "/providers/Microsoft.Network/virtualNetworks/vnet/subnets/anf");
+        volume.add("exportPolicies", rules);
+        return volume;
+    }
+
+    // Records where the run stands, printed and appended to the csv file
+    private synchronized void sample()
+    {
+        System.gc();
+        Sample sample = new Sample((System.currentTimeMillis() - start) / 1000, iterations, arm.getRequests(), arm.getFaults(),
+                ManagementFactory.getThreadMXBean().getThreadCount(),
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1048576.0,
+                OperationTracker.getPendingCount(), fakeArm.size());
+        Sample previous = samples.isEmpty() ? new Sample(0, 0, 0, 0, 0, 0, 0, 0) : samples.get(samples.size() - 1);
+        samples.add(sample);
+
+        double minutes = Math.max(1, sample.elapsedSeconds - previous.elapsedSeconds) / 60.0;
+        double throughput = (sample.iterations - previous.iterations) / minutes;
+        long requests = sample.requests - previous.requests;
+        long faults = sample.faults - previous.faults;
+        double overhead = requests > faults ? 100.0 * faults / (requests - faults) : 0;
+        Utils.writeConsoleMessage(String.format("Soak %5ds: %d iteration(s), %.2f/min, %d ARM request(s), %d fault(s), retry overhead %.1f%%, "
+                        + "%d thread(s), heap %.1f MB, %d pending operation(s), %d resource(s) in FakeArm",
+                sample.elapsedSeconds, sample.iterations, throughput, sample.requests, sample.faults, overhead,
+                sample.threads, sample.heapMb, sample.pending, sample.resources));
+        try (Writer csv = new FileWriter(CSV_FILE, true))
+        {
+            csv.write(String.format("%d,%d,%.2f,%d,%d,%.1f,%d,%.1f,%d,%d\n", sample.elapsedSeconds, sample.iterations, throughput,
+                    sample.requests, sample.faults, overhead, sample.threads, sample.heapMb, sample.pending, sample.resources));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Prints the totals and fails the run if a resource grew or the throughput dropped
+    private void report()
+    {
+        Utils.writeConsoleMessage(String.format("Injected: %d throttled, %d server error(s), %d slow and %d stuck creation(s), %d stuck replication(s)",
+                arm.getThrottled(), arm.getServerErrors(), arm.getSlowed(), arm.getStuck(), arm.getStuckReplications()));
+        OperationTracker.printSummary();
+        Metrics.printSummary();
+        Utils.writeConsoleMessage("Samples written to " + CSV_FILE);
+        if (samples.size() < 3)
+        {
+            Utils.writeWarningMessage("Too few samples to look for regressions, run longer or sample more often");
+            return;
+        }
+
+        // The first sample is taken once the pools, caches and the JIT are warm
+        Sample first = samples.get(0);
+        Sample last = samples.get(samples.size() - 1);
+        Sample middle = samples.get(samples.size() / 2);
+        double firstHalf = (middle.iterations - first.iterations) / (double) Math.max(1, middle.elapsedSeconds - first.elapsedSeconds);
+        double secondHalf = (last.iterations - middle.iterations) / (double) Math.max(1, last.elapsedSeconds - middle.elapsedSeconds);
+
+        List<String> regressions = new ArrayList<>();
+        if (last.threads - first.threads > THREAD_GROWTH_TOLERANCE)
+            regressions.add("threads grew from " + first.threads + " to " + last.threads);
+        if (last.heapMb - first.heapMb > HEAP_GROWTH_TOLERANCE_MB)
+            regressions.add(String.format("heap used after GC grew from %.1f MB to %.1f MB", first.heapMb, last.heapMb));
+        // The last sample is taken once every layout was cleaned up, nothing should be left
+        if (last.pending > 0)
+            regressions.add(last.pending + " operation(s) still pending after the last cleanup");
+        if (last.resources > 0)
+            regressions.add(last.resources + " resource(s) left in FakeArm after the last cleanup");
+        if (firstHalf > 0 && secondHalf < firstHalf * (1 - THROUGHPUT_DROP_TOLERANCE))
+            regressions.add(String.format("throughput dropped from %.2f to %.2f iteration(s)/min", firstHalf * 60, secondHalf * 60));
+
+        if (!regressions.isEmpty())
+            throw new IllegalStateException("Soak test regressions: " + String.join("; ", regressions));
+        Utils.writeSuccessMessage(String.format("No regression over %d samples: %.2f then %.2f iteration(s)/min, %d thread(s), heap %.1f MB",
+                samples.size(), firstHalf * 60, secondHalf * 60, last.threads, last.heapMb));
+    }
+
+    private static class Sample
+    {
+        private final long elapsedSeconds;
+        private final int iterations;
+        private final long requests;
+        private final long faults;
+        private final int threads;
+        private final double heapMb;
+        private final int pending;
+        private final int resources;
+
+        private Sample(long elapsedSeconds, int iterations, long requests, long faults, int threads, double heapMb, int pending, int resources)
+        {
+            this.elapsedSeconds = elapsedSeconds;
+            this.iterations = iterations;
+            this.requests = requests;
+            this.faults = faults;
+            this.threads = threads;
+            this.heapMb = heapMb;
+            this.pending = pending;
+            this.resources = resources;
+        }
+    }
+}
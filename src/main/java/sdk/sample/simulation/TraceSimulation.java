@@ -0,0 +1,98 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import sdk.sample.common.CommonSdk;
+import sdk.sample.common.CriticalPathScheduler;
+import sdk.sample.common.LroTimings;
+import sdk.sample.common.Operations;
+import sdk.sample.common.ProvisioningTask;
+import sdk.sample.common.ResourceEvents;
+import sdk.sample.common.Tracer;
+import sdk.sample.common.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/*
+  Provisions a fake layout through the CriticalPathScheduler with tracing enabled and writes the timeline to trace-simulation.json.
+  A source account with 6 volumes replicated to 3 data protection volumes in a destination account, on 4 workers. Each step reads
+  the resource, runs its long running operation and polls once or twice, with durations scaled down 1000 times.
+  Open the file in chrome://tracing or https://ui.perfetto.dev: one lane per worker, tasks with their ARM calls and waits nested,
+  arrows from each task to the tasks it waited for, and the critical path flagged in the task arguments.
+  Run with: mvn exec:java -Dexec.mainClass="sdk.sample.simulation.TraceSimulation"
+ */
+public class TraceSimulation
+{
+    private static final int WORKERS = 4;
+    private static final String TRACE_FILE = "trace-simulation.json";
+
+    public static void main(String[] args) throws IOException
+    {
+        Tracer.shared().setEnabled(true);
+        File timingsFile = File.createTempFile("lro-timings", ".json");
+        timingsFile.deleteOnExit();
+        CriticalPathScheduler scheduler = new CriticalPathScheduler(LroTimings.load(timingsFile.getPath()), WORKERS);
+        Random random = new Random(3);
+
+        ProvisioningTask source = scheduler.add(task("rg/source", Operations.CREATE_ACCOUNT, 30, random));
+        ProvisioningTask destination = scheduler.add(task("rg/destination", Operations.CREATE_ACCOUNT, 30, random));
+        ProvisioningTask sourcePool = scheduler.add(task("rg/source/pool", Operations.CREATE_CAPACITY_POOL, 60, random)).dependsOn(source);
+        ProvisioningTask destinationPool = scheduler.add(task("rg/destination/pool", Operations.CREATE_CAPACITY_POOL, 60, random)).dependsOn(destination);
+        for (int i = 0; i < 6; i++)
+        {
+            ProvisioningTask volume = scheduler.add(task("rg/source/pool/volume-" + i, Operations.CREATE_VOLUME, 120, random)).dependsOn(sourcePool);
+            if (i < 3)
+            {
+                ProvisioningTask replica = scheduler.add(task("rg/destination/pool/volume-" + i + "-dp", Operations.CREATE_DATA_PROTECTION_VOLUME, 180, random))
+                        .dependsOn(destinationPool)
+                        .dependsOn(volume);
+                scheduler.add(task(replica.getName() + " (authorize)", Operations.AUTHORIZE_REPLICATION, 600, random)).dependsOn(replica);
+            }
+        }
+
+        try (Tracer.Span span = Tracer.shared().start("provisioning", "phase"))
+        {
+            scheduler.run();
+        }
+        Tracer.shared().exportChromeTrace(TRACE_FILE);
+    }
+
+    // A step reading its resource, running its long running operation and polling the result, 'millis' being its typical duration
+    private static ProvisioningTask task(String name, String operation, int millis, Random random)
+    {
+        String[] parts = name.split("/");
+        int lroMillis = (int) (millis * (0.6 + (0.4 * random.nextDouble())));
+        int polls = 1 + random.nextInt(2);
+        return new ProvisioningTask(name, operation, () -> {
+            CommonSdk.executeRead(parts[0], parts[1], Operations.GET_RESOURCE, () -> {
+                Utils.threadSleep(5);
+                return null;
+            });
+            CommonSdk.executeWrite(parts[0], parts[1], operation, () -> {
+                Utils.threadSleep(5);
+                return operation;
+            }, started -> {
+                try (Tracer.Span lro = Tracer.shared().start(started, "lro"))
+                {
+                    Utils.threadSleep(lroMillis);
+                }
+                return null;
+            });
+            String key = ResourceEvents.keyOf(parts);
+            for (int i = 0; i < polls; i++)
+            {
+                ResourceEvents.shared().sleep(key, ResourceEvents.shared().version(key), millis / 10, true);
+                CommonSdk.executeRead(parts[0], parts[1], Operations.GET_RESOURCE, () -> {
+                    Utils.threadSleep(5);
+                    return null;
+                });
+            }
+            return true;
+        });
+    }
+}
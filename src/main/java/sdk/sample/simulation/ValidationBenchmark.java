@@ -0,0 +1,122 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package sdk.sample.simulation;
+
+import sdk.sample.common.ConfigValidator;
+import sdk.sample.common.ProjectConfiguration;
+import sdk.sample.common.Utils;
+import sdk.sample.model.ModelCapacityPool;
+import sdk.sample.model.ModelExportPolicyRule;
+import sdk.sample.model.ModelNetAppAccount;
+import sdk.sample.model.ModelSourceVolume;
+import sdk.sample.model.ModelVolume;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+  Times ConfigValidator on a generated configuration of 10,000 volumes: a primary account of 5,000 volumes replicated to a
+  secondary account in another region, with a few planted mistakes that must all be reported.
+  Run with: mvn exec:java -Dexec.mainClass="sdk.sample.simulation.ValidationBenchmark"
+ */
+public class ValidationBenchmark
+{
+    private static final long GIB = 1024L * 1024 * 1024;
+    private static final long TIB = 1024 * GIB;
+    private static final int POOLS = 50;
+    private static final int VOLUMES_PER_POOL = 100;
+    private static final int RUNS = 10;
+    private static final String SUBSCRIPTION_ID = "00000000-0000-0000-0000-000000000000";
+
+    public static void main(String[] args)
+    {
+        ProjectConfiguration config = new ProjectConfiguration();
+        config.setSubscriptionId(SUBSCRIPTION_ID);
+        config.setMaxParallelism(4);
+        List<ModelNetAppAccount> accounts = new ArrayList<>();
+        ModelNetAppAccount primary = createAccount("anf-primary-rg", "anf-primary", "eastus", null);
+        accounts.add(primary);
+        accounts.add(createAccount("anf-secondary-rg", "anf-secondary", "westus", primary));
+        config.setAccounts(accounts);
+
+        // Planted mistakes, each must be reported
+        List<ModelVolume> volumes = primary.getCapacityPools().get(3).getVolumes();
+        volumes.get(7).setUsageThreshold(50 * GIB);
+        volumes.get(8).setSubnetId("/subscriptions/" + SUBSCRIPTION_ID + "/resourceGroups/rg/providers/Microsoft.Network/virtualNetworks/vnet");
+        volumes.get(9).setCreationToken(volumes.get(10).getCreationToken());
+        primary.getCapacityPools().get(4).setServiceLevel("Gold");
+        primary.getCapacityPools().get(5).getVolumes().get(0).setUsageThreshold(20 * TIB);
+        accounts.get(1).getCapacityPools().get(6).getVolumes().get(0).getSourceVolume().setVolumeName("missing");
+
+        int volumeCount = 2 * POOLS * VOLUMES_PER_POOL;
+        Utils.writeConsoleMessage("Validating a configuration of " + volumeCount + " volumes, " + RUNS + " runs...");
+        List<ConfigValidator.Issue> issues = Collections.emptyList();
+        long best = Long.MAX_VALUE;
+        long first = 0;
+        for (int run = 0; run < RUNS; run++)
+        {
+            long start = System.nanoTime();
+            issues = ConfigValidator.validate(config);
+            long elapsed = System.nanoTime() - start;
+            if (run == 0)
+                first = elapsed;
+            best = Math.min(best, elapsed);
+        }
+
+        ConfigValidator.print(issues);
+        Utils.writeConsoleMessage(String.format("%d issue(s) found, first run %.1fms (cold JVM), best run %.1fms",
+                issues.size(), first / 1e6, best / 1e6));
+    }
+
+    private static ModelNetAppAccount createAccount(String resourceGroup, String name, String location, ModelNetAppAccount source)
+    {
+        ModelNetAppAccount account = new ModelNetAppAccount();
+        account.setResourceGroup(resourceGroup);
+        account.setName(name);
+        account.setLocation(location);
+        List<ModelCapacityPool> pools = new ArrayList<>();
+        for (int p = 0; p < POOLS; p++)
+        {
+            ModelCapacityPool pool = new ModelCapacityPool();
+            pool.setName("pool-" + p);
+            pool.setServiceLevel("Premium");
+            pool.setSize(12 * TIB);
+            List<ModelVolume> volumes = new ArrayList<>();
+            for (int v = 0; v < VOLUMES_PER_POOL; v++)
+            {
+                ModelVolume volume = new ModelVolume();
+                volume.setName("volume-" + p + "-" + v);
+                volume.setCreationToken(name + "-volume-" + p + "-" + v);
+                volume.setUsageThreshold(100 * GIB);
+                volume.setType("NFSv4.1");
+                volume.setSubnetId("/subscriptions/" + SUBSCRIPTION_ID + "/resourceGroups/" + resourceGroup
+                        + "/providers/Microsoft.Network/virtualNetworks/vnet/subnets/anf");
+                ModelExportPolicyRule rule = new ModelExportPolicyRule();
+                rule.setRuleIndex(1);
+                rule.setAllowedClients("10.0.0.0/24");
+                rule.setNfsv4(true);
+                rule.setUnixReadWrite(true);
+                volume.setExportPolicies(Collections.singletonList(rule));
+                if (source != null)
+                {
+                    ModelSourceVolume sourceVolume = new ModelSourceVolume();
+                    sourceVolume.setResourceGroup(source.getResourceGroup());
+                    sourceVolume.setAccountName(source.getName());
+                    sourceVolume.setPoolName(pool.getName());
+                    sourceVolume.setVolumeName(volume.getName());
+                    volume.setSourceVolume(sourceVolume);
+                    volume.setReplicationSchedule("hourly");
+                }
+                volumes.add(volume);
+            }
+            pool.setVolumes(volumes);
+            pools.add(pool);
+        }
+        account.setCapacityPools(pools);
+        return account;
+    }
+}